@@ -9,10 +9,14 @@ import com.qualcomm.hardware.sparkfun.SparkFunOTOS;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.firstinspires.ftc.teamcode.game.logging.MatchLogger;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimers;
 import org.firstinspires.ftc.teamcode.robot.Robot;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
 
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 
 /**
  * Created by Silver Titans on 9/19/17. This is Cameron's comment
@@ -27,16 +31,41 @@ public class Match {
     public static String TEAM = "SilverTitans";
     private Robot robot = null;
     private Field field = null;
+    //null when running in the simulator
     private final FtcDashboard dashboard = FtcDashboard.getInstance();
-    private final Telemetry dashboardTelemetry = dashboard.getTelemetry();
-    private Date startTime = new Date();
-    private Date teleopStartTime = new Date();
+    private Date startTime = MatchClock.now();
+    private Date teleopStartTime = MatchClock.now();
     private Alliance.Color alliance;
     private Field.StartingPosition startingPosition;
     private String trajectoryError = "";
 
+    private final MatchTelemetry matchTelemetry = new MatchTelemetry(16, 4,
+            RobotConfig.DRIVER_STATION_TELEMETRY_INTERVAL, RobotConfig.DASHBOARD_TELEMETRY_INTERVAL);
+    private final int stateLine = matchTelemetry.registerLine("State");
+    private final int delayedStartLine = matchTelemetry.registerLine("Delayed Start");
+    private final int positionLine = matchTelemetry.registerLine("Position");
+    private final int driveLine = matchTelemetry.registerLine("Drive");
+    private final int armLine = matchTelemetry.registerLine("Arm");
+    private final int intakeLine = matchTelemetry.registerLine("Intake");
+    private final int cameraLine = matchTelemetry.registerLine("Camera");
+    private final int ledLine = matchTelemetry.registerLine("LED");
+    private final int trajectoryErrorLine = matchTelemetry.registerLine("TrajectoryErr");
+    private final int operationsLine = matchTelemetry.registerLine("Operations");
+    private final int controlLoopLine = matchTelemetry.registerLine("Control loop");
+    private final int trajectoriesLine = matchTelemetry.registerLine("Trajectories");
+    private final int xChannel = matchTelemetry.registerChannel("X");
+    private final int yChannel = matchTelemetry.registerChannel("Y");
+    private final int headingChannel = matchTelemetry.registerChannel("Heading");
+    private final int controlLoopChannel = matchTelemetry.registerChannel("Control loop mSecs");
+
     private long delayedStart;
 
+    public Match() {
+        //each match gets its own binary log file
+        MatchLogger.getInstance().startFile("match-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(startTime));
+    }
+
     synchronized public static Match getNewInstance() {
         match = new Match();
         return match;
@@ -52,7 +81,7 @@ public class Match {
     }
 
     public void setStart() {
-        this.startTime = new Date();
+        this.startTime = MatchClock.now();
         log("Starting autonomous >>>>>>>>>>>>>");
     }
 
@@ -61,7 +90,7 @@ public class Match {
      * @return the number of milliseconds since match start
      */
     public long getElapsed() {
-        return new Date().getTime() - startTime.getTime();
+        return MatchClock.currentTimeMillis() - startTime.getTime();
     }
 
     public Date getTeleopStartTime() {
@@ -101,27 +130,62 @@ public class Match {
     /**
      * Give the driver station a state of the union
      *
+     * The driver station and dashboard are only updated at their intervals, nothing is composed
+     * in between.
      */
     public void updateTelemetry(Telemetry telemetry, String status) {
 
         if (robot != null && field != null) {
-            SparkFunOTOS.Pose2D pose2D = robot.getPose();
-            // Send telemetry message to signify robot context;
-            telemetry.addData("State", status);
-            telemetry.addData("Delayed Start", getDelayedStart() + "milliseconds");
-            telemetry.addData("Position", "" + pose2D.x + "," + pose2D.y + "@" + pose2D.h);
-            telemetry.addData("Drive", robot.getDriveTrain().getStatus());
-            telemetry.addData("Arm", robot.getArmStatus());
-            telemetry.addData("Intake", robot.getIntakeStatus());
-            telemetry.addData("Camera", robot.getVisionPortal().getStatus());
-            robot.getVisionPortal().telemetryAprilTag(telemetry);
+            if (matchTelemetry.driverStationUpdateDue(MatchClock.nanoTime())) {
+                SparkFunOTOS.Pose2D pose2D = robot.getPose();
+                // Send telemetry message to signify robot context;
+                matchTelemetry.line(stateLine).append(status);
+                matchTelemetry.line(delayedStartLine).append(getDelayedStart()).append("milliseconds");
+                appendPosition(matchTelemetry.line(positionLine), pose2D);
+                robot.getDriveTrain().appendStatus(matchTelemetry.line(driveLine));
+                robot.getArm().appendStatus(matchTelemetry.line(armLine));
+                robot.getIntake().appendStatus(matchTelemetry.line(intakeLine));
+                if (robot.getVisionPortal() != null) {
+                    robot.getVisionPortal().appendStatus(matchTelemetry.line(cameraLine));
+                }
+                matchTelemetry.addLine(telemetry, stateLine);
+                matchTelemetry.addLine(telemetry, delayedStartLine);
+                matchTelemetry.addLine(telemetry, positionLine);
+                matchTelemetry.addLine(telemetry, driveLine);
+                matchTelemetry.addLine(telemetry, armLine);
+                matchTelemetry.addLine(telemetry, intakeLine);
+                matchTelemetry.addLine(telemetry, cameraLine);
+                if (robot.getVisionPortal() != null) {
+                    robot.getVisionPortal().telemetryAprilTag(telemetry);
+                }
+                telemetry.update();
+            }
 
             updateDashBoard(status);
         }
         else {
             telemetry.addData("Context", "Robot not initialized");
+            telemetry.update();
         }
-        telemetry.update();
+    }
+
+    private void appendPosition(StringBuilder builder, SparkFunOTOS.Pose2D pose2D) {
+        MatchLogger.getInstance().poseSample(pose2D.x, pose2D.y, pose2D.h);
+        matchTelemetry.setChannel(xChannel, pose2D.x);
+        matchTelemetry.setChannel(yChannel, pose2D.y);
+        matchTelemetry.setChannel(headingChannel, pose2D.h);
+        MatchTelemetry.append(builder, pose2D.x, 2).append(',');
+        MatchTelemetry.append(builder, pose2D.y, 2).append('@');
+        MatchTelemetry.append(builder, pose2D.h, 2);
+    }
+
+    /**
+     * Change how often the driver station and dashboard are updated
+     * @param driverStationInterval - milli-seconds between driver station updates, 0 for every call
+     * @param dashboardInterval - milli-seconds between dashboard packets, 0 for every call
+     */
+    public void setTelemetryIntervals(long driverStationInterval, long dashboardInterval) {
+        matchTelemetry.setIntervals(driverStationInterval, dashboardInterval);
     }
 
     public void setAlliance(Alliance.Color alliance) {
@@ -141,6 +205,9 @@ public class Match {
     }
 
     public void updateDashBoard(String status) {
+        if (dashboard == null || !matchTelemetry.dashboardUpdateDue(MatchClock.nanoTime())) {
+            return;
+        }
         TelemetryPacket packet = new TelemetryPacket();
         Canvas field = packet.fieldOverlay();
 
@@ -192,14 +259,34 @@ public class Match {
         field.strokeLine(x1, y1, px, py);
         field.strokeLine(x2, y2, px, py);
 
-        packet.put("State", status);
-        packet.put("Delayed Start", getDelayedStart() + "milliseconds");
-        packet.put("Position", robot.getPose());
-        packet.put("Drive", robot.getDriveTrain().getStatus());
-        packet.put("LED", robot.getLEDStatus().toString());
-        packet.put("TrajectoryErr", getTrajectoryError());
-        packet.put("Arm", robot.getArmStatus());
-        packet.put("Vision", robot.getVisionPortal().getStatus());
+        matchTelemetry.line(stateLine).append(status);
+        matchTelemetry.line(delayedStartLine).append(getDelayedStart()).append("milliseconds");
+        appendPosition(matchTelemetry.line(positionLine), pose2d);
+        robot.getDriveTrain().appendStatus(matchTelemetry.line(driveLine));
+        matchTelemetry.line(ledLine).append(robot.getLEDStatus());
+        matchTelemetry.line(trajectoryErrorLine).append(getTrajectoryError());
+        robot.getArm().appendStatus(matchTelemetry.line(armLine));
+        if (robot.getVisionPortal() != null) {
+            robot.getVisionPortal().appendStatus(matchTelemetry.line(cameraLine));
+        }
+        robot.appendOperationLatencies(matchTelemetry.line(operationsLine));
+        robot.getControlLoop().appendStatus(matchTelemetry.line(controlLoopLine));
+        robot.getDriveTrain().getTrajectoryService().appendStatus(matchTelemetry.line(trajectoriesLine));
+        matchTelemetry.setChannel(controlLoopChannel, robot.getControlLoop().getLastCycleMillis());
+
+        matchTelemetry.putLine(packet, stateLine);
+        matchTelemetry.putLine(packet, delayedStartLine);
+        matchTelemetry.putLine(packet, positionLine);
+        matchTelemetry.putLine(packet, driveLine);
+        matchTelemetry.putLine(packet, ledLine);
+        matchTelemetry.putLine(packet, trajectoryErrorLine);
+        matchTelemetry.putLine(packet, armLine);
+        matchTelemetry.putLine(packet, cameraLine);
+        matchTelemetry.putLine(packet, operationsLine);
+        matchTelemetry.putLine(packet, controlLoopLine);
+        matchTelemetry.putLine(packet, trajectoriesLine);
+        matchTelemetry.putChannels(packet);
+        LoopTimers.getInstance().putStatus(packet);
 
         dashboard.sendTelemetryPacket(packet);
     }
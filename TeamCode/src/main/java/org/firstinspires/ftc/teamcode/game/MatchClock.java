@@ -0,0 +1,108 @@
+package org.firstinspires.ftc.teamcode.game;
+
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import java.util.Date;
+
+/**
+ * Where our code gets the time from.
+ *
+ * On the robot this is the system clock. The simulator replaces the source with one that can run
+ * faster than real time, so everything that measures time, like operations that run for a while
+ * or the trajectory follower, has to ask this class rather than System or Date.
+ */
+public class MatchClock {
+    /**
+     * A source of time
+     */
+    public interface Source {
+        /**
+         * @return nano-seconds from an arbitrary origin, like System.nanoTime()
+         */
+        long nanoTime();
+
+        /**
+         * @return milli-seconds since the epoch, like System.currentTimeMillis()
+         */
+        long currentTimeMillis();
+
+        /**
+         * @return how many seconds of match time pass in a second of real time
+         */
+        double getRate();
+    }
+
+    public static final Source SYSTEM = new Source() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public double getRate() {
+            return 1;
+        }
+    };
+
+    private static volatile Source source = SYSTEM;
+
+    private static final NanoClock NANO_CLOCK = new NanoClock() {
+        @Override
+        public double seconds() {
+            return source.nanoTime() / 1e9;
+        }
+    };
+
+    public static void setSource(Source source) {
+        MatchClock.source = source;
+    }
+
+    public static Source getSource() {
+        return source;
+    }
+
+    public static long nanoTime() {
+        return source.nanoTime();
+    }
+
+    public static long currentTimeMillis() {
+        return source.currentTimeMillis();
+    }
+
+    public static Date now() {
+        return new Date(source.currentTimeMillis());
+    }
+
+    /**
+     * Returns how long to wait in real time for the specified amount of match time to pass
+     * @param nanos - nano-seconds of match time
+     * @return nano-seconds of real time
+     */
+    public static long toRealNanos(long nanos) {
+        return (long) (nanos / source.getRate());
+    }
+
+    /**
+     * Returns the match time at which something stamped with System.nanoTime() happened, like the
+     * capture time the vision portal gives a camera frame
+     * @param systemNanos - System.nanoTime() when it happened
+     * @return MatchClock.nanoTime() when it happened
+     */
+    public static long fromSystemNanos(long systemNanos) {
+        Source source = MatchClock.source;
+        return source.nanoTime() - (long) ((System.nanoTime() - systemNanos) * source.getRate());
+    }
+
+    /**
+     * Returns a RoadRunner clock that reads our time
+     * @return the clock
+     */
+    public static NanoClock nanoClock() {
+        return NANO_CLOCK;
+    }
+}
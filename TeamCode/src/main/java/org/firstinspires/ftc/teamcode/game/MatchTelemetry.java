@@ -0,0 +1,185 @@
+package org.firstinspires.ftc.teamcode.game;
+
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+/**
+ * Reusable buffers for our telemetry.
+ *
+ * Text lines are registered once and written into StringBuilders that are cleared and reused on
+ * every update. Numbers are kept in a primitive array against channels that are also registered
+ * once, so that they can be graphed on the dashboard without formatting them into strings.
+ *
+ * Driver station and dashboard updates each have their own interval. Callers ask whether an
+ * update is due before composing anything, so nothing is built in loops where it would be
+ * thrown away.
+ */
+public class MatchTelemetry {
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    private static final int INITIAL_LINE_CAPACITY = 128;
+
+    private final String[] lineCaptions;
+    private final StringBuilder[] lines;
+    private int lineCount;
+
+    private final String[] channelNames;
+    private final double[] channelValues;
+    private int channelCount;
+
+    private long driverStationInterval, dashboardInterval;
+    private long lastDriverStationUpdate, lastDashboardUpdate;
+    private boolean driverStationUpdated, dashboardUpdated;
+
+    /**
+     * Create the telemetry buffers
+     * @param maxLines - the most text lines that will be registered
+     * @param maxChannels - the most numeric channels that will be registered
+     * @param driverStationInterval - milli-seconds between driver station updates
+     * @param dashboardInterval - milli-seconds between dashboard packets
+     */
+    public MatchTelemetry(int maxLines, int maxChannels, long driverStationInterval, long dashboardInterval) {
+        this.lineCaptions = new String[maxLines];
+        this.lines = new StringBuilder[maxLines];
+        this.channelNames = new String[maxChannels];
+        this.channelValues = new double[maxChannels];
+        setIntervals(driverStationInterval, dashboardInterval);
+    }
+
+    /**
+     * Change how often the driver station and dashboard are updated
+     * @param driverStationInterval - milli-seconds between driver station updates, 0 for every loop
+     * @param dashboardInterval - milli-seconds between dashboard packets, 0 for every loop
+     */
+    public void setIntervals(long driverStationInterval, long dashboardInterval) {
+        this.driverStationInterval = driverStationInterval * 1000000L;
+        this.dashboardInterval = dashboardInterval * 1000000L;
+    }
+
+    /**
+     * Register a text line
+     * @param caption - caption to show the line with
+     * @return the line number to use in line()
+     */
+    public int registerLine(String caption) {
+        lineCaptions[lineCount] = caption;
+        lines[lineCount] = new StringBuilder(INITIAL_LINE_CAPACITY);
+        return lineCount++;
+    }
+
+    /**
+     * Register a numeric channel
+     * @param name - name of the channel on the dashboard
+     * @return the channel number to use in setChannel()
+     */
+    public int registerChannel(String name) {
+        channelNames[channelCount] = name;
+        return channelCount++;
+    }
+
+    /**
+     * Returns the builder of a line, emptied so that it can be written afresh
+     * @param line - the line number returned by registerLine()
+     * @return the line's builder
+     */
+    public StringBuilder line(int line) {
+        StringBuilder builder = lines[line];
+        builder.setLength(0);
+        return builder;
+    }
+
+    public void setChannel(int channel, double value) {
+        channelValues[channel] = value;
+    }
+
+    public double getChannel(int channel) {
+        return channelValues[channel];
+    }
+
+    /**
+     * Returns true if it is time to update the driver station, in which case the interval starts again
+     * @param now - MatchClock.nanoTime()
+     * @return true if an update is due
+     */
+    public boolean driverStationUpdateDue(long now) {
+        if (!driverStationUpdated || now - lastDriverStationUpdate >= driverStationInterval) {
+            lastDriverStationUpdate = now;
+            driverStationUpdated = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if it is time to send a dashboard packet, in which case the interval starts again
+     * @param now - MatchClock.nanoTime()
+     * @return true if a packet is due
+     */
+    public boolean dashboardUpdateDue(long now) {
+        if (!dashboardUpdated || now - lastDashboardUpdate >= dashboardInterval) {
+            lastDashboardUpdate = now;
+            dashboardUpdated = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add a line to the driver station telemetry. The builder itself is handed over, it is
+     * composed when telemetry.update() is called, so that must happen before the line is reused.
+     * @param telemetry - driver station telemetry
+     * @param line - the line number
+     */
+    public void addLine(Telemetry telemetry, int line) {
+        telemetry.addData(lineCaptions[line], lines[line]);
+    }
+
+    /**
+     * Put a line in a dashboard packet. Packets are sent from the dashboard's own thread,
+     * so the line is copied.
+     * @param packet - the dashboard packet
+     * @param line - the line number
+     */
+    public void putLine(TelemetryPacket packet, int line) {
+        packet.put(lineCaptions[line], lines[line].toString());
+    }
+
+    /**
+     * Put all numeric channels in a dashboard packet
+     * @param packet - the dashboard packet
+     */
+    public void putChannels(TelemetryPacket packet) {
+        for (int i = 0; i < channelCount; i++) {
+            packet.put(channelNames[i], channelValues[i]);
+        }
+    }
+
+    /**
+     * Append a number with a fixed number of decimals, without going through String.format
+     * @param builder - where to append
+     * @param value - the number
+     * @param decimals - number of digits after the decimal point, up to 6
+     * @return the builder
+     */
+    public static StringBuilder append(StringBuilder builder, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return builder.append(value);
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            builder.append('-');
+        }
+        builder.append(scaled / scale);
+        if (decimals > 0) {
+            builder.append('.');
+            long fraction = scaled % scale;
+            //pad with the zeros that follow the decimal point
+            for (long power = scale / 10; power > fraction && power > 1; power /= 10) {
+                builder.append('0');
+            }
+            builder.append(fraction);
+        }
+        return builder;
+    }
+}
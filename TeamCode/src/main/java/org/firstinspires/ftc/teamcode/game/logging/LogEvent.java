@@ -0,0 +1,49 @@
+package org.firstinspires.ftc.teamcode.game.logging;
+
+/**
+ * The events our match logger can record.
+ *
+ * Each event has a fixed list of fields. The kind of each field decides how it is stored in the
+ * log file:
+ *   's' - id of a string registered with the logger, written as an int
+ *   'i' - int
+ *   'f' - double written as a float
+ *
+ * The names and kinds are written at the start of every log file so the decoder does not need
+ * this class.
+ */
+public enum LogEvent {
+    OperationStarted(new String[] {"thread", "operation"}, "ss"),
+    OperationCompleted(new String[] {"thread", "operation", "queuedMillis", "runMillis"}, "ssff"),
+    OperationAborted(new String[] {"thread", "operation", "runMillis"}, "ssf"),
+    PidTerms(new String[] {"error", "proportional", "integral", "derivative", "result"}, "fffff"),
+    PoseSample(new String[] {"x", "y", "heading"}, "fff"),
+    WheelPowers(new String[] {"leftFront", "rightFront", "leftRear", "rightRear"}, "ffff"),
+    HeadingCorrection(new String[] {"targetDegrees", "currentDegrees", "errorDegrees"}, "fff"),
+    Message(new String[] {"text"}, "s"),
+    StateLaneQueued(new String[] {"state", "lane", "early"}, "ssi"),
+    StateReached(new String[] {"state", "overlapMillis"}, "sf");
+
+    //the most fields an event can have
+    public static final int MAX_FIELDS = 5;
+
+    private final String[] fieldNames;
+    private final String fieldKinds;
+
+    LogEvent(String[] fieldNames, String fieldKinds) {
+        this.fieldNames = fieldNames;
+        this.fieldKinds = fieldKinds;
+    }
+
+    public int getFieldCount() {
+        return fieldNames.length;
+    }
+
+    public String getFieldName(int field) {
+        return fieldNames[field];
+    }
+
+    public char getFieldKind(int field) {
+        return fieldKinds.charAt(field);
+    }
+}
@@ -0,0 +1,24 @@
+package org.firstinspires.ftc.teamcode.game.logging;
+
+/**
+ * Layout of our binary match log files, shared by the logger and the decoder.
+ *
+ * A file starts with MAGIC, VERSION, the wall clock time in milli-seconds and the
+ * System.nanoTime() that event times are measured from. Then come records, each starting
+ * with a tag byte:
+ *   TAG_SCHEMA - event number, event name, field count and the name and kind of each field
+ *   TAG_STRING - string id followed by the string
+ *   TAG_DROPPED - number of events dropped because the buffer was full
+ *   anything else - the event number, followed by nano-seconds since the previous event as a
+ *   variable length number, and the fields of the event
+ */
+public class LogFormat {
+    public static final int MAGIC = 0x53544C47;
+    public static final int VERSION = 1;
+
+    public static final int TAG_SCHEMA = 0xFF;
+    public static final int TAG_STRING = 0xFE;
+    public static final int TAG_DROPPED = 0xFD;
+
+    public static final String EXTENSION = ".stlog";
+}
@@ -0,0 +1,192 @@
+package org.firstinspires.ftc.teamcode.game.logging;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns the binary files written by MatchLogger back into CSV. Runs on a laptop, only needs
+ * the JDK:
+ *
+ *   java org.firstinspires.ftc.teamcode.game.logging.MatchLogDecoder match.stlog [outputFolder]
+ *
+ * Writes one CSV file per type of event, named after the log file and the event, with the
+ * milli-seconds since the log was started in the first column.
+ */
+public class MatchLogDecoder {
+    private static class Schema {
+        String name;
+        String[] fieldNames;
+        char[] fieldKinds;
+        PrintWriter writer;
+    }
+
+    private final File logFile;
+    private final File outputFolder;
+    private final Map<Integer, Schema> schemas = new HashMap<>();
+    private final Map<Integer, String> strings = new HashMap<>();
+    private long eventCount, droppedCount;
+
+    public MatchLogDecoder(File logFile, File outputFolder) {
+        this.logFile = logFile;
+        this.outputFolder = outputFolder;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: MatchLogDecoder <log file> [output folder]");
+            System.exit(1);
+        }
+        File logFile = new File(args[0]);
+        File outputFolder = args.length > 1 ? new File(args[1]) : logFile.getAbsoluteFile().getParentFile();
+        new MatchLogDecoder(logFile, outputFolder).decode();
+    }
+
+    /**
+     * Decode the log file into CSV files
+     * @return the CSV files written
+     * @throws IOException if the log file can't be read or is not a match log
+     */
+    public List<File> decode() throws IOException {
+        List<File> csvFiles = new ArrayList<>();
+        //noinspection ResultOfMethodCallIgnored
+        outputFolder.mkdirs();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            if (in.readInt() != LogFormat.MAGIC) {
+                throw new IOException(logFile + " is not a match log");
+            }
+            int version = in.readInt();
+            if (version != LogFormat.VERSION) {
+                throw new IOException(logFile + " has unsupported version " + version);
+            }
+            long wallClock = in.readLong();
+            long startNanos = in.readLong();
+            long timestamp = startNanos;
+            System.out.println(String.format(Locale.getDefault(), "%s started at %tc", logFile.getName(), wallClock));
+
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                switch (tag) {
+                    case LogFormat.TAG_SCHEMA: {
+                        Schema schema = readSchema(in);
+                        File csvFile = new File(outputFolder, baseName() + "-" + schema.name + ".csv");
+                        schema.writer = new PrintWriter(new FileWriter(csvFile));
+                        schema.writer.print("millis");
+                        for (String fieldName : schema.fieldNames) {
+                            schema.writer.print(',');
+                            schema.writer.print(fieldName);
+                        }
+                        schema.writer.println();
+                        csvFiles.add(csvFile);
+                        break;
+                    }
+                    case LogFormat.TAG_STRING: {
+                        int id = in.readInt();
+                        strings.put(id, in.readUTF());
+                        break;
+                    }
+                    case LogFormat.TAG_DROPPED: {
+                        droppedCount += in.readInt();
+                        break;
+                    }
+                    default: {
+                        Schema schema = schemas.get(tag);
+                        if (schema == null) {
+                            throw new IOException("Unknown event " + tag + " after " + eventCount + " events");
+                        }
+                        timestamp += readVariableLength(in);
+                        writeEvent(in, schema, (timestamp - startNanos) / 1e6);
+                        eventCount++;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            for (Schema schema : schemas.values()) {
+                if (schema.writer != null) {
+                    schema.writer.close();
+                }
+            }
+        }
+        System.out.println(String.format(Locale.getDefault(), "Decoded %d events, %d were dropped when logging",
+                eventCount, droppedCount));
+        return csvFiles;
+    }
+
+    private Schema readSchema(DataInputStream in) throws IOException {
+        Schema schema = new Schema();
+        int event = in.readUnsignedByte();
+        schema.name = in.readUTF();
+        int fieldCount = in.readUnsignedByte();
+        schema.fieldNames = new String[fieldCount];
+        schema.fieldKinds = new char[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            schema.fieldNames[i] = in.readUTF();
+            schema.fieldKinds[i] = (char) in.readUnsignedByte();
+        }
+        schemas.put(event, schema);
+        return schema;
+    }
+
+    private void writeEvent(DataInputStream in, Schema schema, double millis) throws IOException {
+        PrintWriter writer = schema.writer;
+        writer.print(String.format(Locale.US, "%.3f", millis));
+        for (char kind : schema.fieldKinds) {
+            writer.print(',');
+            switch (kind) {
+                case 'f':
+                    writer.print(in.readFloat());
+                    break;
+                case 's':
+                    writer.print(quote(strings.get(in.readInt())));
+                    break;
+                default:
+                    writer.print(in.readInt());
+                    break;
+            }
+        }
+        writer.println();
+    }
+
+    private static long readVariableLength(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private String baseName() {
+        String name = logFile.getName();
+        if (name.endsWith(LogFormat.EXTENSION)) {
+            name = name.substring(0, name.length() - LogFormat.EXTENSION.length());
+        }
+        return name;
+    }
+}
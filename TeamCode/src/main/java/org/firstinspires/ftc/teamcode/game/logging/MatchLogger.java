@@ -0,0 +1,318 @@
+package org.firstinspires.ftc.teamcode.game.logging;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.roadrunner.util.LoggingUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records typed events from any thread into a preallocated ring buffer, from where a background
+ * writer drains them into a binary file under LoggingUtil.ROAD_RUNNER_FOLDER.
+ *
+ * Logging an event claims a slot with a compare-and-set, stores the event's fields as longs and
+ * publishes the slot. Nothing is allocated and no locks are taken, so it is safe to log from the
+ * control loop every cycle. If the writer falls behind and the buffer fills up, events are
+ * dropped and the number dropped is recorded in the file.
+ *
+ * Strings, like operation titles, are registered once with stringId() and logged by their id.
+ *
+ * Use MatchLogDecoder to turn the files into CSV.
+ */
+public class MatchLogger {
+    //number of events the buffer can hold, must be a power of two
+    public static final int CAPACITY = 8192;
+    //milli-seconds between drains of the buffer
+    public static final long WRITE_INTERVAL = 100;
+
+    private static final int SLOT_WIDTH = 8;
+    private static final int EVENT = 0, TIMESTAMP = 1, FIELDS = 2;
+
+    private static MatchLogger instance;
+
+    private final long[] slots = new long[CAPACITY * SLOT_WIDTH];
+    //holds sequence + 1 of the event in each slot once the event has been published
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private final AtomicLong nextSequence = new AtomicLong();
+    private volatile long consumedSequence;
+    private final AtomicInteger dropped = new AtomicInteger();
+    private volatile long totalDropped;
+
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private String[] strings = new String[64];
+    private volatile int stringCount;
+
+    private volatile String pendingFileName;
+    private final Writer writer = new Writer();
+
+    synchronized public static MatchLogger getInstance() {
+        if (instance == null) {
+            instance = new MatchLogger();
+            instance.writer.start();
+        }
+        return instance;
+    }
+
+    private MatchLogger() {
+    }
+
+    /**
+     * Start writing to a new file. Events logged before the writer gets to the new file go to
+     * the previous one.
+     * @param name - name of the file, without extension
+     */
+    public void startFile(String name) {
+        this.pendingFileName = name + LogFormat.EXTENSION;
+    }
+
+    /**
+     * Returns the id to log a string with, registering it if this is the first time we see it.
+     * Callers should hold on to the id rather than call this on every event.
+     * @param string - the string
+     * @return the id of the string
+     */
+    synchronized public int stringId(String string) {
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = stringCount;
+            if (id == strings.length) {
+                String[] grown = new String[strings.length * 2];
+                System.arraycopy(strings, 0, grown, 0, strings.length);
+                strings = grown;
+            }
+            strings[id] = string;
+            stringIds.put(string, id);
+            stringCount = id + 1;
+        }
+        return id;
+    }
+
+    synchronized private String getString(int id) {
+        return strings[id];
+    }
+
+    public void operationStarted(int threadId, int operationId) {
+        record(LogEvent.OperationStarted, threadId, operationId, 0, 0, 0);
+    }
+
+    public void operationCompleted(int threadId, int operationId, double queuedMillis, double runMillis) {
+        record(LogEvent.OperationCompleted, threadId, operationId,
+                Double.doubleToRawLongBits(queuedMillis), Double.doubleToRawLongBits(runMillis), 0);
+    }
+
+    public void operationAborted(int threadId, int operationId, double runMillis) {
+        record(LogEvent.OperationAborted, threadId, operationId, Double.doubleToRawLongBits(runMillis), 0, 0);
+    }
+
+    public void pidTerms(double error, double proportional, double integral, double derivative, double result) {
+        record(LogEvent.PidTerms, Double.doubleToRawLongBits(error), Double.doubleToRawLongBits(proportional),
+                Double.doubleToRawLongBits(integral), Double.doubleToRawLongBits(derivative),
+                Double.doubleToRawLongBits(result));
+    }
+
+    public void poseSample(double x, double y, double heading) {
+        record(LogEvent.PoseSample, Double.doubleToRawLongBits(x), Double.doubleToRawLongBits(y),
+                Double.doubleToRawLongBits(heading), 0, 0);
+    }
+
+    public void wheelPowers(double leftFront, double rightFront, double leftRear, double rightRear) {
+        record(LogEvent.WheelPowers, Double.doubleToRawLongBits(leftFront), Double.doubleToRawLongBits(rightFront),
+                Double.doubleToRawLongBits(leftRear), Double.doubleToRawLongBits(rightRear), 0);
+    }
+
+    public void headingCorrection(double targetDegrees, double currentDegrees, double errorDegrees) {
+        record(LogEvent.HeadingCorrection, Double.doubleToRawLongBits(targetDegrees),
+                Double.doubleToRawLongBits(currentDegrees), Double.doubleToRawLongBits(errorDegrees), 0, 0);
+    }
+
+    public void message(int textId) {
+        record(LogEvent.Message, textId, 0, 0, 0, 0);
+    }
+
+    public void stateLaneQueued(int stateId, int laneId, boolean early) {
+        record(LogEvent.StateLaneQueued, stateId, laneId, early ? 1 : 0, 0, 0);
+    }
+
+    public void stateReached(int stateId, double overlapMillis) {
+        record(LogEvent.StateReached, stateId, Double.doubleToRawLongBits(overlapMillis), 0, 0, 0);
+    }
+
+    private void record(LogEvent event, long field0, long field1, long field2, long field3, long field4) {
+        long sequence;
+        do {
+            sequence = nextSequence.get();
+            if (sequence - consumedSequence >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!nextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & (CAPACITY - 1));
+        int base = slot * SLOT_WIDTH;
+        slots[base + EVENT] = event.ordinal();
+        slots[base + TIMESTAMP] = MatchClock.nanoTime();
+        slots[base + FIELDS] = field0;
+        slots[base + FIELDS + 1] = field1;
+        slots[base + FIELDS + 2] = field2;
+        slots[base + FIELDS + 3] = field3;
+        slots[base + FIELDS + 4] = field4;
+        //release the slot to the writer
+        published.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Returns the number of events dropped so far because the buffer was full
+     * @return number of events dropped
+     */
+    public long getDropped() {
+        return totalDropped + dropped.get();
+    }
+
+    /**
+     * The thread that drains the buffer into our file
+     */
+    private class Writer extends Thread {
+        private final LogEvent[] events = LogEvent.values();
+        private DataOutputStream out;
+        private int stringsWritten;
+        private long lastTimestamp;
+
+        Writer() {
+            super("Match Logger");
+            setDaemon(true);
+        }
+
+        public void run() {
+            while (!isInterrupted()) {
+                try {
+                    drain();
+                    Thread.sleep(WRITE_INTERVAL);
+                } catch (InterruptedException e) {
+                    break;
+                } catch (IOException e) {
+                    RobotLog.logStackTrace(e);
+                    close();
+                }
+            }
+            try {
+                drain();
+            } catch (IOException e) {
+                RobotLog.logStackTrace(e);
+            }
+            close();
+        }
+
+        private void drain() throws IOException {
+            String fileName = pendingFileName;
+            if (fileName != null) {
+                pendingFileName = null;
+                open(LoggingUtil.getLogFile(fileName));
+            }
+            long cursor = consumedSequence;
+            while (true) {
+                int slot = (int) (cursor & (CAPACITY - 1));
+                if (published.get(slot) != cursor + 1) {
+                    break;
+                }
+                if (out != null) {
+                    write(slot * SLOT_WIDTH);
+                }
+                cursor++;
+                //the slot can now be reused
+                consumedSequence = cursor;
+            }
+            int droppedNow = dropped.getAndSet(0);
+            if (droppedNow > 0) {
+                totalDropped += droppedNow;
+                if (out != null) {
+                    out.writeByte(LogFormat.TAG_DROPPED);
+                    out.writeInt(droppedNow);
+                }
+            }
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        private void open(File file) throws IOException {
+            close();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+            lastTimestamp = MatchClock.nanoTime();
+            out.writeInt(LogFormat.MAGIC);
+            out.writeInt(LogFormat.VERSION);
+            out.writeLong(MatchClock.currentTimeMillis());
+            out.writeLong(lastTimestamp);
+            for (LogEvent event : events) {
+                out.writeByte(LogFormat.TAG_SCHEMA);
+                out.writeByte(event.ordinal());
+                out.writeUTF(event.name());
+                out.writeByte(event.getFieldCount());
+                for (int i = 0; i < event.getFieldCount(); i++) {
+                    out.writeUTF(event.getFieldName(i));
+                    out.writeByte(event.getFieldKind(i));
+                }
+            }
+            //every file carries all the strings registered so far
+            stringsWritten = 0;
+            RobotLog.a("Match logger writing to " + file.getAbsolutePath());
+        }
+
+        private void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    RobotLog.logStackTrace(e);
+                }
+                out = null;
+            }
+        }
+
+        private void write(int base) throws IOException {
+            //write any strings registered since we last looked, they may be used by this event
+            while (stringsWritten < stringCount) {
+                out.writeByte(LogFormat.TAG_STRING);
+                out.writeInt(stringsWritten);
+                out.writeUTF(getString(stringsWritten));
+                stringsWritten++;
+            }
+            LogEvent event = events[(int) slots[base + EVENT]];
+            long timestamp = slots[base + TIMESTAMP];
+            out.writeByte(event.ordinal());
+            writeVariableLength(Math.max(0, timestamp - lastTimestamp));
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            for (int i = 0; i < event.getFieldCount(); i++) {
+                long value = slots[base + FIELDS + i];
+                switch (event.getFieldKind(i)) {
+                    case 'f':
+                        out.writeFloat((float) Double.longBitsToDouble(value));
+                        break;
+                    default:
+                        out.writeInt((int) value);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Write a non-negative number seven bits at a time, lowest first, with the high bit set
+         * on all but the last byte
+         */
+        private void writeVariableLength(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.firstinspires.ftc.teamcode.game.timing;
+
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+
+/**
+ * Counts latencies in a fixed set of buckets, so that percentiles can be had without keeping the
+ * samples.
+ * <p>
+ * Latencies are kept in micro-seconds. Below 8 micro-seconds each has its own bucket, above that
+ * every doubling is split into 8 buckets, so a bucket is never more than an eighth wider than
+ * where it starts. Buckets go up to about 18 minutes, anything longer is counted in the last one.
+ * <p>
+ * Recording a latency is a few shifts and an increment and allocates nothing. Only one thread
+ * should record into a histogram, others reading it may see it a sample behind.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int BUCKETS = 232;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Count a latency
+     * @param nanos - the latency in nano-seconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        counts[bucketOf(nanos / 1000)]++;
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    /**
+     * Returns the bucket a latency falls in
+     * @param micros - the latency in micro-seconds
+     * @return the bucket
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int bucket = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+                + (int) ((micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Returns the smallest latency that falls in a bucket
+     * @param bucket - the bucket
+     * @return micro-seconds
+     */
+    static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Returns how wide a bucket is
+     * @param bucket - the bucket
+     * @return micro-seconds
+     */
+    static long widthOf(int bucket) {
+        return bucket < SUB_BUCKETS ? 1 : 1L << (bucket / SUB_BUCKETS - 1);
+    }
+
+    /**
+     * Returns the latency that the specified fraction of latencies are at or below, to within
+     * the width of its bucket
+     * @param fraction - 0.5 for the median, 0.99 for the 99th percentile and so on
+     * @return milli-seconds, 0 if nothing has been recorded
+     */
+    public double getPercentileMillis(double fraction) {
+        long total = count;
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= wanted) {
+                //the middle of the bucket, but never more than the longest latency seen
+                double micros = lowerBoundOf(bucket) + widthOf(bucket) / 2.0;
+                return Math.min(micros / 1000, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the average latency
+     * @return milli-seconds, 0 if nothing has been recorded
+     */
+    public double getAverageMillis() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * Returns how many latencies fell in a bucket
+     * @param bucket - the bucket
+     * @return the count
+     */
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * Append the median, 99th percentile and longest latency to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        builder.append("p50:");
+        MatchTelemetry.append(builder, getPercentileMillis(.5), 2).append(" p99:");
+        MatchTelemetry.append(builder, getPercentileMillis(.99), 2).append(" max:");
+        return MatchTelemetry.append(builder, getMaxMillis(), 2);
+    }
+}
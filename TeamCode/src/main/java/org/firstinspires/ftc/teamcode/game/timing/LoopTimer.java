@@ -0,0 +1,155 @@
+package org.firstinspires.ftc.teamcode.game.timing;
+
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+
+/**
+ * Times a section of code that runs over and over, like a loop of an OpMode or a cycle of the
+ * control loop.
+ * <p>
+ * The section calls start() as it begins and end() as it finishes. We keep a histogram of how
+ * long it took and another of the period, the time from one start to the next, along with the
+ * jitter, the average change in the period from one run to the next. Sections that read the
+ * hardware call read() as they finish reading, so we can tell how much of their time went there.
+ * Sections that go idle between runs call pause() so that the idle time isn't counted as a period.
+ * <p>
+ * Only the thread running the section should call these. Others reading the timer may see it a
+ * run behind, and reset() only asks the section to start afresh the next time it starts.
+ */
+public class LoopTimer {
+    private final String name;
+    //keys for the dashboard, made once so that putting them in a packet allocates no strings
+    final String p50Key, p99Key, maxKey, periodKey, jitterKey, readKey;
+
+    private final LatencyHistogram durations = new LatencyHistogram();
+    private final LatencyHistogram periods = new LatencyHistogram();
+    private long startNanos, lastStartNanos, lastPeriodNanos;
+    private long totalNanos, readNanos;
+    private long jitterNanos, jitterCount;
+    private volatile boolean resetRequested;
+
+    LoopTimer(String name) {
+        this.name = name;
+        this.p50Key = name + " p50 mSecs";
+        this.p99Key = name + " p99 mSecs";
+        this.maxKey = name + " max mSecs";
+        this.periodKey = name + " period p99 mSecs";
+        this.jitterKey = name + " jitter mSecs";
+        this.readKey = name + " read %";
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Mark the start of a run of the section
+     */
+    public void start() {
+        if (resetRequested) {
+            resetRequested = false;
+            clear();
+        }
+        long now = System.nanoTime();
+        if (lastStartNanos != 0) {
+            long period = now - lastStartNanos;
+            periods.record(period);
+            if (lastPeriodNanos != 0) {
+                jitterNanos += Math.abs(period - lastPeriodNanos);
+                jitterCount++;
+            }
+            lastPeriodNanos = period;
+        }
+        lastStartNanos = now;
+        startNanos = now;
+    }
+
+    /**
+     * Mark the end of the hardware reads of this run
+     */
+    public void read() {
+        readNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Mark the end of a run of the section
+     */
+    public void end() {
+        long duration = System.nanoTime() - startNanos;
+        durations.record(duration);
+        totalNanos += duration;
+    }
+
+    /**
+     * Don't count the time until the next start as a period, as the section is going idle
+     */
+    public void pause() {
+        lastStartNanos = 0;
+        lastPeriodNanos = 0;
+    }
+
+    /**
+     * Start afresh the next time the section starts
+     */
+    public void reset() {
+        resetRequested = true;
+    }
+
+    private void clear() {
+        durations.reset();
+        periods.reset();
+        lastStartNanos = 0;
+        lastPeriodNanos = 0;
+        totalNanos = 0;
+        readNanos = 0;
+        jitterNanos = 0;
+        jitterCount = 0;
+    }
+
+    /**
+     * Returns how long runs of the section took
+     */
+    public LatencyHistogram getDurations() {
+        return durations;
+    }
+
+    /**
+     * Returns the time from the start of one run to the start of the next
+     */
+    public LatencyHistogram getPeriods() {
+        return periods;
+    }
+
+    /**
+     * Returns the average change in the period from one run to the next
+     * @return milli-seconds
+     */
+    public double getJitterMillis() {
+        return jitterCount == 0 ? 0 : jitterNanos / 1e6 / jitterCount;
+    }
+
+    /**
+     * Returns how much of the time of the section went to reading the hardware
+     * @return percent of the time of all runs
+     */
+    public double getReadPercent() {
+        return totalNanos == 0 ? 0 : readNanos * 100.0 / totalNanos;
+    }
+
+    /**
+     * Append the duration and period percentiles, jitter and hardware read share to the specified
+     * builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        builder.append(durations.getCount()).append(" runs ");
+        durations.appendStatus(builder).append(", period ");
+        periods.appendStatus(builder).append(" jitter:");
+        MatchTelemetry.append(builder, getJitterMillis(), 2).append(" mSecs");
+        if (readNanos > 0) {
+            builder.append(", read ");
+            MatchTelemetry.append(builder, getReadPercent(), 0).append('%');
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,144 @@
+package org.firstinspires.ftc.teamcode.game.timing;
+
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.roadrunner.util.LoggingUtil;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * The loop timers of all the sections we time, so that they can be shown on the dashboard and
+ * written out together when an OpMode stops.
+ * <p>
+ * Sections get their timer once with get() and hold on to it. Timers live as long as the app, so a
+ * section that is created again, like a vision processor when the portal is rebuilt, carries on
+ * with the timer it had.
+ */
+public class LoopTimers {
+    //the most sections we time
+    public static final int CAPACITY = 24;
+
+    private static LoopTimers instance;
+
+    private final LoopTimer[] timers = new LoopTimer[CAPACITY];
+    private volatile int count;
+
+    synchronized public static LoopTimers getInstance() {
+        if (instance == null) {
+            instance = new LoopTimers();
+        }
+        return instance;
+    }
+
+    private LoopTimers() {
+    }
+
+    /**
+     * Returns the timer of a section, creating it if this is the first time we see the section
+     * @param name - name of the section
+     * @return the timer
+     */
+    public synchronized LoopTimer get(String name) {
+        for (int i = 0; i < count; i++) {
+            if (timers[i].getName().equals(name)) {
+                return timers[i];
+            }
+        }
+        LoopTimer timer = new LoopTimer(name);
+        if (count < CAPACITY) {
+            timers[count] = timer;
+            count++;
+        }
+        else {
+            Match.log("Too many loop timers, not reporting " + name);
+        }
+        return timer;
+    }
+
+    /**
+     * Have all timers start afresh, as when an OpMode starts
+     */
+    public void reset() {
+        for (int i = 0; i < count; i++) {
+            timers[i].reset();
+        }
+    }
+
+    /**
+     * Put the percentiles, jitter and hardware read share of every section that has run in a
+     * dashboard packet
+     * @param packet - the dashboard packet
+     */
+    public void putStatus(TelemetryPacket packet) {
+        for (int i = 0; i < count; i++) {
+            LoopTimer timer = timers[i];
+            LatencyHistogram durations = timer.getDurations();
+            if (durations.getCount() == 0) {
+                continue;
+            }
+            packet.put(timer.p50Key, durations.getPercentileMillis(.5));
+            packet.put(timer.p99Key, durations.getPercentileMillis(.99));
+            packet.put(timer.maxKey, durations.getMaxMillis());
+            packet.put(timer.periodKey, timer.getPeriods().getPercentileMillis(.99));
+            packet.put(timer.jitterKey, timer.getJitterMillis());
+            packet.put(timer.readKey, timer.getReadPercent());
+        }
+    }
+
+    /**
+     * Write the status of every section, along with the counts in its histograms, to a timing
+     * file under LoggingUtil.ROAD_RUNNER_FOLDER
+     * @param name - what to start the name of the file with, like the OpMode
+     */
+    public void write(String name) {
+        File file = LoggingUtil.getLogFile(name + "-timing-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".txt");
+        try {
+            write(file);
+            Match.log("Wrote loop timings to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Match.log("Unable to write loop timings: " + e);
+        }
+    }
+
+    /**
+     * Write the status of every section, along with the counts in its histograms, to a file.
+     * Each histogram line has the micro-seconds each bucket starts at and how many fell in it.
+     * @param file - the file to write, replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            for (int i = 0; i < count; i++) {
+                LoopTimer timer = timers[i];
+                writer.println(timer.getName() + ": " + timer.appendStatus(new StringBuilder()));
+                writeHistogram(writer, "  durations", timer.getDurations());
+                writeHistogram(writer, "  periods", timer.getPeriods());
+            }
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            throw new IOException("Unable to write " + file.getAbsolutePath());
+        }
+    }
+
+    private static void writeHistogram(PrintWriter writer, String caption, LatencyHistogram histogram) {
+        StringBuilder line = new StringBuilder(caption).append(':');
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long bucketCount = histogram.getCount(bucket);
+            if (bucketCount > 0) {
+                line.append(' ').append(LatencyHistogram.lowerBoundOf(bucket)).append('=').append(bucketCount);
+            }
+        }
+        writer.println(line);
+    }
+}
@@ -6,15 +6,17 @@ import org.firstinspires.ftc.teamcode.game.Alliance;
 import org.firstinspires.ftc.teamcode.game.Field;
 import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
 import org.firstinspires.ftc.teamcode.robot.operations.ArmOperation;
-import org.firstinspires.ftc.teamcode.robot.operations.BearingOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.DriveForDistanceOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.DriveInDirectionOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.DriveToAprilTag;
 import org.firstinspires.ftc.teamcode.robot.operations.IntakeOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.LedOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.MotionPrimitivesOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.ParallelOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.SequentialOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.State;
-import org.firstinspires.ftc.teamcode.robot.operations.StrafeLeftForDistanceOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.StrafeLeftToAprilTagOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.StrafeRightForDistanceOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.StrafeRightToAprilTagOperation;
@@ -23,15 +25,14 @@ import org.firstinspires.ftc.teamcode.robot.operations.WaitOperation;
 public abstract class Autonomous extends AutonomousHelper {
     double DISTANCE_TO_SUBMERSIBLE = 30.0 * Field.MM_PER_INCH;
     @Override
-    public void start() {
-        super.start();
+    protected void addStates() {
         State state = new State("Deliver Specimen to high chamber");
-        state.addPrimaryOperation(
-                new ArmOperation(ArmOperation.Type.High_Chamber_1, "Raise arm for high chamber"));
-        state.addPrimaryOperation(
-                new ArmOperation(ArmOperation.Type.High_Chamber_2, "Extend arm for high chamber"));
-        state.addPrimaryOperation(
-                new DriveForDistanceOperation(DISTANCE_TO_SUBMERSIBLE, RobotConfig.CAUTIOUS_SPEED, "Reach submersible"));
+        //raise the arm on the way to the submersible rather than before setting off
+        state.addPrimaryOperation(new ParallelOperation("Approach high chamber",
+                new SequentialOperation("Ready arm for high chamber",
+                        new ArmOperation(ArmOperation.Type.High_Chamber_1, "Raise arm for high chamber"),
+                        new ArmOperation(ArmOperation.Type.High_Chamber_2, "Extend arm for high chamber")),
+                new DriveForDistanceOperation(DISTANCE_TO_SUBMERSIBLE, RobotConfig.CAUTIOUS_SPEED, "Reach submersible")));
         state.addPrimaryOperation(
                 new ArmOperation(ArmOperation.Type.High_Chamber_Deposit, "Deposit on high chamber"));
         state.addPrimaryOperation(
@@ -41,14 +42,13 @@ public abstract class Autonomous extends AutonomousHelper {
         states.add(state);
 
         state = new State("Reach ascent zone");
-        state.addPrimaryOperation(
-                new StrafeLeftForDistanceOperation(48*Field.MM_PER_INCH, RobotConfig.CAUTIOUS_SPEED, "Strafe to avoid submersible"));
-        state.addPrimaryOperation(new BearingOperation(Math.toRadians(0), match.getRobot().getDriveTrain(), "Realign after strafing"));
-        state.addPrimaryOperation(
-                new DriveForDistanceOperation(1.25*Field.TILE_WIDTH, RobotConfig.CAUTIOUS_SPEED, "Move toward ascent zone"));
-        state.addPrimaryOperation(new BearingOperation(Math.toRadians(-90), match.getRobot().getDriveTrain(), "Rotate to ascent zone"));
-        state.addPrimaryOperation(
-                new DriveForDistanceOperation(2*Field.TILE_WIDTH, RobotConfig.CAUTIOUS_SPEED, "Move toward ascent zone"));
+        //strafe round the submersible and turn toward the ascent zone without stopping along the way
+        state.addPrimaryOperation(new MotionPrimitivesOperation("Move toward ascent zone",
+                MotionPrimitive.strafe(48, RobotConfig.CAUTIOUS_SPEED),
+                MotionPrimitive.turnTo(Math.toRadians(0), RobotConfig.CAUTIOUS_SPEED),
+                MotionPrimitive.straight(1.25*Field.TILE_WIDTH/Field.MM_PER_INCH, RobotConfig.CAUTIOUS_SPEED),
+                MotionPrimitive.turnTo(Math.toRadians(-90), RobotConfig.CAUTIOUS_SPEED),
+                MotionPrimitive.straight(2*Field.TILE_WIDTH/Field.MM_PER_INCH, RobotConfig.CAUTIOUS_SPEED)));
 
         state.addSecondaryOperation(
                 new ArmOperation(ArmOperation.Type.High_Chamber_1, "Raise arm for high chamber"));
@@ -59,6 +59,8 @@ public abstract class Autonomous extends AutonomousHelper {
         states.add(state);
 
         state = new State("Touch ascent rung");
+        //only lower the arm once we have driven up to the rung
+        state.setMayStartEarly(false);
         state.addSecondaryOperation(
                 new ArmOperation(ArmOperation.Type.High_Chamber_Release, "Lower arm"));
         states.add(state);
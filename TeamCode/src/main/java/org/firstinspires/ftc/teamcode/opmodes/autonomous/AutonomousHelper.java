@@ -7,9 +7,15 @@ import org.firstinspires.ftc.robotcore.external.Telemetry;
 import org.firstinspires.ftc.teamcode.game.Alliance;
 import org.firstinspires.ftc.teamcode.game.Field;
 import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimer;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimers;
 import org.firstinspires.ftc.teamcode.robot.Robot;
 import org.firstinspires.ftc.teamcode.robot.components.vision.detector.ObjectDetector;
+import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
+import org.firstinspires.ftc.teamcode.robot.controls.GamepadEvents;
+import org.firstinspires.ftc.teamcode.robot.operations.Operation;
 import org.firstinspires.ftc.teamcode.robot.operations.State;
+import org.firstinspires.ftc.teamcode.robot.operations.StateEngine;
 import org.firstinspires.ftc.teamcode.robot.operations.WaitOperation;
 
 import java.util.ArrayList;
@@ -25,11 +31,14 @@ public abstract class AutonomousHelper extends OpMode {
 
     protected WaitOperation delayedStart = null;
     ArrayList<State> states = new ArrayList<>();
+    StateEngine stateEngine;
 
     Date initStartTime;
     //start with assuming that there might be an error when initializing the robot
     boolean initErrorHappened = true;
     String initError = "";
+    boolean trajectoriesPrecompiled;
+    private final LoopTimer loopTimer = LoopTimers.getInstance().get("Autonomous loop");
 
     /*
      * Code to run ONCE when the driver hits INIT
@@ -51,12 +60,16 @@ public abstract class AutonomousHelper extends OpMode {
             this.robot = match.getRobot();
             Match.log("Initializing robot");
             this.robot.init(hardwareMap, telemetry, match);
+            //in autonomous we only look for april tags to keep our localizer honest
+            this.robot.setVisionPhase(SilverTitansVisionPortal.APRIL_TAGS);
 
             //set the starting delay to be 0 milliseconds and add this operation in the first state
             this.delayedStart = new WaitOperation(0, "Delay start");
             State state = new State("Initial wait");
             state.addPrimaryOperation(this.delayedStart);
             states.add(state);
+            addStates();
+            stateEngine = new StateEngine(states);
 
             telemetry.update();
             initErrorHappened = false;
@@ -66,6 +79,26 @@ public abstract class AutonomousHelper extends OpMode {
             initError = e.toString();
         }
     }
+
+    /**
+     * Add the states to go through after the initial wait. Called at the end of init so that
+     * trajectories can be built while we wait for the match to start.
+     */
+    protected void addStates() {
+    }
+
+    /**
+     * Queue the trajectories of the drive operations in our states to be built in the background
+     */
+    private void precompileTrajectories() {
+        ArrayList<Operation> operations = new ArrayList<>();
+        for (State state : states) {
+            operations.addAll(state.getPrimaryOperations());
+        }
+        robot.getDriveTrain().getTrajectoryService().precompile(operations, robot.getDriveTrain().getPoseEstimate());
+        trajectoriesPrecompiled = true;
+    }
+
     /*
      * Code to run repeatedly after the driver hits INIT, but before they hit PLAY
      */
@@ -77,16 +110,20 @@ public abstract class AutonomousHelper extends OpMode {
                         (30 - (int) (new Date().getTime() - initStartTime.getTime()) / 1000));
             }
             else {
-                //increase or decrease delay in starting operations
-                if (gamepad1.dpad_up) {
+                if (!trajectoriesPrecompiled) {
+                    precompileTrajectories();
+                }
+                robot.handleGameControllers(gamepad1, gamepad2);
+                //increase or decrease delay in starting operations, a second per press
+                GamepadEvents events = robot.getGamepad1Events();
+                if (events.pressed(GamepadEvents.Button.DpadUp)) {
                     //add one second to the delay in starting operations
                     this.delayedStart.setTime(this.delayedStart.getTime() + 1000);
                 }
-                else if (gamepad1.dpad_down) {
+                else if (events.pressed(GamepadEvents.Button.DpadDown)) {
                     //subtract one second down to a minimum of 0
                     this.delayedStart.setTime(Math.max(this.delayedStart.getTime() - 1000, 0));
                 }
-                robot.handleGameControllers(gamepad1, gamepad2);
             }
             match.updateTelemetry(telemetry, "Ready");
         }
@@ -97,38 +134,45 @@ public abstract class AutonomousHelper extends OpMode {
     @Override
     public void start() {
         match.setStart();
+        LoopTimers.getInstance().reset();
     }
 
     /**
      * We go through our specified desired states in this method.
-     * Loop through the states, checking if a state is reached, if it is not reached, queue
-     *         it if not already queued
+     * The state engine queues the first state that has not been reached, and starts the
+     *         operations of the one after it that don't need what is still running
      */
     @Override
     public void loop() {
-        /*
-        Check states sequentially. Skip over reached states and queue those that have not
-        been reached and not yet queued
-         */
-        for (State state : states) {
-            if (!state.isReached(robot)) {
-                if (state.isQueued()) {
-                    match.updateTelemetry(telemetry,"Attempting " + state.getTitle());
-                } else {
-                    //queue state if it has not been queued
-                    match.updateTelemetry(telemetry,"Queueing " + state.getTitle());
-                    Match.log("Queueing state: " + state.getTitle());
-                    state.queue(robot);
-                }
-                break;
-            }
+        loopTimer.start();
+        State state = stateEngine.update(robot);
+        if (state != null) {
+            match.updateTelemetry(telemetry, "Attempting " + state.getTitle());
         }
+        robot.readGamepads(gamepad1, gamepad2);
         robot.handleArm(gamepad1, gamepad2);
         robot.handleDriveTrain(gamepad1);
+        loopTimer.end();
+    }
+
+    /**
+     * Returns true once every one of our states has been reached
+     * @return true if autonomous is done
+     */
+    public boolean isFinished() {
+        return stateEngine.isFinished();
+    }
+
+    public StateEngine getStateEngine() {
+        return stateEngine;
     }
 
     @Override
     public void stop() {
+        if (stateEngine != null) {
+            Match.log("States: " + stateEngine.appendStatus(new StringBuilder()));
+        }
         this.robot.stop();
+        LoopTimers.getInstance().write("autonomous");
     }
 }
\ No newline at end of file
@@ -0,0 +1,278 @@
+package org.firstinspires.ftc.teamcode.opmodes.benchmark;
+
+import android.os.Debug;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small harness for timing code that runs every loop on the robot, modeled on JMH's average
+ * time mode. JMH needs a HotSpot JVM to fork and can't run on the robot's Android runtime, so on a
+ * laptop benchmarks are written for JMH in the TeamCode tests instead and run with
+ * gradlew :TeamCode:jmh. This is for the numbers that only the robot can give us.
+ *
+ * Each benchmark is run for a number of warm up iterations, which are thrown away, and then for
+ * a number of measurement iterations. An iteration calls the benchmark over and over until the
+ * iteration time is up. For each benchmark we report the average nano-seconds per call, with a
+ * 99.9% confidence interval across iterations, and the bytes allocated per call.
+ *
+ * Allocations are counted with the Android allocation counters, which only see allocations made
+ * on the calling thread and are stopped again once each benchmark has been measured.
+ *
+ * Results can be written as JSON in the same layout JMH uses, so the same tools can compare them.
+ */
+public class MicroBenchmark {
+    public static final int WARMUP_ITERATIONS = 3;
+    public static final int MEASUREMENT_ITERATIONS = 5;
+    public static final long ITERATION_MILLIS = 500;
+    //z for a two sided 99.9% interval, JMH uses Student's t which is close for our iteration counts
+    private static final double Z_999 = 3.291;
+
+    /**
+     * The code to benchmark. Return a number taken from what was computed so that it can't be
+     * optimized away. A number rather than an object, so that boxing is not counted against it.
+     */
+    public interface Body {
+        double run();
+    }
+
+    public static class Result {
+        private final String name;
+        private final double nanosPerOp, nanosPerOpError, bytesPerOp;
+        private final long operations;
+
+        Result(String name, double nanosPerOp, double nanosPerOpError, double bytesPerOp, long operations) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.nanosPerOpError = nanosPerOpError;
+            this.bytesPerOp = bytesPerOp;
+            this.operations = operations;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getNanosPerOp() {
+            return nanosPerOp;
+        }
+
+        public double getNanosPerOpError() {
+            return nanosPerOpError;
+        }
+
+        /**
+         * @return bytes allocated per call, NaN if allocations can't be counted here
+         */
+        public double getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public String toString() {
+            return String.format(Locale.getDefault(), "%-40s %12.1f ± %8.1f ns/op %10.1f B/op",
+                    name, nanosPerOp, nanosPerOpError, bytesPerOp);
+        }
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final AllocationCounter allocationCounter = AllocationCounter.create();
+    //where benchmark results go so they are not optimized away
+    private volatile double sink;
+
+    /**
+     * Create the harness
+     * @param warmupIterations - iterations to run before measuring
+     * @param measurementIterations - iterations to measure
+     * @param iterationMillis - milli-seconds in each iteration
+     */
+    public MicroBenchmark(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    /**
+     * Benchmark some code
+     * @param name - name to report the results under
+     * @param body - the code
+     * @return the results
+     */
+    public Result measure(String name, Body body) {
+        double[] nanosPerOp = new double[measurementIterations];
+        long operations = 0;
+        long bytes = 0;
+        long[] iteration = new long[3];
+        allocationCounter.start();
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iterate(body, null);
+            }
+            for (int i = 0; i < measurementIterations; i++) {
+                iterate(body, iteration);
+                nanosPerOp[i] = (double) iteration[0] / iteration[1];
+                operations += iteration[1];
+                bytes += iteration[2];
+            }
+        } finally {
+            allocationCounter.stop();
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value;
+        }
+        mean /= measurementIterations;
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = measurementIterations > 1
+                ? Z_999 * Math.sqrt(variance / (measurementIterations - 1) / measurementIterations)
+                : Double.NaN;
+        double bytesPerOp = allocationCounter.isSupported() ? (double) bytes / operations : Double.NaN;
+        return new Result(name, mean, error, bytesPerOp, operations);
+    }
+
+    /**
+     * Run one iteration
+     * @param body - the code
+     * @param result - where to put nano-seconds taken, operations and bytes allocated, null to discard
+     */
+    private void iterate(Body body, long[] result) {
+        double sum = 0;
+        long operations = 0;
+        //calls between looks at the clock, grows until a batch takes about a milli-second
+        int batch = 1;
+        long bytesBefore = allocationCounter.getAllocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            long batchStart = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                sum += body.run();
+            }
+            operations += batch;
+            long now = System.nanoTime();
+            if (now - batchStart < 1000000L && batch < (1 << 20)) {
+                batch <<= 1;
+            }
+            elapsed = now - start;
+        } while (elapsed < iterationNanos);
+        long bytes = allocationCounter.getAllocatedBytes() - bytesBefore;
+        sink += sum;
+        if (result != null) {
+            result[0] = elapsed;
+            result[1] = operations;
+            result[2] = bytes;
+        }
+    }
+
+    /**
+     * Write results as JSON in the layout of JMH's JSON output
+     * @param results - the results
+     * @param file - where to write them
+     * @throws IOException if the file can't be written
+     */
+    public void writeJson(List<Result> results, File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                writer.println("    {");
+                writer.println("        \"benchmark\" : \"" + result.getName() + "\",");
+                writer.println("        \"mode\" : \"avgt\",");
+                writer.println("        \"warmupIterations\" : " + warmupIterations + ",");
+                writer.println("        \"measurementIterations\" : " + measurementIterations + ",");
+                writer.println("        \"measurementTime\" : \"" + iterationNanos / 1000000L + " ms\",");
+                writer.println("        \"vmName\" : \"" + System.getProperty("java.vm.name") + "\",");
+                writer.println("        \"primaryMetric\" : {");
+                writer.println("            \"score\" : " + number(result.getNanosPerOp()) + ",");
+                writer.println("            \"scoreError\" : " + number(result.getNanosPerOpError()) + ",");
+                writer.println("            \"scoreUnit\" : \"ns/op\"");
+                writer.println("        },");
+                writer.println("        \"secondaryMetrics\" : {");
+                writer.println("            \"gc.alloc.rate.norm\" : {");
+                writer.println("                \"score\" : " + number(result.getBytesPerOp()) + ",");
+                writer.println("                \"scoreUnit\" : \"B/op\"");
+                writer.println("            }");
+                writer.println("        }");
+                writer.println(i < results.size() - 1 ? "    }," : "    }");
+            }
+            writer.println("]");
+        }
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value)
+                ? "\"NaN\""
+                : String.format(Locale.US, "%.3f", value);
+    }
+
+    /**
+     * Counts bytes allocated by the current thread between start and stop
+     */
+    private static abstract class AllocationCounter {
+        abstract long getAllocatedBytes();
+
+        void start() {
+        }
+
+        void stop() {
+        }
+
+        boolean isSupported() {
+            return true;
+        }
+
+        static AllocationCounter create() {
+            String vmName = System.getProperty("java.vm.name", "");
+            if (vmName.contains("Dalvik") || vmName.contains("ART")) {
+                return new AndroidAllocationCounter();
+            }
+            return new AllocationCounter() {
+                @Override
+                long getAllocatedBytes() {
+                    return 0;
+                }
+
+                @Override
+                boolean isSupported() {
+                    return false;
+                }
+            };
+        }
+    }
+
+    private static class AndroidAllocationCounter extends AllocationCounter {
+        private long total;
+
+        @Override
+        void start() {
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+        }
+
+        @Override
+        void stop() {
+            Debug.stopAllocCounting();
+        }
+
+        @Override
+        long getAllocatedBytes() {
+            //the counter is an int, so keep our own total and start it over each time
+            total += Debug.getThreadAllocSize();
+            Debug.resetThreadAllocSize();
+            return total;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.firstinspires.ftc.teamcode.opmodes.benchmark;
+
+import android.os.Debug;
+
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.roadrunner.util.LoggingUtil;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs ObjectDetectorBenchmarks on the robot, on the frames saved in the images folder under the
+ * FIRST folder.
+ *
+ * The benchmarks run on their own thread once started. Besides the frame time, we report how much
+ * the native heap grew while they ran, which should be next to nothing now that the detector
+ * reuses its buffers. Results are shown on the driver station, written to the robot log and saved
+ * as JSON under LoggingUtil.ROAD_RUNNER_FOLDER.
+ */
+@TeleOp(name = "Benchmark: Object detector", group = "Benchmark")
+public class ObjectDetectorBenchmark extends OpMode {
+    private volatile String status = "Press start to run";
+    private volatile String nativeHeapGrowth = "";
+    private volatile List<MicroBenchmark.Result> results;
+
+    @Override
+    public void init() {
+        telemetry.addData("Status", status);
+    }
+
+    @Override
+    public void start() {
+        new Thread("Object detector benchmarks") {
+            public void run() {
+                try {
+                    File imageFolder = new File(AppUtil.ROOT_FOLDER, ObjectDetectorBenchmarks.IMAGE_FOLDER);
+                    MicroBenchmark harness = new MicroBenchmark(MicroBenchmark.WARMUP_ITERATIONS,
+                            MicroBenchmark.MEASUREMENT_ITERATIONS, MicroBenchmark.ITERATION_MILLIS);
+                    ObjectDetectorBenchmarks benchmarks = new ObjectDetectorBenchmarks(harness, imageFolder);
+                    if (benchmarks.getFrameCount() == 0) {
+                        status = "No frames in " + imageFolder.getAbsolutePath();
+                        return;
+                    }
+                    status = "Running on " + benchmarks.getFrameCount() + " frames";
+                    long nativeHeapBefore = Debug.getNativeHeapAllocatedSize();
+                    List<MicroBenchmark.Result> results = benchmarks.run();
+                    nativeHeapGrowth = String.format(Locale.getDefault(), "%.1f KB",
+                            (Debug.getNativeHeapAllocatedSize() - nativeHeapBefore) / 1024.0);
+                    Match.log("Object detector benchmark: native heap grew by " + nativeHeapGrowth);
+                    File file = LoggingUtil.getLogFile("object-detector-benchmarks-"
+                            + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()) + ".json");
+                    harness.writeJson(results, file);
+                    ObjectDetectorBenchmark.this.results = results;
+                    status = "Saved to " + file.getName();
+                } catch (Throwable e) {
+                    RobotLog.logStackTrace(e);
+                    status = "Failed: " + e;
+                }
+            }
+        }.start();
+    }
+
+    @Override
+    public void loop() {
+        telemetry.addData("Status", status);
+        List<MicroBenchmark.Result> results = this.results;
+        if (results != null) {
+            for (MicroBenchmark.Result result : results) {
+                telemetry.addData(result.getName(), String.format(Locale.getDefault(),
+                        "%.2f ms/frame, %.0f B/frame", result.getNanosPerOp() / 1e6, result.getBytesPerOp()));
+            }
+            telemetry.addData("Native heap growth", nativeHeapGrowth);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.firstinspires.ftc.teamcode.opmodes.benchmark;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.ObjectDetector;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks of the object detector on camera frames we have recorded.
+ *
+ * The png and jpg files in a folder are read in name order, converted to rgb the way the vision
+ * portal hands frames to us, and fed to ObjectDetector.process one after the other with all of our
+ * objects enabled, as on a robot looking at the field.
+ *
+ * Run on the robot with the "Benchmark: Object detector" op mode, which reads the frames from the
+ * images folder under the FIRST folder and writes the results as JSON in JMH's layout. On a laptop,
+ * VisionReplay with a detector subject times the detector over recorded frames.
+ */
+public class ObjectDetectorBenchmarks {
+    public static final String IMAGE_FOLDER = "images";
+
+    private final MicroBenchmark harness;
+    private final List<MicroBenchmark.Result> results = new ArrayList<>();
+    private final List<Mat> frames = new ArrayList<>();
+    private int nextFrame;
+
+    /**
+     * Create the benchmarks, reading the frames from the specified folder
+     * @param harness - the harness to measure with
+     * @param imageFolder - folder with the recorded frames
+     */
+    public ObjectDetectorBenchmarks(MicroBenchmark harness, File imageFolder) {
+        this.harness = harness;
+        File[] files = imageFolder.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String name = file.getName().toLowerCase();
+                if (name.endsWith(".png") || name.endsWith(".jpg")) {
+                    Mat frame = Imgcodecs.imread(file.getAbsolutePath());
+                    if (frame.empty()) {
+                        frame.release();
+                    }
+                    else {
+                        Imgproc.cvtColor(frame, frame, Imgproc.COLOR_BGR2RGB);
+                        frames.add(frame);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of recorded frames we found
+     * @return frames read
+     */
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * Run all the benchmarks, releasing the frames once done
+     * @return the results, in the order the benchmarks were run
+     */
+    public List<MicroBenchmark.Result> run() {
+        //the same area of interest our vision processor uses
+        final ObjectDetector objectDetector = new ObjectDetector(0, RobotConfig.X_PIXEL_COUNT, 200, RobotConfig.Y_PIXEL_COUNT);
+        for (ObjectDetector.ObjectType type : ObjectDetector.ObjectType.values()) {
+            objectDetector.enableObject(type);
+        }
+        try {
+            measure("ObjectDetector.process", new MicroBenchmark.Body() {
+                @Override
+                public double run() {
+                    objectDetector.process(frames.get(nextFrame++ % frames.size()), System.nanoTime());
+                    return objectDetector.getLargestArea(ObjectDetector.ObjectType.YellowSample);
+                }
+            });
+        } finally {
+            objectDetector.release();
+            for (Mat frame : frames) {
+                frame.release();
+            }
+            frames.clear();
+        }
+        return results;
+    }
+
+    private void measure(String name, MicroBenchmark.Body body) {
+        MicroBenchmark.Result result = harness.measure(name, body);
+        Match.log("Object detector benchmark: " + result);
+        results.add(result);
+    }
+}
@@ -0,0 +1,131 @@
+package org.firstinspires.ftc.teamcode.opmodes.benchmark;
+
+import android.os.Debug;
+
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.teamcode.game.Alliance;
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.robot.Robot;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+
+import java.util.Locale;
+
+/**
+ * Measures how many objects and bytes our telemetry allocates per loop.
+ *
+ * Once started, runs each phase for LOOPS_PER_PHASE loops, counting allocations made on the
+ * OpMode thread with the Android allocation counters:
+ *   String status - the component getStatus() calls we used to make every loop
+ *   Builder status - the same status appended to reused builders
+ *   Unthrottled - Match.updateTelemetry composing and sending every loop
+ *   Throttled - Match.updateTelemetry at the configured intervals
+ * Results are shown on the driver station and written to the robot log.
+ */
+@TeleOp(name = "Benchmark: Telemetry", group = "Benchmark")
+public class TelemetryBenchmark extends OpMode {
+    public static final int LOOPS_PER_PHASE = 500;
+    private static final String[] PHASES = {"String status", "Builder status", "Unthrottled", "Throttled"};
+
+    Match match;
+    Robot robot;
+    final StringBuilder builder = new StringBuilder(256);
+
+    int phase, loops;
+    long allocations, bytes;
+    final String[] results = new String[PHASES.length];
+
+    @Override
+    public void init() {
+        try {
+            this.match = Match.getNewInstance();
+            match.init();
+            match.setAlliance(Alliance.Color.BLUE);
+            this.robot = match.getRobot();
+            this.robot.init(hardwareMap, telemetry, match);
+        } catch (Throwable e) {
+            RobotLog.logStackTrace(e);
+        }
+    }
+
+    @Override
+    public void start() {
+        Debug.startAllocCounting();
+        startPhase(0);
+    }
+
+    @Override
+    public void loop() {
+        if (phase >= PHASES.length) {
+            for (int i = 0; i < PHASES.length; i++) {
+                telemetry.addData(PHASES[i], results[i]);
+            }
+            return;
+        }
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        runPhase(phase);
+        allocations += Debug.getThreadAllocCount();
+        bytes += Debug.getThreadAllocSize();
+
+        if (++loops == LOOPS_PER_PHASE) {
+            results[phase] = String.format(Locale.getDefault(), "%.1f objects, %.0f bytes per loop",
+                    (double) allocations / loops, (double) bytes / loops);
+            Match.log("Telemetry benchmark: " + PHASES[phase] + ": " + results[phase]);
+            startPhase(phase + 1);
+            if (phase >= PHASES.length) {
+                Debug.stopAllocCounting();
+                match.setTelemetryIntervals(RobotConfig.DRIVER_STATION_TELEMETRY_INTERVAL,
+                        RobotConfig.DASHBOARD_TELEMETRY_INTERVAL);
+            }
+        }
+    }
+
+    private void startPhase(int phase) {
+        this.phase = phase;
+        this.loops = 0;
+        this.allocations = 0;
+        this.bytes = 0;
+        if (phase == 2) {
+            match.setTelemetryIntervals(0, 0);
+        }
+        else if (phase == 3) {
+            match.setTelemetryIntervals(RobotConfig.DRIVER_STATION_TELEMETRY_INTERVAL,
+                    RobotConfig.DASHBOARD_TELEMETRY_INTERVAL);
+        }
+    }
+
+    private void runPhase(int phase) {
+        switch (phase) {
+            case 0: {
+                robot.getDriveTrain().getStatus();
+                robot.getArmStatus();
+                robot.getIntakeStatus();
+                robot.getVisionPortal().getStatus();
+                break;
+            }
+            case 1: {
+                builder.setLength(0);
+                robot.getDriveTrain().appendStatus(builder);
+                builder.setLength(0);
+                robot.getArm().appendStatus(builder);
+                builder.setLength(0);
+                robot.getIntake().appendStatus(builder);
+                builder.setLength(0);
+                robot.getVisionPortal().appendStatus(builder);
+                break;
+            }
+            default: {
+                match.updateTelemetry(telemetry, "Benchmarking");
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        robot.stop();
+    }
+}
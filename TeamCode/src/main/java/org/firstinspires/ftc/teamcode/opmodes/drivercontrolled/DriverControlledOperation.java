@@ -34,6 +34,8 @@ import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimer;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimers;
 import org.firstinspires.ftc.teamcode.robot.Robot;
 
 import java.io.PrintWriter;
@@ -62,6 +64,7 @@ public class DriverControlledOperation extends OpMode {
     protected Robot robot = Match.getInstance().getRobot();
 
     protected Match match;
+    private final LoopTimer loopTimer = LoopTimers.getInstance().get("TeleOp loop");
     /*
      * Code to run ONCE when the driver hits INIT
      */
@@ -100,6 +103,7 @@ public class DriverControlledOperation extends OpMode {
     @Override
     public void start() {
         match.setTeleopStartTime(new Date());
+        LoopTimers.getInstance().reset();
     }
 
     /*
@@ -108,9 +112,11 @@ public class DriverControlledOperation extends OpMode {
     @Override
     public void loop() {
         if (robot.fullyInitialized()) {
+            loopTimer.start();
             try {
                 robot.handleGameControllers(gamepad1, gamepad2);
                 match.updateTelemetry(telemetry, robot.getState());
+                loopTimer.end();
             } catch (Throwable e) {
                 StringWriter stringWriter = new StringWriter();
                 PrintWriter printWriter = new PrintWriter(stringWriter);
@@ -130,5 +136,6 @@ public class DriverControlledOperation extends OpMode {
         if (robot.fullyInitialized()) {
             robot.stop();
         }
+        LoopTimers.getInstance().write("teleop");
     }
 }
@@ -28,6 +28,8 @@ import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigu
 
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimer;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimers;
 import org.firstinspires.ftc.teamcode.roadrunner.trajectorysequence.TrajectorySequence;
 import org.firstinspires.ftc.teamcode.roadrunner.trajectorysequence.TrajectorySequenceBuilder;
 import org.firstinspires.ftc.teamcode.roadrunner.trajectorysequence.TrajectorySequenceRunner;
@@ -82,6 +84,8 @@ public class SilverTitansMecanumDrive extends MecanumDrive {
 
     private IMU imu;
 
+    private final LoopTimer updateTimer = LoopTimers.getInstance().get("Roadrunner update");
+
     public SilverTitansMecanumDrive(HardwareMap hardwareMap) {
         super(kV, kA, kStatic, TRACK_WIDTH, TRACK_WIDTH, LATERAL_MULTIPLIER);
 
@@ -93,6 +97,7 @@ public class SilverTitansMecanumDrive extends MecanumDrive {
         batteryVoltageSensor = hardwareMap.voltageSensor.iterator().next();
 
         for (LynxModule module : hardwareMap.getAll(LynxModule.class)) {
+            //the robot's control loop switches this to MANUAL once it is created
             module.setBulkCachingMode(LynxModule.BulkCachingMode.AUTO);
         }
 
@@ -131,8 +136,7 @@ public class SilverTitansMecanumDrive extends MecanumDrive {
         ensureWheelDirection();
 
 
-        // TODO: if desired, use setLocalizer() to change the localization method
-        // for instance, setLocalizer(new ThreeTrackingWheelLocalizer(...));
+        //DriveTrain replaces the default wheel localizer with a FusedLocalizer once it has a control loop
         //Disabled setting localizer to use VSLAM since T265 Camera is not allowed any more
         //this.setLocalizer(camera);
 
@@ -211,9 +215,16 @@ public class SilverTitansMecanumDrive extends MecanumDrive {
     }
 
     public void update() {
+        updateTimer.start();
         updatePoseEstimate();
+        updateTimer.read();
         DriveSignal signal = trajectorySequenceRunner.update(getPoseEstimate(), getPoseVelocity());
         if (signal != null) setDriveSignal(signal);
+        updateTimer.end();
+        if (!isBusy()) {
+            //we aren't updated again until there is another trajectory to follow
+            updateTimer.pause();
+        }
     }
 
     public void waitForIdle() {
@@ -237,6 +248,13 @@ public class SilverTitansMecanumDrive extends MecanumDrive {
         }
     }
 
+    /**
+     * Returns the battery voltage, which takes a read of the hub
+     */
+    public double getBatteryVoltage() {
+        return batteryVoltageSensor.getVoltage();
+    }
+
     public void setPIDFCoefficients(DcMotor.RunMode runMode, PIDFCoefficients coefficients) {
         PIDFCoefficients compensatedCoefficients = new PIDFCoefficients(
                 coefficients.p, coefficients.i, coefficients.d,
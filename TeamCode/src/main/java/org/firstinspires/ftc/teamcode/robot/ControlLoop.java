@@ -0,0 +1,293 @@
+package org.firstinspires.ftc.teamcode.robot;
+
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimer;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimers;
+import org.firstinspires.ftc.teamcode.robot.operations.OperationThread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The single loop that drives all of our operation threads.
+ *
+ * Every cycle the loop clears the bulk cache of our hubs, takes one snapshot of all registered
+ * motors and publishes it as a SensorFrame. It then updates each controller with the frame and
+ * gives each operation thread a chance to start and complete its operations, all of which read
+ * from that frame.
+ *
+ * The hubs are put in MANUAL bulk caching mode so that no other thread triggers bulk reads on
+ * its own. Threads outside the loop, like the OpMode loop, use getFrame() which takes a new
+ * snapshot only if the current one is older than a cycle.
+ *
+ * When no operation thread or controller has anything to do, the loop parks until an operation
+ * is queued or it is woken up.
+ *
+ * Each cycle is timed by the "Control loop" LoopTimer, which also tells how much of the cycle went
+ * to taking the sensor frame.
+ *
+ * The loop runs on a thread of its own from start() until shutDown(). It can be started again
+ * afterwards, keeping its motors, controllers and operation threads, as when TeleOp carries on
+ * with the robot autonomous left behind.
+ */
+public class ControlLoop implements Runnable {
+    /**
+     * Something that needs to act on every sensor frame, like a motor following a profile
+     */
+    public interface Controller {
+        /**
+         * Act on the frame of this cycle
+         * @param frame - the sensor frame
+         * @return true if there is more to do in the cycles to come
+         */
+        boolean update(SensorFrame frame);
+    }
+
+    private final Object loopLock = new Object();
+    private final Object frameLock = new Object();
+    private final long cyclePeriodNanos;
+    private final List<LynxModule> modules;
+    private final DcMotorEx[] motors = new DcMotorEx[SensorFrame.Motor.values().length];
+    private final List<OperationThread> operationThreads = new ArrayList<>();
+    private final List<Controller> controllers = new ArrayList<>();
+
+    private Thread thread;
+    private volatile SensorFrame frame;
+    private long frameSequence;
+    private boolean wakeRequested;
+
+    private volatile long cycles;
+    private volatile long lastCycleNanos;
+    private final LoopTimer timer = LoopTimers.getInstance().get("Control loop");
+
+    /**
+     * Create the control loop
+     * @param hardwareMap - hardware map to find our hubs in
+     * @param cyclePeriod - milli-seconds between cycles while there are operations in progress
+     */
+    public ControlLoop(HardwareMap hardwareMap, long cyclePeriod) {
+        this.cyclePeriodNanos = cyclePeriod * 1000000L;
+        this.modules = hardwareMap.getAll(LynxModule.class);
+        for (LynxModule module : modules) {
+            module.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+        }
+        Match.log("Control loop created with " + modules.size() + " hubs in manual bulk caching mode");
+    }
+
+    /**
+     * Include a motor in the sensor frames we take
+     * @param id - how the motor is identified in the frame
+     * @param motor - the motor
+     */
+    public void register(SensorFrame.Motor id, DcMotorEx motor) {
+        synchronized (frameLock) {
+            motors[id.ordinal()] = motor;
+            frame = null;
+        }
+    }
+
+    /**
+     * Have the loop drive the specified operation thread. The operation thread must not be
+     * started on its own.
+     * @param operationThread - the operation thread
+     */
+    public void addOperationThread(OperationThread operationThread) {
+        synchronized (loopLock) {
+            operationThreads.add(operationThread);
+        }
+        operationThread.setControlLoop(this);
+    }
+
+    /**
+     * Have the loop update the specified controller every cycle, ahead of the operation threads
+     * @param controller - the controller
+     */
+    public void addController(Controller controller) {
+        synchronized (loopLock) {
+            controllers.add(controller);
+        }
+    }
+
+    /**
+     * Start running the loop on a thread of its own, unless it is already running
+     */
+    public synchronized void start() {
+        if (thread == null || !thread.isAlive()) {
+            thread = new Thread(this, "Control Loop");
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns true if the loop is running
+     */
+    public synchronized boolean isRunning() {
+        return thread != null && thread.isAlive();
+    }
+
+    @Override
+    public void run() {
+        Match.log("Control loop started");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long cycleStart = MatchClock.nanoTime();
+                timer.start();
+                SensorFrame currentFrame = refreshFrame();
+                timer.read();
+                boolean busy = false;
+                for (Controller controller : controllers) {
+                    busy |= controller.update(currentFrame);
+                }
+                for (OperationThread operationThread : operationThreads) {
+                    busy |= operationThread.tick();
+                }
+                cycles++;
+                lastCycleNanos = MatchClock.nanoTime() - cycleStart;
+                timer.end();
+
+                synchronized (loopLock) {
+                    if (busy) {
+                        //keep a fixed cadence while there is work to do
+                        long remaining;
+                        while ((remaining = cyclePeriodNanos - (MatchClock.nanoTime() - cycleStart)) > 0) {
+                            long realRemaining = Math.max(MatchClock.toRealNanos(remaining), 1);
+                            loopLock.wait(realRemaining / 1000000L, (int) (realRemaining % 1000000L));
+                        }
+                    }
+                    else {
+                        //nothing to do, park until an operation is queued
+                        timer.pause();
+                        while (!wakeRequested) {
+                            loopLock.wait();
+                        }
+                    }
+                    wakeRequested = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Match.log("Control loop interrupted");
+        }
+        Match.log("Control loop stopped");
+    }
+
+    /**
+     * Stop the loop and wait for it to finish the cycle it is in, so that none of our controllers
+     * or operation threads touch the hardware afterwards
+     * @param timeout - milli-seconds to wait at most
+     */
+    public synchronized void shutDown(long timeout) {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            Match.log("Control loop did not stop within " + timeout + " mSecs");
+        }
+    }
+
+    /**
+     * Wake the loop up if it is parked
+     */
+    public void wakeUp() {
+        synchronized (loopLock) {
+            wakeRequested = true;
+            loopLock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the latest sensor frame, taking a new one if the latest is older than a cycle
+     * @return the sensor frame
+     */
+    public SensorFrame getFrame() {
+        SensorFrame current = frame;
+        if (current == null || MatchClock.nanoTime() - current.getTimestamp() > cyclePeriodNanos) {
+            synchronized (frameLock) {
+                //someone else may have taken a frame while we waited
+                current = frame;
+                if (current == null || MatchClock.nanoTime() - current.getTimestamp() > cyclePeriodNanos) {
+                    current = takeFrame();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Discard the current frame and cached bulk data. To be called when encoders are reset so
+     * that no one reads positions from before the reset.
+     */
+    public void invalidateFrame() {
+        synchronized (frameLock) {
+            frame = null;
+            for (LynxModule module : modules) {
+                module.clearBulkCache();
+            }
+        }
+    }
+
+    private SensorFrame refreshFrame() {
+        synchronized (frameLock) {
+            return takeFrame();
+        }
+    }
+
+    /**
+     * Clear the bulk cache and read all registered motors. Must be called holding the frameLock.
+     * @return the new frame
+     */
+    private SensorFrame takeFrame() {
+        for (LynxModule module : modules) {
+            module.clearBulkCache();
+        }
+        int[] positions = new int[motors.length];
+        double[] velocities = new double[motors.length];
+        for (int i = 0; i < motors.length; i++) {
+            if (motors[i] != null) {
+                positions[i] = motors[i].getCurrentPosition();
+                velocities[i] = motors[i].getVelocity();
+            }
+        }
+        frame = new SensorFrame(++frameSequence, MatchClock.nanoTime(), positions, velocities);
+        return frame;
+    }
+
+    /**
+     * Returns how long the last cycle took
+     * @return milli-seconds
+     */
+    public double getLastCycleMillis() {
+        return lastCycleNanos / 1e6;
+    }
+
+    public String getStatus() {
+        return appendStatus(new StringBuilder()).toString();
+    }
+
+    public LoopTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Append the number of cycles run, how long the last one took and the percentiles of how long
+     * they take to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        builder.append(cycles).append(" cycles, last took ");
+        MatchTelemetry.append(builder, getLastCycleMillis(), 2).append(" mSecs, ");
+        return timer.appendStatus(builder);
+    }
+}
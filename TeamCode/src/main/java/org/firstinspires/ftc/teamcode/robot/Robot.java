@@ -8,20 +8,27 @@ import com.qualcomm.robotcore.hardware.Gamepad;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
 import org.firstinspires.ftc.teamcode.game.Alliance;
 import org.firstinspires.ftc.teamcode.game.Field;
 import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
 import org.firstinspires.ftc.teamcode.robot.components.Arm;
 import org.firstinspires.ftc.teamcode.robot.components.Intake;
 import org.firstinspires.ftc.teamcode.robot.components.LED;
 import org.firstinspires.ftc.teamcode.robot.components.OTOS;
 import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
 import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
+import org.firstinspires.ftc.teamcode.robot.controls.GamepadEvents;
+import org.firstinspires.ftc.teamcode.robot.controls.StickCurve;
 import org.firstinspires.ftc.teamcode.robot.operations.ArmOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.DriveToAprilTag;
 import org.firstinspires.ftc.teamcode.robot.operations.IntakeOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.Operation;
 import org.firstinspires.ftc.teamcode.robot.operations.OperationThread;
+import org.firstinspires.ftc.teamcode.robot.operations.Resource;
+
+import java.util.Set;
 
 /**
  * This class represents our robot.
@@ -84,6 +91,7 @@ public class Robot {
     OperationThread operationThreadPrimary;
     OperationThread operationThreadSecondary;
     OperationThread operationThreadTertiary;
+    ControlLoop controlLoop;
 
     //Components
     DriveTrain driveTrain;
@@ -98,6 +106,15 @@ public class Robot {
     //our state
     String state = "pre-initialized";
 
+    //what the drivers did since the last loop
+    private final GamepadEvents gamepad1Events = new GamepadEvents();
+    private final GamepadEvents gamepad2Events = new GamepadEvents();
+    private static final StickCurve DRIVE_CURVE = new StickCurve(RobotConfig.DRIVE_STICK_EXPONENT, 0);
+    private static final StickCurve TURN_CURVE = new StickCurve(RobotConfig.TURN_STICK_EXPONENT, 0);
+    private static final StickCurve ARM_CURVE = new StickCurve(1, RobotConfig.ARM_STICK_DEAD_BAND);
+    //queue sequence of the last april tag alignment started from the bumpers
+    private long alignmentSequence;
+
     public Robot() {
         Log.d("SilverTitans", "Robot: got created");
     }
@@ -128,13 +145,29 @@ public class Robot {
         telemetry.addData("Status", "Creating operations thread, please wait");
         telemetry.update();
 
-        Match.log("Started operations threads");
+        //only one loop may read our hubs, stop the one of an earlier init
+        stopControlLoop();
+        //the control loop puts our hubs in manual bulk caching mode, so create it after the
+        //components have been initialized
+        this.controlLoop = new ControlLoop(hardwareMap, RobotConfig.CONTROL_LOOP_PERIOD);
+        this.driveTrain.setControlLoop(controlLoop);
+        this.driveTrain.getFusedLocalizer().setOtos(otos);
+        this.driveTrain.getFusedLocalizer().setVisionPortal(visionPortal);
+        if (visionPortal != null) {
+            this.visionPortal.addAprilTagListener(driveTrain.getAprilTagTracker());
+        }
+        this.arm.setControlLoop(controlLoop);
+        this.intake.setControlLoop(controlLoop);
+
+        //the operation threads are driven by the control loop rather than running on their own
         this.operationThreadPrimary = new OperationThread(this, "Primary", telemetry);
-        operationThreadPrimary.start();
+        controlLoop.addOperationThread(operationThreadPrimary);
         this.operationThreadSecondary = new OperationThread(this, "Secondary", telemetry);
-        operationThreadSecondary.start();
+        controlLoop.addOperationThread(operationThreadSecondary);
         this.operationThreadTertiary = new OperationThread(this, "Tertiary", telemetry);
-        operationThreadTertiary.start();
+        controlLoop.addOperationThread(operationThreadTertiary);
+        controlLoop.start();
+        Match.log("Started operations threads");
     }
 
     public void initDriveTrain() {
@@ -149,8 +182,18 @@ public class Robot {
         Match.log("Initializing Vision Portal");
         telemetry.addData("Status", "Initializing Vision Portal, please wait");
         telemetry.update();
-        this.visionPortal = new SilverTitansVisionPortal();
-        this.visionPortal.init(hardwareMap);
+        //there is no webcam when running in the simulator
+        if (hardwareMap.tryGet(WebcamName.class, RobotConfig.WEBCAM_ID) != null) {
+            //let go of the camera and the native memory of the portal we are replacing
+            if (this.visionPortal != null) {
+                this.visionPortal.close();
+            }
+            this.visionPortal = new SilverTitansVisionPortal();
+            this.visionPortal.init(hardwareMap);
+        }
+        else {
+            Match.log("No webcam found, running without vision");
+        }
         this.otos = new OTOS();
         this.otos.init(hardwareMap);
     }
@@ -170,12 +213,28 @@ public class Robot {
         if (this.operationThreadTertiary != null) {
             this.operationThreadTertiary.abort();
         }
+        stopControlLoop();
+        if (this.arm != null) {
+            this.arm.stop();
+        }
         if (this.driveTrain != null) {
             this.driveTrain.stop();
+            if (this.driveTrain.getFusedLocalizer() != null) {
+                Match.log("Localizer: " + this.driveTrain.getFusedLocalizer().getStatus());
+            }
         }
         Match.log(("Robot stopped"));
     }
 
+    /**
+     * Stop our control loop, if it is running, so nothing it drives keeps moving the robot
+     */
+    private void stopControlLoop() {
+        if (this.controlLoop != null && this.controlLoop.isRunning()) {
+            this.controlLoop.shutDown(RobotConfig.CONTROL_LOOP_STOP_TIMEOUT);
+        }
+    }
+
     public void queuePrimaryOperation(Operation operation) {
         this.operationThreadPrimary.queueUpOperation(operation);
     }
@@ -194,7 +253,7 @@ public class Robot {
      * @return the heading in radians
      */
     public double getCurrentTheta() {
-        return 0;//AngleUnit.normalizeRadians(this.vslamCamera.getPoseEstimate().getHeading());
+        return this.driveTrain.getPoseEstimate().getHeading();
     }
 
     public boolean allOperationsCompleted() {
@@ -213,6 +272,68 @@ public class Robot {
         return !this.operationThreadTertiary.hasEntries();
     }
 
+    /**
+     * Checks if the primary operations queued up to the specified sequence are done
+     * @param sequence - the queue sequence, see OperationThread.getLastSequence()
+     * @return true if none of them is pending
+     */
+    public boolean primaryOperationsCompletedThrough(long sequence) {
+        return this.operationThreadPrimary.isDoneThrough(sequence);
+    }
+
+    /**
+     * Checks if all the operations queued up to the specified sequence are done
+     * @param sequence - the queue sequence, see OperationThread.getLastSequence()
+     * @return true if none of them is pending
+     */
+    public boolean allOperationsCompletedThrough(long sequence) {
+        return this.operationThreadPrimary.isDoneThrough(sequence)
+                && this.operationThreadSecondary.isDoneThrough(sequence)
+                && this.operationThreadTertiary.isDoneThrough(sequence);
+    }
+
+    /**
+     * Add the resources needed by the operations pending in the three operation threads to the
+     * specified set
+     * @param resources - where to add the resources
+     */
+    public void addPendingResources(Set<Resource> resources) {
+        this.operationThreadPrimary.addPendingResources(resources);
+        this.operationThreadSecondary.addPendingResources(resources);
+        this.operationThreadTertiary.addPendingResources(resources);
+    }
+
+    /**
+     * Returns the latest snapshot of our motor encoders
+     * @return the sensor frame
+     */
+    public SensorFrame getSensorFrame() {
+        return this.controlLoop.getFrame();
+    }
+
+    public ControlLoop getControlLoop() {
+        return this.controlLoop;
+    }
+
+    /**
+     * Returns the scheduling latencies of the three operation threads
+     * @return latency statistics of each operation thread
+     */
+    public String getOperationLatencies() {
+        return appendOperationLatencies(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the latencies of the three operation threads to the specified builder
+     * @param builder - where to append the latencies
+     * @return the builder
+     */
+    public StringBuilder appendOperationLatencies(StringBuilder builder) {
+        this.operationThreadPrimary.appendLatencyStatus(builder.append("P:"));
+        this.operationThreadSecondary.appendLatencyStatus(builder.append("; S:"));
+        return this.operationThreadTertiary.appendLatencyStatus(builder.append("; T:"));
+    }
+
     public String getState() {
         return this.state;
     }
@@ -225,12 +346,34 @@ public class Robot {
         return true;
     }
 
+    /**
+     * Read what the drivers did since the last loop. To be called once per loop before the
+     * handlers below.
+     * @param gamePad1 - game pad 1
+     * @param gamePad2 - game pad 2
+     */
+    public void readGamepads(Gamepad gamePad1, Gamepad gamePad2) {
+        long now = MatchClock.nanoTime();
+        gamepad1Events.update(gamePad1, now);
+        gamepad2Events.update(gamePad2, now);
+    }
+
+    public GamepadEvents getGamepad1Events() {
+        return gamepad1Events;
+    }
+
+    public GamepadEvents getGamepad2Events() {
+        return gamepad2Events;
+    }
+
     /*
+        gamePad 1 x aborts everything queued
         gamePad 2 dpad up/down open/close claw incrementally
         gamePad 2 dpad left/right open/close claw totally
     */
     public void handleGameControllers(Gamepad gamePad1, Gamepad gamePad2) {
-        if (gamePad1.x) {
+        readGamepads(gamePad1, gamePad2);
+        if (gamepad1Events.pressed(GamepadEvents.Button.X)) {
             this.operationThreadPrimary.abort();
             this.operationThreadSecondary.abort();
             this.operationThreadTertiary.abort();
@@ -242,80 +385,100 @@ public class Robot {
 
     /**
      * Handle driving of the robot
-     * If the left bumper is pressed, align robot 9 inches to the left of the april tag being seen
-     * If the right bumper is pressed, align robot 9 inches to the right of the april tag being seen
-     * If both bumpers are pressed, align robot 9 inches centered on the april tag being seen
+     * If the left bumper is pressed, align robot 12 inches to the left of the april tag being seen
+     * If the right bumper is pressed, align robot 12 inches to the right of the april tag being seen
+     * If both bumpers are pressed, align robot centered on the april tag being seen, even if the
+     * second bumper came a little after the first and we had started aligning to one side
      *
      * If left or right or both bumpers are pressed robot is attempted to be 12 inches from the
      * april tag
      *
-     * If no bumpers are pressed, the left joystick y direction determines forward movement,
+     * If no bumpers are held, the left joystick y direction determines forward movement,
      * left joystick x direction determines strafing and the right joy stick x direction
      * determines rotation
      * Right trigger pushing moves robot in turbo mode, left trigger in super turbo mode
-     * @param gamePad1 - game pad 1
+     * @param gamePad1 - game pad 1, whose buttons have been read by readGamepads()
      */
     public void handleDriveTrain(Gamepad gamePad1) {
-        if (this.primaryOperationsCompleted()) {
-            double left = 0;
-            if (gamePad1.left_bumper || gamePad1.right_bumper) {
-                //if both left and right bumpers are pressed align with the april tag
-                if (gamePad1.left_bumper && gamePad1.right_bumper) {
-                    left = 0;
-                }
-                //if only left bumper is pressed, align to the left of the april tag
-                else if (gamePad1.left_bumper) {
-                    left = 12;
-                }
-                //if only right bumper is pressed, align to the right tag of the tag
-                else {
-                    left = -12;
-                }
-                //align with april tag, staying 10 inches from it
-                DriveToAprilTag.driveToAprilTag(left,12*Field.MM_PER_INCH, driveTrain);
+        GamepadEvents events = gamepad1Events;
+        if (events.chord(GamepadEvents.Button.LeftBumper, GamepadEvents.Button.RightBumper)) {
+            if (alignmentSequence != 0 && !this.operationThreadPrimary.isDoneThrough(alignmentSequence)) {
+                //we started aligning to one side before the second bumper came down
+                this.operationThreadPrimary.abort();
+            }
+            if (this.primaryOperationsCompleted()) {
+                alignWithAprilTag(0);
+            }
+        }
+        else if (this.primaryOperationsCompleted()) {
+            if (events.pressed(GamepadEvents.Button.LeftBumper)) {
+                alignWithAprilTag(12);
+            }
+            else if (events.pressed(GamepadEvents.Button.RightBumper)) {
+                alignWithAprilTag(-12);
             }
-            else {
+            else if (!events.isDown(GamepadEvents.Button.LeftBumper) && !events.isDown(GamepadEvents.Button.RightBumper)) {
                 //regular driving
                 double multiplier = gamePad1.right_trigger > 0.1 ? .6 : (gamePad1.left_trigger > 0.1 ? 1 : .3);
-                double x = Math.pow(gamePad1.left_stick_x, 7) * multiplier; // Get left joystick's x-axis value.
-                double y = -Math.pow(gamePad1.left_stick_y, 7) * multiplier; // Get left joystick's y-axis value.
+                double x = DRIVE_CURVE.apply(gamePad1.left_stick_x) * multiplier; // Get left joystick's x-axis value.
+                double y = -DRIVE_CURVE.apply(gamePad1.left_stick_y) * multiplier; // Get left joystick's y-axis value.
 
-                double rotation = Math.pow(gamePad1.right_stick_x, 5) * multiplier; // Get right joystick's x-axis value for rotation
+                double rotation = TURN_CURVE.apply(gamePad1.right_stick_x) * multiplier; // Get right joystick's x-axis value for rotation
 
-                this.driveTrain.drive(Math.atan2(x, y), Math.hypot(x, y), rotation);
+                //at fractions of our top speeds, so the robot speeds up and slows down the same way whoever drives it
+                this.driveTrain.driveAtFractions(y, -x, -rotation);
+                if (x != 0 || y != 0 || rotation != 0) {
+                    //the control loop may be parked with nothing queued, have it keep up with our pose
+                    this.controlLoop.wakeUp();
+                }
             }
         }
     }
 
     /**
-     * Handle the arm
+     * Align with the april tag being seen, staying 12 inches from it, until aligned or aborted with x
+     * @param left - inches to the left of the tag to align to
+     */
+    private void alignWithAprilTag(double left) {
+        queuePrimaryOperation(new DriveToAprilTag(left, 12*Field.MM_PER_INCH, "Align with april tag"));
+        alignmentSequence = OperationThread.getLastSequence();
+    }
 
-     * @param gamePad2 - game pad 2
+    /**
+     * Handle the arm
+     * <p>
+     * Arm positions and intake changes are queued once as their buttons are pressed, not on every
+     * loop they are held. The claw moves a step as its dpad button is pressed and then keeps
+     * stepping at a fixed rate while it is held.
+     * @param gamePad1 - game pad 1
+     * @param gamePad2 - game pad 2, whose buttons have been read by readGamepads()
      */
     public void handleArm(Gamepad gamePad1, Gamepad gamePad2) {
-
+        GamepadEvents events = gamepad2Events;
+        boolean eat = events.isDown(GamepadEvents.Button.RightTrigger);
+        boolean expel = events.isDown(GamepadEvents.Button.LeftTrigger);
         //If both gamePad2 left and right trigger are pressed, stop inout motor
-        if (gamePad2.left_trigger > .2 && gamePad2.right_trigger > .2) {
+        if (events.chord(GamepadEvents.Button.LeftTrigger, GamepadEvents.Button.RightTrigger)) {
             intake.abstain();
         }
         //If gamePad2 right trigger is pressed, start consuming samples
-        else if (gamePad2.right_trigger > .2) {
+        else if (events.pressed(GamepadEvents.Button.RightTrigger) && !expel) {
             intake.eat();
         }
         //If gamePad2 left trigger is pressed, start spitting out samples
-        else if (gamePad2.left_trigger > .2) {
+        else if (events.pressed(GamepadEvents.Button.LeftTrigger) && !eat) {
             intake.release();
         }
 
         if (secondaryOperationsCompleted()) {
-            if (gamePad2.a) {
+            if (events.pressed(GamepadEvents.Button.A)) {
                 queueSecondaryOperation(new ArmOperation(ArmOperation.Type.Intake, "Assume Intake"));
                 queueSecondaryOperation(new IntakeOperation(IntakeOperation.Type.Eat, "Start intake"));
             }
-            if (gamePad2.b) {
+            if (events.pressed(GamepadEvents.Button.B)) {
                 queueSecondaryOperation(new ArmOperation(ArmOperation.Type.Lower_Basket, "Lower basket position"));
             }
-            if (gamePad2.y) {
+            if (events.pressed(GamepadEvents.Button.Y)) {
                 queueSecondaryOperation(new ArmOperation(ArmOperation.Type.Higher_Basket, "Higher basket position"));
             }            /*
             if (gamePad2.y) {
@@ -340,33 +503,35 @@ public class Robot {
              */
 
             //handle slide movement
-            if (Math.abs(gamePad2.left_stick_y) > 0.1) {
-                this.arm.setSlidePower(-gamePad2.left_stick_y);
+            double slidePower = ARM_CURVE.apply(-gamePad2.left_stick_y);
+            if (slidePower != 0) {
+                this.arm.setSlidePower(slidePower);
             } else {
                 this.arm.retainSlide();
             }
 
             //handle arm rotation
-            if (Math.abs(gamePad2.right_stick_y) > 0.1) {
-                this.arm.setShoulderPower(-gamePad2.right_stick_y);
+            double shoulderPower = ARM_CURVE.apply(-gamePad2.right_stick_y);
+            if (shoulderPower != 0) {
+                this.arm.setShoulderPower(shoulderPower);
             } else {
                 this.arm.retainShoulder();
             }
 
-            //handle releaser
-            if (gamePad2.dpad_up) {
+            //handle releaser, a step for every repeat of the button so it moves at the same rate however fast we loop
+            for (int i = events.repeats(GamepadEvents.Button.DpadUp); i > 0; i--) {
                 arm.incrementReleaserPosition();
             }
-            if (gamePad2.dpad_down) {
+            for (int i = events.repeats(GamepadEvents.Button.DpadDown); i > 0; i--) {
                 arm.decrementReleaserPosition();
             }
-            if (gamePad2.dpad_left) {
+            if (events.pressed(GamepadEvents.Button.DpadLeft)) {
                 arm.clawRetainPosition();
             }
-            if (gamePad2.dpad_right) {
+            if (events.pressed(GamepadEvents.Button.DpadRight)) {
                 arm.clawReleasePosition();
             }
-            if(gamePad2.x) {
+            if (events.pressed(GamepadEvents.Button.X)) {
                 //reset
             }
             /**
@@ -393,6 +558,17 @@ public class Robot {
             this.arm.ensureMotorDirections();
         }
         initVision();
+        //the portal we had was closed, have our localizer and tag tracker use the new one
+        if (this.driveTrain != null && this.driveTrain.getFusedLocalizer() != null) {
+            this.driveTrain.getFusedLocalizer().setVisionPortal(visionPortal);
+            if (visionPortal != null) {
+                this.visionPortal.addAprilTagListener(driveTrain.getAprilTagTracker());
+            }
+        }
+        //carry on driving our components, the loop was stopped with the op mode before
+        if (this.controlLoop != null) {
+            this.controlLoop.start();
+        }
     }
 
     public SparkFunOTOS.Pose2D getPose() {
@@ -429,6 +605,37 @@ public class Robot {
         return visionPortal;
     }
 
+    /**
+     * Run the specified vision processors for the specified operation until it releases them
+     * @param operation - the operation needing the processors
+     * @param processors - the processors needed
+     */
+    public void requireVision(Operation operation, Set<SilverTitansVisionPortal.Processor> processors) {
+        if (visionPortal != null && !processors.isEmpty()) {
+            visionPortal.require(operation, processors);
+        }
+    }
+
+    /**
+     * Let go of the vision processors the specified operation needed
+     * @param operation - the operation
+     */
+    public void releaseVision(Operation operation) {
+        if (visionPortal != null) {
+            visionPortal.release(operation);
+        }
+    }
+
+    /**
+     * Specify the vision processors the current phase of the match needs running all the time
+     * @param processors - the processors needed
+     */
+    public void setVisionPhase(Set<SilverTitansVisionPortal.Processor> processors) {
+        if (visionPortal != null) {
+            visionPortal.setPhaseProcessors(processors);
+        }
+    }
+
     public LED getLed() {
         return this.led;
     }
@@ -1,5 +1,9 @@
 package org.firstinspires.ftc.teamcode.robot;
 
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.Position;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
 import org.firstinspires.ftc.teamcode.game.Field;
 import org.firstinspires.ftc.teamcode.robot.components.ArmPosition;
 
@@ -42,6 +46,140 @@ public class RobotConfig {
 
    public static final long SERVO_REQUIRED_TIME = 500; //500 milli-seconds for servo to function
 
+   //milli-seconds between checks of whether an operation in progress has completed
+   public static final long OPERATION_CHECK_INTERVAL = 10;
+   //milli-seconds between control loop cycles while operations are in progress
+   public static final long CONTROL_LOOP_PERIOD = 10;
+   //milli-seconds to wait for the control loop to finish its cycle when it is stopped
+   public static final long CONTROL_LOOP_STOP_TIMEOUT = 100;
+   //milli-seconds between driver station telemetry updates, the driver station drops anything sooner
+   public static final long DRIVER_STATION_TELEMETRY_INTERVAL = 250;
+   //milli-seconds between dashboard packets
+   public static final long DASHBOARD_TELEMETRY_INTERVAL = 100;
+
+   //gamepads
+   //how far a trigger has to be pressed to count as a button
+   public static final double GAMEPAD_TRIGGER_THRESHOLD = 0.2;
+   //milli-seconds within which a second press of a button counts as a double tap
+   public static final long GAMEPAD_DOUBLE_TAP_WINDOW = 300;
+   //milli-seconds a button is held before it starts repeating, and between repeats
+   public static final long GAMEPAD_REPEAT_DELAY = 250;
+   public static final long GAMEPAD_REPEAT_INTERVAL = 20;
+   //powers the drive and turn sticks are raised to, for fine control with small pushes
+   public static final double DRIVE_STICK_EXPONENT = 7;
+   public static final double TURN_STICK_EXPONENT = 5;
+   //how far the arm sticks can be pushed before the arm moves
+   public static final double ARM_STICK_DEAD_BAND = 0.1;
+
+   //threads that build trajectories in the background
+   public static final int TRAJECTORY_SERVICE_THREADS = 2;
+   //trajectories waiting to be built, requests beyond this are rejected
+   public static final int TRAJECTORY_QUEUE_CAPACITY = 32;
+   //places in the queue precompiling leaves for the trajectories the robot is waiting for
+   public static final int TRAJECTORY_QUEUE_RESERVE = 8;
+   //trajectories we remember
+   public static final int TRAJECTORY_CACHE_SIZE = 64;
+   //start and target poses are rounded to this many inches and radians when caching trajectories
+   public static final double TRAJECTORY_POSITION_QUANTUM = 1;
+   public static final double TRAJECTORY_HEADING_QUANTUM = Math.toRadians(2);
+   //how far, in inches and radians, the robot can be from the start of a cached trajectory and still follow it as is
+   public static final double TRAJECTORY_FOLLOW_TOLERANCE = 1;
+   public static final double TRAJECTORY_FOLLOW_HEADING_TOLERANCE = Math.toRadians(3);
+   //how far the robot can be from the start of a cached trajectory and have an approach built to it
+   public static final double TRAJECTORY_PATCH_TOLERANCE = 6;
+   public static final double TRAJECTORY_PATCH_HEADING_TOLERANCE = Math.toRadians(20);
+
+   //fused localizer, in inches and radians like the rest of road runner
+   //standard deviations of the measurements we fuse
+   public static final double LOCALIZER_WHEEL_VELOCITY_STD = 2;
+   public static final double LOCALIZER_WHEEL_ANGULAR_VELOCITY_STD = Math.toRadians(6);
+   public static final double LOCALIZER_OTOS_VELOCITY_STD = 0.5;
+   public static final double LOCALIZER_OTOS_ANGULAR_VELOCITY_STD = Math.toRadians(2);
+   public static final double LOCALIZER_IMU_HEADING_STD = Math.toRadians(0.5);
+   public static final double LOCALIZER_TAG_POSITION_STD = 1.5;
+   public static final double LOCALIZER_TAG_HEADING_STD = Math.toRadians(4);
+   //how quickly we expect the velocity of the robot to change, per second per second
+   public static final double LOCALIZER_ACCELERATION_STD = 40;
+   public static final double LOCALIZER_ANGULAR_ACCELERATION_STD = Math.toRadians(360);
+   //squared standard deviations from the estimate beyond which a measurement is rejected as an outlier
+   public static final double LOCALIZER_OUTLIER_GATE = 9;
+   //tag fixes rejected in a row before we assume the field alignment is off and align again
+   public static final int LOCALIZER_TAG_REALIGN_REJECTIONS = 10;
+   //nano-seconds a tag frame must be newer than the last one we used, as converting its capture
+   //time to the match clock can come out a few micro-seconds different each time
+   public static final long LOCALIZER_TAG_FRAME_MARGIN = 1000000;
+   //milli-seconds between IMU reads, the wheels and OTOS give us turn rate every cycle
+   public static final long LOCALIZER_IMU_PERIOD = 50;
+   //poses remembered to place late tag fixes, one per control loop cycle
+   public static final int LOCALIZER_HISTORY_SIZE = 64;
+   //inches per second and radians per second below which the robot counts as stopped
+   public static final double LOCALIZER_STOPPED_SPEED = 0.5;
+   public static final double LOCALIZER_STOPPED_TURN_RATE = Math.toRadians(1);
+
+   //driving by chassis velocity, the same for driver control and aligning with april tags
+   //inches per second the robot can drive at, and inches per second per second it can speed up or slow down at
+   public static final double DRIVE_MAX_VELOCITY = 50;
+   public static final double DRIVE_MAX_ACCELERATION = 60;
+   //radians per second the robot can turn at, and radians per second per second its turn can speed up or slow down at
+   public static final double DRIVE_MAX_ANGULAR_VELOCITY = Math.toRadians(180);
+   public static final double DRIVE_MAX_ANGULAR_ACCELERATION = Math.toRadians(360);
+   //longest gap, in seconds, between velocity commands that we treat as continuous driving
+   public static final double DRIVE_MAX_COMMAND_GAP = 0.1;
+   //milli-seconds between battery voltage reads, and the change in volts at which we re-compensate the motors
+   public static final long DRIVE_VOLTAGE_INTERVAL = 500;
+   public static final double DRIVE_VOLTAGE_CHANGE = 0.5;
+   //the battery voltage our feed forward gains were tuned at
+   public static final double DRIVE_NOMINAL_VOLTAGE = 12;
+
+   //motion primitives
+   //inches per second per second to speed up and slow down along a primitive
+   public static final double PRIMITIVE_MAX_ACCELERATION = 40;
+   //radians per second per second to speed up and slow down a turn
+   public static final double PRIMITIVE_MAX_ANGULAR_ACCELERATION = Math.toRadians(240);
+   //how much of the shorter speed up of two primitives they overlap by, 0 to stop between them
+   public static final double PRIMITIVE_BLEND = 1;
+   //inches per second per inch of position error, and radians per second per radian of heading error
+   public static final double PRIMITIVE_POSITION_GAIN = 3;
+   public static final double PRIMITIVE_HEADING_GAIN = 3;
+   //how close to the end of the primitives, in inches and radians, counts as having arrived
+   public static final double PRIMITIVE_POSITION_TOLERANCE = 0.5;
+   public static final double PRIMITIVE_HEADING_TOLERANCE = Math.toRadians(1.5);
+   //control loop cycles to stay within tolerance before we have arrived
+   public static final int PRIMITIVE_SETTLE_CYCLES = 3;
+   //milli-seconds after the primitives are over to wait to arrive
+   public static final long PRIMITIVE_SETTLE_TIMEOUT = 750;
+
+   //aligning with april tags
+   //milli-seconds to wait for a tag to be seen, and to go on odometry alone once it has dropped out
+   public static final long TAG_ACQUIRE_TIMEOUT = 1000;
+   public static final long TAG_LOST_TIMEOUT = 1500;
+   //inches and radians from where we want to be that count as being there, for this many cycles in a row
+   public static final double TAG_POSITION_TOLERANCE = 1;
+   public static final double TAG_HEADING_TOLERANCE = Math.toRadians(2);
+   public static final int TAG_SETTLE_CYCLES = 3;
+   //inches of range per inch of tag size at which tags are still seen at decimation 1, 2 and 3 at our resolution
+   public static final double[] TAG_DECIMATION_RANGES = {60, 36, 24};
+   //we want to be able to see a tag this much further away than it is before decimating more
+   public static final double TAG_RANGE_MARGIN = 1.3;
+   public static final int TAG_INITIAL_DECIMATION = 2;
+   //size of the region we look for a tracked tag in, as a multiple of the tag's size in the last frame
+   public static final double TAG_REGION_MARGIN = 3;
+   //milli-seconds we can spend on april tags per frame to keep up with 30 frames per second
+   public static final double VISION_FRAME_BUDGET = 33;
+   //how much of each new measurement goes into the averages of vision timing
+   public static final double VISION_SMOOTHING = 0.2;
+   //the color blob locators only feed telemetry and the driver, so they run on one of every so many frames
+   public static final int BLOB_PROCESSOR_INTERVAL = 3;
+   //YCrCb minimums and maximums of the colors of the game pieces
+   public static final int[][] RED_BLOB_RANGE = {{32, 176, 0}, {255, 255, 132}};
+   public static final int[][] BLUE_BLOB_RANGE = {{16, 0, 155}, {255, 127, 255}};
+   public static final int[][] YELLOW_BLOB_RANGE = {{32, 128, 0}, {255, 170, 120}};
+   //pixels across the box the search region is blurred over to smooth the transitions between colors
+   public static final int BLOB_BLUR_SIZE = 5;
+   //smallest and largest blobs in pixels that could be game pieces
+   public static final int BLOB_MIN_AREA = 100;
+   public static final int BLOB_MAX_AREA = 20000;
+
    public static final int ACCEPTABLE_SLIDE_ERROR = 10;
    public static final double MAX_SLIDE_POWER = 1;
 
@@ -51,6 +189,51 @@ public class RobotConfig {
    public static final int ACCEPTABLE_WRIST_ERROR = 5;
    public static final double MAX_WRIST_POWER = 0.5;
 
+   //motion profiles of the arm, in encoder ticks and seconds
+   public static final double SHOULDER_MAX_VELOCITY = 900;
+   public static final double SHOULDER_MAX_ACCELERATION = 2500;
+   //shoulder feedforward: power per tick/sec, per tick/sec^2 and to overcome friction
+   public static final double SHOULDER_KV = 1 / 2400.0;
+   public static final double SHOULDER_KA = 0.00004;
+   public static final double SHOULDER_K_STATIC = 0.04;
+   //shoulder feedback on the error from the profile: power per tick, per tick-sec and per tick/sec
+   public static final double SHOULDER_KP = 0.003;
+   public static final double SHOULDER_KI = 0.002;
+   public static final double SHOULDER_KD = 0.0002;
+
+   public static final double SLIDE_MAX_VELOCITY = 2200;
+   public static final double SLIDE_MAX_ACCELERATION = 6000;
+   public static final double SLIDE_KV = 1 / 2800.0;
+   public static final double SLIDE_KA = 0.00003;
+   public static final double SLIDE_K_STATIC = 0.05;
+   public static final double SLIDE_KP = 0.002;
+   public static final double SLIDE_KI = 0.001;
+   public static final double SLIDE_KD = 0.0001;
+
+   //milli-seconds a profile can run over before the motor controller takes over holding the goal
+   public static final long ARM_SETTLE_TIMEOUT = 500;
+
+   //arm geometry, in mm from the robot center and the floor
+   public static final double SHOULDER_PIVOT_HEIGHT = 9 * Field.MM_PER_INCH;
+   public static final double SHOULDER_PIVOT_FORWARD = -4 * Field.MM_PER_INCH;
+   //angle of the slide above horizontal with the shoulder at zero, and shoulder ticks per radian
+   public static final double SHOULDER_ANGLE_AT_ZERO = Math.toRadians(-25);
+   public static final double SHOULDER_TICKS_PER_RADIAN = 1650;
+   //pivot to claw tip with the slide retracted, and slide ticks per mm of extension
+   public static final double SLIDE_RETRACTED_LENGTH = 14 * Field.MM_PER_INCH;
+   public static final double SLIDE_TICKS_PER_MM = 5;
+   //the claw must stay out of the chassis below this height, and this far off the floor
+   public static final double CHASSIS_HEIGHT = 5 * Field.MM_PER_INCH;
+   public static final double ARM_FLOOR_CLEARANCE = 0.5 * Field.MM_PER_INCH;
+   //the most the robot can span front to back with the arm out
+   public static final double MAX_HORIZONTAL_EXTENT = 42 * Field.MM_PER_INCH;
+   //range of joint positions arm paths are planned over, and the spacing of the planning grid
+   public static final int SHOULDER_MAX_POSITION = 3400;
+   public static final int SLIDE_MAX_POSITION = 3800;
+   public static final int ARM_PLANNING_RESOLUTION = 50;
+   //how close, in ticks, the arm must be to a named position for its precomputed paths to be used
+   public static final int ARM_NAMED_POSITION_TOLERANCE = 100;
+
    public static final ArmPosition ARM_STARTING_POSITION =
            new ArmPosition(0, 0, RobotConfig.CLAW_HOLD_POSITION);
 
@@ -79,4 +262,8 @@ public class RobotConfig {
 
    public static final int X_PIXEL_COUNT = 1920;
    public static final int Y_PIXEL_COUNT = 1080;
+   //where the webcam is on the robot, x to the right, y forward and z up from the robot center on the floor
+   public static final Position CAMERA_POSITION = new Position(DistanceUnit.INCH, 0, 8, 6, 0);
+   //which way it looks, level and straight ahead
+   public static final YawPitchRollAngles CAMERA_ORIENTATION = new YawPitchRollAngles(AngleUnit.DEGREES, 0, -90, 0, 0);
 }
\ No newline at end of file
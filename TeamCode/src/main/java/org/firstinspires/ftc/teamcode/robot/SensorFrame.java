@@ -0,0 +1,59 @@
+package org.firstinspires.ftc.teamcode.robot;
+
+/**
+ * An immutable snapshot of the motor encoders taken by the control loop from a single bulk read.
+ *
+ * Everything that needs to know where a motor is during a control loop cycle reads it from the
+ * same frame so that we only go to the hubs once per cycle.
+ */
+public class SensorFrame {
+    public enum Motor {
+        LeftFront, RightFront, LeftRear, RightRear, Slide, Shoulder, Intake
+    }
+
+    private final long sequence;
+    private final long timestamp;
+    private final int[] positions;
+    private final double[] velocities;
+
+    SensorFrame(long sequence, long timestamp, int[] positions, double[] velocities) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.positions = positions;
+        this.velocities = velocities;
+    }
+
+    /**
+     * Returns the encoder position of the motor when the frame was taken
+     * @param motor - the motor
+     * @return encoder ticks
+     */
+    public int getPosition(Motor motor) {
+        return positions[motor.ordinal()];
+    }
+
+    /**
+     * Returns the velocity of the motor when the frame was taken
+     * @param motor - the motor
+     * @return encoder ticks per second
+     */
+    public double getVelocity(Motor motor) {
+        return velocities[motor.ordinal()];
+    }
+
+    /**
+     * Returns the sequence number of this frame, increasing by one for every frame taken
+     * @return sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the frame was taken
+     * @return MatchClock.nanoTime() at the time of the bulk read
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -10,16 +10,32 @@ import com.qualcomm.robotcore.hardware.NormalizedRGBA;
 import com.qualcomm.robotcore.hardware.Servo;
 
 import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.robot.ControlLoop;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.SensorFrame;
 import org.firstinspires.ftc.teamcode.robot.operations.ArmOperation;
 
-import java.util.Locale;
+import java.util.List;
 
-public class Arm {
+/**
+ * Our arm: a shoulder, a slide on the shoulder and a claw at the end of the slide.
+ *
+ * Moves to arm positions follow collision free paths, with the shoulder and the slide moving
+ * together along motion profiles that the control loop tracks every cycle. Manual moves and
+ * holding a position are left to the motor controllers.
+ */
+public class Arm implements ControlLoop.Controller {
     public static final int CORE_HEX_MOTOR_COUNT_PER_REV = 288;
     public static final int INOUT_GEAR_RATIO = 3;
 
     DcMotorEx slide, shoulder;
+    ProfiledMotor slideMotion, shoulderMotion;
+    ArmKinematics kinematics;
+    //the path being followed and the index of the position we are headed to on it
+    List<ArmPosition> path;
+    int segment;
 
     NormalizedColorSensor colorSensor;
     DistanceSensor distanceSensor;
@@ -30,6 +46,10 @@ public class Arm {
             slideRetained,
             elbowRetained;
 
+    ControlLoop controlLoop;
+    //positions we last commanded so that we don't have to read them back from the hub
+    int slideTarget, shoulderTarget;
+
     public Arm(HardwareMap hardwareMap) {
         //initialize our slide motor
         this.slide = hardwareMap.get(DcMotorEx.class, RobotConfig.SLIDE);
@@ -45,6 +65,20 @@ public class Arm {
 
         this.claw = hardwareMap.get(Servo.class, RobotConfig.CLAW);
 
+        this.shoulderMotion = new ProfiledMotor(shoulder, SensorFrame.Motor.Shoulder,
+                new ProfiledMotor.Gains(RobotConfig.SHOULDER_MAX_VELOCITY, RobotConfig.SHOULDER_MAX_ACCELERATION,
+                        RobotConfig.SHOULDER_KV, RobotConfig.SHOULDER_KA, RobotConfig.SHOULDER_K_STATIC,
+                        RobotConfig.SHOULDER_KP, RobotConfig.SHOULDER_KI, RobotConfig.SHOULDER_KD,
+                        RobotConfig.MAX_SHOULDER_POWER),
+                RobotConfig.ACCEPTABLE_WRIST_ERROR);
+        this.slideMotion = new ProfiledMotor(slide, SensorFrame.Motor.Slide,
+                new ProfiledMotor.Gains(RobotConfig.SLIDE_MAX_VELOCITY, RobotConfig.SLIDE_MAX_ACCELERATION,
+                        RobotConfig.SLIDE_KV, RobotConfig.SLIDE_KA, RobotConfig.SLIDE_K_STATIC,
+                        RobotConfig.SLIDE_KP, RobotConfig.SLIDE_KI, RobotConfig.SLIDE_KD,
+                        RobotConfig.MAX_SLIDE_POWER),
+                RobotConfig.ACCEPTABLE_SLIDE_ERROR);
+        this.kinematics = ArmKinematics.getInstance();
+
         colorSensor = hardwareMap.get(NormalizedColorSensor.class, RobotConfig.COLOR_SENSOR);
         distanceSensor = hardwareMap.get(DistanceSensor.class, RobotConfig.COLOR_SENSOR);
 
@@ -53,6 +87,124 @@ public class Arm {
     }
 
 
+    /**
+     * Have our motors read from the sensor frames of the specified control loop
+     * @param controlLoop - the control loop
+     */
+    public void setControlLoop(ControlLoop controlLoop) {
+        controlLoop.register(SensorFrame.Motor.Slide, slide);
+        controlLoop.register(SensorFrame.Motor.Shoulder, shoulder);
+        controlLoop.addController(this);
+        this.controlLoop = controlLoop;
+    }
+
+    /**
+     * Move the shoulder and the slide to the specified position, and set the claw.
+     *
+     * The arm follows the fastest path the ArmKinematics finds that keeps the claw off the floor,
+     * out of the chassis and within the expansion limit. On each straight segment of the path the
+     * shoulder and the slide move in step along motion profiles, so the arm stays on the segment.
+     * Without a control loop the motors are just sent to the position.
+     * @param position - where to move to
+     */
+    public void moveTo(ArmPosition position) {
+        claw.setPosition(position.getClaw());
+        if (controlLoop == null) {
+            setShoulderPosition(position.getShoulder());
+            setSlidePosition(position.getSlide());
+            return;
+        }
+        ArmPosition from = new ArmPosition(getSlidePosition(), getShoulderPosition(), position.getClaw());
+        List<ArmPosition> path = kinematics.getPath(from, position);
+        synchronized (this) {
+            this.path = path;
+            this.segment = 0;
+            startNextSegment(MatchClock.nanoTime());
+        }
+        controlLoop.wakeUp();
+    }
+
+    /**
+     * Start the shoulder and slide on the next segment of our path, moving in step so that both
+     * take the same time. Must be called holding our lock.
+     * @param startNanos - MatchClock.nanoTime() at which to start
+     * @return true if there was a segment to start
+     */
+    private boolean startNextSegment(long startNanos) {
+        while (path != null && segment < path.size() - 1) {
+            ArmPosition from = path.get(segment);
+            ArmPosition to = path.get(++segment);
+            this.shoulderTarget = to.getShoulder();
+            this.slideTarget = to.getSlide();
+            double pace = Math.min(shoulderMotion.getMaxPace(from.getShoulder(), to.getShoulder()),
+                    slideMotion.getMaxPace(from.getSlide(), to.getSlide()));
+            if (Double.isInfinite(pace)) {
+                //neither joint has anywhere to go on this segment
+                continue;
+            }
+            double paceChange = Math.min(shoulderMotion.getMaxPaceChange(from.getShoulder(), to.getShoulder()),
+                    slideMotion.getMaxPaceChange(from.getSlide(), to.getSlide()));
+            shoulderMotion.follow(ProfiledMotor.plan(from.getShoulder(), to.getShoulder(), pace, paceChange), startNanos);
+            slideMotion.follow(ProfiledMotor.plan(from.getSlide(), to.getSlide(), pace, paceChange), startNanos);
+            return true;
+        }
+        path = null;
+        return false;
+    }
+
+    /**
+     * Track the shoulder and slide profiles, called by the control loop every cycle. Once both
+     * have reached the end of a segment, they are started on the next one.
+     * @param frame - the sensor frame
+     * @return true while a move is in progress
+     */
+    @Override
+    public synchronized boolean update(SensorFrame frame) {
+        boolean shoulderMoving = shoulderMotion.update(frame);
+        boolean slideMoving = slideMotion.update(frame);
+        if (shoulderMoving || slideMoving) {
+            return true;
+        }
+        return startNextSegment(frame.getTimestamp());
+    }
+
+    /**
+     * Returns true if the arm is moving along a path
+     * @return true if a move is in progress
+     */
+    public synchronized boolean isMoving() {
+        return path != null || shoulderMotion.isFollowing() || slideMotion.isFollowing();
+    }
+
+    /**
+     * Stop following our path, leaving the motors for the caller to command
+     */
+    private synchronized void cancelPath() {
+        this.path = null;
+    }
+
+    /**
+     * Returns the current slide position, from the current sensor frame if we have a control loop
+     * @return encoder ticks
+     */
+    public int getSlidePosition() {
+        if (controlLoop != null) {
+            return controlLoop.getFrame().getPosition(SensorFrame.Motor.Slide);
+        }
+        return slide.getCurrentPosition();
+    }
+
+    /**
+     * Returns the current shoulder position, from the current sensor frame if we have a control loop
+     * @return encoder ticks
+     */
+    public int getShoulderPosition() {
+        if (controlLoop != null) {
+            return controlLoop.getFrame().getPosition(SensorFrame.Motor.Shoulder);
+        }
+        return shoulder.getCurrentPosition();
+    }
+
     public void ensureMotorDirections() {
         this.slide.setDirection(DcMotorSimple.Direction.REVERSE);
         this.shoulder.setDirection(DcMotorSimple.Direction.REVERSE);
@@ -63,18 +215,25 @@ public class Arm {
     }
 
     public void raiseShoulderIncrementally() {
-        setShoulderPosition(shoulder.getCurrentPosition() - 5);
+        setShoulderPosition(getShoulderPosition() - 5);
     }
 
     public void lowerShoulderIncrementally() {
-        setShoulderPosition(shoulder.getCurrentPosition() + 5);
+        setShoulderPosition(getShoulderPosition() + 5);
     }
 
     public void setClawPosition(double clawPosition) {
         this.claw.setPosition(clawPosition);
     }
 
+    /**
+     * Stop any move in progress and hold where we are
+     */
     public void stop() {
+        if (isMoving()) {
+            setShoulderPosition(getShoulderPosition());
+            setSlidePosition(getSlidePosition());
+        }
     }
 
     private void setPositions(ArmPosition armPosition) {
@@ -89,6 +248,9 @@ public class Arm {
      * @param position
      */
     public void setSlidePosition(int position) {
+        cancelPath();
+        this.slideMotion.cancel();
+        this.slideTarget = position;
         this.slide.setTargetPosition(position);
         this.slide.setMode(DcMotor.RunMode.RUN_TO_POSITION);
         this.slide.setPower(RobotConfig.MAX_SLIDE_POWER);
@@ -99,7 +261,7 @@ public class Arm {
      */
     public void retainSlide() {
         if (!slideRetained) {
-            setSlidePosition(slide.getCurrentPosition());
+            setSlidePosition(getSlidePosition());
             slideRetained = true;
         }
     }
@@ -110,6 +272,8 @@ public class Arm {
      * @param power
      */
     public void setSlidePower(double power) {
+        cancelPath();
+        this.slideMotion.cancel();
         this.slide.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
         this.slide.setPower(power);
         slideRetained = false;
@@ -121,6 +285,9 @@ public class Arm {
      * @param position
      */
     public void setShoulderPosition(int position) {
+        cancelPath();
+        this.shoulderMotion.cancel();
+        this.shoulderTarget = position;
         this.shoulder.setTargetPosition(position);
         this.shoulder.setMode(DcMotor.RunMode.RUN_TO_POSITION);
         this.shoulder.setPower(RobotConfig.MAX_SHOULDER_POWER);
@@ -131,7 +298,7 @@ public class Arm {
      */
     public void retainShoulder() {
         if (!elbowRetained) {
-            setShoulderPosition(shoulder.getCurrentPosition());
+            setShoulderPosition(getShoulderPosition());
             elbowRetained = true;
         }
     }
@@ -142,6 +309,8 @@ public class Arm {
      * @param power
      */
     public void setShoulderPower(double power) {
+        cancelPath();
+        this.shoulderMotion.cancel();
         this.shoulder.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
         this.shoulder.setPower(power * RobotConfig.MAX_WRIST_POWER);
         elbowRetained = false;
@@ -158,11 +327,11 @@ public class Arm {
     }
 
     public boolean slideIsWithinRange() {
-        return Math.abs(slide.getTargetPosition() - slide.getCurrentPosition()) <= RobotConfig.ACCEPTABLE_SLIDE_ERROR;
+        return Math.abs(slideTarget - getSlidePosition()) <= RobotConfig.ACCEPTABLE_SLIDE_ERROR;
     }
 
     public boolean shoulderIsWithinRange() {
-        return Math.abs(shoulder.getTargetPosition() - shoulder.getCurrentPosition()) <= RobotConfig.ACCEPTABLE_WRIST_ERROR;
+        return Math.abs(shoulderTarget - getShoulderPosition()) <= RobotConfig.ACCEPTABLE_WRIST_ERROR;
     }
 
 
@@ -177,13 +346,28 @@ public class Arm {
      * @return
      */
     public String getStatus() {
+        return appendStatus(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the status of the arm to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
         NormalizedRGBA colors = colorSensor.getNormalizedColors();
-        return String.format(Locale.getDefault(),
-                "Slide:%d->%d@%.2f, Shoulder:%d->%d@%.2f, Claw:%.2f, Color:%.3f,%.3f,%.3f, Distance:%.2f",
-                slide.getCurrentPosition(), slide.getTargetPosition(), slide.getPower(),
-                shoulder.getCurrentPosition(), shoulder.getTargetPosition(), shoulder.getPower(),
-                claw.getPosition(), colors.red, colors.blue, colors.green,
-                distanceSensor.getDistance(DistanceUnit.MM));
+        builder.append("Slide:").append(getSlidePosition()).append("->").append(slideTarget).append('@');
+        MatchTelemetry.append(builder, slide.getPower(), 2);
+        builder.append(", Shoulder:").append(getShoulderPosition()).append("->").append(shoulderTarget).append('@');
+        MatchTelemetry.append(builder, shoulder.getPower(), 2);
+        builder.append(", Claw:");
+        MatchTelemetry.append(builder, claw.getPosition(), 2);
+        builder.append(", Color:");
+        MatchTelemetry.append(builder, colors.red, 3).append(',');
+        MatchTelemetry.append(builder, colors.blue, 3).append(',');
+        MatchTelemetry.append(builder, colors.green, 3);
+        builder.append(", Distance:");
+        return MatchTelemetry.append(builder, distanceSensor.getDistance(DistanceUnit.MM), 2);
     }
 
     public void clawReleasePosition() {
@@ -0,0 +1,447 @@
+package org.firstinspires.ftc.teamcode.robot.components;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A kinematic model of our arm, and the fastest legal paths between arm positions.
+ *
+ * The shoulder swings the slide about a pivot on the chassis and the slide carries the claw out
+ * along it, so for an ArmPosition the claw tip is at
+ *   forward = SHOULDER_PIVOT_FORWARD + length * cos(angle)
+ *   height  = SHOULDER_PIVOT_HEIGHT  + length * sin(angle)
+ * with the angle and length worked out from the shoulder and slide ticks. A position is
+ * forbidden if the tip would be closer to the floor than ARM_FLOOR_CLEARANCE, inside the chassis
+ * below CHASSIS_HEIGHT, or out so far that the robot spans more than MAX_HORIZONTAL_EXTENT.
+ *
+ * Paths are planned in joint space on a grid of ARM_PLANNING_RESOLUTION ticks, with A* taking
+ * as the cost of a step the time the slower of the two joints needs for it, so that moving
+ * both joints at once is free. The grid path is then shortened to the fewest straight segments
+ * that stay legal. Paths between all the ArmPositions named in RobotConfig are worked out once,
+ * when the arm is created, and kept by the index of each named position. Moves are started from
+ * the control loop, so getPath never searches: a move between positions close to named ones uses
+ * the path kept for them, and any other move goes by way of the named positions nearest its ends.
+ */
+public class ArmKinematics {
+    private static ArmKinematics instance;
+
+    private final int shoulderSteps, slideSteps;
+    //whether each grid point is legal, indexed by shoulder step * slideSteps + slide step
+    private final boolean[] legal;
+    private final Map<String, ArmPosition> namedPositions;
+    //the named positions, whose index identifies them in paths
+    private final ArmPosition[] named;
+    //path from each named position to each other, at from index * named.length + to index
+    private final List<List<ArmPosition>> paths = new ArrayList<>();
+
+    /**
+     * Returns the kinematics of our arm, building the forbidden region and the paths between
+     * named positions the first time
+     * @return the arm kinematics
+     */
+    synchronized public static ArmKinematics getInstance() {
+        if (instance == null) {
+            instance = new ArmKinematics();
+        }
+        return instance;
+    }
+
+    private ArmKinematics() {
+        long start = System.currentTimeMillis();
+        this.shoulderSteps = RobotConfig.SHOULDER_MAX_POSITION / RobotConfig.ARM_PLANNING_RESOLUTION + 1;
+        this.slideSteps = RobotConfig.SLIDE_MAX_POSITION / RobotConfig.ARM_PLANNING_RESOLUTION + 1;
+        this.legal = new boolean[shoulderSteps * slideSteps];
+        int forbidden = 0;
+        for (int i = 0; i < shoulderSteps; i++) {
+            for (int j = 0; j < slideSteps; j++) {
+                legal[i * slideSteps + j] = isLegal(i * RobotConfig.ARM_PLANNING_RESOLUTION,
+                        j * RobotConfig.ARM_PLANNING_RESOLUTION);
+                if (!legal[i * slideSteps + j]) {
+                    forbidden++;
+                }
+            }
+        }
+        this.namedPositions = findNamedPositions();
+        this.named = namedPositions.values().toArray(new ArmPosition[0]);
+        for (Map.Entry<String, ArmPosition> from : namedPositions.entrySet()) {
+            if (!isLegal(from.getValue().getShoulder(), from.getValue().getSlide())) {
+                Match.log("Named arm position " + from.getKey() + " is in the forbidden region");
+            }
+        }
+        for (ArmPosition from : named) {
+            for (ArmPosition to : named) {
+                paths.add(from == to ? null : Collections.unmodifiableList(findPath(from, to)));
+            }
+        }
+        Match.log(String.format(Locale.getDefault(),
+                "Arm kinematics: %d of %d grid points forbidden, %d paths between %d named positions in %d msecs",
+                forbidden, legal.length, namedPositions.size() * (namedPositions.size() - 1),
+                namedPositions.size(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Returns the ArmPositions declared in RobotConfig, by name
+     * @return the named positions
+     */
+    private static Map<String, ArmPosition> findNamedPositions() {
+        Map<String, ArmPosition> positions = new LinkedHashMap<>();
+        for (Field field : RobotConfig.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == ArmPosition.class) {
+                try {
+                    positions.put(field.getName(), (ArmPosition) field.get(null));
+                } catch (IllegalAccessException e) {
+                    Match.log("Unable to read arm position " + field.getName() + ": " + e);
+                }
+            }
+        }
+        return positions;
+    }
+
+    public Map<String, ArmPosition> getNamedPositions() {
+        return Collections.unmodifiableMap(namedPositions);
+    }
+
+    /**
+     * Returns the angle of the slide above horizontal
+     * @param shoulder - shoulder position in ticks
+     * @return radians
+     */
+    public static double getAngle(double shoulder) {
+        return RobotConfig.SHOULDER_ANGLE_AT_ZERO + shoulder / RobotConfig.SHOULDER_TICKS_PER_RADIAN;
+    }
+
+    /**
+     * Returns the distance from the shoulder pivot to the claw tip
+     * @param slide - slide position in ticks
+     * @return mm
+     */
+    public static double getLength(double slide) {
+        return RobotConfig.SLIDE_RETRACTED_LENGTH + slide / RobotConfig.SLIDE_TICKS_PER_MM;
+    }
+
+    /**
+     * Returns how far forward of the robot center the claw tip is
+     * @param shoulder - shoulder position in ticks
+     * @param slide - slide position in ticks
+     * @return mm, negative behind the center
+     */
+    public static double getReach(double shoulder, double slide) {
+        return RobotConfig.SHOULDER_PIVOT_FORWARD + getLength(slide) * Math.cos(getAngle(shoulder));
+    }
+
+    /**
+     * Returns how high off the floor the claw tip is
+     * @param shoulder - shoulder position in ticks
+     * @param slide - slide position in ticks
+     * @return mm
+     */
+    public static double getHeight(double shoulder, double slide) {
+        return RobotConfig.SHOULDER_PIVOT_HEIGHT + getLength(slide) * Math.sin(getAngle(shoulder));
+    }
+
+    /**
+     * Checks if the arm can be in the specified position without hitting the floor or the
+     * chassis or breaking the expansion limit
+     * @param shoulder - shoulder position in ticks
+     * @param slide - slide position in ticks
+     * @return true if the position is legal
+     */
+    public static boolean isLegal(double shoulder, double slide) {
+        double reach = getReach(shoulder, slide);
+        double height = getHeight(shoulder, slide);
+        if (height < RobotConfig.ARM_FLOOR_CLEARANCE) {
+            return false;
+        }
+        if (height < RobotConfig.CHASSIS_HEIGHT
+                && reach <= RobotConfig.ROBOT_CENTER_FROM_FRONT && reach >= -RobotConfig.ROBOT_CENTER_FROM_BACK) {
+            return false;
+        }
+        double extent = Math.max(RobotConfig.ROBOT_CENTER_FROM_FRONT, reach)
+                - Math.min(-RobotConfig.ROBOT_CENTER_FROM_BACK, reach);
+        return extent <= RobotConfig.MAX_HORIZONTAL_EXTENT;
+    }
+
+    /**
+     * Checks if every point on the straight joint space line between two positions is legal
+     * @param from - one end
+     * @param to - the other end
+     * @return true if the arm can move straight from one to the other
+     */
+    public static boolean isLegal(ArmPosition from, ArmPosition to) {
+        int steps = Math.max(1, 2 * Math.max(Math.abs(to.getShoulder() - from.getShoulder()),
+                Math.abs(to.getSlide() - from.getSlide())) / RobotConfig.ARM_PLANNING_RESOLUTION);
+        for (int i = 0; i <= steps; i++) {
+            double fraction = (double) i / steps;
+            if (!isLegal(from.getShoulder() + fraction * (to.getShoulder() - from.getShoulder()),
+                    from.getSlide() + fraction * (to.getSlide() - from.getSlide()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time it takes to move straight from one position to another with both joints
+     * moving in step, ignoring acceleration
+     * @param shoulderChange - ticks the shoulder moves
+     * @param slideChange - ticks the slide moves
+     * @return seconds
+     */
+    private static double getTime(double shoulderChange, double slideChange) {
+        return Math.max(Math.abs(shoulderChange) / RobotConfig.SHOULDER_MAX_VELOCITY,
+                Math.abs(slideChange) / RobotConfig.SLIDE_MAX_VELOCITY);
+    }
+
+    /**
+     * Returns the path to take between two positions, without searching for one. If the arm is
+     * close to a named position and going to one, the path kept for them is used. Otherwise the
+     * arm moves straight if it can, or goes by way of the named positions nearest each end that it
+     * can reach in a straight line.
+     * @param from - where the arm is
+     * @param to - where it is going
+     * @return the positions to go through, starting with from and ending with to
+     */
+    public List<ArmPosition> getPath(ArmPosition from, ArmPosition to) {
+        List<ArmPosition> path = new ArrayList<>();
+        path.add(from);
+        int fromIndex = findNamedPosition(from), toIndex = findNamedPosition(to);
+        boolean fromNamed = fromIndex >= 0, toNamed = toIndex >= 0;
+        if (!fromNamed || !toNamed) {
+            if (isLegal(from, to)) {
+                path.add(to);
+                return path;
+            }
+            if (!fromNamed) {
+                fromIndex = findNearestReachable(from);
+            }
+            if (!toNamed) {
+                toIndex = findNearestReachable(to);
+            }
+            if (fromIndex < 0 || toIndex < 0) {
+                Match.log("No named arm position on the way from " + from + " to " + to + ", moving straight");
+                path.add(to);
+                return path;
+            }
+        }
+        //a named position the arm is close to is replaced by where the arm actually is or is going
+        if (!fromNamed) {
+            path.add(named[fromIndex]);
+        }
+        if (fromIndex != toIndex) {
+            List<ArmPosition> kept = paths.get(fromIndex * named.length + toIndex);
+            path.addAll(kept.subList(1, kept.size() - 1));
+        }
+        if (!toNamed && (fromNamed || fromIndex != toIndex)) {
+            path.add(named[toIndex]);
+        }
+        path.add(to);
+        return path;
+    }
+
+    /**
+     * Returns the index of the named position the specified position is within
+     * ARM_NAMED_POSITION_TOLERANCE of
+     * @param position - the position
+     * @return the index of the named position, -1 if there is none that close
+     */
+    private int findNamedPosition(ArmPosition position) {
+        for (int i = 0; i < named.length; i++) {
+            if (Math.abs(named[i].getShoulder() - position.getShoulder()) <= RobotConfig.ARM_NAMED_POSITION_TOLERANCE
+                    && Math.abs(named[i].getSlide() - position.getSlide()) <= RobotConfig.ARM_NAMED_POSITION_TOLERANCE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the named position quickest to move to from the specified position in
+     * a straight line that stays legal
+     * @param position - the position
+     * @return the index of the named position, -1 if none can be reached in a straight line
+     */
+    private int findNearestReachable(ArmPosition position) {
+        int nearest = -1;
+        double nearestTime = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < named.length; i++) {
+            double time = getTime(named[i].getShoulder() - position.getShoulder(), named[i].getSlide() - position.getSlide());
+            if (time < nearestTime && isLegal(position, named[i])) {
+                nearestTime = time;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Find the fastest legal path between two positions, by searching the grid. Only done while
+     * the paths between named positions are worked out, as the search is too slow for the control
+     * loop.
+     * @param from - where the arm is
+     * @param to - where it is going
+     * @return the positions to go through, starting with from and ending with to
+     */
+    private List<ArmPosition> findPath(ArmPosition from, ArmPosition to) {
+        List<ArmPosition> path = new ArrayList<>();
+        path.add(from);
+        if (isLegal(from, to)) {
+            path.add(to);
+            return path;
+        }
+        int start = nearestLegal(from), goal = nearestLegal(to);
+        int[] cameFrom = search(start, goal);
+        if (start < 0 || goal < 0 || cameFrom == null) {
+            Match.log("No legal arm path from " + from + " to " + to + ", moving straight");
+            path.add(to);
+            return path;
+        }
+        List<ArmPosition> gridPath = new ArrayList<>();
+        for (int node = goal; node != start; node = cameFrom[node]) {
+            gridPath.add(toPosition(node, to.getClaw()));
+        }
+        gridPath.add(toPosition(start, to.getClaw()));
+        Collections.reverse(gridPath);
+        path.addAll(gridPath);
+        path.add(to);
+        return shorten(path);
+    }
+
+    /**
+     * A* over the grid from one grid point to another
+     * @param start - index of the start point
+     * @param goal - index of the goal point
+     * @return the grid point each point was reached from, null if the goal can't be reached
+     */
+    private int[] search(final int start, final int goal) {
+        if (start < 0 || goal < 0) {
+            return null;
+        }
+        final double[] estimate = new double[legal.length];
+        double[] cost = new double[legal.length];
+        int[] cameFrom = new int[legal.length];
+        boolean[] closed = new boolean[legal.length];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        PriorityQueue<Integer> open = new PriorityQueue<>(64, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(estimate[a], estimate[b]);
+            }
+        });
+        cost[start] = 0;
+        estimate[start] = heuristic(start, goal);
+        open.add(start);
+        while (!open.isEmpty()) {
+            int node = open.poll();
+            if (node == goal) {
+                return cameFrom;
+            }
+            if (closed[node]) {
+                continue;
+            }
+            closed[node] = true;
+            int i = node / slideSteps, j = node % slideSteps;
+            for (int di = -1; di <= 1; di++) {
+                for (int dj = -1; dj <= 1; dj++) {
+                    int ni = i + di, nj = j + dj;
+                    if ((di == 0 && dj == 0) || ni < 0 || nj < 0 || ni >= shoulderSteps || nj >= slideSteps) {
+                        continue;
+                    }
+                    int neighbor = ni * slideSteps + nj;
+                    if (!legal[neighbor] || closed[neighbor]) {
+                        continue;
+                    }
+                    double newCost = cost[node] + getTime(di * RobotConfig.ARM_PLANNING_RESOLUTION,
+                            dj * RobotConfig.ARM_PLANNING_RESOLUTION);
+                    if (newCost < cost[neighbor]) {
+                        cost[neighbor] = newCost;
+                        cameFrom[neighbor] = node;
+                        //queue again rather than re-order, the stale entry is skipped once closed
+                        estimate[neighbor] = newCost + heuristic(neighbor, goal);
+                        open.add(neighbor);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private double heuristic(int node, int goal) {
+        return getTime((node / slideSteps - goal / slideSteps) * RobotConfig.ARM_PLANNING_RESOLUTION,
+                (node % slideSteps - goal % slideSteps) * RobotConfig.ARM_PLANNING_RESOLUTION);
+    }
+
+    /**
+     * Returns the legal grid point closest to a position
+     * @param position - the position
+     * @return index of the grid point, -1 if there is no legal one
+     */
+    private int nearestLegal(ArmPosition position) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int node = 0; node < legal.length; node++) {
+            if (legal[node]) {
+                double distance = getTime(position.getShoulder() - (node / slideSteps) * RobotConfig.ARM_PLANNING_RESOLUTION,
+                        position.getSlide() - (node % slideSteps) * RobotConfig.ARM_PLANNING_RESOLUTION);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = node;
+                }
+            }
+        }
+        return best;
+    }
+
+    private ArmPosition toPosition(int node, double claw) {
+        return new ArmPosition((node % slideSteps) * RobotConfig.ARM_PLANNING_RESOLUTION,
+                (node / slideSteps) * RobotConfig.ARM_PLANNING_RESOLUTION, claw);
+    }
+
+    /**
+     * Replace runs of the path by straight segments wherever those are legal
+     * @param path - the path
+     * @return the shortened path
+     */
+    private static List<ArmPosition> shorten(List<ArmPosition> path) {
+        List<ArmPosition> shortened = new ArrayList<>();
+        int current = 0;
+        shortened.add(path.get(current));
+        while (current < path.size() - 1) {
+            int next = current + 1;
+            for (int candidate = path.size() - 1; candidate > next; candidate--) {
+                if (isLegal(path.get(current), path.get(candidate))) {
+                    next = candidate;
+                    break;
+                }
+            }
+            shortened.add(path.get(next));
+            current = next;
+        }
+        return shortened;
+    }
+
+    /**
+     * Returns how long a path takes with both joints moving in step on each segment
+     * @param path - the path
+     * @return seconds, ignoring acceleration
+     */
+    public static double getTime(List<ArmPosition> path) {
+        double time = 0;
+        for (int i = 1; i < path.size(); i++) {
+            time += getTime(path.get(i).getShoulder() - path.get(i - 1).getShoulder(),
+                    path.get(i).getSlide() - path.get(i - 1).getSlide());
+        }
+        return time;
+    }
+}
@@ -1,5 +1,7 @@
 package org.firstinspires.ftc.teamcode.robot.components;
 
+import java.util.Locale;
+
 /**
  * This represents the position of our slide with the elbow and the claw
  */
@@ -24,4 +26,9 @@ public class ArmPosition {
     public int getShoulder() {
         return shoulder;
     }
+
+    public String toString() {
+        return String.format(Locale.getDefault(), "Slide:%d, Shoulder:%d, Claw:%.2f",
+                this.slide, this.shoulder, this.claw);
+    }
 }
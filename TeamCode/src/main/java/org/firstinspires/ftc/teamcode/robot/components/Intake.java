@@ -4,13 +4,16 @@ import com.qualcomm.robotcore.hardware.DcMotor;
 import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.robot.ControlLoop;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
-
-import java.util.Locale;
+import org.firstinspires.ftc.teamcode.robot.SensorFrame;
 
 public class Intake {
     DcMotorEx intakeMotor;
     boolean eating = false, expelling = false;
+    ControlLoop controlLoop;
+    int intakeTarget;
 
     public Intake(HardwareMap hardwareMap) {
 
@@ -21,6 +24,22 @@ public class Intake {
         this.intakeMotor.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
 
     }
+    /**
+     * Have our motor read from the sensor frames of the specified control loop
+     * @param controlLoop - the control loop
+     */
+    public void setControlLoop(ControlLoop controlLoop) {
+        controlLoop.register(SensorFrame.Motor.Intake, intakeMotor);
+        this.controlLoop = controlLoop;
+    }
+
+    private int getIntakePosition() {
+        if (controlLoop != null) {
+            return controlLoop.getFrame().getPosition(SensorFrame.Motor.Intake);
+        }
+        return intakeMotor.getCurrentPosition();
+    }
+
     /**
      * Set the inout motor power
      * @param power
@@ -37,8 +56,8 @@ public class Intake {
         this.expelling = false;
     }
     public void abstain() {
-        this.intakeMotor.setTargetPosition(
-                this.intakeMotor.getCurrentPosition());
+        this.intakeTarget = getIntakePosition();
+        this.intakeMotor.setTargetPosition(intakeTarget);
         this.intakeMotor.setMode(DcMotor.RunMode.RUN_TO_POSITION);
         this.intakeMotor.setPower(1);
         this.eating = false;
@@ -66,12 +85,19 @@ public class Intake {
         this.intakeMotor.setPower(0);
     }
     public boolean intakeWithinRange() {
-        return (Math.abs(intakeMotor.getTargetPosition() - intakeMotor.getCurrentPosition()) < 5);
+        return (Math.abs(intakeTarget - getIntakePosition()) < 5);
     }
     public String getStatus() {
-        return String.format(Locale.getDefault(),
-                "Intake:%d->%d@%.2f",
-                intakeMotor.getCurrentPosition(), intakeMotor.getTargetPosition(), intakeMotor.getPower()
-                );
+        return appendStatus(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the status of the intake to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        builder.append("Intake:").append(getIntakePosition()).append("->").append(intakeTarget).append('@');
+        return MatchTelemetry.append(builder, intakeMotor.getPower(), 2);
     }
 }
@@ -0,0 +1,138 @@
+package org.firstinspires.ftc.teamcode.robot.components;
+
+/**
+ * A trapezoidal motion profile from rest to rest: accelerate at the maximum acceleration up to the
+ * maximum velocity, cruise, and decelerate to a stop at the goal. Moves too short to reach the
+ * maximum velocity become triangular.
+ *
+ * Units are whatever the caller uses, encoder ticks and seconds for the arm.
+ */
+public class MotionProfile {
+    private final double start, goal, direction;
+    private final double acceleration;
+    private final double peakVelocity;
+    private final double accelerationTime, cruiseTime, duration;
+    private final double accelerationDistance, distance;
+
+    /**
+     * Plan a move
+     * @param start - where the move starts
+     * @param goal - where the move ends
+     * @param maxVelocity - the fastest to move, units per second
+     * @param maxAcceleration - the fastest to speed up or slow down, units per second per second
+     */
+    public MotionProfile(double start, double goal, double maxVelocity, double maxAcceleration) {
+        this.start = start;
+        this.goal = goal;
+        this.direction = Math.signum(goal - start);
+        this.distance = Math.abs(goal - start);
+        this.acceleration = maxAcceleration;
+        if (distance == 0) {
+            //nowhere to go, and the limits may well be zero too
+            this.peakVelocity = 0;
+        }
+        else if (distance * maxAcceleration < maxVelocity * maxVelocity) {
+            //not enough room to get up to speed
+            this.peakVelocity = Math.sqrt(distance * maxAcceleration);
+        }
+        else {
+            this.peakVelocity = maxVelocity;
+        }
+        this.accelerationTime = peakVelocity == 0 ? 0 : peakVelocity / maxAcceleration;
+        this.accelerationDistance = peakVelocity * accelerationTime / 2;
+        this.cruiseTime = peakVelocity == 0 ? 0 : (distance - 2 * accelerationDistance) / peakVelocity;
+        this.duration = 2 * accelerationTime + cruiseTime;
+    }
+
+    /**
+     * Returns how far along the move we should be
+     * @param time - seconds since the start of the move
+     * @return distance travelled, always positive
+     */
+    private double getTravel(double time) {
+        if (time <= 0) {
+            return 0;
+        }
+        else if (time < accelerationTime) {
+            return acceleration * time * time / 2;
+        }
+        else if (time < accelerationTime + cruiseTime) {
+            return accelerationDistance + peakVelocity * (time - accelerationTime);
+        }
+        else if (time < duration) {
+            double remaining = duration - time;
+            return distance - acceleration * remaining * remaining / 2;
+        }
+        return distance;
+    }
+
+    /**
+     * Returns where we should be
+     * @param time - seconds since the start of the move
+     * @return position
+     */
+    public double getPosition(double time) {
+        return start + direction * getTravel(time);
+    }
+
+    /**
+     * Returns how fast we should be moving
+     * @param time - seconds since the start of the move
+     * @return velocity, negative when moving toward smaller positions
+     */
+    public double getVelocity(double time) {
+        double speed;
+        if (time <= 0 || time >= duration) {
+            speed = 0;
+        }
+        else if (time < accelerationTime) {
+            speed = acceleration * time;
+        }
+        else if (time < accelerationTime + cruiseTime) {
+            speed = peakVelocity;
+        }
+        else {
+            speed = acceleration * (duration - time);
+        }
+        return direction * speed;
+    }
+
+    /**
+     * Returns how fast we should be speeding up
+     * @param time - seconds since the start of the move
+     * @return acceleration, negative when speeding up toward smaller positions or slowing down
+     * toward larger ones
+     */
+    public double getAcceleration(double time) {
+        if (time <= 0 || time >= duration) {
+            return 0;
+        }
+        else if (time < accelerationTime) {
+            return direction * acceleration;
+        }
+        else if (time < accelerationTime + cruiseTime) {
+            return 0;
+        }
+        return -direction * acceleration;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns how long the move takes to get up to speed, which is also how long it takes to stop
+     * @return seconds
+     */
+    public double getAccelerationTime() {
+        return accelerationTime;
+    }
+
+    public double getStart() {
+        return start;
+    }
+
+    public double getGoal() {
+        return goal;
+    }
+}
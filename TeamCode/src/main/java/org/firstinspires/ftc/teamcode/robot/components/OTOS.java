@@ -12,6 +12,8 @@ import org.firstinspires.ftc.teamcode.game.Match;
  */
 public class OTOS {
     SparkFunOTOS myOtos;
+    //we don't use the acceleration, but the sensor reads it along with position and velocity
+    private final SparkFunOTOS.Pose2D acceleration = new SparkFunOTOS.Pose2D();
 
     public void init(HardwareMap hardwareMap) {
         this.myOtos = hardwareMap.get(SparkFunOTOS.class, "otos");
@@ -21,6 +23,15 @@ public class OTOS {
     public SparkFunOTOS.Pose2D getPose() {
         return this.myOtos.getPosition();
     }
+
+    /**
+     * Read position and velocity in one go, in inches and degrees in the frame the sensor tracks in
+     * @param position - where to put the position
+     * @param velocity - where to put the velocity
+     */
+    public void getMotion(SparkFunOTOS.Pose2D position, SparkFunOTOS.Pose2D velocity) {
+        this.myOtos.getPosVelAcc(position, velocity, acceleration);
+    }
     private void configureOtos() {
         Match.log("Configuring OTOS...");
 
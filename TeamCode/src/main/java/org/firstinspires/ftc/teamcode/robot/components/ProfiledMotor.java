@@ -0,0 +1,182 @@
+package org.firstinspires.ftc.teamcode.robot.components;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.util.Range;
+
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.SensorFrame;
+
+/**
+ * Moves a motor along a motion profile, once every control loop cycle.
+ *
+ * The power is the feedforward for the profile's velocity and acceleration, plus a friction term,
+ * plus PID on how far the motor is from where the profile says it should be. Once the profile is
+ * over and the motor is within tolerance of the goal, or it has had ARM_SETTLE_TIMEOUT to get
+ * there, the motor is handed over to RUN_TO_POSITION to hold the goal.
+ */
+public class ProfiledMotor {
+    /**
+     * Gains of a profiled motor
+     */
+    public static class Gains {
+        final double maxVelocity, maxAcceleration;
+        final double kV, kA, kStatic;
+        final double kP, kI, kD;
+        final double maxPower;
+
+        /**
+         * Create gains
+         * @param maxVelocity - fastest to move, ticks per second
+         * @param maxAcceleration - fastest to speed up or slow down, ticks per second per second
+         * @param kV - power per tick per second of profile velocity
+         * @param kA - power per tick per second per second of profile acceleration
+         * @param kStatic - power to overcome friction, in the direction of travel
+         * @param kP - power per tick of position error
+         * @param kI - power per tick-second of accumulated position error
+         * @param kD - power per tick per second of velocity error
+         * @param maxPower - the most power to apply
+         */
+        public Gains(double maxVelocity, double maxAcceleration, double kV, double kA, double kStatic,
+                     double kP, double kI, double kD, double maxPower) {
+            this.maxVelocity = maxVelocity;
+            this.maxAcceleration = maxAcceleration;
+            this.kV = kV;
+            this.kA = kA;
+            this.kStatic = kStatic;
+            this.kP = kP;
+            this.kI = kI;
+            this.kD = kD;
+            this.maxPower = maxPower;
+        }
+    }
+
+    private final DcMotorEx motor;
+    private final SensorFrame.Motor id;
+    private final Gains gains;
+    private final int tolerance;
+
+    private MotionProfile profile;
+    //MatchClock.nanoTime() at which the profile starts
+    private long startNanos;
+    private long lastNanos;
+    private double integral;
+
+    /**
+     * Create a profiled motor
+     * @param motor - the motor
+     * @param id - how the motor is identified in sensor frames
+     * @param gains - its gains
+     * @param tolerance - encoder ticks from the goal that count as having reached it
+     */
+    public ProfiledMotor(DcMotorEx motor, SensorFrame.Motor id, Gains gains, int tolerance) {
+        this.motor = motor;
+        this.id = id;
+        this.gains = gains;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Returns the largest fraction of a move we can cover per second
+     * @param from - where the motor is, encoder ticks
+     * @param to - where it should go, encoder ticks
+     * @return fraction per second, infinite if there is nowhere to go
+     */
+    public double getMaxPace(int from, int to) {
+        return gains.maxVelocity / Math.abs(to - from);
+    }
+
+    /**
+     * Returns the largest change in the fraction of a move covered per second, per second
+     * @param from - where the motor is, encoder ticks
+     * @param to - where it should go, encoder ticks
+     * @return fraction per second per second, infinite if there is nowhere to go
+     */
+    public double getMaxPaceChange(int from, int to) {
+        return gains.maxAcceleration / Math.abs(to - from);
+    }
+
+    /**
+     * Plan a move from rest at a pace other motors can keep to, so that they all move in step
+     * and arrive together
+     * @param from - where the motor is, encoder ticks
+     * @param to - where it should go, encoder ticks
+     * @param pace - fraction of the move to cover per second at most, no more than getMaxPace()
+     * @param paceChange - most change in pace per second, no more than getMaxPaceChange()
+     * @return the plan
+     */
+    public static MotionProfile plan(int from, int to, double pace, double paceChange) {
+        int distance = Math.abs(to - from);
+        return new MotionProfile(from, to, pace * distance, paceChange * distance);
+    }
+
+    /**
+     * Start following the specified profile
+     * @param profile - the profile
+     * @param startNanos - MatchClock.nanoTime() at which to start, until then the motor holds the
+     *                   start of the profile
+     */
+    public synchronized void follow(MotionProfile profile, long startNanos) {
+        if (this.profile == null) {
+            motor.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        }
+        this.profile = profile;
+        this.startNanos = startNanos;
+        this.lastNanos = 0;
+        this.integral = 0;
+    }
+
+    /**
+     * Stop following the profile, leaving the motor for the caller to command
+     */
+    public synchronized void cancel() {
+        this.profile = null;
+    }
+
+    public synchronized boolean isFollowing() {
+        return profile != null;
+    }
+
+    /**
+     * Set the motor power for where the profile is at the time of the frame
+     * @param frame - the sensor frame of this cycle
+     * @return true if we are still following the profile
+     */
+    public synchronized boolean update(SensorFrame frame) {
+        if (profile == null) {
+            return false;
+        }
+        long now = frame.getTimestamp();
+        double time = (now - startNanos) / 1e9;
+        double position = frame.getPosition(id);
+        double error = profile.getPosition(time) - position;
+        if (time >= profile.getDuration()
+                && (Math.abs(profile.getGoal() - position) <= tolerance
+                    || time >= profile.getDuration() + RobotConfig.ARM_SETTLE_TIMEOUT / 1000.0)) {
+            //hand over to the motor controller to hold the goal
+            motor.setTargetPosition((int) Math.round(profile.getGoal()));
+            profile = null;
+            motor.setMode(DcMotor.RunMode.RUN_TO_POSITION);
+            motor.setPower(gains.maxPower);
+            return false;
+        }
+        if (lastNanos != 0) {
+            integral += error * (now - lastNanos) / 1e9;
+            //don't let the integral alone ask for more than all of our power
+            if (gains.kI != 0) {
+                double limit = gains.maxPower / gains.kI;
+                integral = Range.clip(integral, -limit, limit);
+            }
+        }
+        lastNanos = now;
+
+        double velocity = profile.getVelocity(time);
+        double power = gains.kV * velocity + gains.kA * profile.getAcceleration(time)
+                + gains.kStatic * Math.signum(velocity)
+                + gains.kP * error + gains.kI * integral
+                + gains.kD * (velocity - frame.getVelocity(id));
+        power = Range.clip(power, -gains.maxPower, gains.maxPower);
+        motor.setPower(power);
+        return true;
+    }
+}
@@ -0,0 +1,188 @@
+package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.qualcomm.robotcore.util.Range;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.robot.ControlLoop;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.SensorFrame;
+import org.firstinspires.ftc.teamcode.robot.components.vision.AprilTagFrameProcessor;
+import org.firstinspires.ftc.teamcode.robot.operations.DriveToAprilTag;
+import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Drives the robot to a spot in front of an AprilTag.
+ *
+ * Each camera frame in which the tag is seen gives us a goal: where the robot should be, in the
+ * frame of our localizer, to have the tag the right distance ahead of and to the side of it, facing
+ * the tag. The goal is worked out from where we were when the frame was taken, so the time it took
+ * to find the tag doesn't matter. Between frames, and when the tag drops out of view, every control
+ * loop cycle drives toward the latest goal using our pose, by chassis velocity so the drive train's
+ * acceleration limits keep the robot from lurching as goals come in.
+ *
+ * We have arrived once we have been within tolerance of the goal for a few cycles. If the tag is
+ * never seen, or drops out for too long before we arrive, we give up instead.
+ */
+public class AprilTagTracker implements ControlLoop.Controller, AprilTagFrameProcessor.Listener {
+    public enum Result {
+        Idle, Tracking, Arrived, NotSeen, Lost
+    }
+
+    private final DriveTrain driveTrain;
+    private final FusedLocalizer localizer;
+
+    private Result result = Result.Idle;
+    //how far to the right and ahead of the camera the tag should be, in inches
+    private double right, ahead;
+    private long startNanos;
+    //where we want to be, in the frame of the localizer
+    private boolean hasGoal;
+    private double goalX, goalY, goalHeading;
+    private long lastSeenNanos;
+    private int settledCycles;
+    private final double[] poseAtCapture = new double[3];
+
+    public AprilTagTracker(DriveTrain driveTrain, FusedLocalizer localizer) {
+        this.driveTrain = driveTrain;
+        this.localizer = localizer;
+    }
+
+    /**
+     * Start driving to the tag
+     * @param right - how far to the right of the camera the tag should be, inches
+     * @param ahead - how far in front of the camera the tag should be, inches
+     */
+    public synchronized void start(double right, double ahead) {
+        this.right = right;
+        this.ahead = ahead;
+        this.startNanos = MatchClock.nanoTime();
+        this.hasGoal = false;
+        this.settledCycles = 0;
+        this.result = Result.Tracking;
+    }
+
+    /**
+     * Stop driving to the tag, leaving the motors to the caller
+     */
+    public synchronized void stop() {
+        if (result == Result.Tracking) {
+            result = Result.Idle;
+        }
+    }
+
+    public synchronized Result getResult() {
+        return result;
+    }
+
+    /**
+     * Work out a new goal from the first tag seen in the frame
+     * @param detections - the tags seen
+     * @param captureTimeNanos - System.nanoTime() when the frame was taken
+     */
+    @Override
+    public synchronized void newFrame(List<AprilTagDetection> detections, long captureTimeNanos) {
+        if (result != Result.Tracking) {
+            return;
+        }
+        AprilTagDetection tag = null;
+        for (int i = 0; i < detections.size() && tag == null; i++) {
+            if (detections.get(i).ftcPose != null) {
+                tag = detections.get(i);
+            }
+        }
+        //our pose history is kept in match time
+        long captureNanos = MatchClock.fromSystemNanos(captureTimeNanos);
+        if (tag == null || !localizer.getPoseAt(captureNanos, poseAtCapture)) {
+            return;
+        }
+        //where the tag was, ahead of and to the left of the center of the robot, when the frame was
+        //taken: turned by the yaw of the camera and moved by where the camera sits on the robot
+        double cameraYaw = RobotConfig.CAMERA_ORIENTATION.getYaw(AngleUnit.RADIANS);
+        double cameraAhead = RobotConfig.CAMERA_POSITION.unit.toInches(RobotConfig.CAMERA_POSITION.y);
+        double cameraLeft = -RobotConfig.CAMERA_POSITION.unit.toInches(RobotConfig.CAMERA_POSITION.x);
+        double cos = Math.cos(cameraYaw), sin = Math.sin(cameraYaw);
+        double tagAhead = cameraAhead + tag.ftcPose.y * cos + tag.ftcPose.x * sin;
+        double tagLeft = cameraLeft + tag.ftcPose.y * sin - tag.ftcPose.x * cos;
+        double bearing = Math.atan2(tagLeft, tagAhead);
+        //turned to face it, we want it ahead of and to the right of the camera by our offsets
+        double wantedAhead = cameraAhead + ahead, wantedLeft = cameraLeft - right;
+        cos = Math.cos(bearing);
+        sin = Math.sin(bearing);
+        double goalAhead = tagAhead - (wantedAhead * cos - wantedLeft * sin);
+        double goalLeft = tagLeft - (wantedAhead * sin + wantedLeft * cos);
+        //and in the frame of the localizer
+        cos = Math.cos(poseAtCapture[2]);
+        sin = Math.sin(poseAtCapture[2]);
+        goalX = poseAtCapture[0] + goalAhead * cos - goalLeft * sin;
+        goalY = poseAtCapture[1] + goalAhead * sin + goalLeft * cos;
+        goalHeading = AngleUnit.normalizeRadians(poseAtCapture[2] + bearing);
+        if (!hasGoal) {
+            Match.log(String.format(Locale.getDefault(), "Tracking tag %d, goal %.1f,%.1f@%.1f",
+                    tag.id, goalX, goalY, Math.toDegrees(goalHeading)));
+        }
+        hasGoal = true;
+        lastSeenNanos = captureNanos;
+    }
+
+    /**
+     * Drive toward the goal
+     * @param frame - the sensor frame of this cycle
+     * @return true while we are tracking the tag
+     */
+    @Override
+    public synchronized boolean update(SensorFrame frame) {
+        if (result != Result.Tracking) {
+            return false;
+        }
+        long now = frame.getTimestamp();
+        if (!hasGoal) {
+            if (now - startNanos > RobotConfig.TAG_ACQUIRE_TIMEOUT * 1000000L) {
+                finish(Result.NotSeen, "Did not see an april tag to align with");
+            }
+            return true;
+        }
+        if (now - lastSeenNanos > RobotConfig.TAG_LOST_TIMEOUT * 1000000L) {
+            finish(Result.Lost, "Lost sight of the april tag before getting to it");
+            return false;
+        }
+
+        Pose2d pose = localizer.getPoseEstimate();
+        double cos = Math.cos(pose.getHeading()), sin = Math.sin(pose.getHeading());
+        double dx = goalX - pose.getX(), dy = goalY - pose.getY();
+        double forwardError = dx * cos + dy * sin;
+        double leftError = -dx * sin + dy * cos;
+        double turnError = AngleUnit.normalizeRadians(goalHeading - pose.getHeading());
+
+        if (Math.abs(forwardError) < RobotConfig.TAG_POSITION_TOLERANCE
+                && Math.abs(leftError) < RobotConfig.TAG_POSITION_TOLERANCE
+                && Math.abs(turnError) < RobotConfig.TAG_HEADING_TOLERANCE) {
+            if (++settledCycles >= RobotConfig.TAG_SETTLE_CYCLES) {
+                finish(Result.Arrived, "Aligned with april tag");
+                return false;
+            }
+        }
+        else {
+            settledCycles = 0;
+        }
+
+        double speed = RobotConfig.APRIL_TAG_SPEED;
+        double forward = Range.clip(forwardError * DriveToAprilTag.SPEED_GAIN, -speed, speed);
+        double left = Range.clip(leftError * DriveToAprilTag.STRAFE_GAIN, -speed, speed);
+        double turn = Range.clip(Math.toDegrees(turnError) * DriveToAprilTag.TURN_GAIN, -speed * .6, speed * .6);
+        //the drive train limits how fast this changes, so the robot doesn't lurch at each new frame
+        DriveToAprilTag.moveRobot(forward, left, turn, driveTrain);
+        return true;
+    }
+
+    private void finish(Result result, String message) {
+        this.result = result;
+        driveTrain.halt();
+        Match.log(message);
+    }
+}
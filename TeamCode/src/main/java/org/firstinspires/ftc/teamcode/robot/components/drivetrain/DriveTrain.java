@@ -3,28 +3,33 @@ package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
 import com.acmerobotics.roadrunner.geometry.Pose2d;
 import com.acmerobotics.roadrunner.trajectory.Trajectory;
 import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.util.Range;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.game.logging.MatchLogger;
 import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansDriveConstants;
 import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansMecanumDrive;
+import org.firstinspires.ftc.teamcode.robot.ControlLoop;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.SensorFrame;
 import org.firstinspires.ftc.teamcode.robot.operations.BearingOperation;
-import org.firstinspires.ftc.teamcode.robot.operations.DriveForDistanceOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.DriveToPositionOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.FollowTrajectory;
+import org.firstinspires.ftc.teamcode.robot.operations.MotionPrimitivesOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.SlopingTurnForTimeOperation;
-import org.firstinspires.ftc.teamcode.robot.operations.StrafeLeftForDistanceOperation;
-import org.firstinspires.ftc.teamcode.robot.operations.StrafeLeftForDistanceWithHeadingOperation;
-import org.firstinspires.ftc.teamcode.robot.operations.StrafeRightForDistanceOperation;
 import org.firstinspires.ftc.teamcode.robot.operations.StrafeRightToAprilTagOperation;
-import org.firstinspires.ftc.teamcode.robot.operations.TurnAntiClockwiseOperation;
-import org.firstinspires.ftc.teamcode.robot.operations.TurnClockwiseOperation;
 
-import java.util.Date;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
+import androidx.annotation.NonNull;
+
 /**
  * Created by Silver Titans on 10/26/17.
  */
@@ -35,10 +40,137 @@ public class DriveTrain extends SilverTitansMecanumDrive {
     public static final double P_DRIVE_COEFFICIENT = 0.0125 * Math.PI;     // Larger is more responsive, but also less stable
 
 
+    private ControlLoop controlLoop;
+    private FusedLocalizer localizer;
+    private AprilTagTracker aprilTagTracker;
+    private PrimitiveFollower primitiveFollower;
+    //target positions we last commanded for LF, RF, LR, RR so we don't have to read them back
+    private final int[] targetPositions = new int[4];
+    //builds and caches the trajectories for drive to position and bearing operations
+    private final TrajectoryService trajectoryService = new TrajectoryService();
+
+    //chassis velocity we last commanded, inches and radians per second, and when
+    private double commandedForward, commandedLeft, commandedTurn;
+    private long lastVelocityNanos;
+    //wheel velocities we last commanded for LF, RF, LR, RR, inches per second
+    private final double[] wheelVelocities = new double[4];
+    //battery voltage the motors' velocity feed forward was last compensated for, and when we last read it
+    private double compensatedVoltage = RobotConfig.DRIVE_NOMINAL_VOLTAGE;
+    private double batteryVoltage = RobotConfig.DRIVE_NOMINAL_VOLTAGE;
+    private long voltageReadNanos;
+
     public DriveTrain(HardwareMap hardwareMap) {
         super(hardwareMap);
     }
 
+    /**
+     * Have our motors read from the sensor frames of the specified control loop
+     * @param controlLoop - the control loop
+     */
+    public void setControlLoop(ControlLoop controlLoop) {
+        controlLoop.register(SensorFrame.Motor.LeftFront, leftFront);
+        controlLoop.register(SensorFrame.Motor.RightFront, rightFront);
+        controlLoop.register(SensorFrame.Motor.LeftRear, leftRear);
+        controlLoop.register(SensorFrame.Motor.RightRear, rightRear);
+        this.controlLoop = controlLoop;
+        //track our pose every cycle by fusing wheel speeds with the IMU, and the OTOS and tags once we have them
+        this.localizer = new FusedLocalizer(this, controlLoop);
+        setLocalizer(localizer);
+        controlLoop.addController(localizer);
+        //drives to april tags on the frames the camera hands it and our pose in between
+        this.aprilTagTracker = new AprilTagTracker(this, localizer);
+        controlLoop.addController(aprilTagTracker);
+        //drives chains of motion primitives from the pose the localizer has
+        this.primitiveFollower = new PrimitiveFollower(this, localizer);
+        controlLoop.addController(primitiveFollower);
+    }
+
+    /**
+     * Returns the localizer that tracks our pose, null until we have a control loop
+     * @return the localizer
+     */
+    public FusedLocalizer getFusedLocalizer() {
+        return localizer;
+    }
+
+    public AprilTagTracker getAprilTagTracker() {
+        return aprilTagTracker;
+    }
+
+    public PrimitiveFollower getPrimitiveFollower() {
+        return primitiveFollower;
+    }
+
+    /**
+     * Returns how far we turn when each wheel travels the specified distance, turning in place
+     * @param inches - distance each wheel travels
+     * @return radians
+     */
+    public static double wheelTravelToRadians(double inches) {
+        return inches * 2 / (SilverTitansDriveConstants.TRACK_WIDTH + SilverTitansDriveConstants.TRACK_LENGTH);
+    }
+
+    /**
+     * Returns the position of the specified motor, from the current sensor frame if we have
+     * a control loop
+     */
+    private int getPosition(SensorFrame.Motor motor, DcMotor dcMotor) {
+        if (controlLoop != null) {
+            return controlLoop.getFrame().getPosition(motor);
+        }
+        return dcMotor.getCurrentPosition();
+    }
+
+    private int getLeftFrontPosition() {
+        return getPosition(SensorFrame.Motor.LeftFront, leftFront);
+    }
+    private int getRightFrontPosition() {
+        return getPosition(SensorFrame.Motor.RightFront, rightFront);
+    }
+    private int getLeftRearPosition() {
+        return getPosition(SensorFrame.Motor.LeftRear, leftRear);
+    }
+    private int getRightRearPosition() {
+        return getPosition(SensorFrame.Motor.RightRear, rightRear);
+    }
+
+    /**
+     * Returns how far each wheel has gone, from the current sensor frame once we have a control
+     * loop, since the hubs are then in MANUAL bulk caching mode and reading a motor directly could
+     * return data cached in an earlier cycle
+     * @return inches, left front, left rear, right rear and right front
+     */
+    @NonNull
+    @Override
+    public List<Double> getWheelPositions() {
+        if (controlLoop == null) {
+            return super.getWheelPositions();
+        }
+        SensorFrame frame = controlLoop.getFrame();
+        return Arrays.asList(
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getPosition(SensorFrame.Motor.LeftFront)),
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getPosition(SensorFrame.Motor.LeftRear)),
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getPosition(SensorFrame.Motor.RightRear)),
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getPosition(SensorFrame.Motor.RightFront)));
+    }
+
+    /**
+     * Returns how fast each wheel is going, from the current sensor frame once we have a control loop
+     * @return inches per second, left front, left rear, right rear and right front
+     */
+    @Override
+    public List<Double> getWheelVelocities() {
+        if (controlLoop == null) {
+            return super.getWheelVelocities();
+        }
+        SensorFrame frame = controlLoop.getFrame();
+        return Arrays.asList(
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.LeftFront)),
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.LeftRear)),
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.RightRear)),
+                SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.RightFront)));
+    }
+
     /** Set power of left front motor
      *
      * @param power - the power to set
@@ -85,54 +217,52 @@ public class DriveTrain extends SilverTitansMecanumDrive {
     }
 
     public void handleOperation (DriveToPositionOperation operation) {
-        try {
-            Pose2d currentPose = getPoseEstimate();
-            Date start = new Date();
-            Thread createTrajectoryThread = new Thread(() -> {
-                Trajectory trajectory = accurateTrajectoryBuilder(currentPose)
-                        .splineToLinearHeading(operation.getDesiredPose(), operation.getDesiredPose().getHeading())
-                        .build();
-                Match.log("Starting " + operation.getTitle() + ": " + trajectory.start() + "->" + trajectory.end()
-                        + " at " + currentPose + ", build took " + (new Date().getTime() - start.getTime()) + " mSecs");
-                //set trajectory in operation
-                operation.setTrajectory(trajectory);
-                //start following trajectory
-                super.followTrajectoryAsync(trajectory);
-                //mark that trajectory has been started
-                operation.setTrajectoryStarted(true);
-            });
-            createTrajectoryThread.start();
-        }
-        catch (Throwable e) {
-            Match.log("Error starting drive to position");
-            RobotLog.logStackTrace(e);
-            operation.setAborted(true);
-        }
+        Pose2d desiredPose = operation.getDesiredPose();
+        followFromService(operation, desiredPose, desiredPose.getHeading(), TrajectoryService.Constraints.Accurate);
     }
 
     public void handleOperation (BearingOperation operation) {
+        Pose2d desiredPose = TrajectoryService.getBearingTarget(getPoseEstimate(), operation.getDesiredBearing());
+        followFromService(operation, desiredPose, 0, TrajectoryService.Constraints.Normal);
+    }
+
+    /**
+     * Get a trajectory to the desired pose from our trajectory service and start following it
+     * once it is ready
+     */
+    private void followFromService(final DriveToPositionOperation operation, Pose2d desiredPose, double endTangent,
+                                   TrajectoryService.Constraints constraints) {
         try {
-            Pose2d currentPose = getPoseEstimate();
-            Pose2d desiredPose =
-                    currentPose.plus(
-                            new Pose2d(.05,
-                                    .05,
-                                    operation.getDesiredBearing() -currentPose.getHeading()));
-            Date start = new Date();
-            Thread createTrajectoryThread = new Thread(() -> {
-                Trajectory trajectory = trajectoryBuilder(currentPose)
-                        .splineToLinearHeading(desiredPose, 0)
-                        .build();
-                Match.log("Starting " + operation.getTitle() + ": " + trajectory.start() + "->" + trajectory.end()
-                        + " at " + currentPose + ", build took " + (new Date().getTime() - start.getTime()) + " mSecs");
-                //set trajectory in operation
-                operation.setTrajectory(trajectory);
-                //start following trajectory
-                super.followTrajectoryAsync(trajectory);
-                //mark that trajectory has been started
-                operation.setTrajectoryStarted(true);
+            final Pose2d currentPose = getPoseEstimate();
+            final long start = System.nanoTime();
+            trajectoryService.request(currentPose, desiredPose, endTangent, constraints, new TrajectoryService.Listener() {
+                @Override
+                public void trajectoryReady(Trajectory approach, Trajectory trajectory) {
+                    Match.log("Starting " + operation.getTitle() + ": " + trajectory.start() + "->" + trajectory.end()
+                            + " at " + currentPose + (approach == null ? "" : " with approach")
+                            + ", ready in " + (System.nanoTime() - start) / 1000000 + " mSecs");
+                    //set trajectory in operation
+                    operation.setTrajectory(trajectory);
+                    //start following trajectory
+                    if (approach == null) {
+                        followTrajectoryAsync(trajectory);
+                    }
+                    else {
+                        followTrajectorySequenceAsync(trajectorySequenceBuilder(approach.start())
+                                .addTrajectory(approach)
+                                .addTrajectory(trajectory)
+                                .build());
+                    }
+                    //mark that trajectory has been started
+                    operation.setTrajectoryStarted(true);
+                }
+
+                @Override
+                public void trajectoryFailed(Throwable e) {
+                    Match.log("Error building trajectory for " + operation.getTitle());
+                    operation.setAborted(true);
+                }
             });
-            createTrajectoryThread.start();
         }
         catch (Throwable e) {
             Match.log("Error starting drive to position");
@@ -140,32 +270,25 @@ public class DriveTrain extends SilverTitansMecanumDrive {
             operation.setAborted(true);
         }
     }
-    /**
-     * Handle operation to drive for the specified distance in the direction the robot is facing
-     * @param operation
-     *
-     * We do this by computing how much each wheel must be rotated to travel the specified distance
-     * and then commanding the motors to reach the new desired encoder values
-     *
-     */
-    public void handleOperation(DriveForDistanceOperation operation) {
-        stop();
-
-        int encoderChange = SilverTitansDriveConstants.mmToEncoderTicks(operation.getDistance());
-        this.leftFront.setTargetPosition(leftFront.getCurrentPosition() + encoderChange);
-        this.rightFront.setTargetPosition(rightFront.getCurrentPosition() + encoderChange);
-        this.leftRear.setTargetPosition(leftRear.getCurrentPosition() + encoderChange);
-        this.rightRear.setTargetPosition(rightRear.getCurrentPosition() + encoderChange);
 
-        this.leftFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
+    public TrajectoryService getTrajectoryService() {
+        return trajectoryService;
+    }
 
-        this.leftFront.setPower(operation.getSpeed());
-        this.rightFront.setPower(operation.getSpeed());
-        this.leftRear.setPower(operation.getSpeed());
-        this.rightRear.setPower(operation.getSpeed());
+    /**
+     * Handle an operation that drives a chain of motion primitives, by having our primitive
+     * follower drive it from where we are. The encoders aren't reset, so our odometry carries on.
+     * @param operation - the operation
+     */
+    public void handleOperation(MotionPrimitivesOperation operation) {
+        if (primitiveFollower == null) {
+            Match.log("No control loop to follow " + operation.getTitle() + " with");
+            operation.setAborted(true);
+            return;
+        }
+        //in case the last operation left the motors running to a position
+        setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        primitiveFollower.start(operation.getPrimitives());
     }
 
     /**
@@ -174,168 +297,36 @@ public class DriveTrain extends SilverTitansMecanumDrive {
      * @param operation
      */
     public void handleOperation(SlopingTurnForTimeOperation operation) {
-        stop();
+        halt();
 
         this.leftFront.setPower(operation.getLeftSpeed());
         this.rightFront.setPower(operation.getRightSpeed());
         this.leftRear.setPower(operation.getLeftSpeed());
         this.rightRear.setPower(operation.getRightSpeed());
     }
-    /**
-     * Handle operation to turn clockwise for the specified distance
-     * @param operation
-     *
-     * We do this by computing how much each wheel must be rotated to travel the specified distance
-     * and then commanding the motors to reach the new desired encoder values
-     *
-     */
-    public void handleOperation(TurnClockwiseOperation operation) {
-        stop();
-
-        int encoderChange = SilverTitansDriveConstants.mmToEncoderTicks(operation.getDistance());
-        this.rightFront.setTargetPosition(rightFront.getCurrentPosition() - encoderChange);
-        this.rightRear.setTargetPosition(rightRear.getCurrentPosition() - encoderChange);
-        this.leftFront.setTargetPosition(leftFront.getCurrentPosition() + encoderChange);
-        this.leftRear.setTargetPosition(leftRear.getCurrentPosition() + encoderChange);
-
-        this.rightFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-
-        this.rightFront.setPower(operation.getSpeed());
-        this.rightRear.setPower(operation.getSpeed());
-        this.leftFront.setPower(operation.getSpeed());
-        this.leftRear.setPower(operation.getSpeed());
-    }
-
-
-    /**
-     * Handle operation to turn anti-clockwise for the specified distance
-     * @param operation
-     *
-     * We do this by computing how much each wheel must be rotated to travel the specified distance
-     * and then commanding the motors to reach the new desired encoder values
-     *
-     */
-    public void handleOperation(TurnAntiClockwiseOperation operation) {
-        stop();
-
-        int encoderChange = SilverTitansDriveConstants.mmToEncoderTicks(operation.getDistance());
-        this.rightFront.setTargetPosition(rightFront.getCurrentPosition() + encoderChange);
-        this.rightRear.setTargetPosition(rightRear.getCurrentPosition() + encoderChange);
-        this.leftFront.setTargetPosition(leftFront.getCurrentPosition() - encoderChange);
-        this.leftRear.setTargetPosition(leftRear.getCurrentPosition() - encoderChange);
-
-        this.rightFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-
-        this.rightFront.setPower(operation.getSpeed());
-        this.rightRear.setPower(operation.getSpeed());
-        this.leftFront.setPower(operation.getSpeed());
-        this.leftRear.setPower(operation.getSpeed());
-    }
-
-    /**
-     * Handle operation to strafe left for the specified distance perpendicular to the direction the robot is facing
-     * @param operation
-     *
-     * We do this by computing how much each wheel must be rotated to travel the specified distance
-     * and then commanding the motors to reach the new desired encoder values
-     *
-     * We make the left front and right rear motors move forward while making the right front and left rear
-     * motors propel backwards
-     *
-     */
-    public void handleOperation(StrafeLeftForDistanceOperation operation) {
-        stop();
-        int encoderChange = SilverTitansDriveConstants.mmToEncoderTicks(operation.getDistance() * 1.05);
-        this.leftFront.setTargetPosition(leftFront.getCurrentPosition() - encoderChange);
-        this.rightFront.setTargetPosition(rightFront.getCurrentPosition() + encoderChange);
-        this.leftRear.setTargetPosition(leftRear.getCurrentPosition() + encoderChange);
-        this.rightRear.setTargetPosition(rightRear.getCurrentPosition() - encoderChange);
-
-        this.leftFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-
-        this.leftFront.setPower(operation.getSpeed());
-        this.rightFront.setPower(operation.getSpeed());
-        this.leftRear.setPower(operation.getSpeed());
-        this.rightRear.setPower(operation.getSpeed());
-    }
-
-    /**
-     * Handle operation to strafe for the specified distance perpendicular to the direction the robot is facing
-     * @param operation
-     *
-     * We do this by computing how much each wheel must be rotated to travel the specified distance
-     * and then commanding the motors to reach the new desired encoder values
-     *
-     * We make the left front and right rear motors move forward while making the right front and left rear
-     * motors propel backwards
-     *
-     */
-    public void handleOperation(StrafeLeftForDistanceWithHeadingOperation operation) {
-        stop();
-        int encoderChange = SilverTitansDriveConstants.mmToEncoderTicks(operation.getDistance() * 1.05);
-        this.leftFront.setTargetPosition(leftFront.getCurrentPosition() - encoderChange);
-        this.rightFront.setTargetPosition(rightFront.getCurrentPosition() + encoderChange);
-        this.leftRear.setTargetPosition(leftRear.getCurrentPosition() + encoderChange);
-        this.rightRear.setTargetPosition(rightRear.getCurrentPosition() - encoderChange);
-
-        this.leftFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-    }
-
-    public void handleOperation(StrafeRightForDistanceOperation operation) {
-        stop();
-        int encoderChange = SilverTitansDriveConstants.mmToEncoderTicks(operation.getDistance() * 1.05);
-        this.leftFront.setTargetPosition(leftFront.getCurrentPosition() + encoderChange);
-        this.rightFront.setTargetPosition(rightFront.getCurrentPosition() - encoderChange);
-        this.leftRear.setTargetPosition(leftRear.getCurrentPosition() - encoderChange);
-        this.rightRear.setTargetPosition(rightRear.getCurrentPosition() + encoderChange);
-
-        this.leftFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightFront.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.leftRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        this.rightRear.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-
-        this.leftFront.setPower(operation.getSpeed());
-        this.rightFront.setPower(operation.getSpeed());
-        this.leftRear.setPower(operation.getSpeed());
-        this.rightRear.setPower(operation.getSpeed());
-    }
-
-
-    private boolean withinRange(DcMotor... motors) {
-        for (DcMotor motor: motors) {
-            if (Math.abs(motor.getTargetPosition() - motor.getCurrentPosition()) <= WITHIN_RANGE) {
+    private boolean withinRange(int... positions) {
+        for (int i = 0; i < positions.length; i++) {
+            if (Math.abs(targetPositions[i] - positions[i]) <= WITHIN_RANGE) {
                 return true;
             }
         }
         return false;
     }
 
-    private boolean allWithinRange(DcMotor... motors) {
-        for (DcMotor motor: motors) {
-            if (Math.abs(motor.getTargetPosition() - motor.getCurrentPosition()) > WITHIN_RANGE) {
+    private boolean allWithinRange(int... positions) {
+        for (int i = 0; i < positions.length; i++) {
+            if (Math.abs(targetPositions[i] - positions[i]) > WITHIN_RANGE) {
                 return false;
             }
         }
         return true;
     }
     private boolean withinRange()  {
-        return withinRange(leftFront, rightFront, leftRear, rightRear);
+        return withinRange(getLeftFrontPosition(), getRightFrontPosition(), getLeftRearPosition(), getRightRearPosition());
     }
 
     public boolean allWithinRange()  {
-        if (allWithinRange(leftFront, rightFront, leftRear, rightRear)) {
+        if (allWithinRange(getLeftFrontPosition(), getRightFrontPosition(), getLeftRearPosition(), getRightRearPosition())) {
             stop();
             return true;
         }
@@ -357,13 +348,27 @@ public class DriveTrain extends SilverTitansMecanumDrive {
         }
     }
 
+    /**
+     * Stop following primitives and stop our motors. The encoders are only reset by reset(), so
+     * our odometry carries on across stops.
+     */
     public void stop() {
-        //Stop our motors
+        if (primitiveFollower != null) {
+            primitiveFollower.stop();
+        }
+        halt();
+    }
+
+    /**
+     * Stop our motors, leaving the encoders as they are so our odometry carries on
+     */
+    public void halt() {
+        //the next velocity command starts from rest
+        lastVelocityNanos = 0;
         leftFront.setPower(0);
         rightFront.setPower(0);
         leftRear.setPower(0);
         rightRear.setPower(0);
-        reset();
     }
 
     public void reset() {
@@ -379,16 +384,34 @@ public class DriveTrain extends SilverTitansMecanumDrive {
         this.rightFront.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
         this.leftRear.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
         this.rightRear.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
+        if (controlLoop != null) {
+            //positions read before the reset are no longer valid
+            controlLoop.invalidateFrame();
+        }
         Match.log("Reset drivetrain encoders");
     }
 
     public String getStatus() {
-        return String.format(Locale.getDefault(),
-                "LF:%.2f(%d>%d),RF:%.2f(%d>%d),LR:%.2f(%d>%d),RR:%.2f(%d>%d)",
-            this.leftFront.getPower(), this.leftFront.getCurrentPosition(), this.leftFront.getTargetPosition(),
-            this.rightFront.getPower(), this.rightFront.getCurrentPosition(), this.rightFront.getTargetPosition(),
-            this.leftRear.getPower(), this.leftRear.getCurrentPosition(), this.leftRear.getTargetPosition(),
-            this.rightRear.getPower(), this.rightRear.getCurrentPosition(), this.rightRear.getTargetPosition());
+        return appendStatus(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the power, position and target of each motor to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        appendMotorStatus(builder, "LF:", leftFront, getLeftFrontPosition(), targetPositions[0]);
+        appendMotorStatus(builder, ",RF:", rightFront, getRightFrontPosition(), targetPositions[1]);
+        appendMotorStatus(builder, ",LR:", leftRear, getLeftRearPosition(), targetPositions[2]);
+        appendMotorStatus(builder, ",RR:", rightRear, getRightRearPosition(), targetPositions[3]);
+        return builder;
+    }
+
+    private void appendMotorStatus(StringBuilder builder, String label, DcMotor motor, int position, int target) {
+        builder.append(label);
+        MatchTelemetry.append(builder, motor.getPower(), 2)
+                .append('(').append(position).append('>').append(target).append(')');
     }
 
     /**
@@ -402,8 +425,144 @@ public class DriveTrain extends SilverTitansMecanumDrive {
     }
 
     /**
-     * Drive in the specified direction at the specified speed while rotating at the specified rotation
-     * Direction is relative to the robot
+     * Drive at the specified chassis velocity, relative to the robot
+     *
+     * The velocity is limited to our top speeds, and its change since the last call to our
+     * accelerations, so the driver and our operations all drive the robot the same way. Inverse
+     * mecanum kinematics turn it into the velocity of each wheel. Using encoders, each wheel's
+     * velocity goes to the hub with the kA and kStatic feed forward added to the target and the kV
+     * feed forward in the hub's F term, kept compensated for the battery voltage. MOTOR_VELO_PID has
+     * no P, I or D, so this is feed forward alone: nothing corrects a wheel that falls behind under
+     * load, the callers that care close the loop on our pose. Without encoders the feed forward is
+     * applied as power, scaled by the battery voltage.
+     *
+     * If we haven't been driving by velocity for a while, we ramp from the velocity the localizer
+     * measures rather than from rest, so a late command doesn't stop a moving robot dead.
+     *
+     * @param forward - inches per second forward
+     * @param left - inches per second to the left
+     * @param turn - radians per second anti-clockwise
+     */
+    public synchronized void driveVelocity(double forward, double left, double turn) {
+        long now = MatchClock.nanoTime();
+        double dt = (now - lastVelocityNanos) / 1e9;
+        //inverse kinematics, each wheel's share of the turn is its distance from the center across and along
+        double k = (SilverTitansDriveConstants.TRACK_WIDTH + SilverTitansDriveConstants.TRACK_LENGTH) / 2;
+        if (lastVelocityNanos == 0 || dt > RobotConfig.DRIVE_MAX_COMMAND_GAP) {
+            //we haven't been driving by velocity, so start from how fast we are actually going
+            dt = RobotConfig.DRIVE_MAX_COMMAND_GAP;
+            Pose2d measured = localizer == null ? null : localizer.getPoseVelocity();
+            commandedForward = measured == null ? 0 : measured.getX();
+            commandedLeft = measured == null ? 0 : measured.getY();
+            commandedTurn = measured == null ? 0 : measured.getHeading();
+            wheelVelocities[0] = commandedForward - commandedLeft - k * commandedTurn;
+            wheelVelocities[1] = commandedForward + commandedLeft + k * commandedTurn;
+            wheelVelocities[2] = commandedForward + commandedLeft - k * commandedTurn;
+            wheelVelocities[3] = commandedForward - commandedLeft + k * commandedTurn;
+        }
+        lastVelocityNanos = now;
+
+        //limit the speeds, keeping the direction we are driving in
+        double speed = Math.hypot(forward, left);
+        if (speed > RobotConfig.DRIVE_MAX_VELOCITY) {
+            forward *= RobotConfig.DRIVE_MAX_VELOCITY / speed;
+            left *= RobotConfig.DRIVE_MAX_VELOCITY / speed;
+        }
+        turn = Range.clip(turn, -RobotConfig.DRIVE_MAX_ANGULAR_VELOCITY, RobotConfig.DRIVE_MAX_ANGULAR_VELOCITY);
+
+        //and how fast they change
+        double forwardChange = forward - commandedForward, leftChange = left - commandedLeft;
+        double change = Math.hypot(forwardChange, leftChange), maxChange = RobotConfig.DRIVE_MAX_ACCELERATION * dt;
+        if (change > maxChange) {
+            forwardChange *= maxChange / change;
+            leftChange *= maxChange / change;
+        }
+        double maxTurnChange = RobotConfig.DRIVE_MAX_ANGULAR_ACCELERATION * dt;
+        commandedForward += forwardChange;
+        commandedLeft += leftChange;
+        commandedTurn += Range.clip(turn - commandedTurn, -maxTurnChange, maxTurnChange);
+
+        double leftFrontVelocity = commandedForward - commandedLeft - k * commandedTurn;
+        double rightFrontVelocity = commandedForward + commandedLeft + k * commandedTurn;
+        double leftRearVelocity = commandedForward + commandedLeft - k * commandedTurn;
+        double rightRearVelocity = commandedForward - commandedLeft + k * commandedTurn;
+
+        //slow all the wheels alike if any would have to go faster than the motors can
+        double maxWheelVelocity = SilverTitansDriveConstants.rpmToVelocity(SilverTitansDriveConstants.MAX_RPM);
+        double scale = max(leftFrontVelocity, rightFrontVelocity, leftRearVelocity, rightRearVelocity) / maxWheelVelocity;
+        if (scale > 1) {
+            leftFrontVelocity /= scale;
+            rightFrontVelocity /= scale;
+            leftRearVelocity /= scale;
+            rightRearVelocity /= scale;
+        }
+
+        compensateForVoltage(now);
+        setWheelVelocity(0, leftFront, leftFrontVelocity, dt);
+        setWheelVelocity(1, rightFront, rightFrontVelocity, dt);
+        setWheelVelocity(2, leftRear, leftRearVelocity, dt);
+        setWheelVelocity(3, rightRear, rightRearVelocity, dt);
+
+        MatchLogger.getInstance().wheelPowers(leftFrontVelocity / maxWheelVelocity, rightFrontVelocity / maxWheelVelocity,
+                leftRearVelocity / maxWheelVelocity, rightRearVelocity / maxWheelVelocity);
+    }
+
+    /**
+     * Drive at the specified fractions of our top speeds, relative to the robot
+     * @param forward - fraction of top speed forward
+     * @param left - fraction of top speed to the left
+     * @param turn - fraction of top turn rate anti-clockwise
+     */
+    public void driveAtFractions(double forward, double left, double turn) {
+        driveVelocity(forward * RobotConfig.DRIVE_MAX_VELOCITY, left * RobotConfig.DRIVE_MAX_VELOCITY,
+                turn * RobotConfig.DRIVE_MAX_ANGULAR_VELOCITY);
+    }
+
+    /**
+     * Command a wheel's motor to the specified velocity, with our feed forward
+     * @param index - index of the wheel in our wheel velocities
+     * @param motor - the wheel's motor
+     * @param velocity - inches per second
+     * @param dt - seconds since the last velocity was commanded
+     */
+    private void setWheelVelocity(int index, DcMotorEx motor, double velocity, double dt) {
+        double acceleration = (velocity - wheelVelocities[index]) / dt;
+        wheelVelocities[index] = velocity;
+        double staticFeedForward = velocity == 0 ? 0 : Math.signum(velocity) * SilverTitansDriveConstants.kStatic;
+        if (SilverTitansDriveConstants.RUN_USING_ENCODER) {
+            //the hub's F term gives kV times the target, so the other terms go in as extra velocity
+            double target = velocity
+                    + (SilverTitansDriveConstants.kA * acceleration + staticFeedForward) / SilverTitansDriveConstants.kV;
+            motor.setVelocity(target / SilverTitansDriveConstants.encoderTicksToInches(1));
+        }
+        else {
+            double power = SilverTitansDriveConstants.kV * velocity + SilverTitansDriveConstants.kA * acceleration
+                    + staticFeedForward;
+            motor.setPower(Range.clip(power * RobotConfig.DRIVE_NOMINAL_VOLTAGE / batteryVoltage, -1, 1));
+        }
+    }
+
+    /**
+     * Read the battery voltage every so often, and compensate the hub's velocity feed forward for
+     * it when it has changed enough to matter
+     */
+    private void compensateForVoltage(long now) {
+        if (now - voltageReadNanos < RobotConfig.DRIVE_VOLTAGE_INTERVAL * 1000000L) {
+            return;
+        }
+        voltageReadNanos = now;
+        batteryVoltage = getBatteryVoltage();
+        if (SilverTitansDriveConstants.RUN_USING_ENCODER && SilverTitansDriveConstants.MOTOR_VELO_PID != null
+                && Math.abs(batteryVoltage - compensatedVoltage) > RobotConfig.DRIVE_VOLTAGE_CHANGE) {
+            setPIDFCoefficients(DcMotor.RunMode.RUN_USING_ENCODER, SilverTitansDriveConstants.MOTOR_VELO_PID);
+            compensatedVoltage = batteryVoltage;
+        }
+    }
+
+    /**
+     * Drive in the specified direction at the specified power while rotating at the specified rotation
+     * Direction is relative to the robot. The powers go to the motors as they are, so the speed
+     * drops as the battery does, use driveVelocity to drive at a speed.
      * @param direction - direction to drive
      * @param speed - speed at which to drive
      * @param rotation - how much to rotate while driving
@@ -435,7 +594,7 @@ public class DriveTrain extends SilverTitansMecanumDrive {
         setLeftRearPower(v3);
         setRightRearPower(v4);
 
-        //Match.log(String.format(Locale.getDefault(), "Powers: LF:%.2f,RF:%.2f,LR:%.2f,RR:%.2f", v1, v2, v3, v4));
+        MatchLogger.getInstance().wheelPowers(v1, v2, v3, v4);
     }
 
 
@@ -0,0 +1,467 @@
+package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.qualcomm.hardware.sparkfun.SparkFunOTOS;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.Position;
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansDriveConstants;
+import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansMecanumDrive;
+import org.firstinspires.ftc.teamcode.robot.ControlLoop;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.SensorFrame;
+import org.firstinspires.ftc.teamcode.robot.components.OTOS;
+import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
+import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
+
+import java.util.List;
+import java.util.Locale;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A localizer that fuses everything we know about where the robot is with an extended Kalman filter.
+ *
+ * The state is the pose of the robot, x, y and heading in the road runner frame, along with its
+ * velocity, forward, to the left and turning, in the frame of the robot. Every control loop cycle
+ * the state is moved forward at constant velocity and then corrected with:
+ *  the speed of the four wheels, turned into robot velocity with mecanum forward kinematics,
+ *  the velocity reported by the OTOS, turned into the frame of the robot using the OTOS heading,
+ *  the IMU yaw, every LOCALIZER_IMU_PERIOD as it takes a while to read,
+ *  the robot pose of AprilTag detections, whenever the camera has a new frame.
+ *
+ * Every measurement is of a single element of the state, so they are fused one at a time without
+ * having to invert anything. All matrices are allocated once, nothing is allocated per cycle.
+ *
+ * AprilTag detections tell us where the robot was on the field when the frame was taken, which is
+ * well before we get them. So we remember where we thought we were over the last few cycles in a
+ * PoseHistory. A fix corrects the pose we had when its frame was taken, and how we moved since is
+ * replayed from there to find where we are now. The first fix we get lines the road runner frame
+ * up with the field, the ones after that correct our drift. Fixes too far from what we expect are
+ * rejected, and if enough are rejected in a row we line up again.
+ */
+public class FusedLocalizer implements Localizer, ControlLoop.Controller {
+    //indices of the elements of our state
+    private static final int X = 0, Y = 1, HEADING = 2, VX = 3, VY = 4, OMEGA = 5, SIZE = 6;
+
+    private final SilverTitansMecanumDrive drive;
+    private final ControlLoop controlLoop;
+    private OTOS otos;
+    private SilverTitansVisionPortal visionPortal;
+
+    private final double[] state = new double[SIZE];
+    private final double[][] covariance = new double[SIZE][SIZE];
+    //scratch space for moving the covariance forward and for fusing measurements
+    private final double[][] jacobian = new double[SIZE][SIZE];
+    private final double[][] product = new double[SIZE][SIZE];
+    private final double[] gain = new double[SIZE];
+    private final double[] row = new double[SIZE];
+    private final SparkFunOTOS.Pose2D otosPosition = new SparkFunOTOS.Pose2D();
+    private final SparkFunOTOS.Pose2D otosVelocity = new SparkFunOTOS.Pose2D();
+
+    //poses over the last few cycles, to find where we were when a camera frame was taken
+    private final PoseHistory history = new PoseHistory(RobotConfig.LOCALIZER_HISTORY_SIZE);
+
+    private long lastFrameSequence;
+    private long lastTimestamp;
+    private long lastImuNanos;
+    //what to add to the IMU yaw to get our heading
+    private double imuOffset;
+
+    //the road runner frame on the field: field = rotated road runner pose + (fieldX, fieldY)
+    private boolean fieldAligned;
+    private double fieldX, fieldY, fieldRotation;
+    //MatchClock.nanoTime() when the last tag frame we used was taken
+    private long lastTagFrameNanos;
+    private int tagRejectionsInARow;
+    private int tagFixes, tagRejections;
+
+    /**
+     * Create the localizer
+     * @param drive - the drive whose IMU we read
+     * @param controlLoop - the control loop whose sensor frames we read wheel speeds from
+     */
+    public FusedLocalizer(SilverTitansMecanumDrive drive, ControlLoop controlLoop) {
+        this.drive = drive;
+        this.controlLoop = controlLoop;
+        resetCovariance();
+        this.imuOffset = -drive.getRawExternalHeading();
+    }
+
+    public synchronized void setOtos(OTOS otos) {
+        this.otos = otos;
+    }
+
+    public synchronized void setVisionPortal(SilverTitansVisionPortal visionPortal) {
+        this.visionPortal = visionPortal;
+    }
+
+    @NonNull
+    @Override
+    public synchronized Pose2d getPoseEstimate() {
+        return new Pose2d(state[X], state[Y], state[HEADING]);
+    }
+
+    /**
+     * Tell us where the robot is. We are sure of the pose, it is the field alignment that is
+     * redone with the next tag fix.
+     * @param pose - the pose
+     */
+    @Override
+    public synchronized void setPoseEstimate(@NonNull Pose2d pose) {
+        state[X] = pose.getX();
+        state[Y] = pose.getY();
+        state[HEADING] = AngleUnit.normalizeRadians(pose.getHeading());
+        resetCovariance();
+        imuOffset = state[HEADING] - drive.getRawExternalHeading();
+        fieldAligned = false;
+        history.clear();
+        Match.log("Localizer pose set to " + pose);
+    }
+
+    /**
+     * Returns the velocity of the robot
+     * @return velocity, forward, to the left and turning, in the frame of the robot
+     */
+    @Nullable
+    @Override
+    public synchronized Pose2d getPoseVelocity() {
+        return new Pose2d(state[VX], state[VY], state[OMEGA]);
+    }
+
+    /**
+     * Catch up with the latest sensor frame, called by road runner when following trajectories
+     */
+    @Override
+    public void update() {
+        step(controlLoop.getFrame());
+    }
+
+    /**
+     * Catch up with the sensor frame of this control loop cycle
+     * @param frame - the sensor frame
+     * @return true while the robot is moving, so that we keep up with it
+     */
+    @Override
+    public boolean update(SensorFrame frame) {
+        step(frame);
+        return isMoving();
+    }
+
+    public synchronized boolean isMoving() {
+        return Math.hypot(state[VX], state[VY]) > RobotConfig.LOCALIZER_STOPPED_SPEED
+                || Math.abs(state[OMEGA]) > RobotConfig.LOCALIZER_STOPPED_TURN_RATE;
+    }
+
+    /**
+     * Move the state forward to the time of the frame and fuse all the measurements we have
+     * @param frame - the sensor frame, ignored if we have already seen it
+     */
+    private synchronized void step(SensorFrame frame) {
+        if (frame.getSequence() <= lastFrameSequence) {
+            return;
+        }
+        long now = frame.getTimestamp();
+        if (lastFrameSequence != 0) {
+            predict((now - lastTimestamp) / 1e9);
+        }
+        lastFrameSequence = frame.getSequence();
+        lastTimestamp = now;
+
+        fuseWheels(frame);
+        if (otos != null) {
+            fuseOtos();
+        }
+        if (now - lastImuNanos >= RobotConfig.LOCALIZER_IMU_PERIOD * 1000000L) {
+            lastImuNanos = now;
+            fuseImu();
+        }
+        history.add(now, state[X], state[Y], state[HEADING]);
+        if (visionPortal != null) {
+            fuseTags();
+        }
+    }
+
+    /**
+     * Move the state forward assuming the robot keeps its velocity, and grow our uncertainty
+     * @param dt - seconds to move forward by
+     */
+    private void predict(double dt) {
+        double cos = Math.cos(state[HEADING]), sin = Math.sin(state[HEADING]);
+        double vx = state[VX], vy = state[VY];
+
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                jacobian[i][j] = i == j ? 1 : 0;
+            }
+        }
+        jacobian[X][HEADING] = (-vx * sin - vy * cos) * dt;
+        jacobian[X][VX] = cos * dt;
+        jacobian[X][VY] = -sin * dt;
+        jacobian[Y][HEADING] = (vx * cos - vy * sin) * dt;
+        jacobian[Y][VX] = sin * dt;
+        jacobian[Y][VY] = cos * dt;
+        jacobian[HEADING][OMEGA] = dt;
+
+        state[X] += (vx * cos - vy * sin) * dt;
+        state[Y] += (vx * sin + vy * cos) * dt;
+        state[HEADING] = AngleUnit.normalizeRadians(state[HEADING] + state[OMEGA] * dt);
+
+        //covariance = jacobian * covariance * jacobian'
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                double sum = 0;
+                for (int k = 0; k < SIZE; k++) {
+                    sum += jacobian[i][k] * covariance[k][j];
+                }
+                product[i][j] = sum;
+            }
+        }
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = 0;
+                for (int k = 0; k < SIZE; k++) {
+                    sum += product[i][k] * jacobian[j][k];
+                }
+                covariance[i][j] = sum;
+                covariance[j][i] = sum;
+            }
+        }
+        //the velocity may have changed by however much the robot can accelerate
+        double linear = RobotConfig.LOCALIZER_ACCELERATION_STD * RobotConfig.LOCALIZER_ACCELERATION_STD * dt;
+        double angular = RobotConfig.LOCALIZER_ANGULAR_ACCELERATION_STD * RobotConfig.LOCALIZER_ANGULAR_ACCELERATION_STD * dt;
+        covariance[VX][VX] += linear;
+        covariance[VY][VY] += linear;
+        covariance[OMEGA][OMEGA] += angular;
+    }
+
+    /**
+     * Fuse a measurement of one element of the state
+     * @param index - the element measured
+     * @param innovation - how far the measurement is from the state
+     * @param variance - variance of the measurement
+     * @return true if the measurement was used, false if it was too far off to believe
+     */
+    private boolean fuse(int index, double innovation, double variance) {
+        double s = covariance[index][index] + variance;
+        if (innovation * innovation > RobotConfig.LOCALIZER_OUTLIER_GATE * s) {
+            return false;
+        }
+        for (int i = 0; i < SIZE; i++) {
+            gain[i] = covariance[i][index] / s;
+            row[i] = covariance[index][i];
+        }
+        for (int i = 0; i < SIZE; i++) {
+            state[i] += gain[i] * innovation;
+            for (int j = 0; j < SIZE; j++) {
+                covariance[i][j] -= gain[i] * row[j];
+            }
+        }
+        state[HEADING] = AngleUnit.normalizeRadians(state[HEADING]);
+        return true;
+    }
+
+    private void fuseWheels(SensorFrame frame) {
+        double leftFront = SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.LeftFront));
+        double leftRear = SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.LeftRear));
+        double rightRear = SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.RightRear));
+        double rightFront = SilverTitansDriveConstants.encoderTicksToInches(frame.getVelocity(SensorFrame.Motor.RightFront));
+
+        double k = (SilverTitansDriveConstants.TRACK_WIDTH + SilverTitansDriveConstants.TRACK_LENGTH) / 2;
+        double forward = (leftFront + leftRear + rightRear + rightFront) / 4;
+        double left = (leftRear + rightFront - leftFront - rightRear) / (4 * SilverTitansMecanumDrive.LATERAL_MULTIPLIER);
+        double turn = (rightRear + rightFront - leftFront - leftRear) / (4 * k);
+
+        double variance = RobotConfig.LOCALIZER_WHEEL_VELOCITY_STD * RobotConfig.LOCALIZER_WHEEL_VELOCITY_STD;
+        fuse(VX, forward - state[VX], variance);
+        fuse(VY, left - state[VY], variance);
+        fuse(OMEGA, turn - state[OMEGA],
+                RobotConfig.LOCALIZER_WHEEL_ANGULAR_VELOCITY_STD * RobotConfig.LOCALIZER_WHEEL_ANGULAR_VELOCITY_STD);
+    }
+
+    private void fuseOtos() {
+        otos.getMotion(otosPosition, otosVelocity);
+        //the OTOS tracks in its own frame, turn its velocity into the frame of the robot
+        double heading = Math.toRadians(otosPosition.h);
+        double cos = Math.cos(heading), sin = Math.sin(heading);
+        double forward = otosVelocity.x * cos + otosVelocity.y * sin;
+        double left = -otosVelocity.x * sin + otosVelocity.y * cos;
+
+        double variance = RobotConfig.LOCALIZER_OTOS_VELOCITY_STD * RobotConfig.LOCALIZER_OTOS_VELOCITY_STD;
+        fuse(VX, forward - state[VX], variance);
+        fuse(VY, left - state[VY], variance);
+        fuse(OMEGA, Math.toRadians(otosVelocity.h) - state[OMEGA],
+                RobotConfig.LOCALIZER_OTOS_ANGULAR_VELOCITY_STD * RobotConfig.LOCALIZER_OTOS_ANGULAR_VELOCITY_STD);
+    }
+
+    private void fuseImu() {
+        double heading = drive.getRawExternalHeading() + imuOffset;
+        fuse(HEADING, AngleUnit.normalizeRadians(heading - state[HEADING]),
+                RobotConfig.LOCALIZER_IMU_HEADING_STD * RobotConfig.LOCALIZER_IMU_HEADING_STD);
+    }
+
+    /**
+     * Find how the robot has moved since the specified time
+     * @param timestamp - MatchClock.nanoTime(), like when a camera frame was taken
+     * @param motion - where to put the motion, forward and left in inches, then turn in radians,
+     *               in the frame of the robot at the time
+     * @return false if the time is older than anything we remember
+     */
+    public synchronized boolean getMotionSince(long timestamp, double[] motion) {
+        int index = history.find(timestamp);
+        if (index < 0) {
+            return false;
+        }
+        history.getMotionSince(index, motion);
+        return true;
+    }
+
+    /**
+     * Find where we were at the specified time
+     * @param timestamp - MatchClock.nanoTime(), like when a camera frame was taken
+     * @param pose - where to put the pose, x and y in inches, then heading in radians
+     * @return false if the time is older than anything we remember
+     */
+    public synchronized boolean getPoseAt(long timestamp, double[] pose) {
+        int index = history.find(timestamp);
+        if (index < 0) {
+            return false;
+        }
+        pose[0] = history.getX(index);
+        pose[1] = history.getY(index);
+        pose[2] = history.getHeading(index);
+        return true;
+    }
+
+    private void fuseTags() {
+        List<AprilTagDetection> detections = visionPortal.getAprilTags();
+        if (detections == null) {
+            return;
+        }
+        long newest = lastTagFrameNanos;
+        for (int i = 0; i < detections.size(); i++) {
+            AprilTagDetection detection = detections.get(i);
+            if (detection.robotPose == null) {
+                //only tags with known field positions give us a robot pose
+                continue;
+            }
+            //frames are stamped with System.nanoTime(), our history with the match clock
+            long captureNanos = MatchClock.fromSystemNanos(detection.frameAcquisitionNanoTime);
+            //each frame is used once
+            if (captureNanos <= lastTagFrameNanos + RobotConfig.LOCALIZER_TAG_FRAME_MARGIN) {
+                continue;
+            }
+            newest = Math.max(newest, captureNanos);
+            fuseTag(detection, captureNanos);
+        }
+        lastTagFrameNanos = newest;
+    }
+
+    /**
+     * Correct our pose with where a tag says we were when its frame was taken
+     * @param detection - the tag
+     * @param captureNanos - MatchClock.nanoTime() when the frame was taken
+     */
+    private void fuseTag(AprilTagDetection detection, long captureNanos) {
+        int index = history.find(captureNanos);
+        if (index < 0) {
+            //too old to place
+            return;
+        }
+        Position position = detection.robotPose.getPosition().toUnit(DistanceUnit.INCH);
+        double tagHeading = detection.robotPose.getOrientation().getYaw(AngleUnit.RADIANS);
+        double x = history.getX(index), y = history.getY(index), heading = history.getHeading(index);
+        if (!fieldAligned) {
+            alignField(position.x, position.y, tagHeading, x, y, heading, detection.id);
+            return;
+        }
+
+        //where the tag says we were, in the road runner frame
+        double dx = position.x - fieldX, dy = position.y - fieldY;
+        double cos = Math.cos(fieldRotation), sin = Math.sin(fieldRotation);
+        double fixX = dx * cos + dy * sin;
+        double fixY = -dx * sin + dy * cos;
+        double fixHeading = tagHeading - fieldRotation;
+
+        double positionVariance = RobotConfig.LOCALIZER_TAG_POSITION_STD * RobotConfig.LOCALIZER_TAG_POSITION_STD;
+        double currentX = state[X], currentY = state[Y], currentHeading = state[HEADING];
+        boolean used = fuse(X, fixX - x, positionVariance);
+        used |= fuse(Y, fixY - y, positionVariance);
+        used |= fuse(HEADING, AngleUnit.normalizeRadians(fixHeading - heading),
+                RobotConfig.LOCALIZER_TAG_HEADING_STD * RobotConfig.LOCALIZER_TAG_HEADING_STD);
+        if (used) {
+            //the fix moved our current pose by what it says we were off back then, move the pose we
+            //had then instead, and replay how we have moved since to find where we are now
+            history.correct(index, x + state[X] - currentX, y + state[Y] - currentY,
+                    AngleUnit.normalizeRadians(heading + state[HEADING] - currentHeading));
+            int newest = history.size() - 1;
+            state[X] = history.getX(newest);
+            state[Y] = history.getY(newest);
+            state[HEADING] = history.getHeading(newest);
+            tagFixes++;
+            tagRejectionsInARow = 0;
+        }
+        else {
+            tagRejections++;
+            if (++tagRejectionsInARow >= RobotConfig.LOCALIZER_TAG_REALIGN_REJECTIONS) {
+                Match.log("Rejected " + tagRejectionsInARow + " tag fixes in a row, aligning with the field again");
+                fieldAligned = false;
+                tagRejectionsInARow = 0;
+            }
+        }
+    }
+
+    /**
+     * Line the road runner frame up with the field so that the pose we had when the tag was seen
+     * lands on the pose the tag gave us
+     */
+    private void alignField(double tagX, double tagY, double tagHeading, double x, double y, double heading, int id) {
+        fieldRotation = AngleUnit.normalizeRadians(tagHeading - heading);
+        double cos = Math.cos(fieldRotation), sin = Math.sin(fieldRotation);
+        fieldX = tagX - (x * cos - y * sin);
+        fieldY = tagY - (x * sin + y * cos);
+        fieldAligned = true;
+        Match.log(String.format(Locale.getDefault(), "Aligned with the field using tag %d: origin at %.1f,%.1f rotated %.1f degrees",
+                id, fieldX, fieldY, Math.toDegrees(fieldRotation)));
+    }
+
+    private void resetCovariance() {
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                covariance[i][j] = 0;
+            }
+        }
+        //we start out sure of where we are, and of being still
+        covariance[X][X] = 0.01;
+        covariance[Y][Y] = 0.01;
+        covariance[HEADING][HEADING] = Math.toRadians(1) * Math.toRadians(1);
+        covariance[VX][VX] = 1;
+        covariance[VY][VY] = 1;
+        covariance[OMEGA][OMEGA] = Math.toRadians(5) * Math.toRadians(5);
+    }
+
+    public String getStatus() {
+        return appendStatus(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append our pose, how sure we are of it and the tag fixes we have used to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public synchronized StringBuilder appendStatus(StringBuilder builder) {
+        builder.append('(');
+        MatchTelemetry.append(builder, state[X], 1).append(',');
+        MatchTelemetry.append(builder, state[Y], 1).append(',');
+        MatchTelemetry.append(builder, Math.toDegrees(state[HEADING]), 1).append(")±");
+        MatchTelemetry.append(builder, Math.sqrt(covariance[X][X] + covariance[Y][Y]), 1)
+                .append(" tags:").append(tagFixes).append('/').append(tagFixes + tagRejections);
+        return builder.append(fieldAligned ? " aligned" : " not aligned");
+    }
+}
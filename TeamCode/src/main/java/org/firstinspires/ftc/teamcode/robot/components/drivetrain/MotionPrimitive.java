@@ -0,0 +1,91 @@
+package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
+
+import java.util.Locale;
+
+/**
+ * One segment of a move: driving straight, strafing or turning, at a fraction of our top speed.
+ * <p>
+ * Distances and turns are relative to where the segment before left the robot, except for turnTo,
+ * which turns to a heading of the localizer. Chains of primitives are followed as one continuous
+ * move by the PrimitiveFollower.
+ */
+public final class MotionPrimitive {
+    public enum Type {
+        Straight, Strafe, Turn, TurnTo
+    }
+
+    private final Type type;
+    private final double amount;
+    private final double speed;
+
+    private MotionPrimitive(Type type, double amount, double speed) {
+        this.type = type;
+        this.amount = amount;
+        this.speed = Math.min(Math.abs(speed), 1);
+    }
+
+    /**
+     * Drive straight
+     * @param inches - how far to drive, negative to drive backwards
+     * @param speed - fraction of our top speed
+     * @return the primitive
+     */
+    public static MotionPrimitive straight(double inches, double speed) {
+        return new MotionPrimitive(Type.Straight, inches, speed);
+    }
+
+    /**
+     * Strafe
+     * @param inches - how far to strafe left, negative to strafe right
+     * @param speed - fraction of our top speed
+     * @return the primitive
+     */
+    public static MotionPrimitive strafe(double inches, double speed) {
+        return new MotionPrimitive(Type.Strafe, inches, speed);
+    }
+
+    /**
+     * Turn in place
+     * @param radians - how far to turn anti-clockwise, negative to turn clockwise
+     * @param speed - fraction of our top turn rate
+     * @return the primitive
+     */
+    public static MotionPrimitive turn(double radians, double speed) {
+        return new MotionPrimitive(Type.Turn, radians, speed);
+    }
+
+    /**
+     * Turn in place to a heading, the shortest way round
+     * @param heading - radians, in the frame of our localizer
+     * @param speed - fraction of our top turn rate
+     * @return the primitive
+     */
+    public static MotionPrimitive turnTo(double heading, double speed) {
+        return new MotionPrimitive(Type.TurnTo, heading, speed);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns inches for straight drives and strafes, radians for turns and the heading for turnTo
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public boolean isTurn() {
+        return type == Type.Turn || type == Type.TurnTo;
+    }
+
+    public String toString() {
+        return isTurn()
+                ? String.format(Locale.getDefault(), "%s %.1f°@%.2f", type, Math.toDegrees(amount), speed)
+                : String.format(Locale.getDefault(), "%s %.1f\"@%.2f", type, amount, speed);
+    }
+}
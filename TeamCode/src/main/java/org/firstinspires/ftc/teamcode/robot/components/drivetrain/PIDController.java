@@ -1,6 +1,6 @@
 package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
 
-import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.logging.MatchLogger;
 
 public class PIDController
 {
@@ -70,8 +70,8 @@ public class PIDController
 
             // Perform the primary PID calculation
             m_result = Kp * m_error + Ki * m_totalError + Kd * (m_error - m_prevError);
-            Match.log("Kp:" + Kp + ", Ki:" + Ki + ", Kd:" + Kd + ", err: " + m_error
-            + ", totErr:" + m_totalError + ", dErr:" + (m_error - m_prevError) + ", result=" + m_result);
+            MatchLogger.getInstance().pidTerms(m_error, Kp * m_error, Ki * m_totalError,
+                    Kd * (m_error - m_prevError), m_result);
 
             // Set the current error to the previous error for the next cycle.
             m_prevError = m_error;
@@ -0,0 +1,158 @@
+package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+
+/**
+ * The poses the robot had over a short while, oldest overwritten first, kept in primitive arrays
+ * so that nothing is boxed or allocated as poses are added.
+ *
+ * Along with each pose we keep how the robot moved to it from the pose before, forward, to the
+ * left and turning in the frame of the robot. That lets us rewind to when a camera frame was
+ * taken, put the pose there where the camera says it was, and replay how we moved since to find
+ * where that puts us now.
+ *
+ * Entries are addressed by index, 0 being the oldest and size() - 1 the newest. Poses are added
+ * in time order, so finding one by time is a binary search.
+ */
+public class PoseHistory {
+    private final long[] times;
+    private final double[] x, y, heading;
+    private final double[] forward, left, turn;
+    private int size, next;
+
+    /**
+     * Create a history
+     * @param capacity - how many poses to remember
+     */
+    public PoseHistory(int capacity) {
+        this.times = new long[capacity];
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.heading = new double[capacity];
+        this.forward = new double[capacity];
+        this.left = new double[capacity];
+        this.turn = new double[capacity];
+    }
+
+    /**
+     * Remember a pose, no earlier than the newest one we have
+     * @param time - MatchClock.nanoTime() of the pose
+     * @param x - inches
+     * @param y - inches
+     * @param heading - radians
+     */
+    public void add(long time, double x, double y, double heading) {
+        int slot = next;
+        if (size > 0) {
+            int previous = physical(size - 1);
+            double dx = x - this.x[previous], dy = y - this.y[previous];
+            double cos = Math.cos(this.heading[previous]), sin = Math.sin(this.heading[previous]);
+            forward[slot] = dx * cos + dy * sin;
+            left[slot] = -dx * sin + dy * cos;
+            turn[slot] = AngleUnit.normalizeRadians(heading - this.heading[previous]);
+        }
+        else {
+            forward[slot] = 0;
+            left[slot] = 0;
+            turn[slot] = 0;
+        }
+        times[slot] = time;
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.heading[slot] = heading;
+        next = (next + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+    }
+
+    /**
+     * Forget everything, when the robot has been put somewhere new
+     */
+    public void clear() {
+        size = 0;
+        next = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the newest pose from no later than the specified time
+     * @param time - MatchClock.nanoTime() to look for
+     * @return index of the pose, -1 if the time is older than anything we remember
+     */
+    public int find(long time) {
+        int low = 0, high = size - 1, found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (times[physical(middle)] <= time) {
+                found = middle;
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Rewind to a pose, replace it and replay how we moved since, so that every pose after it
+     * moves along with it
+     * @param index - index of the pose
+     * @param x - where it should be, inches
+     * @param y - inches
+     * @param heading - radians
+     */
+    public void correct(int index, double x, double y, double heading) {
+        int slot = physical(index);
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.heading[slot] = heading;
+        for (int i = index + 1; i < size; i++) {
+            int previous = slot;
+            slot = physical(i);
+            double cos = Math.cos(this.heading[previous]), sin = Math.sin(this.heading[previous]);
+            this.x[slot] = this.x[previous] + forward[slot] * cos - left[slot] * sin;
+            this.y[slot] = this.y[previous] + forward[slot] * sin + left[slot] * cos;
+            this.heading[slot] = AngleUnit.normalizeRadians(this.heading[previous] + turn[slot]);
+        }
+    }
+
+    /**
+     * Find how the robot has moved since the specified pose, in the frame of the robot at that pose
+     * @param index - index of the pose
+     * @param motion - where to put the motion, forward and left in inches, then turn in radians
+     */
+    public void getMotionSince(int index, double[] motion) {
+        int from = physical(index), to = physical(size - 1);
+        double dx = x[to] - x[from], dy = y[to] - y[from];
+        double cos = Math.cos(heading[from]), sin = Math.sin(heading[from]);
+        motion[0] = dx * cos + dy * sin;
+        motion[1] = -dx * sin + dy * cos;
+        motion[2] = AngleUnit.normalizeRadians(heading[to] - heading[from]);
+    }
+
+    public long getTime(int index) {
+        return times[physical(index)];
+    }
+
+    public double getX(int index) {
+        return x[physical(index)];
+    }
+
+    public double getY(int index) {
+        return y[physical(index)];
+    }
+
+    public double getHeading(int index) {
+        return heading[physical(index)];
+    }
+
+    /**
+     * Returns where in our arrays the entry with the specified index is
+     */
+    private int physical(int index) {
+        return (next - size + index + times.length) % times.length;
+    }
+}
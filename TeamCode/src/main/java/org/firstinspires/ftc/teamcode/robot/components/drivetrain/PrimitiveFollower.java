@@ -0,0 +1,124 @@
+package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.robot.ControlLoop;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.SensorFrame;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Drives the robot along a chain of motion primitives as one continuous move.
+ * <p>
+ * The chain is planned as a PrimitivePath from the pose our localizer has when we start, so
+ * odometry carries on from one move to the next and the encoders are never reset. Every control
+ * loop cycle we drive at the path's velocity, plus a correction toward where the path says we
+ * should be, turned into the robot's frame with the heading we have.
+ * <p>
+ * We have arrived once the path is over and we have been within tolerance of its end for a few
+ * cycles. If we don't get there soon after the path is over, we stop where we are.
+ */
+public class PrimitiveFollower implements ControlLoop.Controller {
+    public enum Result {
+        Idle, Following, Arrived, Missed
+    }
+
+    private final DriveTrain driveTrain;
+    private final FusedLocalizer localizer;
+
+    private Result result = Result.Idle;
+    private PrimitivePath path;
+    private long startNanos;
+    private int settledCycles;
+    //x, y and heading, then their velocities, of where we should be this cycle
+    private final double[] reference = new double[6];
+
+    public PrimitiveFollower(DriveTrain driveTrain, FusedLocalizer localizer) {
+        this.driveTrain = driveTrain;
+        this.localizer = localizer;
+    }
+
+    /**
+     * Start following primitives from where we are
+     * @param primitives - the segments in the order to drive them
+     * @return the path planned
+     */
+    public synchronized PrimitivePath start(List<MotionPrimitive> primitives) {
+        this.path = new PrimitivePath(localizer.getPoseEstimate(), primitives);
+        this.startNanos = MatchClock.nanoTime();
+        this.settledCycles = 0;
+        this.result = Result.Following;
+        Match.log(String.format(Locale.getDefault(), "Following %d primitives %s->%s in %.2f secs",
+                primitives.size(), path.getStartPose(), path.getEndPose(), path.getDuration()));
+        return path;
+    }
+
+    /**
+     * Stop following the primitives, leaving the motors to the caller
+     */
+    public synchronized void stop() {
+        if (result == Result.Following) {
+            result = Result.Idle;
+        }
+    }
+
+    public synchronized Result getResult() {
+        return result;
+    }
+
+    /**
+     * Drive along the path
+     * @param frame - the sensor frame of this cycle
+     * @return true while we are following the path
+     */
+    @Override
+    public synchronized boolean update(SensorFrame frame) {
+        if (result != Result.Following) {
+            return false;
+        }
+        double time = (frame.getTimestamp() - startNanos) / 1e9;
+        path.getReference(time, reference);
+        Pose2d pose = localizer.getPoseEstimate();
+        double xError = reference[0] - pose.getX(), yError = reference[1] - pose.getY();
+        double headingError = AngleUnit.normalizeRadians(reference[2] - pose.getHeading());
+
+        if (time >= path.getDuration()) {
+            if (Math.hypot(xError, yError) < RobotConfig.PRIMITIVE_POSITION_TOLERANCE
+                    && Math.abs(headingError) < RobotConfig.PRIMITIVE_HEADING_TOLERANCE) {
+                if (++settledCycles >= RobotConfig.PRIMITIVE_SETTLE_CYCLES) {
+                    finish(Result.Arrived, "Arrived at end of primitives");
+                    return false;
+                }
+            }
+            else {
+                settledCycles = 0;
+            }
+            if (time > path.getDuration() + RobotConfig.PRIMITIVE_SETTLE_TIMEOUT / 1000.0) {
+                finish(Result.Missed, String.format(Locale.getDefault(),
+                        "Stopped %.1f\" and %.1f° from end of primitives",
+                        Math.hypot(xError, yError), Math.toDegrees(headingError)));
+                return false;
+            }
+        }
+
+        //the path's velocity, and a correction toward where it says we should be
+        double xVelocity = reference[3] + RobotConfig.PRIMITIVE_POSITION_GAIN * xError;
+        double yVelocity = reference[4] + RobotConfig.PRIMITIVE_POSITION_GAIN * yError;
+        double turnVelocity = reference[5] + RobotConfig.PRIMITIVE_HEADING_GAIN * headingError;
+        //in the robot's frame
+        double cos = Math.cos(pose.getHeading()), sin = Math.sin(pose.getHeading());
+        driveTrain.driveVelocity(xVelocity * cos + yVelocity * sin, -xVelocity * sin + yVelocity * cos, turnVelocity);
+        return true;
+    }
+
+    private void finish(Result result, String message) {
+        this.result = result;
+        driveTrain.halt();
+        Match.log(message);
+    }
+}
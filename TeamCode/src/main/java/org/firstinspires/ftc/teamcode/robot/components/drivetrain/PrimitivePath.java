@@ -0,0 +1,134 @@
+package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.MotionProfile;
+
+import java.util.List;
+
+/**
+ * A chain of motion primitives planned out as one path, in the frame of our localizer.
+ * <p>
+ * Each primitive gets its own trapezoidal profile along its direction on the field, worked out from
+ * where the primitives before it leave the robot, so errors along the way don't add up. A segment
+ * starts slowing down just as the next one starts speeding up, so the robot sweeps round the
+ * corner instead of stopping at it. A mecanum drive can do both at once, and as each segment still
+ * covers its own distance, the path still ends where the primitives say. Segments in the same
+ * direction blend into one cruise.
+ */
+public class PrimitivePath {
+    private final Pose2d startPose, endPose;
+    private final MotionProfile[] profiles;
+    //when each segment starts, seconds from the start of the path
+    private final double[] startTimes;
+    //direction on the field of each segment that drives, 0s for turns
+    private final double[] directionX, directionY;
+    private final boolean[] turns;
+    private final double duration;
+
+    /**
+     * Plan a path
+     * @param startPose - where the robot starts, in the frame of the localizer
+     * @param primitives - the segments in the order to drive them
+     */
+    public PrimitivePath(Pose2d startPose, List<MotionPrimitive> primitives) {
+        int count = primitives.size();
+        this.startPose = startPose;
+        this.profiles = new MotionProfile[count];
+        this.startTimes = new double[count];
+        this.directionX = new double[count];
+        this.directionY = new double[count];
+        this.turns = new boolean[count];
+
+        double x = startPose.getX(), y = startPose.getY(), heading = startPose.getHeading();
+        double end = 0;
+        for (int i = 0; i < count; i++) {
+            MotionPrimitive primitive = primitives.get(i);
+            turns[i] = primitive.isTurn();
+            if (turns[i]) {
+                double angle = primitive.getType() == MotionPrimitive.Type.TurnTo
+                        ? AngleUnit.normalizeRadians(primitive.getAmount() - heading)
+                        : primitive.getAmount();
+                profiles[i] = new MotionProfile(0, angle,
+                        RobotConfig.DRIVE_MAX_ANGULAR_VELOCITY * primitive.getSpeed(),
+                        RobotConfig.PRIMITIVE_MAX_ANGULAR_ACCELERATION);
+                heading += angle;
+            }
+            else {
+                double forward = primitive.getType() == MotionPrimitive.Type.Straight ? primitive.getAmount() : 0;
+                double left = primitive.getType() == MotionPrimitive.Type.Strafe ? primitive.getAmount() : 0;
+                double cos = Math.cos(heading), sin = Math.sin(heading);
+                double dx = forward * cos - left * sin, dy = forward * sin + left * cos;
+                double length = Math.hypot(dx, dy);
+                if (length > 0) {
+                    directionX[i] = dx / length;
+                    directionY[i] = dy / length;
+                }
+                profiles[i] = new MotionProfile(0, length,
+                        RobotConfig.DRIVE_MAX_VELOCITY * primitive.getSpeed(), RobotConfig.PRIMITIVE_MAX_ACCELERATION);
+                x += dx;
+                y += dy;
+            }
+            //start speeding up while the segment before is slowing down
+            double overlap = i == 0 ? 0 : RobotConfig.PRIMITIVE_BLEND
+                    * Math.min(profiles[i - 1].getAccelerationTime(), profiles[i].getAccelerationTime());
+            startTimes[i] = i == 0 ? 0 : Math.max(startTimes[i - 1], startTimes[i - 1] + profiles[i - 1].getDuration() - overlap);
+            end = Math.max(end, startTimes[i] + profiles[i].getDuration());
+        }
+        this.endPose = new Pose2d(x, y, AngleUnit.normalizeRadians(heading));
+        this.duration = end;
+    }
+
+    /**
+     * Returns where the robot should be and how fast it should be going
+     * @param time - seconds since the start of the path
+     * @param reference - where to put the x, y and heading, then the x, y and turn velocities, all
+     *                  in the frame of the localizer
+     */
+    public void getReference(double time, double[] reference) {
+        double x = startPose.getX(), y = startPose.getY(), heading = startPose.getHeading();
+        double xVelocity = 0, yVelocity = 0, turnVelocity = 0;
+        for (int i = 0; i < profiles.length; i++) {
+            double segmentTime = time - startTimes[i];
+            double position = profiles[i].getPosition(segmentTime);
+            double velocity = profiles[i].getVelocity(segmentTime);
+            if (turns[i]) {
+                heading += position;
+                turnVelocity += velocity;
+            }
+            else {
+                x += directionX[i] * position;
+                y += directionY[i] * position;
+                xVelocity += directionX[i] * velocity;
+                yVelocity += directionY[i] * velocity;
+            }
+        }
+        reference[0] = x;
+        reference[1] = y;
+        reference[2] = AngleUnit.normalizeRadians(heading);
+        reference[3] = xVelocity;
+        reference[4] = yVelocity;
+        reference[5] = turnVelocity;
+    }
+
+    public Pose2d getStartPose() {
+        return startPose;
+    }
+
+    /**
+     * Returns where the path ends, in the frame of the localizer
+     */
+    public Pose2d getEndPose() {
+        return endPose;
+    }
+
+    /**
+     * Returns how long the path takes
+     * @return seconds
+     */
+    public double getDuration() {
+        return duration;
+    }
+}
@@ -0,0 +1,425 @@
+package org.firstinspires.ftc.teamcode.robot.components.drivetrain;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+import com.acmerobotics.roadrunner.trajectory.TrajectoryBuilder;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansMecanumDrive;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.operations.BearingOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.CompositeOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.DriveToAprilTag;
+import org.firstinspires.ftc.teamcode.robot.operations.DriveToPositionOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.DriveTrainOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.FollowTrajectory;
+import org.firstinspires.ftc.teamcode.robot.operations.MotionPrimitivesOperation;
+import org.firstinspires.ftc.teamcode.robot.operations.Operation;
+import org.firstinspires.ftc.teamcode.robot.operations.Resource;
+import org.firstinspires.ftc.teamcode.robot.operations.StrafeLeftToAprilTagOperation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds spline trajectories on a small pool of worker threads and remembers them.
+ *
+ * Trajectories are cached by their start pose, rounded to RobotConfig.TRAJECTORY_POSITION_QUANTUM
+ * and RobotConfig.TRAJECTORY_HEADING_QUANTUM, their target pose and the constraints they are
+ * built with, dropping the least recently used once the cache is full. Autonomous precompiles
+ * its routes while waiting for the match to start, predicting where each drive will start from.
+ *
+ * When a trajectory is asked for, the cached trajectory to the same target that starts closest
+ * to where the robot actually is gets used:
+ *   - within the follow tolerance, it is followed as is and the follower corrects the difference
+ *   - within the patch tolerance, a short approach to its start is built and followed first
+ *   - otherwise, or if there is none, a new trajectory is built from where the robot is
+ * Listeners are called on a worker thread once the trajectories are ready.
+ *
+ * Requests are never built on the thread making them, which may be the control loop. When the
+ * queue is full a request is rejected and its listener told it failed. Precompiling leaves
+ * RobotConfig.TRAJECTORY_QUEUE_RESERVE places in the queue for the trajectories the robot is
+ * waiting for, and drops what doesn't fit.
+ */
+public class TrajectoryService {
+    public enum Constraints {
+        Normal, Accurate
+    }
+
+    /**
+     * Told when a requested trajectory is ready
+     */
+    public interface Listener {
+        /**
+         * @param approach - trajectory to follow first to get to the start of trajectory, null if not needed
+         * @param trajectory - trajectory that reaches the target
+         */
+        void trajectoryReady(Trajectory approach, Trajectory trajectory);
+
+        void trajectoryFailed(Throwable e);
+    }
+
+    /**
+     * What a cached trajectory was built from. Poses are rounded so that routes that start
+     * nearly in the same place are built just once.
+     */
+    private static class Key {
+        final long startX, startY, startHeading, targetX, targetY, targetHeading, endTangent;
+        final Constraints constraints;
+
+        Key(Pose2d start, Pose2d target, double endTangent, Constraints constraints) {
+            this.startX = positionQuantum(start.getX());
+            this.startY = positionQuantum(start.getY());
+            this.startHeading = headingQuantum(start.getHeading());
+            this.targetX = positionQuantum(target.getX());
+            this.targetY = positionQuantum(target.getY());
+            this.targetHeading = headingQuantum(target.getHeading());
+            this.endTangent = headingQuantum(endTangent);
+            this.constraints = constraints;
+        }
+
+        boolean sameRoute(Key other) {
+            return targetX == other.targetX && targetY == other.targetY && targetHeading == other.targetHeading
+                    && endTangent == other.endTangent && constraints == other.constraints;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return startX == other.startX && startY == other.startY && startHeading == other.startHeading
+                    && sameRoute(other);
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = startX;
+            hash = hash * 31 + startY;
+            hash = hash * 31 + startHeading;
+            hash = hash * 31 + targetX;
+            hash = hash * 31 + targetY;
+            hash = hash * 31 + targetHeading;
+            hash = hash * 31 + endTangent;
+            hash = hash * 31 + constraints.ordinal();
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        private static long positionQuantum(double inches) {
+            return Math.round(inches / RobotConfig.TRAJECTORY_POSITION_QUANTUM);
+        }
+
+        private static long headingQuantum(double radians) {
+            return Math.round(AngleUnit.normalizeRadians(radians) / RobotConfig.TRAJECTORY_HEADING_QUANTUM);
+        }
+    }
+
+    /**
+     * A cached trajectory, which may still be being built
+     */
+    private static class Entry {
+        final Pose2d start;
+        private Trajectory trajectory;
+        private Throwable error;
+        private List<Listener> listeners = new ArrayList<>();
+
+        Entry(Pose2d start) {
+            this.start = start;
+        }
+
+        /**
+         * Call the listener when the trajectory is ready, right away if it already is
+         */
+        void whenReady(Trajectory approach, Listener listener) {
+            synchronized (this) {
+                if (trajectory == null && error == null) {
+                    listeners.add(approach == null ? listener : new Listener() {
+                        @Override
+                        public void trajectoryReady(Trajectory ignored, Trajectory trajectory) {
+                            listener.trajectoryReady(approach, trajectory);
+                        }
+
+                        @Override
+                        public void trajectoryFailed(Throwable e) {
+                            listener.trajectoryFailed(e);
+                        }
+                    });
+                    return;
+                }
+            }
+            tell(approach, listener);
+        }
+
+        void complete(Trajectory trajectory, Throwable error) {
+            List<Listener> waiting;
+            synchronized (this) {
+                this.trajectory = trajectory;
+                this.error = error;
+                waiting = listeners;
+                listeners = null;
+            }
+            for (Listener listener : waiting) {
+                tell(null, listener);
+            }
+        }
+
+        private void tell(Trajectory approach, Listener listener) {
+            if (error != null) {
+                listener.trajectoryFailed(error);
+            } else {
+                listener.trajectoryReady(approach, trajectory);
+            }
+        }
+
+        synchronized boolean failed() {
+            return error != null;
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final LinkedHashMap<Key, Entry> cache =
+            new LinkedHashMap<Key, Entry>(RobotConfig.TRAJECTORY_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    return size() > RobotConfig.TRAJECTORY_CACHE_SIZE;
+                }
+            };
+    private final AtomicInteger hits = new AtomicInteger(), patches = new AtomicInteger(),
+            misses = new AtomicInteger(), rejections = new AtomicInteger();
+
+    public TrajectoryService() {
+        pool = new ThreadPoolExecutor(RobotConfig.TRAJECTORY_SERVICE_THREADS, RobotConfig.TRAJECTORY_SERVICE_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(RobotConfig.TRAJECTORY_QUEUE_CAPACITY),
+                new ThreadFactory() {
+                    private int count;
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Trajectory builder " + ++count);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                //reject what doesn't fit rather than build it on the caller, which may be the control loop
+                new ThreadPoolExecutor.AbortPolicy());
+        //let idle builders go away, a new service is created with every drive train
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get a trajectory from where the robot is to the target, from the cache if we can
+     * @param currentPose - where the robot is
+     * @param target - where the robot should get to
+     * @param endTangent - direction of travel at the target
+     * @param constraints - which velocity constraints to build with
+     * @param listener - told when the trajectory is ready
+     */
+    public void request(Pose2d currentPose, Pose2d target, double endTangent, Constraints constraints,
+                        Listener listener) {
+        Key key = new Key(currentPose, target, endTangent, constraints);
+        Entry nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+        synchronized (cache) {
+            for (Map.Entry<Key, Entry> cached : cache.entrySet()) {
+                if (cached.getKey().sameRoute(key) && !cached.getValue().failed()) {
+                    double distance = cached.getValue().start.vec().distTo(currentPose.vec());
+                    if (distance < nearestDistance) {
+                        nearest = cached.getValue();
+                        nearestDistance = distance;
+                    }
+                }
+            }
+        }
+        if (nearest != null) {
+            double headingDifference = Math.abs(
+                    AngleUnit.normalizeRadians(nearest.start.getHeading() - currentPose.getHeading()));
+            if (nearestDistance <= RobotConfig.TRAJECTORY_FOLLOW_TOLERANCE
+                    && headingDifference <= RobotConfig.TRAJECTORY_FOLLOW_HEADING_TOLERANCE) {
+                hits.incrementAndGet();
+                nearest.whenReady(null, listener);
+                return;
+            }
+            if (nearestDistance <= RobotConfig.TRAJECTORY_PATCH_TOLERANCE
+                    && headingDifference <= RobotConfig.TRAJECTORY_PATCH_HEADING_TOLERANCE) {
+                patches.incrementAndGet();
+                patch(currentPose, nearest, constraints, listener);
+                return;
+            }
+        }
+        misses.incrementAndGet();
+        get(key, currentPose, target, endTangent, constraints).whenReady(null, listener);
+    }
+
+    /**
+     * Build an approach from where the robot is to the start of a cached trajectory
+     */
+    private void patch(final Pose2d currentPose, final Entry entry, final Constraints constraints,
+                       final Listener listener) {
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Trajectory approach = builder(currentPose, constraints)
+                                .lineToLinearHeading(entry.start)
+                                .build();
+                        entry.whenReady(approach, listener);
+                    } catch (Throwable e) {
+                        RobotLog.logStackTrace(e);
+                        listener.trajectoryFailed(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejections.incrementAndGet();
+            Match.log("Trajectory queue full, not patching to " + entry.start);
+            listener.trajectoryFailed(e);
+        }
+    }
+
+    /**
+     * Returns the cache entry for the specified route, queueing it to be built if we don't have it.
+     * If the queue is full the entry fails right away and is not kept.
+     */
+    private Entry get(Key key, final Pose2d start, final Pose2d target, final double endTangent,
+                      final Constraints constraints) {
+        final Entry entry;
+        synchronized (cache) {
+            Entry cached = cache.get(key);
+            if (cached != null && !cached.failed()) {
+                return cached;
+            }
+            entry = new Entry(start);
+            cache.put(key, entry);
+        }
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long buildStart = System.nanoTime();
+                    try {
+                        Trajectory trajectory = builder(start, constraints)
+                                .splineToLinearHeading(target, endTangent)
+                                .build();
+                        Match.log(String.format(Locale.getDefault(), "Built trajectory %s->%s in %.1f mSecs",
+                                start, target, (System.nanoTime() - buildStart) / 1e6));
+                        entry.complete(trajectory, null);
+                    } catch (Throwable e) {
+                        RobotLog.logStackTrace(e);
+                        entry.complete(null, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejections.incrementAndGet();
+            Match.log("Trajectory queue full, not building " + start + "->" + target);
+            synchronized (cache) {
+                if (cache.get(key) == entry) {
+                    cache.remove(key);
+                }
+            }
+            entry.complete(null, e);
+        }
+        return entry;
+    }
+
+    private static TrajectoryBuilder builder(Pose2d start, Constraints constraints) {
+        return constraints == Constraints.Accurate
+                ? SilverTitansMecanumDrive.accurateTrajectoryBuilder(start)
+                : SilverTitansMecanumDrive.trajectoryBuilder(start);
+    }
+
+    /**
+     * Returns where a bearing operation started at the specified pose will drive to
+     * @param currentPose - where the robot is
+     * @param desiredBearing - bearing to turn to, in radians
+     * @return the target pose
+     */
+    public static Pose2d getBearingTarget(Pose2d currentPose, double desiredBearing) {
+        return currentPose.plus(new Pose2d(.05, .05, desiredBearing - currentPose.getHeading()));
+    }
+
+    /**
+     * Build, in the background, the trajectories for the drive train operations in the list,
+     * following the robot's expected pose from one operation to the next. Where the pose can't be
+     * predicted, as after a timed drive, precompilation stops until an operation with a known end
+     * pose comes along. Once only the places kept for the robot's own requests are left in the
+     * queue, the rest are dropped and get built when they are asked for.
+     * @param operations - operations in the order they will run
+     * @param startPose - where the robot starts
+     * @return the number of trajectories queued to be built
+     */
+    public int precompile(List<Operation> operations, Pose2d startPose) {
+        int queued = 0;
+        Pose2d pose = startPose;
+        for (Operation operation : operations) {
+            if (pool.getQueue().remainingCapacity() <= RobotConfig.TRAJECTORY_QUEUE_RESERVE) {
+                Match.log("Trajectory queue full, dropping the rest of the precompile requests");
+                break;
+            }
+            if (operation instanceof BearingOperation) {
+                if (pose != null) {
+                    Pose2d target = getBearingTarget(pose, ((BearingOperation) operation).getDesiredBearing());
+                    queued += queue(pose, target, 0, Constraints.Normal);
+                    pose = target;
+                }
+            } else if (operation instanceof DriveToPositionOperation) {
+                Pose2d target = ((DriveToPositionOperation) operation).getDesiredPose();
+                if (pose != null) {
+                    queued += queue(pose, target, target.getHeading(), Constraints.Accurate);
+                }
+                pose = target;
+            } else if (operation instanceof FollowTrajectory) {
+                Trajectory trajectory = ((FollowTrajectory) operation).getTrajectory();
+                pose = trajectory == null ? null : trajectory.end();
+            } else if (operation instanceof MotionPrimitivesOperation) {
+                pose = pose == null ? null : ((MotionPrimitivesOperation) operation).getEndPose(pose);
+            } else if (operation instanceof CompositeOperation
+                    && operation.getResources().contains(Resource.DriveTrain)) {
+                //composites that drive may end anywhere their children do
+                pose = null;
+            } else if (operation instanceof DriveTrainOperation || operation instanceof DriveToAprilTag
+                    || operation instanceof StrafeLeftToAprilTagOperation) {
+                //timed drives and drives to april tags end where they end
+                pose = null;
+            }
+        }
+        Match.log("Precompiling " + queued + " trajectories");
+        return queued;
+    }
+
+    private int queue(Pose2d start, Pose2d target, double endTangent, Constraints constraints) {
+        Key key = new Key(start, target, endTangent, constraints);
+        synchronized (cache) {
+            if (cache.containsKey(key)) {
+                return 0;
+            }
+        }
+        //a rejected request fails at once
+        return get(key, start, target, endTangent, constraints).failed() ? 0 : 1;
+    }
+
+    public StringBuilder appendStatus(StringBuilder builder) {
+        int cached;
+        synchronized (cache) {
+            cached = cache.size();
+        }
+        return builder.append("Cache:").append(cached)
+                .append(" Hits:").append(hits.get())
+                .append(" Patched:").append(patches.get())
+                .append(" Built:").append(misses.get())
+                .append(" Rejected:").append(rejections.get());
+    }
+}
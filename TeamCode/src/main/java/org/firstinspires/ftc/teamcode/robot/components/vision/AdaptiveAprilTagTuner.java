@@ -0,0 +1,271 @@
+package org.firstinspires.ftc.teamcode.robot.components.vision;
+
+import android.graphics.Canvas;
+
+import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.vision.VisionProcessor;
+import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
+import org.firstinspires.ftc.vision.apriltag.AprilTagProcessor;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+/**
+ * Picks the AprilTag decimation for every frame, and blanks out the parts of the frame a tag we are
+ * tracking can't be in, so we get the frame rate we need without losing far away tags.
+ *
+ * Decimation trades range for speed. While a tag is being seen we use the highest decimation that
+ * still sees a tag of its size a little further away than it is, so close up we run fast. With no
+ * tag in view we use the lowest decimation whose processing time fits in VISION_FRAME_BUDGET, so
+ * we see as far as the processor can afford.
+ *
+ * While a tag is being seen, we predict where it will be in the next frame from how it moved over
+ * the last two, and paint everything outside a box around that black before the AprilTag processor
+ * gets the frame. The detector finds nothing to look at in the black, which makes it much quicker.
+ * Cropping would be quicker still, but the processor works out tag poses from where the tag is in
+ * the whole image. As soon as a frame misses the tag we go back to searching the whole frame.
+ *
+ * The region processor must be added to the vision portal just ahead of the AprilTag processor and
+ * after any processor that needs the whole frame. We listen to the AprilTagFrameProcessor after it.
+ */
+public class AdaptiveAprilTagTuner implements AprilTagFrameProcessor.Listener {
+    private static final Scalar BLANK = new Scalar(0, 0, 0, 255);
+
+    private final AprilTagProcessor aprilTagProcessor;
+
+    //decimation being used, 1 for the first entry of TAG_DECIMATION_RANGES and so on
+    private int decimation;
+    //average milli-seconds it took to process a whole frame at each decimation, 0 until we have tried it
+    private final double[] processingMillis = new double[RobotConfig.TAG_DECIMATION_RANGES.length];
+    //the same for frames blanked outside our region, which are much quicker so are kept apart
+    private final double[] regionProcessingMillis = new double[RobotConfig.TAG_DECIMATION_RANGES.length];
+
+    //where we expect the tag in the next frame, when we are tracking one
+    private boolean regionActive;
+    private double regionLeft, regionTop, regionRight, regionBottom;
+    private final Point regionCorner1 = new Point(), regionCorner2 = new Point();
+    //where the tag was in the last frame, and when that frame was taken
+    private boolean lastSeen;
+    private double lastCenterX, lastCenterY;
+    private long lastCaptureNanos;
+
+    //when the region processor got the frame being processed, and whether it blanked it
+    private volatile long frameStartNanos;
+    private volatile boolean frameBlanked;
+    private volatile double fps, latencyMillis;
+    private volatile long frames;
+
+    private final VisionProcessor regionProcessor = new VisionProcessor() {
+        @Override
+        public void init(int width, int height, CameraCalibration calibration) {
+        }
+
+        @Override
+        public Object processFrame(Mat frame, long captureTimeNanos) {
+            frameStartNanos = System.nanoTime();
+            frameBlanked = regionActive && blankOutside(frame);
+            return null;
+        }
+
+        @Override
+        public void onDrawFrame(Canvas canvas, int onscreenWidth, int onscreenHeight, float scaleBmpPxToCanvasPx, float scaleCanvasDensity, Object userContext) {
+        }
+    };
+
+    public AdaptiveAprilTagTuner(AprilTagProcessor aprilTagProcessor) {
+        this.aprilTagProcessor = aprilTagProcessor;
+        setDecimation(RobotConfig.TAG_INITIAL_DECIMATION);
+    }
+
+    /**
+     * Returns the processor to add to the vision portal just ahead of the AprilTag processor
+     * @return the processor
+     */
+    public VisionProcessor getRegionProcessor() {
+        return regionProcessor;
+    }
+
+    /**
+     * Learn from the frame the AprilTag processor just went through, and set up for the next one
+     * @param detections - the tags seen
+     * @param captureTimeNanos - System.nanoTime() when the frame was taken
+     */
+    @Override
+    public void newFrame(List<AprilTagDetection> detections, long captureTimeNanos) {
+        long now = System.nanoTime();
+        double millis = (now - frameStartNanos) / 1e6;
+        double[] averages = frameBlanked ? regionProcessingMillis : processingMillis;
+        int index = decimation - 1;
+        averages[index] = averages[index] == 0 ? millis
+                : averages[index] + RobotConfig.VISION_SMOOTHING * (millis - averages[index]);
+        latencyMillis = (now - captureTimeNanos) / 1e6;
+        if (lastCaptureNanos != 0 && captureTimeNanos > lastCaptureNanos) {
+            double instantFps = 1e9 / (captureTimeNanos - lastCaptureNanos);
+            fps = fps == 0 ? instantFps : fps + RobotConfig.VISION_SMOOTHING * (instantFps - fps);
+        }
+        frames++;
+
+        AprilTagDetection tag = null;
+        for (int i = 0; i < detections.size() && tag == null; i++) {
+            if (detections.get(i).ftcPose != null) {
+                tag = detections.get(i);
+            }
+        }
+        if (tag == null) {
+            regionActive = false;
+            lastSeen = false;
+            setDecimation(getSearchDecimation());
+        }
+        else {
+            focusOn(tag, captureTimeNanos);
+            setDecimation(getTrackingDecimation(tag.ftcPose.range, tag.metadata.tagsize));
+        }
+        lastCaptureNanos = captureTimeNanos;
+    }
+
+    /**
+     * Returns the lowest decimation whose processing of a whole frame fits in our budget, trying
+     * each in turn
+     */
+    private int getSearchDecimation() {
+        for (int i = 0; i < processingMillis.length; i++) {
+            if (processingMillis[i] == 0 || processingMillis[i] <= RobotConfig.VISION_FRAME_BUDGET) {
+                return i + 1;
+            }
+        }
+        return processingMillis.length;
+    }
+
+    /**
+     * Returns the highest decimation that would still see a tag of the specified size a little
+     * further away than the one we see
+     * @param range - inches to the tag
+     * @param tagSize - inches across the tag
+     */
+    private static int getTrackingDecimation(double range, double tagSize) {
+        for (int i = RobotConfig.TAG_DECIMATION_RANGES.length - 1; i > 0; i--) {
+            if (RobotConfig.TAG_DECIMATION_RANGES[i] * tagSize >= range * RobotConfig.TAG_RANGE_MARGIN) {
+                return i + 1;
+            }
+        }
+        return 1;
+    }
+
+    private void setDecimation(int decimation) {
+        if (decimation != this.decimation) {
+            this.decimation = decimation;
+            aprilTagProcessor.setDecimation(decimation);
+        }
+    }
+
+    /**
+     * Set up the region the tag should be in in the next frame
+     */
+    private void focusOn(AprilTagDetection tag, long captureTimeNanos) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (Point corner : tag.corners) {
+            minX = Math.min(minX, corner.x);
+            maxX = Math.max(maxX, corner.x);
+            minY = Math.min(minY, corner.y);
+            maxY = Math.max(maxY, corner.y);
+        }
+        double centerX = tag.center.x, centerY = tag.center.y;
+        //the tag moves about as far by the next frame as it did since the last
+        double moveX = 0, moveY = 0;
+        if (lastSeen) {
+            moveX = centerX - lastCenterX;
+            moveY = centerY - lastCenterY;
+        }
+        double halfWidth = (maxX - minX) * RobotConfig.TAG_REGION_MARGIN / 2 + Math.abs(moveX);
+        double halfHeight = (maxY - minY) * RobotConfig.TAG_REGION_MARGIN / 2 + Math.abs(moveY);
+        regionLeft = centerX + moveX - halfWidth;
+        regionRight = centerX + moveX + halfWidth;
+        regionTop = centerY + moveY - halfHeight;
+        regionBottom = centerY + moveY + halfHeight;
+        regionActive = true;
+        lastSeen = true;
+        lastCenterX = centerX;
+        lastCenterY = centerY;
+    }
+
+    /**
+     * Paint everything outside our region black, as four filled rectangles around it
+     * @return false if the region is out of view and the frame was left whole
+     */
+    private boolean blankOutside(Mat frame) {
+        double width = frame.cols(), height = frame.rows();
+        double left = Math.max(0, regionLeft), right = Math.min(width, regionRight);
+        double top = Math.max(0, regionTop), bottom = Math.min(height, regionBottom);
+        if (left >= right || top >= bottom) {
+            //the tag is predicted to be out of view, look everywhere
+            return false;
+        }
+        fill(frame, 0, 0, width, top);
+        fill(frame, 0, bottom, width, height);
+        fill(frame, 0, top, left, bottom);
+        fill(frame, right, top, width, bottom);
+        return true;
+    }
+
+    private void fill(Mat frame, double x1, double y1, double x2, double y2) {
+        if (x2 <= x1 || y2 <= y1) {
+            return;
+        }
+        regionCorner1.x = x1;
+        regionCorner1.y = y1;
+        regionCorner2.x = x2;
+        regionCorner2.y = y2;
+        Imgproc.rectangle(frame, regionCorner1, regionCorner2, BLANK, -1);
+    }
+
+    public int getDecimation() {
+        return decimation;
+    }
+
+    /**
+     * Returns the frame rate we are achieving
+     * @return frames per second
+     */
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * Returns how long after being taken the last frame's tags were known
+     * @return milli-seconds from capture to detection
+     */
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns how long the AprilTag processor takes on average at the current decimation, on frames
+     * blanked outside our region while we are focused on one and on whole frames otherwise
+     * @return milli-seconds per frame, 0 until we have tried it
+     */
+    public double getProcessingMillis() {
+        return (regionActive ? regionProcessingMillis : processingMillis)[decimation - 1];
+    }
+
+    /**
+     * Append the decimation, whether we are focused on a region, how long a frame takes, the frame
+     * rate and latency to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        builder.append("Dec:").append(decimation).append(regionActive ? " roi " : " full ");
+        MatchTelemetry.append(builder, getProcessingMillis(), 1).append("mSecs ");
+        MatchTelemetry.append(builder, fps, 1).append("fps ");
+        return MatchTelemetry.append(builder, latencyMillis, 0).append("mSecs");
+    }
+}
@@ -0,0 +1,67 @@
+package org.firstinspires.ftc.teamcode.robot.components.vision;
+
+import android.graphics.Canvas;
+
+import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.firstinspires.ftc.vision.VisionProcessor;
+import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
+import org.firstinspires.ftc.vision.apriltag.AprilTagProcessor;
+import org.opencv.core.Mat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hands the AprilTag detections of every camera frame to our listeners as soon as the frame has
+ * been processed, so that they act once per frame instead of polling for detections.
+ *
+ * The vision portal runs its processors one after the other on each frame, so this processor is
+ * added after the AprilTag processor and picks up the detections it just made.
+ */
+public class AprilTagFrameProcessor implements VisionProcessor {
+    /**
+     * Something that acts on the AprilTags seen in each frame
+     */
+    public interface Listener {
+        /**
+         * Act on the tags seen in a frame, called on the vision thread so keep it short
+         * @param detections - the tags seen, empty if none were
+         * @param captureTimeNanos - System.nanoTime() when the frame was taken
+         */
+        void newFrame(List<AprilTagDetection> detections, long captureTimeNanos);
+    }
+
+    private final AprilTagProcessor aprilTagProcessor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public AprilTagFrameProcessor(AprilTagProcessor aprilTagProcessor) {
+        this.aprilTagProcessor = aprilTagProcessor;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void init(int width, int height, CameraCalibration calibration) {
+    }
+
+    @Override
+    public Object processFrame(Mat frame, long captureTimeNanos) {
+        if (!listeners.isEmpty()) {
+            List<AprilTagDetection> detections = aprilTagProcessor.getDetections();
+            for (Listener listener : listeners) {
+                listener.newFrame(detections, captureTimeNanos);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onDrawFrame(Canvas canvas, int onscreenWidth, int onscreenHeight, float scaleBmpPxToCanvasPx, float scaleCanvasDensity, Object userContext) {
+    }
+}
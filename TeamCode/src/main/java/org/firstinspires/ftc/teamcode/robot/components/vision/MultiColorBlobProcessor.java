@@ -0,0 +1,356 @@
+package org.firstinspires.ftc.teamcode.robot.components.vision;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.vision.VisionProcessor;
+import org.firstinspires.ftc.vision.opencv.ColorBlobLocatorProcessor;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds red, blue and yellow blobs in one pass over each frame.
+ *
+ * The part of the frame we search is blurred and converted to YCrCb just once. A lookup table then
+ * turns the value of each channel into a bit for every color whose range takes that value in, so
+ * and-ing the three channels leaves each pixel with a bit set for every color it matches. The
+ * contours of each color are found in its bit of that image. A ColorBlobLocatorProcessor per color
+ * would blur, convert and threshold the same pixels once for every color. VisionReplay's blobs:All
+ * and locator:All subjects time the two over the same recorded frames.
+ *
+ * The blobs of a frame are published together, largest first, in a snapshot that is never changed
+ * afterwards, so they can be read from any thread without locking.
+ */
+public class MultiColorBlobProcessor implements VisionProcessor {
+    public enum BlobColor {
+        //each is outlined in the preview in the color the old locators used
+        Red(RobotConfig.RED_BLOB_RANGE, Color.BLUE),
+        Blue(RobotConfig.BLUE_BLOB_RANGE, Color.RED),
+        Yellow(RobotConfig.YELLOW_BLOB_RANGE, Color.WHITE);
+
+        private final int[][] range;
+        private final int outlineColor;
+        private final int bit;
+        private final Scalar bitScalar;
+
+        BlobColor(int[][] range, int outlineColor) {
+            this.range = range;
+            this.outlineColor = outlineColor;
+            this.bit = 1 << ordinal();
+            this.bitScalar = new Scalar(bit);
+        }
+    }
+    private static final BlobColor[] COLORS = BlobColor.values();
+    private static final ColorBlobLocatorProcessor.Blob[] NO_BLOBS = new ColorBlobLocatorProcessor.Blob[0];
+    private static final Comparator<ColorBlobLocatorProcessor.Blob> LARGEST_FIRST = new Comparator<ColorBlobLocatorProcessor.Blob>() {
+        @Override
+        public int compare(ColorBlobLocatorProcessor.Blob blob1, ColorBlobLocatorProcessor.Blob blob2) {
+            return Integer.compare(blob2.getContourArea(), blob1.getContourArea());
+        }
+    };
+
+    /**
+     * The blobs of each color seen in one frame
+     */
+    private static final class Snapshot {
+        final ColorBlobLocatorProcessor.Blob[][] blobs;
+
+        Snapshot(ColorBlobLocatorProcessor.Blob[][] blobs) {
+            this.blobs = blobs;
+        }
+    }
+
+    /**
+     * A blob whose measurements are all worked out when it is found. It keeps a copy of the points of
+     * its contour rather than the contour's Mat, so a snapshot holds no native memory that would
+     * have to be released once a newer one has replaced it.
+     */
+    private static final class FoundBlob extends ColorBlobLocatorProcessor.Blob {
+        private final Point[] contourPoints;
+        private final int contourArea;
+        private final double density;
+        private final RotatedRect boxFit;
+
+        FoundBlob(Point[] contourPoints, int contourArea, double density, RotatedRect boxFit) {
+            this.contourPoints = contourPoints;
+            this.contourArea = contourArea;
+            this.density = density;
+            this.boxFit = boxFit;
+        }
+
+        /**
+         * Returns a new Mat of the points of the contour, which the caller must release
+         */
+        @Override
+        public MatOfPoint getContour() {
+            return new MatOfPoint(contourPoints);
+        }
+
+        @Override
+        public Point[] getContourPoints() {
+            return contourPoints;
+        }
+
+        @Override
+        public int getContourArea() {
+            return contourArea;
+        }
+
+        @Override
+        public double getDensity() {
+            return density;
+        }
+
+        @Override
+        public double getAspectRatio() {
+            double longSide = Math.max(boxFit.size.width, boxFit.size.height);
+            double shortSide = Math.min(boxFit.size.width, boxFit.size.height);
+            return longSide / shortSide;
+        }
+
+        @Override
+        public RotatedRect getBoxFit() {
+            return boxFit;
+        }
+    }
+
+    //bits of the colors we are looking for
+    private volatile int enabledColors;
+    private volatile Snapshot snapshot = new Snapshot(new ColorBlobLocatorProcessor.Blob[][] {NO_BLOBS, NO_BLOBS, NO_BLOBS});
+
+    //the part of the frame we search, and what we work it into
+    private Rect roi;
+    private Point roiOffset;
+    private final Size blurSize = new Size(RobotConfig.BLOB_BLUR_SIZE, RobotConfig.BLOB_BLUR_SIZE);
+    private final Mat lut = new Mat(1, 256, CvType.CV_8UC3);
+    private final Mat blurred = new Mat(), yCrCb = new Mat(), channelMatches = new Mat(), matches = new Mat(), mask = new Mat();
+    private final List<Mat> channels = new ArrayList<>();
+    private final List<MatOfPoint> contours = new ArrayList<>();
+    private final Mat hierarchy = new Mat();
+    private final MatOfPoint2f contour2f = new MatOfPoint2f();
+    private final ArrayList<ColorBlobLocatorProcessor.Blob> found = new ArrayList<>();
+    private final StageTimer stageTimer = new StageTimer();
+
+    private final Paint outline = new Paint();
+    private final Point[] corners = new Point[4];
+
+    public MultiColorBlobProcessor() {
+        for (BlobColor color : COLORS) {
+            enabledColors |= color.bit;
+        }
+        buildLookupTable();
+        outline.setStyle(Paint.Style.STROKE);
+        outline.setStrokeWidth(4);
+    }
+
+    /**
+     * Fill in the bits of the colors whose range takes in each value of each channel
+     */
+    private void buildLookupTable() {
+        byte[] entry = new byte[3];
+        for (int value = 0; value < 256; value++) {
+            for (int channel = 0; channel < 3; channel++) {
+                int bits = 0;
+                for (BlobColor color : COLORS) {
+                    if (value >= color.range[0][channel] && value <= color.range[1][channel]) {
+                        bits |= color.bit;
+                    }
+                }
+                entry[channel] = (byte) bits;
+            }
+            lut.put(0, value, entry);
+        }
+    }
+
+    /**
+     * Look for blobs of the specified color, or stop looking for them
+     * @param color - the color
+     * @param enabled - true to look for it
+     */
+    public synchronized void setEnabled(BlobColor color, boolean enabled) {
+        if (enabled) {
+            enabledColors |= color.bit;
+        }
+        else {
+            enabledColors &= ~color.bit;
+        }
+    }
+
+    public boolean isEnabled(BlobColor color) {
+        return (enabledColors & color.bit) != 0;
+    }
+
+    /**
+     * Returns the blobs of the specified color seen in the last frame processed
+     * @param color - the color
+     * @return a list of the blobs, largest first, that the caller may sort or filter
+     */
+    public List<ColorBlobLocatorProcessor.Blob> getBlobs(BlobColor color) {
+        return new ArrayList<>(Arrays.asList(snapshot.blobs[color.ordinal()]));
+    }
+
+    /**
+     * Returns the largest blob of the specified color seen in the last frame processed
+     * @param color - the color
+     * @return the blob, null if none was seen
+     */
+    public ColorBlobLocatorProcessor.Blob getLargestBlob(BlobColor color) {
+        ColorBlobLocatorProcessor.Blob[] blobs = snapshot.blobs[color.ordinal()];
+        return blobs.length == 0 ? null : blobs[0];
+    }
+
+    @Override
+    public void init(int width, int height, CameraCalibration calibration) {
+        //search the central 1/4 of the camera view
+        roi = new Rect(width / 4, height / 4, width / 2, height / 2);
+        roiOffset = new Point(roi.x, roi.y);
+    }
+
+    @Override
+    public Object processFrame(Mat frame, long captureTimeNanos) {
+        int colors = enabledColors;
+        ColorBlobLocatorProcessor.Blob[][] blobs = new ColorBlobLocatorProcessor.Blob[COLORS.length][];
+        stageTimer.start();
+        if (colors != 0) {
+            Mat region = frame.submat(roi);
+            Imgproc.blur(region, blurred, blurSize);
+            region.release();
+            stageTimer.lap(StageTimer.Stage.Blur);
+            Imgproc.cvtColor(blurred, yCrCb, Imgproc.COLOR_RGB2YCrCb);
+            Core.LUT(yCrCb, lut, channelMatches);
+            Core.split(channelMatches, channels);
+            Core.bitwise_and(channels.get(0), channels.get(1), matches);
+            Core.bitwise_and(matches, channels.get(2), matches);
+            for (Mat channel : channels) {
+                channel.release();
+            }
+            channels.clear();
+            stageTimer.lap(StageTimer.Stage.Threshold);
+        }
+        for (BlobColor color : COLORS) {
+            if ((colors & color.bit) == 0) {
+                blobs[color.ordinal()] = NO_BLOBS;
+            }
+            else {
+                Core.bitwise_and(matches, color.bitScalar, mask);
+                stageTimer.lap(StageTimer.Stage.Threshold);
+                blobs[color.ordinal()] = findBlobs(mask);
+            }
+        }
+        Snapshot latest = new Snapshot(blobs);
+        snapshot = latest;
+        stageTimer.endFrame();
+        return latest;
+    }
+
+    /**
+     * Returns the time spent in each stage of processing frames
+     * @return the stage timer
+     */
+    public StageTimer getStageTimer() {
+        return stageTimer;
+    }
+
+    /**
+     * Returns the blobs in the specified mask that are of a size we care about, largest first
+     */
+    private ColorBlobLocatorProcessor.Blob[] findBlobs(Mat mask) {
+        Imgproc.findContours(mask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE, roiOffset);
+        stageTimer.lap(StageTimer.Stage.Contours);
+        for (MatOfPoint contour : contours) {
+            double area = Imgproc.contourArea(contour);
+            if (area < RobotConfig.BLOB_MIN_AREA || area > RobotConfig.BLOB_MAX_AREA) {
+                contour.release();
+                continue;
+            }
+            Point[] points = contour.toArray();
+            contour.release();
+            contour2f.fromArray(points);
+            found.add(new FoundBlob(points, (int) area, area / getHullArea(points), Imgproc.minAreaRect(contour2f)));
+        }
+        contours.clear();
+        ColorBlobLocatorProcessor.Blob[] blobs = NO_BLOBS;
+        if (!found.isEmpty()) {
+            blobs = found.toArray(NO_BLOBS);
+            found.clear();
+            Arrays.sort(blobs, LARGEST_FIRST);
+        }
+        stageTimer.lap(StageTimer.Stage.Filter);
+        return blobs;
+    }
+
+    /**
+     * Returns the area of the convex hull of the specified points, by the monotone chain
+     */
+    private static double getHullArea(Point[] points) {
+        if (points.length < 3) {
+            return 1;
+        }
+        Point[] sorted = points.clone();
+        Arrays.sort(sorted, new Comparator<Point>() {
+            @Override
+            public int compare(Point point1, Point point2) {
+                return point1.x != point2.x ? Double.compare(point1.x, point2.x) : Double.compare(point1.y, point2.y);
+            }
+        });
+        Point[] hull = new Point[2 * sorted.length];
+        int size = 0;
+        for (Point point : sorted) {
+            while (size >= 2 && cross(hull[size - 2], hull[size - 1], point) <= 0) {
+                size--;
+            }
+            hull[size++] = point;
+        }
+        for (int i = sorted.length - 2, lower = size + 1; i >= 0; i--) {
+            while (size >= lower && cross(hull[size - 2], hull[size - 1], sorted[i]) <= 0) {
+                size--;
+            }
+            hull[size++] = sorted[i];
+        }
+        double twiceArea = 0;
+        for (int i = 0; i < size - 1; i++) {
+            twiceArea += hull[i].x * hull[i + 1].y - hull[i + 1].x * hull[i].y;
+        }
+        return Math.max(1, Math.abs(twiceArea) / 2);
+    }
+
+    private static double cross(Point origin, Point a, Point b) {
+        return (a.x - origin.x) * (b.y - origin.y) - (a.y - origin.y) * (b.x - origin.x);
+    }
+
+    @Override
+    public void onDrawFrame(Canvas canvas, int onscreenWidth, int onscreenHeight, float scaleBmpPxToCanvasPx, float scaleCanvasDensity, Object userContext) {
+        Snapshot drawn = (Snapshot) userContext;
+        if (drawn == null) {
+            return;
+        }
+        for (BlobColor color : COLORS) {
+            outline.setColor(color.outlineColor);
+            for (ColorBlobLocatorProcessor.Blob blob : drawn.blobs[color.ordinal()]) {
+                blob.getBoxFit().points(corners);
+                for (int i = 0; i < corners.length; i++) {
+                    Point from = corners[i], to = corners[(i + 1) % corners.length];
+                    canvas.drawLine((float) from.x * scaleBmpPxToCanvasPx, (float) from.y * scaleBmpPxToCanvasPx,
+                            (float) to.x * scaleBmpPxToCanvasPx, (float) to.y * scaleBmpPxToCanvasPx, outline);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.firstinspires.ftc.teamcode.robot.components.vision;
+
+import android.graphics.Canvas;
+
+import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimer;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimers;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.vision.VisionProcessor;
+import org.opencv.core.Mat;
+
+/**
+ * Runs a vision processor on every Nth frame it is given, and keeps track of how long the
+ * processor takes per frame.
+ *
+ * On the frames in between, the results of the last frame processed are handed back to the vision
+ * portal, so what the processor draws on the preview stays up.
+ *
+ * The frames the processor runs on are also timed by a LoopTimer named after the processor.
+ */
+public class ScheduledProcessor implements VisionProcessor {
+    private final VisionProcessor processor;
+    private volatile int interval = 1;
+    private long frames;
+    private Object lastContext;
+
+    private volatile double frameMillis;
+    private volatile long runs;
+    private final LoopTimer timer;
+
+    public ScheduledProcessor(VisionProcessor processor) {
+        this.processor = processor;
+        this.timer = LoopTimers.getInstance().get("Vision " + processor.getClass().getSimpleName());
+    }
+
+    /**
+     * Run the processor on one of every so many frames
+     * @param interval - 1 to run on every frame, 2 on every other frame and so on
+     */
+    public void setInterval(int interval) {
+        this.interval = Math.max(1, interval);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns how long the processor takes on a frame it runs on
+     * @return milli-seconds, averaged over recent frames
+     */
+    public double getFrameMillis() {
+        return frameMillis;
+    }
+
+    /**
+     * Returns the number of frames the processor has been run on
+     * @return frames processed
+     */
+    public long getRuns() {
+        return runs;
+    }
+
+    @Override
+    public void init(int width, int height, CameraCalibration calibration) {
+        processor.init(width, height, calibration);
+    }
+
+    @Override
+    public Object processFrame(Mat frame, long captureTimeNanos) {
+        if (frames++ % interval != 0) {
+            return lastContext;
+        }
+        long start = System.nanoTime();
+        timer.start();
+        lastContext = processor.processFrame(frame, captureTimeNanos);
+        timer.end();
+        double millis = (System.nanoTime() - start) / 1e6;
+        frameMillis = runs == 0 ? millis : frameMillis + RobotConfig.VISION_SMOOTHING * (millis - frameMillis);
+        runs++;
+        return lastContext;
+    }
+
+    @Override
+    public void onDrawFrame(Canvas canvas, int onscreenWidth, int onscreenHeight, float scaleBmpPxToCanvasPx, float scaleCanvasDensity, Object userContext) {
+        processor.onDrawFrame(canvas, onscreenWidth, onscreenHeight, scaleBmpPxToCanvasPx, scaleCanvasDensity, userContext);
+    }
+}
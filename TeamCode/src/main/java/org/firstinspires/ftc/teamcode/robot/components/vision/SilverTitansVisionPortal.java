@@ -1,58 +1,70 @@
 package org.firstinspires.ftc.teamcode.robot.components.vision;
 
-import android.graphics.Color;
-
 import com.qualcomm.robotcore.hardware.Gamepad;
 import com.qualcomm.robotcore.hardware.HardwareMap;
-import com.qualcomm.robotcore.util.SortOrder;
 
 import org.firstinspires.ftc.robotcore.external.Telemetry;
 import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
 import org.firstinspires.ftc.teamcode.robot.components.vision.detector.ObjectDetectionVisionProcessor;
 import org.firstinspires.ftc.teamcode.robot.components.vision.detector.ObjectDetector;
 import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
 import org.firstinspires.ftc.vision.apriltag.AprilTagProcessor;
 import org.firstinspires.ftc.vision.opencv.ColorBlobLocatorProcessor;
-import org.firstinspires.ftc.vision.opencv.ColorRange;
-import org.firstinspires.ftc.vision.opencv.ImageRegion;
 import org.opencv.core.RotatedRect;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Our camera and the processors that look at its frames.
+ *
+ * Only the processors something needs are run. Each OpMode phase says which processors it always
+ * wants, and operations ask for the ones they need while they run. A processor that is not wanted
+ * by either is disabled in the portal. Processors that are less urgent can also be run on just one
+ * of every so many frames. How long each processor takes per frame is tracked so we can see what
+ * is costing us frame rate.
+ */
 public class SilverTitansVisionPortal {
+    public enum Processor {
+        AprilTags, RedBlobs, BlueBlobs, YellowBlobs
+    }
+    public static final Set<Processor> NO_PROCESSORS = Collections.unmodifiableSet(EnumSet.noneOf(Processor.class));
+    public static final Set<Processor> APRIL_TAGS = Collections.unmodifiableSet(EnumSet.of(Processor.AprilTags));
+    public static final Set<Processor> ALL_PROCESSORS = Collections.unmodifiableSet(EnumSet.allOf(Processor.class));
+
     org.firstinspires.ftc.vision.VisionPortal visionPortal;
     AprilTagProcessor aprilTagProcessor;
-    ColorBlobLocatorProcessor blueColorLocator = new ColorBlobLocatorProcessor.Builder()
-            .setTargetColorRange(ColorRange.BLUE)         // use a predefined color match
-            .setContourMode(ColorBlobLocatorProcessor.ContourMode.EXTERNAL_ONLY)    // exclude blobs inside blobs
-            .setRoi(ImageRegion.asUnityCenterCoordinates(-0.5, 0.5, 0.5, -0.5))  // search central 1/4 of camera view
-            .setDrawContours(true)                        // Show contours on the Stream Preview
-            .setBlurSize(5)                               // Smooth the transitions between different colors in image
-            .setBoxFitColor(Color.RED)
-            .build();
-    ColorBlobLocatorProcessor redColorLocator = new ColorBlobLocatorProcessor.Builder()
-            .setTargetColorRange(ColorRange.RED)         // use a predefined color match
-            .setContourMode(ColorBlobLocatorProcessor.ContourMode.EXTERNAL_ONLY)    // exclude blobs inside blobs
-            .setRoi(ImageRegion.asUnityCenterCoordinates(-0.5, 0.5, 0.5, -0.5))  // search central 1/4 of camera view
-            .setDrawContours(true)                        // Show contours on the Stream Preview
-            .setBlurSize(5)                               // Smooth the transitions between different colors in image
-            .setBoxFitColor(Color.BLUE)
-            .build();
-
-    ColorBlobLocatorProcessor yellowColorLocator = new ColorBlobLocatorProcessor.Builder()
-            .setTargetColorRange(ColorRange.YELLOW)         // use a predefined color match
-            .setContourMode(ColorBlobLocatorProcessor.ContourMode.EXTERNAL_ONLY)    // exclude blobs inside blobs
-            .setRoi(ImageRegion.asUnityCenterCoordinates(-0.5, 0.5, 0.5, -0.5))  // search central 1/4 of camera view
-            .setDrawContours(true)                        // Show contours on the Stream Preview
-            .setBlurSize(5)                               // Smooth the transitions between different colors in image
-            .setBoxFitColor(Color.WHITE)
-            .build();
+    AprilTagFrameProcessor aprilTagFrameProcessor;
+    AdaptiveAprilTagTuner aprilTagTuner;
+
+    //what each of our processors is run as, all of the ones a processor needs, the one that is timed first
+    private final EnumMap<Processor, ScheduledProcessor[]> scheduledProcessors = new EnumMap<>(Processor.class);
+    //processors wanted by the current phase, and by each operation that asked for some
+    private Set<Processor> phaseProcessors = ALL_PROCESSORS;
+    private final Map<Object, Set<Processor>> requiredProcessors = new HashMap<>();
+    private final EnumSet<Processor> enabledProcessors = EnumSet.allOf(Processor.class);
+    //finds the red, blue and yellow blobs
+    MultiColorBlobProcessor blobProcessor = new MultiColorBlobProcessor();
+    //our scheduled processors that are enabled in the portal
+    private final Set<ScheduledProcessor> runningProcessors = new HashSet<>();
 
     public void init(HardwareMap hardwareMap) {
-        this.aprilTagProcessor = new AprilTagProcessor.Builder().build();
+        //with the camera pose set, detections of tags with known field positions carry the robot's field pose
+        this.aprilTagProcessor = new AprilTagProcessor.Builder()
+                .setCameraPose(RobotConfig.CAMERA_POSITION, RobotConfig.CAMERA_ORIENTATION)
+                .build();
         // Adjust Image Decimation to trade-off detection-range for detection-rate.
         // eg: Some typical detection data using a Logitech C920 WebCam
         // Decimation = 1 ..  Detect 2" Tag from 10 feet away at 10 Frames per second
@@ -60,32 +72,202 @@ public class SilverTitansVisionPortal {
         // Decimation = 3 ..  Detect 2" Tag from 4  feet away at 30 Frames Per Second
         // Decimation = 3 ..  Detect 5" Tag from 10 feet away at 30 Frames Per Second
         // Note: Decimation can be changed on-the-fly to adapt during a match.
-        aprilTagProcessor.setDecimation(2);
+        //The tuner does that every frame, and blanks out what is away from a tag we are tracking
+        aprilTagTuner = new AdaptiveAprilTagTuner(aprilTagProcessor);
+        //runs after the april tag processor on each frame to hand its detections to our listeners
+        aprilTagFrameProcessor = new AprilTagFrameProcessor(aprilTagProcessor);
+        aprilTagFrameProcessor.addListener(aprilTagTuner);
 
+        //april tag detection takes the tag processor and the two that run on either side of it
+        scheduledProcessors.put(Processor.AprilTags, new ScheduledProcessor[] {new ScheduledProcessor(aprilTagProcessor),
+                new ScheduledProcessor(aprilTagTuner.getRegionProcessor()), new ScheduledProcessor(aprilTagFrameProcessor)});
+        //the blobs of all three colors are found by the one processor
+        ScheduledProcessor[] blobs = new ScheduledProcessor[] {new ScheduledProcessor(blobProcessor)};
+        scheduledProcessors.put(Processor.RedBlobs, blobs);
+        scheduledProcessors.put(Processor.BlueBlobs, blobs);
+        scheduledProcessors.put(Processor.YellowBlobs, blobs);
+        setProcessorInterval(Processor.RedBlobs, RobotConfig.BLOB_PROCESSOR_INTERVAL);
+
+        ScheduledProcessor[] aprilTags = scheduledProcessors.get(Processor.AprilTags);
         visionPortal = new org.firstinspires.ftc.vision.VisionPortal.Builder()
                 .setCamera(hardwareMap.get(WebcamName.class, RobotConfig.WEBCAM_ID))
                 .setCameraResolution(new android.util.Size(RobotConfig.X_PIXEL_COUNT, RobotConfig.Y_PIXEL_COUNT))
-                .addProcessors(aprilTagProcessor, blueColorLocator, redColorLocator, yellowColorLocator)
+                //processors run in this order, the blob processor needs the frame before it is blanked out
+                .addProcessors(blobs[0], aprilTags[1], aprilTags[0], aprilTags[2])
                 .build();
+        for (ScheduledProcessor[] processors : scheduledProcessors.values()) {
+            runningProcessors.addAll(Arrays.asList(processors));
+        }
+    }
+
+    /**
+     * Specify the processors the current phase of the OpMode always needs
+     * @param processors - the processors, ALL_PROCESSORS to run everything
+     */
+    public synchronized void setPhaseProcessors(Set<Processor> processors) {
+        this.phaseProcessors = processors;
+        schedule();
+    }
+
+    /**
+     * Run the specified processors until released, along with the ones the phase needs
+     * @param owner - who needs them, like an operation
+     * @param processors - the processors needed
+     */
+    public synchronized void require(Object owner, Set<Processor> processors) {
+        requiredProcessors.put(owner, processors);
+        schedule();
+    }
+
+    /**
+     * Stop running the processors the specified owner needed, unless someone else needs them
+     * @param owner - who needed them
+     */
+    public synchronized void release(Object owner) {
+        if (requiredProcessors.remove(owner) != null) {
+            schedule();
+        }
+    }
+
+    /**
+     * Close the camera and stop running our processors. Processors holding native memory of their
+     * own, like an ObjectDetectionVisionProcessor, are closed after this, once no more frames can
+     * reach them.
+     */
+    public void close() {
+        if (visionPortal != null) {
+            visionPortal.close();
+        }
+    }
+
+    /**
+     * Run a processor on one of every so many frames. The blobs of all colors are found together,
+     * so setting the interval of one color sets it for all of them.
+     * @param processor - the processor
+     * @param interval - 1 to run it on every frame, 2 on every other frame and so on
+     */
+    public void setProcessorInterval(Processor processor, int interval) {
+        for (ScheduledProcessor scheduledProcessor : scheduledProcessors.get(processor)) {
+            scheduledProcessor.setInterval(interval);
+        }
+    }
+
+    /**
+     * Enable the processors that are needed and disable the others
+     */
+    private void schedule() {
+        EnumSet<Processor> wanted = EnumSet.noneOf(Processor.class);
+        wanted.addAll(phaseProcessors);
+        for (Set<Processor> processors : requiredProcessors.values()) {
+            wanted.addAll(processors);
+        }
+        Set<ScheduledProcessor> needed = new HashSet<>();
+        for (Processor processor : Processor.values()) {
+            boolean enabled = wanted.contains(processor);
+            if (enabled) {
+                needed.addAll(Arrays.asList(scheduledProcessors.get(processor)));
+            }
+            if (enabled != enabledProcessors.contains(processor)) {
+                if (enabled) {
+                    enabledProcessors.add(processor);
+                }
+                else {
+                    enabledProcessors.remove(processor);
+                }
+                MultiColorBlobProcessor.BlobColor color = getBlobColor(processor);
+                if (color != null) {
+                    blobProcessor.setEnabled(color, enabled);
+                }
+                Match.log((enabled ? "Enabled " : "Disabled ") + processor + " processing");
+            }
+        }
+        for (ScheduledProcessor[] processors : scheduledProcessors.values()) {
+            for (ScheduledProcessor scheduledProcessor : processors) {
+                boolean enabled = needed.contains(scheduledProcessor);
+                if (enabled != runningProcessors.contains(scheduledProcessor)) {
+                    visionPortal.setProcessorEnabled(scheduledProcessor, enabled);
+                    if (enabled) {
+                        runningProcessors.add(scheduledProcessor);
+                    }
+                    else {
+                        runningProcessors.remove(scheduledProcessor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the color of blobs the specified processor finds
+     * @param processor - the processor
+     * @return the color, null if the processor doesn't find blobs
+     */
+    private static MultiColorBlobProcessor.BlobColor getBlobColor(Processor processor) {
+        switch (processor) {
+            case RedBlobs:
+                return MultiColorBlobProcessor.BlobColor.Red;
+            case BlueBlobs:
+                return MultiColorBlobProcessor.BlobColor.Blue;
+            case YellowBlobs:
+                return MultiColorBlobProcessor.BlobColor.Yellow;
+            default:
+                return null;
+        }
+    }
+
+    public synchronized boolean isEnabled(Processor processor) {
+        return enabledProcessors.contains(processor);
+    }
+
+    /**
+     * Append how long each processor that is enabled takes per frame it runs on to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public synchronized StringBuilder appendProcessorStatus(StringBuilder builder) {
+        appendProcessorStatus(builder.append("Tags:"), scheduledProcessors.get(Processor.AprilTags)[0]);
+        return appendProcessorStatus(builder.append(",Blobs:"), scheduledProcessors.get(Processor.RedBlobs)[0]);
+    }
+
+    private StringBuilder appendProcessorStatus(StringBuilder builder, ScheduledProcessor scheduledProcessor) {
+        if (!runningProcessors.contains(scheduledProcessor)) {
+            return builder.append("off");
+        }
+        MatchTelemetry.append(builder, scheduledProcessor.getFrameMillis(), 1).append("mSecs");
+        if (scheduledProcessor.getInterval() > 1) {
+            builder.append('/').append(scheduledProcessor.getInterval());
+        }
+        return builder;
     }
     public String getStatus() {
-        ColorBlobLocatorProcessor.Blob redBlob = getLargestBlob(redColorLocator);
-        ColorBlobLocatorProcessor.Blob blueBlob = getLargestBlob(blueColorLocator);
-        ColorBlobLocatorProcessor.Blob yellowBlob = getLargestBlob(yellowColorLocator);
-        return String.format(Locale.getDefault(),
-                "Red:%s,Blue:%s,Yellow:%s",
-                getBlobStatus(redBlob), getBlobStatus(blueBlob), getBlobStatus(yellowBlob));
+        return appendStatus(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append how april tag detection is doing and where the largest red, blue and yellow blobs are
+     * to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        aprilTagTuner.appendStatus(builder);
+        appendProcessorStatus(builder.append(' ')).append(",Red:");
+        appendBlobStatus(builder, getRedObject());
+        builder.append(",Blue:");
+        appendBlobStatus(builder, getBlueObject());
+        builder.append(",Yellow:");
+        return appendBlobStatus(builder, getYellowObject());
     }
 
     public ColorBlobLocatorProcessor.Blob getYellowObject() {
-        return getLargestBlob(this.yellowColorLocator);
+        return blobProcessor.getLargestBlob(MultiColorBlobProcessor.BlobColor.Yellow);
     }
 
     public ColorBlobLocatorProcessor.Blob getRedObject() {
-        return getLargestBlob(this.redColorLocator);
+        return blobProcessor.getLargestBlob(MultiColorBlobProcessor.BlobColor.Red);
     }
     public ColorBlobLocatorProcessor.Blob getBlueObject() {
-        return getLargestBlob(this.blueColorLocator);
+        return blobProcessor.getLargestBlob(MultiColorBlobProcessor.BlobColor.Blue);
     }
     /**
      * Returns a string representation of a blob
@@ -102,33 +284,22 @@ public class SilverTitansVisionPortal {
             return "not seeing";
         }
     }
-    private ColorBlobLocatorProcessor.Blob getLargestBlob(ColorBlobLocatorProcessor processor) {
-        // Read the current list
-        List<ColorBlobLocatorProcessor.Blob> blobs = processor.getBlobs();
-
-        /*
-         * The list of Blobs can be filtered to remove unwanted Blobs.
-         *   Note:  All contours will be still displayed on the Stream Preview, but only those that satisfy the filter
-         *          conditions will remain in the current list of "blobs".  Multiple filters may be used.
-         *
-         * Use any of the following filters.
-         *
-         * ColorBlobLocatorProcessor.Util.filterByArea(minArea, maxArea, blobs);
-         *   A Blob's area is the number of pixels contained within the Contour.  Filter out any that are too big or small.
-         *   Start with a large range and then refine the range based on the likely size of the desired object in the viewfinder.
-         *
-         * ColorBlobLocatorProcessor.Util.filterByDensity(minDensity, maxDensity, blobs);
-         *   A blob's density is an indication of how "full" the contour is.
-         *   If you put a rubber band around the contour you would get the "Convex Hull" of the contour.
-         *   The density is the ratio of Contour-area to Convex Hull-area.
-         *
-         * ColorBlobLocatorProcessor.Util.filterByAspectRatio(minAspect, maxAspect, blobs);
-         *   A blob's Aspect ratio is the ratio of boxFit long side to short side.
-         *   A perfect Square has an aspect ratio of 1.  All others are > 1
-         */
-        ColorBlobLocatorProcessor.Util.filterByArea(100, 20000, blobs);  // filter out very small blobs.
-        ColorBlobLocatorProcessor.Util.sortByArea(SortOrder.DESCENDING, blobs);
-        return blobs.get(0);
+
+    /**
+     * Append a representation of a blob to the specified builder
+     * @param builder - where to append
+     * @param blob - the blob, null if none is seen
+     * @return the builder
+     */
+    public StringBuilder appendBlobStatus(StringBuilder builder, ColorBlobLocatorProcessor.Blob blob) {
+        if (blob != null) {
+            RotatedRect box = blob.getBoxFit();
+            return builder.append('@').append((int) box.center.x).append(',').append((int) box.center.y)
+                    .append(" of area:").append((int) box.size.area());
+        }
+        else {
+            return builder.append("not seeing");
+        }
     }
     /**
      * Add telemetry about AprilTag detections.
@@ -155,4 +326,16 @@ public class SilverTitansVisionPortal {
     public List<AprilTagDetection>  getAprilTags() {
         return this.aprilTagProcessor.getDetections();
     }
+
+    public AdaptiveAprilTagTuner getAprilTagTuner() {
+        return aprilTagTuner;
+    }
+
+    /**
+     * Have the specified listener get the april tags seen in every frame as soon as they are found
+     * @param listener - the listener
+     */
+    public void addAprilTagListener(AprilTagFrameProcessor.Listener listener) {
+        this.aprilTagFrameProcessor.addListener(listener);
+    }
 }
@@ -0,0 +1,94 @@
+package org.firstinspires.ftc.teamcode.robot.components.vision;
+
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+
+/**
+ * Adds up the time a vision pipeline spends in each of its stages.
+ *
+ * The pipeline calls start() as it gets a frame, lap() as it finishes each stage, and endFrame()
+ * once done. A stage can be lapped more than once per frame, as when a detector thresholds and
+ * finds contours for one object after another, and its times are added up. Laps cost a call to
+ * System.nanoTime() and allocate nothing, so timers can stay in the pipelines on the robot.
+ *
+ * Only the thread processing frames should lap a timer. Other threads reading the averages may
+ * see them a frame behind.
+ */
+public class StageTimer {
+    public enum Stage {
+        Blur, Threshold, Contours, Filter
+    }
+    private static final Stage[] STAGES = Stage.values();
+
+    private final long[] stageNanos = new long[STAGES.length];
+    private long frames;
+    private long lapStartNanos;
+
+    /**
+     * Start timing a frame
+     */
+    public void start() {
+        lapStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Add the time since the last lap, or since the frame was started, to the specified stage
+     * @param stage - the stage just finished
+     */
+    public void lap(Stage stage) {
+        long now = System.nanoTime();
+        stageNanos[stage.ordinal()] += now - lapStartNanos;
+        lapStartNanos = now;
+    }
+
+    /**
+     * Count a frame as done
+     */
+    public void endFrame() {
+        frames++;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns all the time spent in a stage
+     * @param stage - the stage
+     * @return nano-seconds over all the frames timed
+     */
+    public long getTotalNanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    /**
+     * Returns the average time spent in a stage
+     * @param stage - the stage
+     * @return milli-seconds per frame
+     */
+    public double getAverageMillis(Stage stage) {
+        return frames == 0 ? 0 : stageNanos[stage.ordinal()] / 1e6 / frames;
+    }
+
+    public void reset() {
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = 0;
+        }
+        frames = 0;
+    }
+
+    /**
+     * Append the average milli-seconds per frame of each stage to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        for (Stage stage : STAGES) {
+            if (stage.ordinal() > 0) {
+                builder.append(',');
+            }
+            builder.append(stage).append(':');
+            MatchTelemetry.append(builder, getAverageMillis(stage), 2);
+        }
+        return builder.append(" mSecs");
+    }
+}
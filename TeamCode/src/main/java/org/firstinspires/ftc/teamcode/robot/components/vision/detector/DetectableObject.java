@@ -1,11 +1,13 @@
 package org.firstinspires.ftc.teamcode.robot.components.vision.detector;
 
-import org.firstinspires.ftc.teamcode.game.Match;
+import org.opencv.core.CvType;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,11 +18,28 @@ import java.util.Locale;
  * Currently the object differentiation is done based on HSV ranges
  * <p>
  * The class contains a list of object of the type found
+ * <p>
+ * The objects found are copied into contours we keep from frame to frame, and the geometry of the
+ * largest one is worked out once per frame, so detecting objects doesn't keep allocating native
+ * memory and reading where the largest object is doesn't recompute it.
+ * <p>
+ * The objects found are the working state of the vision thread. Other threads should read what
+ * was seen from the ObjectDetector's snapshot instead.
  */
 public class DetectableObject {
     ObjectDetector.ObjectType type;
-    ObjectDetector.HsvBounds[] hsvBounds;
+    //changed from the op mode thread when a bound set is loaded, read once per frame
+    volatile ObjectDetector.HsvBounds[] hsvBounds;
+    volatile double minimumArea = ObjectDetector.MINIMUM_AREA;
     List<MatOfPoint> foundObjects = new ArrayList<>();
+    //contours the objects found are copied into, reused frame after frame
+    private final List<MatOfPoint> contourPool = new ArrayList<>();
+
+    //geometry of the largest object, null when none was found
+    private final MatOfPoint2f largestObject2f = new MatOfPoint2f();
+    private Rect boundingRectangle;
+    private RotatedRect rotatedRectangle;
+    private Point centroid;
 
     double largestArea;
     double width;
@@ -28,7 +47,8 @@ public class DetectableObject {
     int largestAreaIndex;
     String shortName;
 
-    boolean disabled = true;
+    //changed from the op mode thread, read by the vision thread
+    volatile boolean disabled = true;
 
     public DetectableObject(ObjectDetector.ObjectType type, String shortName, ObjectDetector.HsvBounds[] hsvBounds, double width, double height) {
         this.type = type;
@@ -68,33 +88,49 @@ public class DetectableObject {
         this.hsvBounds = hsvBounds;
     }
 
+    /**
+     * Returns the smallest area, in pixels of the quarter size image, an object of this type can have
+     */
+    public double getMinimumArea() {
+        return minimumArea;
+    }
+
+    public void setMinimumArea(double minimumArea) {
+        this.minimumArea = minimumArea;
+    }
+
     public List<MatOfPoint> getFoundObjects() {
         return this.foundObjects;
     }
 
     public void clearFoundObjects() {
-        if (this.foundObjects != null) {
-            for (MatOfPoint contour: this.foundObjects) {
-                try {
-                    contour.release();
-                }
-                catch (Throwable e) {}
-            }
-        }
-        this.foundObjects = new ArrayList<>();
+        this.foundObjects.clear();
         largestArea = 0;
+        largestAreaIndex = 0;
+        boundingRectangle = null;
+        rotatedRectangle = null;
+        centroid = null;
     }
 
     /**
      * Add an object to the list of the objects of this type
      * If the area passed is greater than the largest area already found, the new object passed is
      * considered the largest object and the mean of it considered the mean of the largest object
+     * The object is copied, so the caller can release or reuse the contour passed
      *
      * @param objectFound
      * @param area        - are of the object found
      */
     public void addFoundObject(MatOfPoint objectFound, double area) {
-        this.foundObjects.add(objectFound);
+        MatOfPoint contour;
+        if (this.foundObjects.size() < this.contourPool.size()) {
+            contour = this.contourPool.get(this.foundObjects.size());
+        } else {
+            contour = new MatOfPoint();
+            this.contourPool.add(contour);
+        }
+        objectFound.copyTo(contour);
+        this.foundObjects.add(contour);
         if (area > largestArea) {
             largestAreaIndex = this.foundObjects.size() - 1;
             largestArea = area;
@@ -102,6 +138,50 @@ public class DetectableObject {
         }
     }
 
+    /**
+     * Work out the bounding rectangle, rotated rectangle and centroid of the largest object, once
+     * all the objects of a frame have been added
+     */
+    void measureLargestObject() {
+        MatOfPoint largestObject = getLargestObject();
+        if (largestObject == null || largestObject.empty()) {
+            return;
+        }
+        boundingRectangle = Imgproc.boundingRect(largestObject);
+        largestObject.convertTo(largestObject2f, CvType.CV_32FC2);
+        rotatedRectangle = Imgproc.minAreaRect(largestObject2f);
+        Moments moments = Imgproc.moments(largestObject);
+        centroid = moments.m00 == 0 ? new Point(boundingRectangle.x + boundingRectangle.width / 2.0,
+                boundingRectangle.y + boundingRectangle.height / 2.0)
+                : new Point(moments.m10 / moments.m00, moments.m01 / moments.m00);
+    }
+
+    /**
+     * Returns what was seen of this type in the frame just processed, to publish in a snapshot
+     *
+     * @return the sighting, null if no object of the type was found
+     */
+    DetectionSnapshot.Sighting getSighting() {
+        if (boundingRectangle == null) {
+            return null;
+        }
+        //the geometry is worked out afresh every frame, so the snapshot can share it
+        return new DetectionSnapshot.Sighting(type, getShortName(), foundObjects.size(), largestArea,
+                boundingRectangle, rotatedRectangle, centroid);
+    }
+
+    /**
+     * Release the native memory of the contours we keep
+     */
+    public void release() {
+        clearFoundObjects();
+        for (MatOfPoint contour : contourPool) {
+            contour.release();
+        }
+        contourPool.clear();
+        largestObject2f.release();
+    }
+
     /**
      * Returns the largest object seen of this detectable object type
      *
@@ -121,13 +201,8 @@ public class DetectableObject {
      * @return
      */
     public int getYPositionOfLargestObject() {
-        MatOfPoint largestObject = getLargestObject();
-        if (largestObject != null) {
-            try {
-                Rect boundingRectangle = Imgproc.boundingRect(largestObject);
-                return boundingRectangle.y + boundingRectangle.height / 2;
-            }
-            catch (Throwable e){}
+        if (boundingRectangle != null) {
+            return boundingRectangle.y + boundingRectangle.height / 2;
         }
         return -1;
     }
@@ -138,14 +213,8 @@ public class DetectableObject {
      * @return
      */
     public int getXPositionOfLargestObject() {
-        MatOfPoint largestObject = getLargestObject();
-        if (largestObject != null) {
-            try {
-                Rect boundingRectangle = Imgproc.boundingRect(largestObject);
-                return boundingRectangle.x + boundingRectangle.width / 2;
-            }
-            catch (Throwable e) {
-            }
+        if (boundingRectangle != null) {
+            return boundingRectangle.x + boundingRectangle.width / 2;
         }
         return -1;
     }
@@ -156,7 +225,6 @@ public class DetectableObject {
      * @return
      */
     public double getWidthOfLargestObject() {
-        RotatedRect rotatedRectangle = getRotatedRectangleOfLargestObject();
         if (rotatedRectangle != null) {
             return rotatedRectangle.size.height;
         } else {
@@ -170,7 +238,6 @@ public class DetectableObject {
      * @return
      */
     public double getHeightOfLargestObject() {
-        RotatedRect rotatedRectangle = getRotatedRectangleOfLargestObject();
         if (rotatedRectangle != null) {
             return rotatedRectangle.size.width;
         } else {
@@ -182,40 +249,29 @@ public class DetectableObject {
      * Return the bounding rectangle that fits the largest object
      * The rectangle is always aligned with the x and y axes
      *
-     * @return
+     * @return the rectangle, null if no object was found
      */
     public Rect getBoundingRectangleOfLargestObject() {
-        MatOfPoint largestObject = getLargestObject();
-        if (largestObject != null) {
-            try {
-                return Imgproc.boundingRect(largestObject);
-            }
-            catch (Throwable e) {
-                return null;
-            }
-        } else {
-            return null;
-        }
+        return boundingRectangle;
     }
 
     /**
      * Return the rectangle that fits the largest object
      * The rectangle could be at an angle to the x and y axes
      *
-     * @return
+     * @return the rectangle, null if no object was found
      */
     public RotatedRect getRotatedRectangleOfLargestObject() {
-        MatOfPoint largestObject = getLargestObject();
-        if (largestObject != null) {
-            try {
-                return Imgproc.minAreaRect(new MatOfPoint2f(largestObject.toArray()));
-            }
-            catch (Throwable e) {
-                return null;
-            }
-        } else {
-            return null;
-        }
+        return rotatedRectangle;
+    }
+
+    /**
+     * Return the center of mass of the largest object
+     *
+     * @return the centroid, null if no object was found
+     */
+    public Point getCentroidOfLargestObject() {
+        return centroid;
     }
 
     public double getLargestArea() {
@@ -240,11 +296,12 @@ public class DetectableObject {
     }
 
     public String toString() {
+        int x = getXPositionOfLargestObject();
         return String.format(Locale.getDefault(), "Count:%d,Largest@%d,%d,area:%.0f, placement: %s",
                 getFoundObjects().size(),
-                getXPositionOfLargestObject(),
+                x,
                 getYPositionOfLargestObject(),
                 largestArea,
-                getXPositionOfLargestObject() > 1200 ? "Right" : (getXPositionOfLargestObject() > 600 ? "Middle" : "Left"));
+                x > 1200 ? "Right" : (x > 600 ? "Middle" : "Left"));
     }
 }
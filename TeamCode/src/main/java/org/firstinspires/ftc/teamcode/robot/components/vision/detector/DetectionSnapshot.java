@@ -0,0 +1,169 @@
+package org.firstinspires.ftc.teamcode.robot.components.vision.detector;
+
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+
+/**
+ * What the object detector saw in one camera frame.
+ * <p>
+ * A snapshot is never changed once published, so any thread can read it without locking while the
+ * vision thread works on the next frame. Each snapshot carries the sequence number of its frame and
+ * when the frame was taken, so readers can tell whether they have seen it before and how old it is.
+ */
+public final class DetectionSnapshot {
+    //what we have before the first frame is processed
+    public static final DetectionSnapshot NONE = new DetectionSnapshot(0, 0, new Sighting[ObjectDetector.ObjectType.values().length]);
+
+    /**
+     * The objects of one type seen in the frame, and where the largest of them is
+     */
+    public static final class Sighting {
+        private final ObjectDetector.ObjectType type;
+        private final String shortName;
+        private final int count;
+        private final double largestArea;
+        private final Rect boundingRectangle;
+        private final RotatedRect rotatedRectangle;
+        private final Point centroid;
+
+        /**
+         * Create a sighting. The geometry passed must not be changed afterwards.
+         */
+        Sighting(ObjectDetector.ObjectType type, String shortName, int count, double largestArea,
+                 Rect boundingRectangle, RotatedRect rotatedRectangle, Point centroid) {
+            this.type = type;
+            this.shortName = shortName;
+            this.count = count;
+            this.largestArea = largestArea;
+            this.boundingRectangle = boundingRectangle;
+            this.rotatedRectangle = rotatedRectangle;
+            this.centroid = centroid;
+        }
+
+        public ObjectDetector.ObjectType getType() {
+            return type;
+        }
+
+        public String getShortName() {
+            return shortName;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getLargestArea() {
+            return largestArea;
+        }
+
+        public Rect getBoundingRectangle() {
+            return boundingRectangle;
+        }
+
+        public RotatedRect getRotatedRectangle() {
+            return rotatedRectangle;
+        }
+
+        public Point getCentroid() {
+            return centroid;
+        }
+
+        /**
+         * Returns the x position of the center of the largest object
+         */
+        public int getXPosition() {
+            return boundingRectangle.x + boundingRectangle.width / 2;
+        }
+
+        /**
+         * Returns the y position of the middle of the largest object
+         */
+        public int getYPosition() {
+            return boundingRectangle.y + boundingRectangle.height / 2;
+        }
+
+        public double getWidth() {
+            return rotatedRectangle.size.height;
+        }
+
+        public double getHeight() {
+            return rotatedRectangle.size.width;
+        }
+    }
+
+    private final long sequence;
+    private final long captureTimeNanos;
+    //indexed by the ordinal of the object type, null where nothing of the type was seen
+    private final Sighting[] sightings;
+
+    DetectionSnapshot(long sequence, long captureTimeNanos, Sighting[] sightings) {
+        this.sequence = sequence;
+        this.captureTimeNanos = captureTimeNanos;
+        this.sightings = sightings;
+    }
+
+    /**
+     * Returns the number of the frame this is a snapshot of, counting from 1
+     * @return the frame sequence, 0 before any frame has been processed
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns when the frame was taken
+     * @return System.nanoTime() at capture
+     */
+    public long getCaptureTimeNanos() {
+        return captureTimeNanos;
+    }
+
+    /**
+     * Returns how long ago the frame was taken
+     * @param nowNanos - the current System.nanoTime()
+     * @return milli-seconds since capture
+     */
+    public double getAgeMillis(long nowNanos) {
+        return (nowNanos - captureTimeNanos) / 1e6;
+    }
+
+    /**
+     * Checks if this snapshot is too old to act on
+     * @param nowNanos - the current System.nanoTime()
+     * @param maxAgeMillis - the oldest a snapshot may be to be fresh
+     * @return true if no frame has been processed or this one was taken too long ago
+     */
+    public boolean isStale(long nowNanos, double maxAgeMillis) {
+        return sequence == 0 || getAgeMillis(nowNanos) > maxAgeMillis;
+    }
+
+    /**
+     * Returns what was seen of the specified type
+     * @param type - the type of object
+     * @return the sighting, null if nothing of the type was seen
+     */
+    public Sighting get(ObjectDetector.ObjectType type) {
+        return sightings[type.ordinal()];
+    }
+
+    public boolean isSeeing(ObjectDetector.ObjectType type) {
+        return sightings[type.ordinal()] != null;
+    }
+
+    /**
+     * Append the count and position of the largest of each type of object seen to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        for (Sighting sighting : sightings) {
+            if (sighting != null) {
+                builder.append(sighting.getShortName()).append(": ").append(sighting.getCount())
+                        .append('@').append(sighting.getXPosition()).append(',').append(sighting.getYPosition())
+                        .append(", ");
+            }
+        }
+        return builder;
+    }
+}
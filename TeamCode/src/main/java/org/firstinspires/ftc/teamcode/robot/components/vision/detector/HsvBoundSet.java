@@ -0,0 +1,195 @@
+package org.firstinspires.ftc.teamcode.robot.components.vision.detector;
+
+import org.opencv.core.Scalar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The HSV bounds and minimum areas of our objects, and the blur applied before thresholding, that
+ * work best under one lighting condition.
+ * <p>
+ * Sets are found by the HsvOptimizer from frames recorded under the lighting, and saved as text
+ * files named after the condition, like bright.hsv, in the vision folder under the FIRST folder
+ * on the robot. Each line after the blur has an object type, its minimum area and its bounds:
+ * <pre>
+ *   blur 3
+ *   RedSample 100 170,200,80-180,255,255 0,200,80-10,255,255
+ *   YellowSample 120 15,150,70-25,255,255
+ * </pre>
+ * Lines starting with # are comments.
+ */
+public class HsvBoundSet {
+    public static final String FOLDER = "vision";
+    public static final String EXTENSION = ".hsv";
+
+    /**
+     * The bounds and minimum area of one type of object
+     */
+    public static class Entry {
+        private final ObjectDetector.HsvBounds[] bounds;
+        private final double minimumArea;
+
+        public Entry(ObjectDetector.HsvBounds[] bounds, double minimumArea) {
+            this.bounds = bounds;
+            this.minimumArea = minimumArea;
+        }
+
+        public ObjectDetector.HsvBounds[] getBounds() {
+            return bounds;
+        }
+
+        public double getMinimumArea() {
+            return minimumArea;
+        }
+    }
+
+    private final String condition;
+    private int blurSize;
+    private final Map<ObjectDetector.ObjectType, Entry> entries = new EnumMap<>(ObjectDetector.ObjectType.class);
+
+    public HsvBoundSet(String condition) {
+        this.condition = condition;
+    }
+
+    /**
+     * Create a set with the bounds a detector is using now
+     * @param condition - the lighting condition
+     * @param objectDetector - the detector
+     * @return the set
+     */
+    public static HsvBoundSet of(String condition, ObjectDetector objectDetector) {
+        HsvBoundSet boundSet = new HsvBoundSet(condition);
+        boundSet.setBlurSize(objectDetector.getBlurSize());
+        for (DetectableObject detectableObject : objectDetector.getDetectableObjects().values()) {
+            boundSet.put(detectableObject.getType(),
+                    new Entry(detectableObject.getHsvBounds(), detectableObject.getMinimumArea()));
+        }
+        return boundSet;
+    }
+
+    /**
+     * Returns the file the set for a lighting condition is kept in
+     * @param folder - the folder sets are kept in
+     * @param condition - the lighting condition
+     * @return the file
+     */
+    public static File getFile(File folder, String condition) {
+        return new File(folder, condition + EXTENSION);
+    }
+
+    /**
+     * Read a set, naming its lighting condition after the file
+     * @param file - the file to read
+     * @return the set
+     * @throws IOException if the file can't be read or isn't a bound set
+     */
+    public static HsvBoundSet load(File file) throws IOException {
+        String name = file.getName();
+        HsvBoundSet boundSet = new HsvBoundSet(name.endsWith(EXTENSION)
+                ? name.substring(0, name.length() - EXTENSION.length()) : name);
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                try {
+                    if (fields[0].equals("blur")) {
+                        boundSet.setBlurSize(Integer.parseInt(fields[1]));
+                    } else {
+                        ObjectDetector.HsvBounds[] bounds = new ObjectDetector.HsvBounds[fields.length - 2];
+                        for (int i = 0; i < bounds.length; i++) {
+                            String[] limits = fields[i + 2].split("-");
+                            bounds[i] = new ObjectDetector.HsvBounds(parseScalar(limits[0]), parseScalar(limits[1]));
+                        }
+                        boundSet.put(ObjectDetector.ObjectType.valueOf(fields[0]),
+                                new Entry(bounds, Double.parseDouble(fields[1])));
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Bad line in " + file.getName() + ": " + line, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return boundSet;
+    }
+
+    private static Scalar parseScalar(String text) {
+        String[] values = text.split(",");
+        return new Scalar(Double.parseDouble(values[0]), Double.parseDouble(values[1]), Double.parseDouble(values[2]));
+    }
+
+    /**
+     * Write the set
+     * @param file - the file to write, replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public void save(File file) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println("# HSV bounds for " + condition + " lighting");
+            writer.println("blur " + blurSize);
+            for (Map.Entry<ObjectDetector.ObjectType, Entry> entry : entries.entrySet()) {
+                StringBuilder line = new StringBuilder();
+                line.append(entry.getKey()).append(' ')
+                        .append(String.format(Locale.US, "%.0f", entry.getValue().getMinimumArea()));
+                for (ObjectDetector.HsvBounds bounds : entry.getValue().getBounds()) {
+                    line.append(' ');
+                    appendScalar(line, bounds.getLowerBound()).append('-');
+                    appendScalar(line, bounds.getUpperBound());
+                }
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            throw new IOException("Unable to write " + file.getAbsolutePath());
+        }
+    }
+
+    private static StringBuilder appendScalar(StringBuilder builder, Scalar scalar) {
+        return builder.append(String.format(Locale.US, "%.0f,%.0f,%.0f", scalar.val[0], scalar.val[1], scalar.val[2]));
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public int getBlurSize() {
+        return blurSize;
+    }
+
+    public void setBlurSize(int blurSize) {
+        this.blurSize = blurSize;
+    }
+
+    /**
+     * Returns the bounds of a type of object
+     * @param type - the type of object
+     * @return the entry, null if the set has nothing for the type
+     */
+    public Entry get(ObjectDetector.ObjectType type) {
+        return entries.get(type);
+    }
+
+    public void put(ObjectDetector.ObjectType type, Entry entry) {
+        entries.put(type, entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
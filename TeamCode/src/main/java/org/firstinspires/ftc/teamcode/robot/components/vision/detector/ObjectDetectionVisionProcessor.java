@@ -9,21 +9,27 @@ import android.text.TextPaint;
 import com.qualcomm.robotcore.hardware.Gamepad;
 
 import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Locale;
-import java.util.Map;
 
 
 public class ObjectDetectionVisionProcessor implements org.firstinspires.ftc.vision.VisionProcessor {
+    private static final ObjectDetector.ObjectType[] OBJECT_TYPES = ObjectDetector.ObjectType.values();
     ObjectDetector objectDetector = new ObjectDetector(0, RobotConfig.X_PIXEL_COUNT, 200, RobotConfig.Y_PIXEL_COUNT);
     private final TextPaint textPaint = new TextPaint();
     private final Paint greenLinePaint = new Paint();
     private final Paint redLinePaint = new Paint();
     private final Paint blueLinePaint = new Paint();
+    //set once our detector has been released
+    private boolean closed;
 
 
     public ObjectDetectionVisionProcessor() {
@@ -61,8 +67,22 @@ public class ObjectDetectionVisionProcessor implements org.firstinspires.ftc.vis
     }
 
     @Override
-    public Object processFrame(Mat frame, long captureTimeNanos) {
-        return objectDetector.process(frame);
+    public synchronized Object processFrame(Mat frame, long captureTimeNanos) {
+        if (closed) {
+            return null;
+        }
+        return objectDetector.process(frame, captureTimeNanos);
+    }
+
+    /**
+     * Release the pooled Mats and contours of our detector. Call once the portal this processor was
+     * added to has been closed; frames still delivered after that are ignored.
+     */
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            objectDetector.release();
+        }
     }
 
     @Override
@@ -73,25 +93,27 @@ public class ObjectDetectionVisionProcessor implements org.firstinspires.ftc.vis
         //draw rectangle around area of interest
         Rect areaOfInterest = objectDetector.getAreaOfInterest();
         drawRectangle(canvas, scaleBmpPxToCanvasPx, redLinePaint, areaOfInterest);
-        Map<ObjectDetector.ObjectType, DetectableObject> detectedObjects = (Map<ObjectDetector.ObjectType, DetectableObject>) userContext;
+        DetectionSnapshot detected = (DetectionSnapshot) userContext;
+        if (detected == null) {
+            return;
+        }
         //paint information about each of the largest objects seen
-        synchronized (detectedObjects) {
-            for (DetectableObject detectableObject : detectedObjects.values()) {
-                if (detectableObject.getType() == ObjectDetector.ObjectType.CrossHair) {
-                    paintObject(canvas, scaleBmpPxToCanvasPx, blueLinePaint, textPaint, detectableObject);
-                } else {
-                    paintObject(canvas, scaleBmpPxToCanvasPx, greenLinePaint, textPaint, detectableObject);
-                }
+        for (ObjectDetector.ObjectType type : OBJECT_TYPES) {
+            DetectionSnapshot.Sighting sighting = detected.get(type);
+            if (type == ObjectDetector.ObjectType.CrossHair) {
+                paintObject(canvas, scaleBmpPxToCanvasPx, blueLinePaint, textPaint, sighting);
+            } else {
+                paintObject(canvas, scaleBmpPxToCanvasPx, greenLinePaint, textPaint, sighting);
             }
         }
     }
 
-    private static void paintObject(Canvas canvas, float scaleBmpPxToCanvasPx, Paint linePaint, TextPaint textPaint, DetectableObject detectableObject) {
-        Rect rect = detectableObject.getBoundingRectangleOfLargestObject();
-        if (rect != null) {
+    private static void paintObject(Canvas canvas, float scaleBmpPxToCanvasPx, Paint linePaint, TextPaint textPaint, DetectionSnapshot.Sighting sighting) {
+        if (sighting != null) {
+            Rect rect = sighting.getBoundingRectangle();
             drawRectangle(canvas, scaleBmpPxToCanvasPx, linePaint, rect);
             String text = String.format(Locale.getDefault(), "%s @%d,%d",
-                    detectableObject.getShortName(),
+                    sighting.getShortName(),
                     rect.x,
                     rect.y);
             textPaint.setColor(linePaint.getColor());
@@ -160,6 +182,15 @@ public class ObjectDetectionVisionProcessor implements org.firstinspires.ftc.vis
         return objectDetector.getHeightOfLargestObject(objectType);
     }
 
+    /**
+     * Returns what was seen in the last frame processed, never waiting on the frame being processed
+     *
+     * @return the snapshot, check its capture time to see how old it is
+     */
+    public DetectionSnapshot getSnapshot() {
+        return objectDetector.getSnapshot();
+    }
+
     public boolean seeingObject(ObjectDetector.ObjectType objectName) {
         return getLargestArea(objectName) > 0;
     }
@@ -180,6 +211,28 @@ public class ObjectDetectionVisionProcessor implements org.firstinspires.ftc.vis
         return objectDetector.getStatus();
     }
 
+    /**
+     * Use the HSV bounds found for a lighting condition, from the vision folder under the FIRST folder
+     *
+     * @param condition - the lighting condition, like bright
+     * @return true if the bounds were loaded, false if we are keeping the ones we have
+     */
+    public boolean loadBoundSet(String condition) {
+        File file = HsvBoundSet.getFile(new File(AppUtil.ROOT_FOLDER, HsvBoundSet.FOLDER), condition);
+        if (!file.exists()) {
+            Match.log("No HSV bounds for " + condition + " lighting at " + file.getAbsolutePath());
+            return false;
+        }
+        try {
+            objectDetector.apply(HsvBoundSet.load(file));
+            Match.log("Using HSV bounds for " + condition + " lighting");
+            return true;
+        } catch (IOException e) {
+            Match.log("Unable to load HSV bounds for " + condition + " lighting: " + e.getMessage());
+            return false;
+        }
+    }
+
     public void enableObject(ObjectDetector.ObjectType type) {
         this.objectDetector.enableObject(type);
     }
@@ -2,27 +2,31 @@ package org.firstinspires.ftc.teamcode.robot.components.vision.detector;
 
 import com.qualcomm.robotcore.hardware.Gamepad;
 
-import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.vision.StageTimer;
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A class to detect objects on the field
  * <p>
  * For In to the Deep season, the objects we try to detect are red, blue and yellow samples, blue and red tapes
+ * <p>
+ * Frames are processed on the vision thread, which alone uses the detectable objects' working state.
+ * When a frame is done, what was seen is published as a DetectionSnapshot through an atomic
+ * reference, so the getters never wait for a frame to be processed.
  */
 public class ObjectDetector {
 
@@ -30,6 +34,8 @@ public class ObjectDetector {
     public static final int FOCAL_LENGTH = 1500;
 
     public static final int MINIMUM_AREA = 100;
+    //contours are found at a quarter of the resolution, this scales them back up
+    private static final Scalar PYRAMID_SCALE = new Scalar(4, 4);
 
     boolean gamePad1B, gamePad1Y, gamePad1X, gamePad2B, gamePad2X;
 
@@ -83,6 +89,7 @@ public class ObjectDetector {
     public enum ObjectType {
         RedSample, BlueSample, YellowSample, BlueTape, RedTape, CrossHair
     }
+    private static final int OBJECT_TYPE_COUNT = ObjectType.values().length;
 
     // Detectable objects
     private final HashMap<ObjectType, DetectableObject> detectableObjects = new HashMap<>();
@@ -127,15 +134,25 @@ public class ObjectDetector {
     int minAllowedY;
     int maxAllowedY;
 
-    Mat mHsvMat = new Mat();
+    //buffers reused frame after frame, so processing allocates no native memory once they are sized
     Mat pyrDownHsvMat = new Mat();
     Mat overallMaskOfObject = new Mat();
     Mat mSingularMask = new Mat();
     Mat mDilatedMask = new Mat();
     Mat mHierarchy = new Mat();
     Mat nothingMat = new Mat();
+    //the contours found in the current mask, released as soon as they are looked at
     List<MatOfPoint> objectsFound = new ArrayList<>();
 
+    //what was seen in the last frame processed, and how many frames we have processed
+    private final AtomicReference<DetectionSnapshot> snapshot = new AtomicReference<>(DetectionSnapshot.NONE);
+    private long frameSequence;
+    //box blur applied to the shrunk frames, changed from the op mode thread, and its kernel size,
+    //null for none, so frames don't make a new one
+    private volatile int blurSize;
+    private volatile Size blurKernel;
+    private final StageTimer stageTimer = new StageTimer();
+
     public ObjectDetector(int minAllowedX, int maxAllowedX, int minAllowedY, int maxAllowedY) {
         this.minAllowedX = minAllowedX;
         this.maxAllowedX = maxAllowedX;
@@ -160,23 +177,16 @@ public class ObjectDetector {
     }
 
     public String getDetectionStatus() {
-        StringBuilder status = new StringBuilder();
-        for (DetectableObject detectableObject : detectableObjects.values()) {
-            synchronized (detectableObject) {
-                if (!detectableObject.isDisabled() && detectableObject.getFoundObjects().size() > 0) {
-                    status
-                            .append(detectableObject.getShortName())
-                            .append(": ")
-                            .append(detectableObject.getFoundObjects().size())
-                            .append("@")
-                            .append(detectableObject.getXPositionOfLargestObject())
-                            .append(",")
-                            .append(detectableObject.getYPositionOfLargestObject())
-                            .append(", ");
-                }
-            }
-        }
-        return status.toString();
+        return getSnapshot().appendStatus(new StringBuilder()).toString();
+    }
+
+    /**
+     * Returns what was seen in the last frame processed, without waiting for the frame being processed
+     *
+     * @return the snapshot, DetectionSnapshot.NONE before the first frame is done
+     */
+    public DetectionSnapshot getSnapshot() {
+        return snapshot.get();
     }
 
     public Rect getAreaOfInterest() {
@@ -203,56 +213,128 @@ public class ObjectDetector {
     }
 
     /**
-     * Take an rgb image and return a map of objects detected
+     * Take an rgb image, find our objects in it and publish what was seen
      *
      * @param rgbImage a matrix of rgb pixels
-     * @return a map of detected objects
+     * @param captureTimeNanos - System.nanoTime() when the image was taken
+     * @return a snapshot of the objects detected
      */
-    public Map<ObjectType, DetectableObject> process(Mat rgbImage) {
-        //save image sent in HSV format
-        Imgproc.cvtColor(rgbImage, mHsvMat, Imgproc.COLOR_RGB2HSV);
+    public DetectionSnapshot process(Mat rgbImage, long captureTimeNanos) {
+        stageTimer.start();
+        prepare(rgbImage, pyrDownHsvMat, blurKernel);
+        stageTimer.lap(StageTimer.Stage.Blur);
+        return findObjects(pyrDownHsvMat, captureTimeNanos);
+    }
+
+    /**
+     * Shrink an rgb image to a quarter of its size, blur it and convert it to HSV, ready for
+     * detect(). The optimizer prepares its frames once this way and detects in them over and over.
+     *
+     * @param rgbImage - a matrix of rgb pixels
+     * @param hsvImage - where to put the prepared image
+     * @param blurSize - size of the box blur applied after shrinking, 0 or 1 for none
+     */
+    public static void prepare(Mat rgbImage, Mat hsvImage, int blurSize) {
+        prepare(rgbImage, hsvImage, getBlurKernel(blurSize));
+    }
+
+    private static void prepare(Mat rgbImage, Mat hsvImage, Size blurKernel) {
         //pyramid down twice
-        Imgproc.pyrDown(rgbImage, pyrDownHsvMat);
-        Imgproc.pyrDown(pyrDownHsvMat, pyrDownHsvMat);
+        Imgproc.pyrDown(rgbImage, hsvImage);
+        Imgproc.pyrDown(hsvImage, hsvImage);
+        if (blurKernel != null) {
+            Imgproc.blur(hsvImage, hsvImage, blurKernel);
+        }
         //convert to HSV so we can use hsv range of objects to filter
-        Imgproc.cvtColor(pyrDownHsvMat, pyrDownHsvMat, Imgproc.COLOR_RGB2HSV);
+        Imgproc.cvtColor(hsvImage, hsvImage, Imgproc.COLOR_RGB2HSV);
+    }
 
+    /**
+     * Find our objects in an image prepared by prepare() and publish what was seen. The image is
+     * only read, so it can be shared with detectors on other threads.
+     *
+     * @param hsvImage - the prepared quarter size HSV image
+     * @param captureTimeNanos - System.nanoTime() when the image was taken
+     * @return a snapshot of the objects detected
+     */
+    public DetectionSnapshot detect(Mat hsvImage, long captureTimeNanos) {
+        stageTimer.start();
+        return findObjects(hsvImage, captureTimeNanos);
+    }
+
+    private DetectionSnapshot findObjects(Mat hsvImage, long captureTimeNanos) {
         //go through each of our detectable objects to see if we are seeing any of them
-        synchronized (detectableObjects) {
-            for (DetectableObject detectableObject : detectableObjects.values()) {
-                detectableObject.clearFoundObjects();
-                //only look for object if it is not disabled
-                if (!detectableObject.isDisabled()) {
-                    findObject(detectableObject);
-                }
+        DetectionSnapshot.Sighting[] sightings = new DetectionSnapshot.Sighting[OBJECT_TYPE_COUNT];
+        for (DetectableObject detectableObject : detectableObjects.values()) {
+            detectableObject.clearFoundObjects();
+            //only look for object if it is not disabled
+            if (!detectableObject.isDisabled()) {
+                findObject(hsvImage, detectableObject);
+                sightings[detectableObject.getType().ordinal()] = detectableObject.getSighting();
             }
         }
-        return detectableObjects;
+        DetectionSnapshot latest = new DetectionSnapshot(++frameSequence, captureTimeNanos, sightings);
+        snapshot.set(latest);
+        stageTimer.endFrame();
+        return latest;
     }
 
-    private void findObject(DetectableObject detectableObject) {
-        overallMaskOfObject = Mat.zeros(pyrDownHsvMat.size(), CvType.CV_8UC1);
-        //go through each specified hsv bounds of the detectable object
-        for (HsvBounds bounds : detectableObject.getHsvBounds()) {
-            //remove all aspects of the image except those within the hsv bounds being considered
-            Core.inRange(pyrDownHsvMat, bounds.getLowerBound(), bounds.getUpperBound(), mSingularMask);
-            //do a bitwise or with the overall mask (mMask) with this range specific mask to create
-            //an overall mask considering all ranges for this object
+    /**
+     * Use the bounds, minimum areas and blur of a set found for a lighting condition
+     *
+     * @param boundSet - the set, objects it has nothing for keep their bounds
+     */
+    public void apply(HsvBoundSet boundSet) {
+        setBlurSize(boundSet.getBlurSize());
+        for (DetectableObject detectableObject : detectableObjects.values()) {
+            HsvBoundSet.Entry entry = boundSet.get(detectableObject.getType());
+            if (entry != null) {
+                detectableObject.setHsvBounds(entry.getBounds());
+                detectableObject.setMinimumArea(entry.getMinimumArea());
+            }
+        }
+    }
+
+    public int getBlurSize() {
+        return blurSize;
+    }
+
+    /**
+     * Set the size of the box blur applied to frames once shrunk, before they are thresholded
+     *
+     * @param blurSize - size in pixels of the quarter size image, 0 or 1 for none
+     */
+    public void setBlurSize(int blurSize) {
+        this.blurKernel = getBlurKernel(blurSize);
+        this.blurSize = blurSize;
+    }
+
+    private static Size getBlurKernel(int blurSize) {
+        return blurSize > 1 ? new Size(blurSize, blurSize) : null;
+    }
+
+    private void findObject(Mat hsvImage, DetectableObject detectableObject) {
+        HsvBounds[] hsvBounds = detectableObject.getHsvBounds();
+        double minimumArea = detectableObject.getMinimumArea();
+        if (hsvBounds.length == 0) {
+            return;
+        }
+        //remove all aspects of the image except those within the first hsv bounds of the object
+        Core.inRange(hsvImage, hsvBounds[0].getLowerBound(), hsvBounds[0].getUpperBound(), overallMaskOfObject);
+        //and or in the mask of each of its other bounds to create a mask considering all of them
+        for (int i = 1; i < hsvBounds.length; i++) {
+            Core.inRange(hsvImage, hsvBounds[i].getLowerBound(), hsvBounds[i].getUpperBound(), mSingularMask);
             Core.bitwise_or(overallMaskOfObject, mSingularMask, overallMaskOfObject);
         }
 
         //dilate image to get less sharp images
         Imgproc.dilate(overallMaskOfObject, mDilatedMask, nothingMat);
-        //release previously found objects
-        for (MatOfPoint foundContour : objectsFound) {
-            foundContour.release();
-        }
-        objectsFound.clear();
+        stageTimer.lap(StageTimer.Stage.Threshold);
         //find the contours in the dilated image
         Imgproc.findContours(mDilatedMask, objectsFound, mHierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        stageTimer.lap(StageTimer.Stage.Contours);
 
-        //System.out.println("Found " + objectsFound.size() + " objects of type: " + detectableObject.getType());
-        //check each contour found to see if it is the largest
+        //check each contour found to see if it is one of our objects
         for (MatOfPoint contour : objectsFound) {
             Rect boundingRectangle = Imgproc.boundingRect(contour);
             //check to see if the contour is within our specified x and y limits
@@ -261,16 +343,43 @@ public class ObjectDetector {
                     && boundingRectangle.y * 4 <= maxAllowedX && boundingRectangle.y * 4 >= minAllowedX) {
                 double area = Imgproc.contourArea(contour);
                 //check to see if contour area is at least our minimum area
-                if (area >= MINIMUM_AREA || detectableObject.getType() == ObjectType.CrossHair) {
+                if (area >= minimumArea || detectableObject.getType() == ObjectType.CrossHair) {
                     //zoom into contour because we had pyrDown twice earlier
-                    Core.multiply(contour, new Scalar(4, 4), contour);
-                    synchronized (detectableObject) {
-                        detectableObject.addFoundObject(contour, area);
-                        Match.log("Found " + detectableObject.getShortName() + " of area: " + area);
-                    }
+                    Core.multiply(contour, PYRAMID_SCALE, contour);
+                    detectableObject.addFoundObject(contour, area);
                 }
             }
+            //the object keeps its own copy
+            contour.release();
+        }
+        objectsFound.clear();
+        detectableObject.measureLargestObject();
+        stageTimer.lap(StageTimer.Stage.Filter);
+    }
+
+    /**
+     * Returns the time spent in each stage of processing frames
+     *
+     * @return the stage timer, read from the vision thread for exact numbers
+     */
+    public StageTimer getStageTimer() {
+        return stageTimer;
+    }
+
+    /**
+     * Release the native memory of our buffers and of the objects we found, once we are done
+     * detecting objects. Must not be called while a frame is being processed.
+     */
+    public void release() {
+        for (DetectableObject detectableObject : detectableObjects.values()) {
+            detectableObject.release();
         }
+        pyrDownHsvMat.release();
+        overallMaskOfObject.release();
+        mSingularMask.release();
+        mDilatedMask.release();
+        mHierarchy.release();
+        nothingMat.release();
     }
 
     /**
@@ -280,13 +389,8 @@ public class ObjectDetector {
      * @return
      */
     public double getLargestArea(ObjectType objectType) {
-        synchronized (detectableObjects) {
-            DetectableObject detectableObject = detectableObjects.get(objectType);
-            if (detectableObject != null) {
-                return detectableObject.largestArea;
-            }
-        }
-        return 0;
+        DetectionSnapshot.Sighting sighting = getSnapshot().get(objectType);
+        return sighting == null ? 0 : sighting.getLargestArea();
     }
 
     public void decrementMinAllowedX() {
@@ -343,11 +447,11 @@ public class ObjectDetector {
      * @return
      */
     public double getDistanceFromCameraOfLargestObject(ObjectType objectType) {
-        synchronized (detectableObjects) {
-            DetectableObject detectableObject = detectableObjects.get(objectType);
-            Rect boundingRectangle = Imgproc.boundingRect(detectableObject.getLargestObject());
-            return detectableObject.getWidth() * FOCAL_LENGTH / boundingRectangle.height;
+        DetectionSnapshot.Sighting sighting = getSnapshot().get(objectType);
+        if (sighting == null) {
+            return -1;
         }
+        return detectableObjects.get(objectType).getWidth() * FOCAL_LENGTH / sighting.getBoundingRectangle().height;
     }
 
     /**
@@ -359,10 +463,8 @@ public class ObjectDetector {
      * @return
      */
     public double getXPositionOfLargestObject(ObjectType objectType) {
-        synchronized (detectableObjects) {
-            DetectableObject detectableObject = detectableObjects.get(objectType);
-            return detectableObject.getXPositionOfLargestObject();
-        }
+        DetectionSnapshot.Sighting sighting = getSnapshot().get(objectType);
+        return sighting == null ? -1 : sighting.getXPosition();
     }
 
     /**
@@ -374,27 +476,18 @@ public class ObjectDetector {
      * @return
      */
     public double getYPositionOfLargestObject(ObjectType objectType) {
-        synchronized (detectableObjects) {
-            DetectableObject detectableObject = detectableObjects.get(objectType);
-            return detectableObject.getYPositionOfLargestObject();
-        }
-
+        DetectionSnapshot.Sighting sighting = getSnapshot().get(objectType);
+        return sighting == null ? -1 : sighting.getYPosition();
     }
 
     public double getWidthOfLargestObject(ObjectType objectType) {
-        synchronized (detectableObjects) {
-            DetectableObject detectableObject = detectableObjects.get(objectType);
-            return detectableObject.getWidthOfLargestObject();
-        }
-
+        DetectionSnapshot.Sighting sighting = getSnapshot().get(objectType);
+        return sighting == null ? -1 : sighting.getWidth();
     }
 
     public double getHeightOfLargestObject(ObjectType objectType) {
-        synchronized (detectableObjects) {
-            DetectableObject detectableObject = detectableObjects.get(objectType);
-            return detectableObject.getHeightOfLargestObject();
-        }
-
+        DetectionSnapshot.Sighting sighting = getSnapshot().get(objectType);
+        return sighting == null ? -1 : sighting.getHeight();
     }
 
     public static class HsvBounds {
@@ -4,6 +4,7 @@ import android.graphics.Bitmap;
 
 import com.acmerobotics.dashboard.FtcDashboard;
 
+import org.firstinspires.ftc.teamcode.robot.components.vision.StageTimer;
 import org.opencv.android.Utils;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
@@ -40,6 +41,7 @@ public class ExampleDetectorPipeline extends OpenCvPipeline
 
     private int largestX, largestY;
     private double largestArea;
+    private final StageTimer stageTimer = new StageTimer();
 
     public ExampleDetectorPipeline(boolean enableDashboard) {
         this.enableDashboard = enableDashboard;
@@ -56,10 +58,12 @@ public class ExampleDetectorPipeline extends OpenCvPipeline
     public Mat processFrame(Mat input)
     {
         // Step Blur0 (stage 1):
+        stageTimer.start();
         blurInput = input;
         BlurType blurType = BlurType.get(BLUR);
         double blurRadius = BLUR_RADIUS;
         blur(blurInput, blurType, blurRadius, blurOutput);
+        stageTimer.lap(StageTimer.Stage.Blur);
 
         // Step HSV_Threshold0  (stage 2):
         Mat hsvThresholdInput = blurOutput;
@@ -67,11 +71,13 @@ public class ExampleDetectorPipeline extends OpenCvPipeline
         double[] hsvThresholdSaturation = {SATURATION_MIN, SATURATION_MAX};
         double[] hsvThresholdValue = {VALUE_MIN, VALUE_MAX};
         hsvThreshold(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, hsvThresholdOutput);
+        stageTimer.lap(StageTimer.Stage.Threshold);
 
         // Step Find_Contours0 (stage 3):
         Mat findContoursInput = hsvThresholdOutput;
         boolean findContoursExternalOnly = false;
         findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
+        stageTimer.lap(StageTimer.Stage.Contours);
         findContoursOutputMat = input.clone();
         for(int i = 0; i < findContoursOutput.size(); i++) {
             Imgproc.drawContours(findContoursOutputMat, findContoursOutput, i, new Scalar(255, 255, 255), 2);
@@ -99,6 +105,8 @@ public class ExampleDetectorPipeline extends OpenCvPipeline
         }
         if(largestContourIndex != -1)
             Imgproc.drawContours(finalContourOutputMat, findContoursOutput, largestContourIndex, new Scalar(255, 255, 255), 2);
+        stageTimer.lap(StageTimer.Stage.Filter);
+        stageTimer.endFrame();
 
         handleDashboard();
 
@@ -109,6 +117,10 @@ public class ExampleDetectorPipeline extends OpenCvPipeline
         return new int[] {largestX, largestY};
     }
 
+    public StageTimer getStageTimer() {
+        return stageTimer;
+    }
+
     private void handleDashboard() {
         if(enableDashboard) {
             Mat toSend = null;
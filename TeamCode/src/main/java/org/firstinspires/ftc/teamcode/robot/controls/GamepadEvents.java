@@ -0,0 +1,200 @@
+package org.firstinspires.ftc.teamcode.robot.controls;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+
+/**
+ * Turns the buttons of a gamepad into events, so that commands are given when a button changes
+ * rather than on every loop it is held.
+ * <p>
+ * update() is called once per loop with the gamepad. It reads every button, triggers counting as
+ * buttons once pressed past RobotConfig.GAMEPAD_TRIGGER_THRESHOLD, and works out which went down
+ * and which came up since the last update. Until the next update we can then ask whether a button
+ * was pressed or released, was double-tapped, has been held for a while, or whether two buttons
+ * have just come to be held together. Times come from the MatchClock, so how a button behaves
+ * doesn't depend on how fast we loop.
+ * <p>
+ * Buttons are kept as bits of a long, so an update allocates nothing.
+ */
+public class GamepadEvents {
+    public enum Button {
+        A, B, X, Y,
+        DpadUp, DpadDown, DpadLeft, DpadRight,
+        LeftBumper, RightBumper, LeftTrigger, RightTrigger,
+        LeftStick, RightStick, Back, Start
+    }
+    private static final Button[] BUTTONS = Button.values();
+
+    private long down, pressed, released, doubleTapped;
+    private long now;
+    //when each button last went down
+    private final long[] pressNanos = new long[BUTTONS.length];
+    //when each button went down for what could be the first of a double tap
+    private final long[] tapNanos = new long[BUTTONS.length];
+    //when each button that repeats was last counted
+    private final long[] repeatNanos = new long[BUTTONS.length];
+    //buttons whose hold has been reported
+    private long holdsReported;
+    private boolean updated;
+
+    /**
+     * Read the gamepad and work out what has changed since the last update
+     * @param gamepad - the gamepad
+     */
+    public void update(Gamepad gamepad) {
+        update(gamepad, MatchClock.nanoTime());
+    }
+
+    /**
+     * Read the gamepad and work out what has changed since the last update
+     * @param gamepad - the gamepad
+     * @param now - MatchClock.nanoTime()
+     */
+    public void update(Gamepad gamepad, long now) {
+        long current = 0;
+        for (int i = 0; i < BUTTONS.length; i++) {
+            if (isDown(gamepad, BUTTONS[i])) {
+                current |= 1L << i;
+            }
+        }
+        //buttons already held when we start aren't counted as pressed, but are held from now on
+        long previous = updated ? down : current;
+        long started = updated ? current & ~previous : current;
+        this.pressed = current & ~previous;
+        this.released = previous & ~current;
+        this.down = current;
+        this.now = now;
+        this.updated = true;
+        this.holdsReported &= current;
+
+        this.doubleTapped = 0;
+        long doubleTapNanos = RobotConfig.GAMEPAD_DOUBLE_TAP_WINDOW * 1000000L;
+        for (int i = 0; i < BUTTONS.length; i++) {
+            if ((started & (1L << i)) == 0) {
+                continue;
+            }
+            pressNanos[i] = now;
+            repeatNanos[i] = now;
+            if ((pressed & (1L << i)) != 0) {
+                if (tapNanos[i] != 0 && now - tapNanos[i] <= doubleTapNanos) {
+                    doubleTapped |= 1L << i;
+                    //a third tap starts a new double tap
+                    tapNanos[i] = 0;
+                }
+                else {
+                    tapNanos[i] = now;
+                }
+            }
+        }
+    }
+
+    private static boolean isDown(Gamepad gamepad, Button button) {
+        switch (button) {
+            case A: return gamepad.a;
+            case B: return gamepad.b;
+            case X: return gamepad.x;
+            case Y: return gamepad.y;
+            case DpadUp: return gamepad.dpad_up;
+            case DpadDown: return gamepad.dpad_down;
+            case DpadLeft: return gamepad.dpad_left;
+            case DpadRight: return gamepad.dpad_right;
+            case LeftBumper: return gamepad.left_bumper;
+            case RightBumper: return gamepad.right_bumper;
+            case LeftTrigger: return gamepad.left_trigger > RobotConfig.GAMEPAD_TRIGGER_THRESHOLD;
+            case RightTrigger: return gamepad.right_trigger > RobotConfig.GAMEPAD_TRIGGER_THRESHOLD;
+            case LeftStick: return gamepad.left_stick_button;
+            case RightStick: return gamepad.right_stick_button;
+            case Back: return gamepad.back;
+            case Start: return gamepad.start;
+            default: return false;
+        }
+    }
+
+    private static long bit(Button button) {
+        return 1L << button.ordinal();
+    }
+
+    /**
+     * Returns true if the button is down
+     */
+    public boolean isDown(Button button) {
+        return (down & bit(button)) != 0;
+    }
+
+    /**
+     * Returns true if the button went down since the last update
+     */
+    public boolean pressed(Button button) {
+        return (pressed & bit(button)) != 0;
+    }
+
+    /**
+     * Returns true if the button came up since the last update
+     */
+    public boolean released(Button button) {
+        return (released & bit(button)) != 0;
+    }
+
+    /**
+     * Returns true if the button went down since the last update for the second time within
+     * RobotConfig.GAMEPAD_DOUBLE_TAP_WINDOW. The press is also reported by pressed().
+     */
+    public boolean doubleTapped(Button button) {
+        return (doubleTapped & bit(button)) != 0;
+    }
+
+    /**
+     * Returns true if both buttons are down and weren't both down before this update, so it is
+     * true once however the two were pressed
+     */
+    public boolean chord(Button first, Button second) {
+        long both = bit(first) | bit(second);
+        return (down & both) == both && (pressed & both) != 0;
+    }
+
+    /**
+     * Returns true once, on the update in which the button has been down for the specified time
+     * @param button - the button
+     * @param millis - milli-seconds it has to be held for
+     * @return true the first time it has been held long enough
+     */
+    public boolean held(Button button, long millis) {
+        long bit = bit(button);
+        if ((down & bit) == 0 || (holdsReported & bit) != 0
+                || now - pressNanos[button.ordinal()] < millis * 1000000L) {
+            return false;
+        }
+        holdsReported |= bit;
+        return true;
+    }
+
+    /**
+     * Returns how many times a held button repeats in this update: once as it is pressed, then
+     * after RobotConfig.GAMEPAD_REPEAT_DELAY once every RobotConfig.GAMEPAD_REPEAT_INTERVAL. Repeats
+     * that fall between updates are all counted, so what a button does over time doesn't depend
+     * on how often we loop. Must be called at most once per update for a button.
+     * @param button - the button
+     * @return the number of repeats
+     */
+    public int repeats(Button button) {
+        int index = button.ordinal();
+        if ((down & bit(button)) == 0) {
+            return 0;
+        }
+        if ((pressed & bit(button)) != 0) {
+            return 1;
+        }
+        long intervalNanos = RobotConfig.GAMEPAD_REPEAT_INTERVAL * 1000000L;
+        long firstRepeat = pressNanos[index] + RobotConfig.GAMEPAD_REPEAT_DELAY * 1000000L;
+        if (now < firstRepeat) {
+            return 0;
+        }
+        //count from the first repeat the first time round
+        long from = Math.max(repeatNanos[index], firstRepeat - intervalNanos);
+        int repeats = (int) ((now - from) / intervalNanos);
+        repeatNanos[index] = from + repeats * intervalNanos;
+        return repeats;
+    }
+}
@@ -0,0 +1,45 @@
+package org.firstinspires.ftc.teamcode.robot.controls;
+
+/**
+ * Shapes how far a stick is pushed into how hard we respond, from a table worked out once.
+ * <p>
+ * The curve is the stick raised to a power, keeping its sign, so small pushes give fine control
+ * and a full push still gives full output. A stick within the dead band gives nothing, and beyond
+ * it the curve starts from 0 so there is no jump. Looking a push up in the table and interpolating
+ * between its two nearest entries costs a multiply and an add, instead of a Math.pow every loop.
+ */
+public class StickCurve {
+    //entries in the table from no push to a full push
+    private static final int ENTRIES = 256;
+
+    private final double deadBand;
+    private final double[] table = new double[ENTRIES + 1];
+
+    /**
+     * Create a curve
+     * @param exponent - power to raise the push to, 1 for a straight line
+     * @param deadBand - how far the stick can be pushed before we respond, from 0 to below 1
+     */
+    public StickCurve(double exponent, double deadBand) {
+        this.deadBand = deadBand;
+        for (int i = 0; i <= ENTRIES; i++) {
+            table[i] = Math.pow((double) i / ENTRIES, exponent);
+        }
+    }
+
+    /**
+     * Returns the response to a push of the stick
+     * @param push - how far the stick is pushed, from -1 to 1
+     * @return the response, from -1 to 1
+     */
+    public double apply(double push) {
+        double magnitude = Math.abs(push);
+        if (magnitude <= deadBand) {
+            return 0;
+        }
+        double position = Math.min((magnitude - deadBand) / (1 - deadBand), 1) * ENTRIES;
+        int index = Math.min((int) position, ENTRIES - 1);
+        double response = table[index] + (table[index + 1] - table[index]) * (position - index);
+        return push < 0 ? -response : response;
+    }
+}
@@ -3,8 +3,10 @@ package org.firstinspires.ftc.teamcode.robot.operations;
 import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
 import org.firstinspires.ftc.teamcode.robot.components.Arm;
+import org.firstinspires.ftc.teamcode.robot.components.ArmPosition;
 
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * This class implements oll of the operations related to managing the arm.
@@ -33,11 +35,12 @@ public class ArmOperation extends Operation {
         Hang_1, Hang_2
 
     }
+    //arm operations move the shoulder and the slide and set the claw
+    private static final Set<Resource> RESOURCES = Resource.setOf(Resource.Shoulder, Resource.Slide, Resource.Claw);
+
     Arm arm;
     Type type;
 
-    boolean shoulderReachedPosition, queuedSlidePosition;
-
     public ArmOperation(Type type, String title) {
         this.arm = Match.getInstance().getRobot().getArm();
         this.type = type;
@@ -49,135 +52,61 @@ public class ArmOperation extends Operation {
                 this.title);
     }
 
-    public boolean isComplete() {
-
-        //if the shoulder is within range, we queue up the slide movement
-        if (!shoulderReachedPosition && arm.shoulderIsWithinRange()) {
-            shoulderReachedPosition = true;
-            Match.log("Shoulder reached position, queuing slide movement");
-            switch (this.type) {
-                case Initial: {
-                    arm.setSlidePosition(RobotConfig.ARM_STARTING_POSITION.getSlide());
-                    break;
-                }
-                case Intake: {
-                    arm.setSlidePosition(RobotConfig.ARM_INTAKE_POSITION.getSlide());
-                    break;
-                }
-                case High_Chamber_1: {
-                    arm.setSlidePosition(RobotConfig.ARM_HIGH_CHAMBER_POSITION_1.getSlide());
-                    break;
-                }
-                case High_Chamber_2: {
-                    arm.setSlidePosition(RobotConfig.ARM_HIGH_CHAMBER_POSITION_2.getSlide());
-                    break;
-                }
-                case High_Chamber_Deposit: {
-                    arm.setSlidePosition(RobotConfig.ARM_HIGH_CHAMBER_DEPOSIT_POSITION.getSlide());
-                    break;
-                }
-                case High_Chamber_Release: {
-                    arm.setSlidePosition(RobotConfig.ARM_HIGH_CHAMBER_RELEASE_POSITION.getSlide());
-                    break;
-                }
-                case Ascent_Level1: {
-                    arm.setSlidePosition(RobotConfig.ARM_ASCENT_LEVEL_1_POSITION.getSlide());
-                    break;
-                }
-                case Ascent_Lowered: {
-                    arm.setSlidePosition(RobotConfig.ARM_ASCENT_LOWERED_POSITION.getSlide());
-                    break;
-                }
-                case Specimen_Intake: {
-                    arm.setSlidePosition(RobotConfig.ARM_SPECIMEN_INTAKE_POSITION.getSlide());
-                    break;
-                }
-                case Lower_Basket: {
-                    arm.setSlidePosition(RobotConfig.ARM_LOWER_BASKET.getSlide());
-                    break;
-                }
-                case Higher_Basket: {
-                    arm.setSlidePosition(RobotConfig.ARM_HIGHER_BASKET.getSlide());
-                    break;
-                }
-                case Hang_1: {
-                    arm.setSlidePosition(RobotConfig.ARM_ASCENT_LEVEL_1_POSITION.getSlide());
-                    break;
-                }
-            }
+    /**
+     * Returns the position the arm assumes for the specified type of operation
+     * @param type - the type of operation
+     * @return the position, null if the type does not move the arm
+     */
+    public static ArmPosition getPosition(Type type) {
+        switch (type) {
+            case Initial:
+                return RobotConfig.ARM_STARTING_POSITION;
+            case Intake:
+                return RobotConfig.ARM_INTAKE_POSITION;
+            case High_Chamber_1:
+                return RobotConfig.ARM_HIGH_CHAMBER_POSITION_1;
+            case High_Chamber_2:
+                return RobotConfig.ARM_HIGH_CHAMBER_POSITION_2;
+            case High_Chamber_Deposit:
+                return RobotConfig.ARM_HIGH_CHAMBER_DEPOSIT_POSITION;
+            case High_Chamber_Release:
+                return RobotConfig.ARM_HIGH_CHAMBER_RELEASE_POSITION;
+            case Ascent_Level1:
+            case Hang_1:
+                return RobotConfig.ARM_ASCENT_LEVEL_1_POSITION;
+            case Ascent_Lowered:
+                return RobotConfig.ARM_ASCENT_LOWERED_POSITION;
+            case Specimen_Intake:
+                return RobotConfig.ARM_SPECIMEN_INTAKE_POSITION;
+            case Lower_Basket:
+                return RobotConfig.ARM_LOWER_BASKET;
+            case Higher_Basket:
+                return RobotConfig.ARM_HIGHER_BASKET;
         }
-        //we are done if shoulder had reached its position and the slide has also
-        if(shoulderReachedPosition && arm.slideIsWithinRange()) {
+        return null;
+    }
+
+    public boolean isComplete() {
+        //we are done once the shoulder and the slide have finished their profiles and are in range
+        if (!arm.isMoving() && arm.isWithinRange()) {
             Match.log("Completed with: " + arm.getStatus());
             return true;
         }
         return false;
     }
 
+    @Override
+    public Set<Resource> getResources() {
+        return RESOURCES;
+    }
+
     @Override
     public void startOperation() {
-        //we only make the shoulder go to its position to start with
-        switch (this.type) {
-            case Initial: {
-                arm.setShoulderPosition(RobotConfig.ARM_STARTING_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_STARTING_POSITION.getClaw());
-                break;
-            }
-            case Intake: {
-                arm.setShoulderPosition(RobotConfig.ARM_INTAKE_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_INTAKE_POSITION.getClaw());
-                break;
-            }
-            case High_Chamber_1: {
-                arm.setShoulderPosition(RobotConfig.ARM_HIGH_CHAMBER_POSITION_1.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_HIGH_CHAMBER_POSITION_1.getClaw());
-                break;
-            }
-            case High_Chamber_2: {
-                arm.setShoulderPosition(RobotConfig.ARM_HIGH_CHAMBER_POSITION_2.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_HIGH_CHAMBER_POSITION_2.getClaw());
-                break;
-            }
-            case High_Chamber_Deposit: {
-                arm.setShoulderPosition(RobotConfig.ARM_HIGH_CHAMBER_DEPOSIT_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_HIGH_CHAMBER_DEPOSIT_POSITION.getClaw());
-                break;
-            }
-            case High_Chamber_Release: {
-                arm.setShoulderPosition(RobotConfig.ARM_HIGH_CHAMBER_RELEASE_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_HIGH_CHAMBER_RELEASE_POSITION.getClaw());
-                break;
-            }
-            case Ascent_Level1: {
-                arm.setShoulderPosition(RobotConfig.ARM_ASCENT_LEVEL_1_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_ASCENT_LEVEL_1_POSITION.getClaw());
-                break;
-            }
-            case Ascent_Lowered: {
-                arm.setShoulderPosition(RobotConfig.ARM_ASCENT_LOWERED_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_ASCENT_LOWERED_POSITION.getClaw());
-                break;
-            }
-            case Specimen_Intake: {
-                arm.setShoulderPosition(RobotConfig.ARM_SPECIMEN_INTAKE_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_SPECIMEN_INTAKE_POSITION.getClaw());
-                break;
-            }
-            case Hang_1: {
-                arm.setShoulderPosition(RobotConfig.ARM_ASCENT_LEVEL_1_POSITION.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_ASCENT_LEVEL_1_POSITION.getClaw());
-                break;
-            }
-            case Lower_Basket: {
-                arm.setShoulderPosition(RobotConfig.ARM_LOWER_BASKET.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_LOWER_BASKET.getClaw());
-                break;
-            }
-            case Higher_Basket: {
-                arm.setShoulderPosition(RobotConfig.ARM_HIGHER_BASKET.getShoulder());
-                arm.setClawPosition(RobotConfig.ARM_HIGHER_BASKET.getClaw());
-                break;
-            }
+        //the arm moves the shoulder and the slide together along a path that stays clear
+        //of the floor and the chassis
+        ArmPosition position = getPosition(this.type);
+        if (position != null) {
+            arm.moveTo(position);
         }
     }
 
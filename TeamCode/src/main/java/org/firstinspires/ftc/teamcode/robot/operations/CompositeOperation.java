@@ -0,0 +1,143 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An operation made up of other operations, so that a lane can run several operations at once
+ * or one after the other as a single step, like driving while raising the arm and then releasing
+ * once either the sensor sees the rung or time runs out.
+ * <p>
+ * A composite is queued like any other operation. Each time its operation thread checks whether
+ * it is complete, it starts, checks and aborts its children as it needs to, so the whole tree is
+ * moved along in one pass of the control loop without blocking. Children can themselves be
+ * composites.
+ * <p>
+ * A composite needs the resources and vision processors of all its children, so the StateEngine
+ * doesn't start anything early that its children might use. Children running at the same time
+ * should not use the same resources.
+ */
+public abstract class CompositeOperation extends Operation {
+    protected final List<Operation> children;
+    private final Set<Resource> resources;
+    private final Set<SilverTitansVisionPortal.Processor> visionProcessors;
+    //children started since we were, and those that have since completed or been aborted
+    private final boolean[] started;
+    private final boolean[] finished;
+
+    protected CompositeOperation(String title, Operation... children) {
+        this.title = title;
+        this.children = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(children)));
+        this.started = new boolean[children.length];
+        this.finished = new boolean[children.length];
+        EnumSet<Resource> resources = EnumSet.noneOf(Resource.class);
+        EnumSet<SilverTitansVisionPortal.Processor> processors = EnumSet.noneOf(SilverTitansVisionPortal.Processor.class);
+        for (Operation child : children) {
+            resources.addAll(child.getResources());
+            processors.addAll(child.getVisionProcessors());
+        }
+        this.resources = Collections.unmodifiableSet(resources);
+        this.visionProcessors = Collections.unmodifiableSet(processors);
+    }
+
+    public List<Operation> getChildren() {
+        return children;
+    }
+
+    @Override
+    public Set<Resource> getResources() {
+        return resources;
+    }
+
+    @Override
+    public Set<SilverTitansVisionPortal.Processor> getVisionProcessors() {
+        return visionProcessors;
+    }
+
+    /**
+     * Forget how our children did the last time we ran, so that we can be queued again. To be
+     * called when we start, before any child is.
+     */
+    protected void resetChildren() {
+        Arrays.fill(started, false);
+        Arrays.fill(finished, false);
+        setAborted(false);
+    }
+
+    /**
+     * Start a child
+     * @param index - which child
+     */
+    protected void start(int index) {
+        Operation child = children.get(index);
+        child.setAborted(false);
+        child.setOperationBeingProcessed();
+        started[index] = true;
+        child.startOperation();
+    }
+
+    /**
+     * Returns true if a child has been started and has finished, either by completing or by
+     * being aborted. A child is only checked until it has finished.
+     * @param index - which child
+     * @return true if the child is done
+     */
+    protected boolean isDone(int index) {
+        if (!finished[index]) {
+            Operation child = children.get(index);
+            finished[index] = started[index] && (child.isAborted() || child.isComplete());
+        }
+        return finished[index];
+    }
+
+    /**
+     * Returns true if a child finished by being aborted
+     * @param index - which child
+     */
+    protected boolean wasAborted(int index) {
+        return finished[index] && children.get(index).isAborted();
+    }
+
+    /**
+     * Abort a child if it has been started and hasn't finished
+     * @param index - which child
+     */
+    protected void abort(int index) {
+        Operation child = children.get(index);
+        if (started[index] && !finished[index]) {
+            Match.log(this.title + ": aborting " + child.getTitle());
+            child.abortOperation();
+            child.setAborted(true);
+            finished[index] = true;
+        }
+    }
+
+    /**
+     * Abort every child that is running
+     */
+    @Override
+    public void abortOperation() {
+        for (int i = 0; i < children.size(); i++) {
+            abort(i);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(getClass().getSimpleName()).append(": [");
+        for (int i = 0; i < children.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(children.get(i));
+        }
+        return builder.append("] --").append(this.title).toString();
+    }
+}
@@ -0,0 +1,8 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+/**
+ * Something checked while operations run, like whether the distance sensor sees a sample
+ */
+public interface Condition {
+    boolean isTrue();
+}
@@ -0,0 +1,48 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+
+/**
+ * Runs one of two operations, depending on a condition checked as we start. It needs the
+ * resources of both, as we can't tell ahead of time which it will run.
+ */
+public class ConditionalOperation extends CompositeOperation {
+    private final Condition condition;
+    private int chosen = -1;
+
+    /**
+     * Create an operation that runs one operation or the other
+     * @param title - title of the operation
+     * @param condition - checked as we start
+     * @param ifTrue - operation to run if the condition is true
+     * @param ifFalse - operation to run if the condition is false, null to do nothing
+     */
+    public ConditionalOperation(String title, Condition condition, Operation ifTrue, Operation ifFalse) {
+        super(title, ifFalse == null ? new Operation[] {ifTrue} : new Operation[] {ifTrue, ifFalse});
+        this.condition = condition;
+    }
+
+    @Override
+    public void startOperation() {
+        chosen = condition.isTrue() ? 0 : (children.size() > 1 ? 1 : -1);
+        if (chosen >= 0) {
+            Match.log(this.title + ": running " + children.get(chosen).getTitle());
+            start(chosen);
+        }
+    }
+
+    @Override
+    public boolean isComplete() {
+        if (chosen < 0) {
+            return true;
+        }
+        if (!isDone(chosen)) {
+            return false;
+        }
+        if (wasAborted(chosen)) {
+            setAborted(true);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+
+/**
+ * Runs operations at the same time, and is complete once the first of them, the deadline, is
+ * done. The others are aborted if they are still running by then. If the deadline itself is
+ * aborted, so are we.
+ */
+public class DeadlineOperation extends CompositeOperation {
+    /**
+     * Create an operation that runs the others until the deadline is done
+     * @param title - title of the operation
+     * @param deadline - the operation that decides when we are done
+     * @param others - operations to run alongside it
+     */
+    public DeadlineOperation(String title, Operation deadline, Operation... others) {
+        super(title, prepend(deadline, others));
+    }
+
+    private static Operation[] prepend(Operation first, Operation[] rest) {
+        Operation[] operations = new Operation[rest.length + 1];
+        operations[0] = first;
+        System.arraycopy(rest, 0, operations, 1, rest.length);
+        return operations;
+    }
+
+    @Override
+    public void startOperation() {
+        resetChildren();
+        for (int i = 0; i < children.size(); i++) {
+            start(i);
+        }
+    }
+
+    @Override
+    public boolean isComplete() {
+        if (isAborted()) {
+            return false;
+        }
+        for (int i = 1; i < children.size(); i++) {
+            isDone(i);
+        }
+        if (isDone(0)) {
+            abortOperation();
+            if (wasAborted(0)) {
+                Match.log(this.title + ": " + children.get(0).getTitle() + " was aborted");
+                setAborted(true);
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+}
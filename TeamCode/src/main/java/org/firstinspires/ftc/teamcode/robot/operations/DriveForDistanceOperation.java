@@ -1,14 +1,17 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 /**
  * Created by Silver Titans on 10/12/17.
  */
 
-public class DriveForDistanceOperation extends DriveTrainOperation {
+public class DriveForDistanceOperation extends MotionPrimitivesOperation {
     protected double distance;
     protected double speed;
 
@@ -31,13 +34,6 @@ public class DriveForDistanceOperation extends DriveTrainOperation {
                 this.title);
     }
 
-    public boolean isComplete() {
-        if (driveTrain.driveTrainWithinRange()) {
-            return true;
-        }
-        return false;
-    }
-
     public double getSpeed() {
         return this.speed;
     }
@@ -50,8 +46,8 @@ public class DriveForDistanceOperation extends DriveTrainOperation {
     }
 
     @Override
-    public void startOperation() {
-        driveTrain.handleOperation(this);
+    public List<MotionPrimitive> getPrimitives() {
+        return Collections.singletonList(MotionPrimitive.straight(distance / Field.MM_PER_INCH, speed));
     }
 }
 
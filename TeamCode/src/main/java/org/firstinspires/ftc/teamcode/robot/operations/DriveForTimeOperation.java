@@ -1,6 +1,7 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
-import java.util.Date;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+
 import java.util.Locale;
 
 /**
@@ -43,7 +44,7 @@ public class DriveForTimeOperation extends DriveTrainOperation {
     }
 
     public boolean isComplete() {
-        if (new Date().getTime() > (this.getStartTime().getTime() + getTime())) {
+        if (MatchClock.currentTimeMillis() > (this.getStartTime().getTime() + getTime())) {
             driveTrain.stop();
             return true;
         } else {
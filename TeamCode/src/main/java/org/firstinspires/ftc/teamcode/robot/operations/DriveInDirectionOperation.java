@@ -2,7 +2,7 @@ package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.teamcode.game.Field;
-import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.logging.MatchLogger;
 import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
 
 import java.util.Date;
@@ -62,8 +62,9 @@ public class DriveInDirectionOperation extends DriveForDistanceOperation {
                 rightSpeed /= max;
             }
 
-            Match.log(String.format(Locale.getDefault(), "%.2f vs %.2f, Bearing error: %.2f, Setting power LF:%.2f,LR:%.2f,RF:%.2f,RR%.2f",
-                    Math.toDegrees(direction), currentBearing, bearingError, leftSpeed, leftSpeed, rightSpeed, rightSpeed));
+            MatchLogger logger = MatchLogger.getInstance();
+            logger.headingCorrection(Math.toDegrees(direction), currentBearing, bearingError);
+            logger.wheelPowers(leftSpeed, rightSpeed, leftSpeed, rightSpeed);
 
             driveTrain.setLeftFrontPower(leftSpeed);
             driveTrain.setLeftRearPower(leftSpeed);
@@ -4,10 +4,12 @@ import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.teamcode.game.Field;
 import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
+import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
 import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * Drive in the direction specified in degrees, until the specified april tag is seen,
@@ -55,5 +57,9 @@ public class DriveInDirectionUntilAprilTagOperation extends DriveInDirectionOper
 
         return false;
     }
-}
 
+    @Override
+    public Set<SilverTitansVisionPortal.Processor> getVisionProcessors() {
+        return SilverTitansVisionPortal.APRIL_TAGS;
+    }
+}
@@ -1,18 +1,16 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
-import com.qualcomm.robotcore.util.Range;
-
 import org.firstinspires.ftc.teamcode.game.Field;
 import org.firstinspires.ftc.teamcode.game.Match;
-import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.AprilTagTracker;
 import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
-import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
+import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
 
-import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 /**
- * Drive in the direction specified in degrees, the amount specified in mms at the speed specified
+ * Drive to a spot in front of the april tag in view, using the drive train's april tag tracker
  */
 public class DriveToAprilTag extends Operation {
 
@@ -22,10 +20,11 @@ public class DriveToAprilTag extends Operation {
 
     public static final double MAX_AUTO_TURN  = 0.3;   //  Clip the turn speed to this max value (adjust for your robot)
 
+    private static final Set<Resource> RESOURCES = Resource.setOf(Resource.DriveTrain);
+
     protected double xOffset, yOffset;
     protected DriveTrain driveTrain;
 
-    AprilTagDetection desiredTag;
     /**
      * Create an operation to drive in the specified heading
      * @param xOffset - how far to the left of the april tag we should be
@@ -46,76 +45,47 @@ public class DriveToAprilTag extends Operation {
                 this.title);
     }
 
-    public boolean isComplete() {
-        return driveToAprilTag(xOffset, yOffset, driveTrain);
-    }
-
     /**
-     * Drive the robot so that it is aligned with a specified april tag id and is within the
-     * specified distance from it
-     * @param xOffset - how far to the right of the camera the april tag should be (in mms)
-     * @param yOffset - how far to the front of the camera the april tag should be (in mms)
-     * @param driveTrain
-     * @return
+     * We are done once the tracker has aligned us with the tag, or has given up on it
      */
-    public static boolean driveToAprilTag(double xOffset, double yOffset, DriveTrain driveTrain) {
-        double drive = 0, turn = 0, strafe = 0;
-        boolean arrived = false;
-        AprilTagDetection desiredTag;
-        //only do something if we are seeing an april tag
-        if ((desiredTag = findTarget()) != null) {
-            // Determine x (left-right), y (forward) and Yaw (tag image rotation) error
-            // so we can use them to control the robot automatically.
-            //xError is how far to the right of the camera, the april tag is - how far right we want to be
-            double xError = xOffset/Field.MM_PER_INCH-desiredTag.ftcPose.x;
-            //yError is how far the april tag is in front of the camera
-            double yError = desiredTag.ftcPose.y - yOffset/Field.MM_PER_INCH;
-            //heading is how far the april tag in terms of our heading
-            double headingError = desiredTag.ftcPose.bearing;
-
-            double speed = RobotConfig.APRIL_TAG_SPEED;
-            // Use the speed and turn "gains" to calculate how we want the robot to move.
-            drive = Range.clip(yError * SPEED_GAIN, -speed, speed);
-            turn = Range.clip(headingError * TURN_GAIN, -speed * .6, speed * .6);
-            strafe = Range.clip(-xError * STRAFE_GAIN, -speed, speed);
-
-            /*
-            We consider we have arrived if we are within 1 inch of the desired distance,
-            within 1 inches of left to right and within 2 degrees of facing the aprilTag
-             */
-            if (Math.abs(yError) < 1 && Math.abs(xError) < 1 && Math.abs(headingError) < 2) {
-                arrived = true;
-            }
-            else {
-                Match.log(String.format(Locale.getDefault(),
-                        "Drive to april tag: xError:%.2f, yError:%.2f, heading error: %.2f," +
-                                "drive: %.2f, strafe: %.2f, turn: %.2f",
-                        xError, yError, headingError,
-                        drive, strafe, turn));
-            }
-        }
-        else {
-            //if we are not seeing the tag, we say we have arrived as there is no chance we are going to see it
-            Match.log("Not seeing any april tags");
-            arrived = true;
-        }
-        if (arrived) {
-            driveTrain.stop();
-        }
-        else {
-            moveRobot(drive, strafe, turn, driveTrain);
+    public boolean isComplete() {
+        AprilTagTracker.Result result = driveTrain.getAprilTagTracker().getResult();
+        switch (result) {
+            case Tracking:
+                return false;
+            case Arrived:
+                return true;
+            default:
+                //never saw the tag or lost it on the way, so we are not where we wanted to be
+                Match.log(title + " gave up: " + result);
+                setAborted(true);
+                return true;
         }
-        return arrived;
+    }
+
+    @Override
+    public Set<Resource> getResources() {
+        return RESOURCES;
+    }
 
+    @Override
+    public Set<SilverTitansVisionPortal.Processor> getVisionProcessors() {
+        return SilverTitansVisionPortal.APRIL_TAGS;
     }
 
+    /**
+     * Have the drive train's april tag tracker drive us to the tag, on each new camera frame and
+     * our pose in between
+     */
     @Override
     public void startOperation() {
+        driveTrain.getAprilTagTracker().start(xOffset / Field.MM_PER_INCH, yOffset / Field.MM_PER_INCH);
     }
 
     @Override
     public void abortOperation() {
-        driveTrain.stop();
+        driveTrain.getAprilTagTracker().stop();
+        driveTrain.halt();
     }
 
     public double getxOffset() {
@@ -123,23 +93,7 @@ public class DriveToAprilTag extends Operation {
     }
 
     /**
-     * Return an april tag detection if it is seen. Return null if it is not
-     * @return
-     */
-    public static AprilTagDetection findTarget() {
-        // Step through the list of detected tags and look for a matching tag
-        List<AprilTagDetection> currentDetections = Match.getInstance().getRobot().getVisionPortal().getAprilTags();
-        //Match.log("Found " + currentDetections.size() + " april tags");
-        if (currentDetections.size() > 0) {
-            return currentDetections.get(0);
-        }
-        else {
-            Match.log("No april tags to align with");
-        }
-        return null;
-    }
-    /**
-     * Move robot according to desired axes motions
+     * Move robot according to desired axes motions, as fractions of our top speeds
      * <p>
      * Positive X is forward
      * <p>
@@ -148,29 +102,6 @@ public class DriveToAprilTag extends Operation {
      * Positive Yaw is counter-clockwise
      */
     public static void moveRobot(double forward, double strafe, double rotate, DriveTrain driveTrain) {
-        // Calculate wheel powers.
-        double leftFrontPower    =  forward -strafe -rotate;
-        double rightFrontPower   =  forward +strafe +rotate;
-        double leftBackPower     =  forward +strafe -rotate;
-        double rightBackPower    =  forward -strafe +rotate;
-
-        // Normalize wheel powers to be less than 1.0
-        double max = Math.max(Math.abs(leftFrontPower), Math.abs(rightFrontPower));
-        max = Math.max(max, Math.abs(leftBackPower));
-        max = Math.max(max, Math.abs(rightBackPower));
-
-        if (max > 1.0) {
-            leftFrontPower /= max;
-            rightFrontPower /= max;
-            leftBackPower /= max;
-            rightBackPower /= max;
-        }
-
-        // Send powers to the wheels.
-        driveTrain.setLeftFrontPower(leftFrontPower);
-        driveTrain.setRightFrontPower(rightFrontPower);
-        driveTrain.setLeftRearPower(leftBackPower);
-        driveTrain.setRightRearPower(rightBackPower);
+        driveTrain.driveAtFractions(forward, strafe, rotate);
     }
 }
-
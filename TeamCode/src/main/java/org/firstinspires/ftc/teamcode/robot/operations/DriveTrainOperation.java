@@ -3,17 +3,26 @@ package org.firstinspires.ftc.teamcode.robot.operations;
 import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
 
+import java.util.Set;
+
 public abstract class DriveTrainOperation extends Operation {
+    private static final Set<Resource> RESOURCES = Resource.setOf(Resource.DriveTrain);
     DriveTrain driveTrain;
     public DriveTrainOperation() {
         super();
         this.driveTrain = Match.getInstance().getRobot().getDriveTrain();
     }
 
+    @Override
+    public Set<Resource> getResources() {
+        return RESOURCES;
+    }
+
     @Override
     public void abortOperation() {
         try {
-            driveTrain.stop();
+            //leave the encoders alone, so our odometry carries on into whatever runs next
+            driveTrain.halt();
         }
         catch (Throwable e) {}
         Match.log("Aborted " + this.title);
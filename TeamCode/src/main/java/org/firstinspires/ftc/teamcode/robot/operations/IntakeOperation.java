@@ -5,6 +5,7 @@ import org.firstinspires.ftc.teamcode.robot.components.Arm;
 import org.firstinspires.ftc.teamcode.robot.components.Intake;
 
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * This class implements oll of the operations related to managing the arm.
@@ -27,6 +28,8 @@ public class IntakeOperation extends Operation {
     public enum Type {
         Eat, Abstain, Release
     }
+    private static final Set<Resource> RESOURCES = Resource.setOf(Resource.Intake);
+
     Intake intake;
     Type type;
 
@@ -46,6 +49,11 @@ public class IntakeOperation extends Operation {
        return intake.intakeWithinRange();
     }
 
+    @Override
+    public Set<Resource> getResources() {
+        return RESOURCES;
+    }
+
     @Override
     public void startOperation() {
         switch (this.type) {
@@ -0,0 +1,85 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.PrimitiveFollower;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.PrimitivePath;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Drive a chain of straight drives, strafes and turns as one continuous move, using the drive
+ * train's primitive follower
+ * <p>
+ * Operations that drive, strafe or turn for a distance are single primitives, and extend this to
+ * say which.
+ */
+public class MotionPrimitivesOperation extends DriveTrainOperation {
+    private final List<MotionPrimitive> primitives;
+
+    protected MotionPrimitivesOperation() {
+        this.primitives = null;
+    }
+
+    /**
+     * Create an operation to drive the specified primitives one into the other
+     * @param title - title of the operation
+     * @param primitives - the segments in the order to drive them
+     */
+    public MotionPrimitivesOperation(String title, MotionPrimitive... primitives) {
+        this.primitives = Arrays.asList(primitives);
+        this.title = title;
+    }
+
+    public String toString() {
+        return String.format(Locale.getDefault(), "Primitives: %s --%s", getPrimitives(), this.title);
+    }
+
+    /**
+     * Returns the segments to drive
+     */
+    public List<MotionPrimitive> getPrimitives() {
+        return primitives;
+    }
+
+    /**
+     * Returns where we will end up if we start at the specified pose
+     * @param startPose - where we start, in the frame of the localizer
+     * @return where we end up
+     */
+    public Pose2d getEndPose(Pose2d startPose) {
+        return new PrimitivePath(startPose, getPrimitives()).getEndPose();
+    }
+
+    /**
+     * We are done once the follower has got us to the end, or given up close to it
+     */
+    public boolean isComplete() {
+        PrimitiveFollower.Result result = driveTrain.getPrimitiveFollower().getResult();
+        if (result == PrimitiveFollower.Result.Following) {
+            return false;
+        }
+        if (result == PrimitiveFollower.Result.Missed) {
+            Match.log(title + " ended short of where it was going");
+        }
+        return true;
+    }
+
+    @Override
+    public void startOperation() {
+        driveTrain.handleOperation(this);
+    }
+
+    /**
+     * Stop following our primitives, then stop the motors
+     */
+    @Override
+    public void abortOperation() {
+        driveTrain.getPrimitiveFollower().stop();
+        super.abortOperation();
+    }
+}
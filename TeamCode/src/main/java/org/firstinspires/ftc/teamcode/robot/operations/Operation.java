@@ -1,6 +1,11 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.game.logging.MatchLogger;
+import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
+
 import java.util.Date;
+import java.util.Set;
 
 /**
  * Created by Silver Titans on 10/29/17.
@@ -24,6 +29,12 @@ public abstract class Operation {
     protected boolean isAborted = false;
 
     private Date startTime;
+    //MatchClock.nanoTime() stamps used to report scheduling latency
+    private long queuedNanos, startNanos;
+    //order in which the operation was queued across all operation threads
+    private long sequence = -1;
+    //id of our description in the match log
+    private int logId = -1;
     String title;
     public String getTitle() {
         return title;
@@ -34,13 +45,76 @@ public abstract class Operation {
 
     public void setOperationBeingProcessed() {
         this.operationIsBeingProcessed = true;
-        this.startTime = new Date();
+        this.startTime = MatchClock.now();
+        this.startNanos = MatchClock.nanoTime();
+    }
+
+    /**
+     * Mark the time at which this operation was queued up
+     * @param sequence - the order in which the operation was queued
+     */
+    public void setQueued(long sequence) {
+        this.sequence = sequence;
+        this.queuedNanos = MatchClock.nanoTime();
+    }
+
+    /**
+     * Returns the order in which this operation was queued across all operation threads
+     * @return the queue sequence, -1 if the operation has not been queued
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the parts of the robot this operation needs to itself while it runs
+     * @return the resources used, none by default
+     */
+    public Set<Resource> getResources() {
+        return Resource.NONE;
+    }
+
+    /**
+     * Returns the vision processors this operation needs running while it runs
+     * @return the processors needed, none by default
+     */
+    public Set<SilverTitansVisionPortal.Processor> getVisionProcessors() {
+        return SilverTitansVisionPortal.NO_PROCESSORS;
+    }
+
+    /**
+     * Returns the id the match logger knows this operation by, registering the operation's
+     * description the first time it is asked for
+     * @return id of the operation in the match log
+     */
+    public int getLogId() {
+        if (logId < 0) {
+            logId = MatchLogger.getInstance().stringId(toString());
+        }
+        return logId;
     }
 
     public Date getStartTime() {
         return this.startTime;
     }
 
+    /**
+     * Returns the time the operation spent waiting in its queue before being started
+     * @return milli-seconds between being queued and being started
+     */
+    public double getQueueToStartMillis() {
+        return (startNanos - queuedNanos) / 1e6;
+    }
+
+    /**
+     * Returns how long the operation has been running
+     * @param nowNanos - the current MatchClock.nanoTime()
+     * @return milli-seconds since the operation was started
+     */
+    public double getStartToNowMillis(long nowNanos) {
+        return (nowNanos - startNanos) / 1e6;
+    }
+
     public abstract boolean isComplete();
     public abstract void startOperation();
     public abstract void abortOperation();
@@ -2,75 +2,181 @@ package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.robotcore.external.Telemetry;
 import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.game.logging.MatchLogger;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimer;
+import org.firstinspires.ftc.teamcode.game.timing.LoopTimers;
+import org.firstinspires.ftc.teamcode.robot.ControlLoop;
 import org.firstinspires.ftc.teamcode.robot.Robot;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
 
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by alokmathur on 10/29/17.
+ *
+ * Runs the operations queued up to it one after the other.
+ *
+ * When there is nothing in the queue the thread is parked on its lock and is woken up as soon as
+ * an operation is queued or the queue is aborted. While an operation is in progress, its
+ * completion is checked every checkInterval milli-seconds.
+ *
+ * An operation thread can instead be driven by a ControlLoop, in which case it is not started
+ * and the control loop calls tick() once every cycle.
  */
 
 public class OperationThread extends Thread {
+    //sequence given to the last operation queued to any operation thread
+    private static final AtomicLong lastSequence = new AtomicLong();
+
     private final Object threadLock = new Object();
     private final String title;
+    private final long checkInterval;
+    private final int titleLogId;
+    private final LoopTimer timer;
     //stack of operationsQueue to perform
     private ArrayList<Operation> operationsQueue = new ArrayList<Operation>();
     private Robot robot;
     private Telemetry telemetry;
+    private volatile ControlLoop controlLoop;
+
+    //latency statistics of completed operations
+    private int operationsCompleted;
+    private double totalQueueToStart, maxQueueToStart;
+    private double totalStartToComplete, maxStartToComplete;
 
     public OperationThread(Robot robot, String title, Telemetry telemetry) {
+        this(robot, title, telemetry, RobotConfig.OPERATION_CHECK_INTERVAL);
+    }
+
+    /**
+     * Create an operation thread
+     * @param robot - the robot
+     * @param title - title of the thread
+     * @param telemetry - telemetry
+     * @param checkInterval - milli-seconds between checks of whether the current operation is complete
+     */
+    public OperationThread(Robot robot, String title, Telemetry telemetry, long checkInterval) {
         this.robot = robot;
         this.title = title + " Operation Thread";
         this.telemetry = telemetry;
+        this.checkInterval = checkInterval;
+        this.titleLogId = MatchLogger.getInstance().stringId(this.title);
+        this.timer = LoopTimers.getInstance().get(this.title);
         Match.log(title + " created");
     }
 
     public void run() {
         Match.log(title + " started");
-        while (true) {
-            synchronized (threadLock) {
-                //if we have performed the operation successfully,
-                // we need to remove our current operation
-                if (this.operationsQueue.size() > 0) {
-                    Operation operation = this.operationsQueue.get(0);
-                    if (operation.getOperationIsBeingProcessed()) {
-                        if (operation.isAborted()) {
-                            Match.log(title + ": Aborted operation: " + operation.toString()
-                                    + " at " + Match.getInstance().getElapsed()
-                                    + " in " + (new Date().getTime() - operation.getStartTime().getTime())
-                                    + " mSecs");
-                        }
-                        else if (operation.isComplete()) {
-                            this.operationsQueue.remove(0);
-                            Match.log(title + ": Completed operation: " + operation.toString()
-                                    + " at " + Match.getInstance().getElapsed()
-                                    + " in " + (new Date().getTime() - operation.getStartTime().getTime())
-                                    + " mSecs");
-                        }
+        synchronized (threadLock) {
+            while (!isInterrupted()) {
+                processQueue();
+                try {
+                    if (this.operationsQueue.size() > 0) {
+                        //check back on the current operation after the check interval,
+                        //or sooner if the queue changes
+                        threadLock.wait(checkInterval);
                     }
-                }
-                if (this.operationsQueue.size() > 0) {
-                    Operation operation = this.operationsQueue.get(0);
-                    //if we haven't already started this operation, start it
-                    if (!operation.getOperationIsBeingProcessed()) {
-                        Match.log(title + ": Starting operation: " + operation.toString());
-                        operation.setOperationBeingProcessed();
-                        operation.startOperation();
+                    else {
+                        //nothing to do, park until an operation is queued
+                        threadLock.wait();
                     }
+                } catch (InterruptedException e) {
+                    break;
                 }
             }
-            try {
-                Thread.sleep(10);
+        }
+        Match.log(title + " stopped");
+    }
+
+    /**
+     * Have the specified control loop drive this operation thread
+     * @param controlLoop - the control loop
+     */
+    public void setControlLoop(ControlLoop controlLoop) {
+        this.controlLoop = controlLoop;
+    }
+
+    /**
+     * Process the queue once on behalf of the control loop
+     * @return true if there are operations still to be performed
+     */
+    public boolean tick() {
+        synchronized (threadLock) {
+            processQueue();
+            return this.operationsQueue.size() > 0;
+        }
+    }
+
+    /**
+     * Process the queue, timing the cycle. Must be called holding the threadLock.
+     */
+    private void processQueue() {
+        timer.start();
+        processOperations();
+        timer.end();
+        if (this.operationsQueue.size() == 0) {
+            //we go idle until something is queued
+            timer.pause();
+        }
+    }
+
+    /**
+     * Remove the current operation if it is done and start the next one if it hasn't been started.
+     * Must be called holding the threadLock.
+     */
+    private void processOperations() {
+        //if we have performed the operation successfully,
+        // we need to remove our current operation
+        if (this.operationsQueue.size() > 0) {
+            Operation operation = this.operationsQueue.get(0);
+            if (operation.getOperationIsBeingProcessed()) {
+                if (operation.isAborted()) {
+                    this.operationsQueue.remove(0);
+                    robot.releaseVision(operation);
+                    MatchLogger.getInstance().operationAborted(titleLogId, operation.getLogId(),
+                            operation.getStartToNowMillis(MatchClock.nanoTime()));
+                }
+                else if (operation.isComplete()) {
+                    this.operationsQueue.remove(0);
+                    robot.releaseVision(operation);
+                    double startToComplete = operation.getStartToNowMillis(MatchClock.nanoTime());
+                    recordLatency(operation.getQueueToStartMillis(), startToComplete);
+                    MatchLogger.getInstance().operationCompleted(titleLogId, operation.getLogId(),
+                            operation.getQueueToStartMillis(), startToComplete);
+                }
+            }
+        }
+        if (this.operationsQueue.size() > 0) {
+            Operation operation = this.operationsQueue.get(0);
+            //if we haven't already started this operation, start it
+            if (!operation.getOperationIsBeingProcessed()) {
+                operation.setOperationBeingProcessed();
+                MatchLogger.getInstance().operationStarted(titleLogId, operation.getLogId());
+                robot.requireVision(operation, operation.getVisionProcessors());
+                operation.startOperation();
             }
-            catch (Throwable e) {}
         }
     }
 
+    private void recordLatency(double queueToStart, double startToComplete) {
+        operationsCompleted++;
+        totalQueueToStart += queueToStart;
+        maxQueueToStart = Math.max(maxQueueToStart, queueToStart);
+        totalStartToComplete += startToComplete;
+        maxStartToComplete = Math.max(maxStartToComplete, startToComplete);
+    }
+
     public void queueUpOperation(Operation operation) {
         synchronized (threadLock) {
+            operation.setQueued(lastSequence.incrementAndGet());
             this.operationsQueue.add(operation);
+            threadLock.notifyAll();
         }
+        wakeControlLoop();
     }
 
     public void abort() {
@@ -82,9 +188,19 @@ public class OperationThread extends Thread {
                     Match.log(title + ": Aborting operation: " + operation.getTitle());
                     operation.abortOperation();
                     operation.setAborted(true);
+                    robot.releaseVision(operation);
                 }
             }
             this.operationsQueue.clear();
+            threadLock.notifyAll();
+        }
+        wakeControlLoop();
+    }
+
+    private void wakeControlLoop() {
+        ControlLoop loop = this.controlLoop;
+        if (loop != null) {
+            loop.wakeUp();
         }
     }
 
@@ -93,4 +209,62 @@ public class OperationThread extends Thread {
             return this.operationsQueue.size() > 0;
         }
     }
+
+    /**
+     * Returns the sequence given to the last operation queued to any operation thread
+     * @return the last queue sequence
+     */
+    public static long getLastSequence() {
+        return lastSequence.get();
+    }
+
+    /**
+     * Checks if all the operations queued to us up to the specified sequence are done. Operations
+     * queued after that may still be pending.
+     * @param sequence - the queue sequence
+     * @return true if nothing queued at or before the sequence is pending
+     */
+    public boolean isDoneThrough(long sequence) {
+        synchronized (threadLock) {
+            return this.operationsQueue.size() == 0 || this.operationsQueue.get(0).getSequence() > sequence;
+        }
+    }
+
+    /**
+     * Add the resources needed by the operations in our queue to the specified set
+     * @param resources - where to add the resources
+     */
+    public void addPendingResources(Set<Resource> resources) {
+        synchronized (threadLock) {
+            for (int i = 0; i < this.operationsQueue.size(); i++) {
+                resources.addAll(this.operationsQueue.get(i).getResources());
+            }
+        }
+    }
+
+    /**
+     * Returns the queue-to-start and start-to-complete latencies of the operations completed so far
+     * @return latency statistics
+     */
+    public String getLatencyStatus() {
+        return appendLatencyStatus(new StringBuilder()).toString();
+    }
+
+    /**
+     * Append the latency statistics to the specified builder
+     * @param builder - where to append the statistics
+     * @return the builder
+     */
+    public StringBuilder appendLatencyStatus(StringBuilder builder) {
+        synchronized (threadLock) {
+            if (operationsCompleted == 0) {
+                return builder.append("none completed");
+            }
+            builder.append(operationsCompleted).append(" ops, queue->start avg:");
+            MatchTelemetry.append(builder, totalQueueToStart / operationsCompleted, 1).append(" max:");
+            MatchTelemetry.append(builder, maxQueueToStart, 1).append(", start->complete avg:");
+            MatchTelemetry.append(builder, totalStartToComplete / operationsCompleted, 0).append(" max:");
+            return MatchTelemetry.append(builder, maxStartToComplete, 0).append(" mSecs");
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+/**
+ * Runs operations at the same time, and is complete once all of them are, whether they
+ * completed or were aborted
+ */
+public class ParallelOperation extends CompositeOperation {
+    public ParallelOperation(String title, Operation... operations) {
+        super(title, operations);
+    }
+
+    @Override
+    public void startOperation() {
+        resetChildren();
+        for (int i = 0; i < children.size(); i++) {
+            start(i);
+        }
+    }
+
+    @Override
+    public boolean isComplete() {
+        boolean complete = true;
+        //check all of them, so each is moved along in this pass
+        for (int i = 0; i < children.size(); i++) {
+            complete &= isDone(i);
+        }
+        return complete;
+    }
+}
@@ -0,0 +1,46 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+
+/**
+ * Runs operations at the same time, and is complete as soon as one of them completes, aborting
+ * the others. One that is aborted drops out of the race, if all of them are the race is aborted.
+ */
+public class RaceOperation extends CompositeOperation {
+    public RaceOperation(String title, Operation... operations) {
+        super(title, operations);
+    }
+
+    @Override
+    public void startOperation() {
+        resetChildren();
+        for (int i = 0; i < children.size(); i++) {
+            start(i);
+        }
+    }
+
+    @Override
+    public boolean isComplete() {
+        if (isAborted()) {
+            return false;
+        }
+        boolean allDone = true;
+        for (int i = 0; i < children.size(); i++) {
+            if (isDone(i)) {
+                if (!wasAborted(i)) {
+                    Match.log(this.title + ": won by " + children.get(i).getTitle());
+                    abortOperation();
+                    return true;
+                }
+            }
+            else {
+                allDone = false;
+            }
+        }
+        if (allDone) {
+            Match.log(this.title + ": every operation was aborted");
+            setAborted(true);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,28 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The parts of the robot an operation needs to itself while it runs.
+ *
+ * The StateEngine starts operations of the next state before the current state is reached only
+ * when they need none of the resources of the operations still queued.
+ */
+public enum Resource {
+    DriveTrain, Shoulder, Slide, Claw, Intake;
+
+    public static final Set<Resource> NONE = Collections.unmodifiableSet(EnumSet.noneOf(Resource.class));
+    public static final Set<Resource> ALL = Collections.unmodifiableSet(EnumSet.allOf(Resource.class));
+
+    /**
+     * Returns an unmodifiable set of the specified resources
+     * @param first - the first resource
+     * @param rest - the others
+     * @return the set
+     */
+    public static Set<Resource> setOf(Resource first, Resource... rest) {
+        return Collections.unmodifiableSet(EnumSet.of(first, rest));
+    }
+}
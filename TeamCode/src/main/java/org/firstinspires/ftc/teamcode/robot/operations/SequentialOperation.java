@@ -0,0 +1,43 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+
+/**
+ * Runs operations one after the other, starting each as soon as the one before it is complete,
+ * in the same pass. If one of them is aborted, the rest are skipped and the sequence is aborted.
+ */
+public class SequentialOperation extends CompositeOperation {
+    private int current;
+
+    public SequentialOperation(String title, Operation... operations) {
+        super(title, operations);
+    }
+
+    @Override
+    public void startOperation() {
+        resetChildren();
+        current = 0;
+        if (children.size() > 0) {
+            start(current);
+        }
+    }
+
+    @Override
+    public boolean isComplete() {
+        while (current < children.size()) {
+            if (!isDone(current)) {
+                return false;
+            }
+            if (wasAborted(current)) {
+                Match.log(this.title + ": " + children.get(current).getTitle() + " was aborted, skipping the rest");
+                current = children.size();
+                setAborted(true);
+                return false;
+            }
+            if (++current < children.size()) {
+                start(current);
+            }
+        }
+        return !isAborted();
+    }
+}
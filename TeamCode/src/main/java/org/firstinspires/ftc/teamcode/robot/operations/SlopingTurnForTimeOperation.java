@@ -1,8 +1,8 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
 
-import java.util.Date;
 import java.util.Locale;
 
 /**
@@ -34,8 +34,7 @@ public class SlopingTurnForTimeOperation extends DriveTrainOperation {
     }
 
     public boolean isComplete() {
-        Date now = new Date();
-        if (now.getTime() - this.getStartTime().getTime() > this.time) {
+        if (MatchClock.currentTimeMillis() - this.getStartTime().getTime() > this.time) {
             driveTrain.stop();
             return true;
         } else {
@@ -4,22 +4,38 @@ import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.Robot;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * State is a class consisting of primary, secondary and tertiary operations. One can specify if
  * it is considered reached upon finishing all or just the primary operations.
+ *
+ * The operations of each lane can be queued on their own, so that the StateEngine can start a
+ * lane before the state before this one is reached. A state is reached when the operations
+ * queued up to and including its own are done, operations of later states that were started
+ * early do not hold it up.
  */
 public class State {
 
     public enum CompletionBasedUpon {
         PRIMARY_OPERATIONS, ALL_OPERATIONS
     }
+
+    public enum Lane {
+        Primary, Secondary, Tertiary
+    }
     String title;
     CompletionBasedUpon completionBasedUpon = CompletionBasedUpon.ALL_OPERATIONS;
     ArrayList<Operation> primaryOperations = new ArrayList<>();
     ArrayList<Operation> secondaryOperations = new ArrayList<>();
     ArrayList<Operation> tertiaryOperations = new ArrayList<>();
     boolean hasBeenQueued, hasBeenReached;
+    boolean mayStartEarly = true;
+    EnumSet<Lane> queuedLanes = EnumSet.noneOf(Lane.class);
+    //the last operation sequence queued when all of our lanes had been queued
+    long completionSequence;
 
     public State(String title) {
         this.title = title;
@@ -40,6 +56,20 @@ public class State {
         this.completionBasedUpon = completionBasedUpon;
     }
 
+    /**
+     * Specify if our operations may be started while the state before us is still being attempted.
+     * Clear this when an operation depends on where the previous state leaves the robot and not
+     * just on the resources it uses, like lowering the arm onto a rung we drive up to.
+     * @param mayStartEarly - true to allow starting early, the default
+     */
+    public void setMayStartEarly(boolean mayStartEarly) {
+        this.mayStartEarly = mayStartEarly;
+    }
+
+    public boolean mayStartEarly() {
+        return mayStartEarly;
+    }
+
     /**
      * Checks to see if a state had been reached.
      * @param robot Robot
@@ -56,7 +86,7 @@ public class State {
         } else {
             if(completionBasedUpon == CompletionBasedUpon.PRIMARY_OPERATIONS) {
                 //check if all primary operations are complete if that's all we need for completion
-                if (robot.primaryOperationsCompleted()) {
+                if (robot.primaryOperationsCompletedThrough(completionSequence)) {
                     //mark that state has been reached
                     hasBeenReached = true;
                     Match.log(this.title + " completed as all primary operations are done");
@@ -65,7 +95,7 @@ public class State {
             }
             else if (completionBasedUpon == CompletionBasedUpon.ALL_OPERATIONS) {
                 //check if all operations are complete if that's what we need for completion
-                if (robot.allOperationsCompleted()) {
+                if (robot.allOperationsCompletedThrough(completionSequence)) {
                     //mark that state has been reached
                     hasBeenReached = true;
                     Match.log(this.title + " completed as all operations are done");
@@ -82,19 +112,73 @@ public class State {
 
     /**
      * Queue the state by asking the robot to queue primary, secondary and tertiary operations
+     * of the lanes that have not already been queued
      * @param robot
      */
     public synchronized void queue(Robot robot) {
-        for (Operation operation: primaryOperations) {
-            robot.queuePrimaryOperation(operation);
+        for (Lane lane : Lane.values()) {
+            if (!queuedLanes.contains(lane)) {
+                queue(robot, lane);
+            }
+        }
+        completionSequence = OperationThread.getLastSequence();
+        hasBeenQueued = true;
+    }
+
+    /**
+     * Queue the operations of one of our lanes
+     * @param robot - the robot
+     * @param lane - the lane to queue
+     */
+    public synchronized void queue(Robot robot, Lane lane) {
+        for (Operation operation : getOperations(lane)) {
+            switch (lane) {
+                case Primary: {
+                    robot.queuePrimaryOperation(operation);
+                    break;
+                }
+                case Secondary: {
+                    robot.queueSecondaryOperation(operation);
+                    break;
+                }
+                case Tertiary: {
+                    robot.queueTertiaryOperation(operation);
+                    break;
+                }
+            }
         }
-        for (Operation operation: secondaryOperations) {
-            robot.queueSecondaryOperation(operation);
+        queuedLanes.add(lane);
+    }
+
+    public synchronized boolean isQueued(Lane lane) {
+        return queuedLanes.contains(lane);
+    }
+
+    /**
+     * Add the resources needed by the operations of the specified lane to a set
+     * @param lane - the lane
+     * @param resources - where to add the resources
+     */
+    public void addResources(Lane lane, Set<Resource> resources) {
+        List<Operation> operations = getOperations(lane);
+        for (int i = 0; i < operations.size(); i++) {
+            resources.addAll(operations.get(i).getResources());
         }
-        for (Operation operation: tertiaryOperations) {
-            robot.queueTertiaryOperation(operation);
+    }
+
+    public List<Operation> getOperations(Lane lane) {
+        switch (lane) {
+            case Secondary:
+                return secondaryOperations;
+            case Tertiary:
+                return tertiaryOperations;
+            default:
+                return primaryOperations;
         }
-        hasBeenQueued = true;
+    }
+
+    public List<Operation> getPrimaryOperations() {
+        return primaryOperations;
     }
 
     public String getTitle() {
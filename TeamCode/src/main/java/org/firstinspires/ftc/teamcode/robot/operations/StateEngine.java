@@ -0,0 +1,155 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.game.MatchTelemetry;
+import org.firstinspires.ftc.teamcode.game.logging.MatchLogger;
+import org.firstinspires.ftc.teamcode.robot.Robot;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Goes through a list of states in order, queueing each one once the one before it is reached.
+ *
+ * While a state is being attempted, the lanes of the state after it are started early if none
+ * of their operations need a resource used by an operation still pending on the robot. So the
+ * arm can start rising while the last drive of the current state is still settling, while a
+ * drive of the next state waits for the current one to finish.
+ *
+ * Every lane queued and every state reached is traced to the match log, along with how long the
+ * state after it had already been running when a state was reached.
+ */
+public class StateEngine {
+    private final List<State> states;
+    //index of the state being attempted
+    private int current;
+
+    private final EnumSet<Resource> pendingResources = EnumSet.noneOf(Resource.class);
+    private final EnumSet<Resource> laneResources = EnumSet.noneOf(Resource.class);
+
+    //MatchClock.nanoTime() when a lane of the next state was first started early, 0 if none was
+    private long earlyStartNanos;
+    private int lanesStartedEarly;
+    private double totalOverlapMillis;
+
+    public StateEngine(List<State> states) {
+        this.states = states;
+    }
+
+    /**
+     * Queue the state to be attempted and as much of the one after it as the resources allow
+     * @param robot - the robot
+     * @return the state being attempted, null once all states have been reached
+     */
+    public State update(Robot robot) {
+        while (current < states.size()) {
+            State state = states.get(current);
+            if (!state.isQueued()) {
+                Match.log("Queueing state: " + state.getTitle());
+                traceLanes(state);
+                state.queue(robot);
+            }
+            if (!state.isReached(robot)) {
+                break;
+            }
+            stateReached(state);
+            current++;
+        }
+        if (current >= states.size()) {
+            return null;
+        }
+        if (current + 1 < states.size()) {
+            startEarly(robot, states.get(current), states.get(current + 1));
+        }
+        return states.get(current);
+    }
+
+    /**
+     * Queue the lanes of the next state whose operations don't need anything still pending
+     * @param robot - the robot
+     * @param state - the state being attempted
+     * @param next - the state after it
+     */
+    private void startEarly(Robot robot, State state, State next) {
+        if (!next.mayStartEarly() || next.isQueued()) {
+            return;
+        }
+        pendingResources.clear();
+        robot.addPendingResources(pendingResources);
+        for (State.Lane lane : State.Lane.values()) {
+            if (next.isQueued(lane) || next.getOperations(lane).isEmpty()) {
+                continue;
+            }
+            laneResources.clear();
+            next.addResources(lane, laneResources);
+            if (Collections.disjoint(pendingResources, laneResources)) {
+                Match.log(String.format(Locale.getDefault(), "Starting %s lane of %s early, %s holds %s",
+                        lane, next.getTitle(), state.getTitle(), pendingResources));
+                MatchLogger.getInstance().stateLaneQueued(stateId(next), laneId(lane), true);
+                next.queue(robot, lane);
+                lanesStartedEarly++;
+                if (earlyStartNanos == 0) {
+                    earlyStartNanos = MatchClock.nanoTime();
+                }
+            }
+        }
+    }
+
+    private void stateReached(State state) {
+        double overlapMillis = 0;
+        if (earlyStartNanos != 0) {
+            overlapMillis = (MatchClock.nanoTime() - earlyStartNanos) / 1e6;
+            earlyStartNanos = 0;
+            totalOverlapMillis += overlapMillis;
+            Match.log(String.format(Locale.getDefault(), "%s reached, the next state overlapped it by %.0f msecs",
+                    state.getTitle(), overlapMillis));
+        }
+        MatchLogger.getInstance().stateReached(stateId(state), overlapMillis);
+    }
+
+    private void traceLanes(State state) {
+        for (State.Lane lane : State.Lane.values()) {
+            if (!state.isQueued(lane) && !state.getOperations(lane).isEmpty()) {
+                MatchLogger.getInstance().stateLaneQueued(stateId(state), laneId(lane), false);
+            }
+        }
+    }
+
+    private static int stateId(State state) {
+        return MatchLogger.getInstance().stringId(state.getTitle());
+    }
+
+    private static int laneId(State.Lane lane) {
+        return MatchLogger.getInstance().stringId(lane.name());
+    }
+
+    /**
+     * Returns true once every state has been reached
+     * @return true if all states are done
+     */
+    public boolean isFinished() {
+        return current >= states.size();
+    }
+
+    /**
+     * Returns the total time states were run alongside the states before them
+     * @return milli-seconds of overlap so far
+     */
+    public double getOverlapMillis() {
+        return totalOverlapMillis;
+    }
+
+    /**
+     * Append how far along we are and the overlap achieved to the specified builder
+     * @param builder - where to append the status
+     * @return the builder
+     */
+    public StringBuilder appendStatus(StringBuilder builder) {
+        builder.append(Math.min(current, states.size())).append('/').append(states.size())
+                .append(" states, ").append(lanesStartedEarly).append(" lanes early, overlap:");
+        return MatchTelemetry.append(builder, totalOverlapMillis, 0).append(" mSecs");
+    }
+}
@@ -1,14 +1,17 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 /**
  * Created by Silver Titans on 10/12/17.
  */
 
-public class StrafeLeftForDistanceOperation extends DriveTrainOperation {
+public class StrafeLeftForDistanceOperation extends MotionPrimitivesOperation {
     private double distance;
     private double speed;
 
@@ -16,7 +19,6 @@ public class StrafeLeftForDistanceOperation extends DriveTrainOperation {
         super();
         this.distance = distance;
         this.speed = speed;
-        this.driveTrain = driveTrain;
         this.title = title;
     }
 
@@ -27,14 +29,6 @@ public class StrafeLeftForDistanceOperation extends DriveTrainOperation {
                 this.title);
     }
 
-    public boolean isComplete() {
-        if (driveTrain.driveTrainWithinRange()) {
-            driveTrain.stop();
-            return true;
-        }
-        return false;
-    }
-
     public double getSpeed() {
         return this.speed;
     }
@@ -44,8 +38,8 @@ public class StrafeLeftForDistanceOperation extends DriveTrainOperation {
     }
 
     @Override
-    public void startOperation() {
-        driveTrain.handleOperation(this);
+    public List<MotionPrimitive> getPrimitives() {
+        return Collections.singletonList(MotionPrimitive.strafe(distance / Field.MM_PER_INCH, speed));
     }
 }
 
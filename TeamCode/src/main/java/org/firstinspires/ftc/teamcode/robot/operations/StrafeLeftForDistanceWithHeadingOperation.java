@@ -1,17 +1,18 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
-import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.teamcode.game.Field;
 import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
 
-import java.util.Date;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
 /**
  * Created by Silver Titans on 10/12/17.
  */
 
-public class StrafeLeftForDistanceWithHeadingOperation extends DriveTrainOperation {
+public class StrafeLeftForDistanceWithHeadingOperation extends MotionPrimitivesOperation {
     private double distance;
     private double speed;
     private double heading;
@@ -39,40 +40,6 @@ public class StrafeLeftForDistanceWithHeadingOperation extends DriveTrainOperati
                 this.title);
     }
 
-    public boolean isComplete() {
-        if (driveTrain.driveTrainWithinRange()) {
-            driveTrain.stop();
-            return true;
-        }
-        else {
-            // adjust relative SPEED based on desiredHeading error.
-            double bearingError = AngleUnit.normalizeDegrees(Math.toDegrees(heading) - Math.toDegrees(driveTrain.getExternalHeading()));
-            double steer = DriveTrain.getSteer(bearingError, DriveTrain.P_DRIVE_COEFFICIENT);
-
-            // if driving in reverse, the motor correction also needs to be reversed
-            if (distance < 0)
-                steer *= -1.0;
-            double speedToUse = new Date().getTime() - this.getStartTime().getTime() < 500 ? 0.1 : speed;
-            double leftSpeed = speedToUse - steer;
-            double rightSpeed = speedToUse + steer;
-
-            // Normalize speeds if either one exceeds +/- 1.0;
-            double max = Math.max(Math.abs(leftSpeed), Math.abs(rightSpeed));
-            if (max > 1.0) {
-                leftSpeed /= max;
-                rightSpeed /= max;
-            }
-
-            driveTrain.setLeftFrontPower(leftSpeed);
-            driveTrain.setLeftRearPower(leftSpeed);
-            driveTrain.setRightFrontPower(rightSpeed);
-            driveTrain.setRightRearPower(rightSpeed);
-            //Match.log(String.format(Locale.getDefault(), "Left speed: %.2f, right: %.2f", leftSpeed, rightSpeed));
-
-            return false;
-        }
-    }
-
     public double getSpeed() {
         return this.speed;
     }
@@ -81,9 +48,13 @@ public class StrafeLeftForDistanceWithHeadingOperation extends DriveTrainOperati
         return this.distance;
     }
 
+    /**
+     * Turn to the heading, then strafe, holding the heading all the way
+     */
     @Override
-    public void startOperation() {
-        driveTrain.handleOperation(this);
+    public List<MotionPrimitive> getPrimitives() {
+        return Arrays.asList(MotionPrimitive.turnTo(heading, speed),
+                MotionPrimitive.strafe(distance / Field.MM_PER_INCH, speed));
     }
 }
 
@@ -1,10 +1,13 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
-public class StrafeRightForDistanceOperation extends DriveTrainOperation{
+public class StrafeRightForDistanceOperation extends MotionPrimitivesOperation {
     private double distance;
     private double speed;
 
@@ -22,14 +25,6 @@ public class StrafeRightForDistanceOperation extends DriveTrainOperation{
                 this.title);
     }
 
-    public boolean isComplete() {
-        if (driveTrain.driveTrainWithinRange()) {
-            driveTrain.stop();
-            return true;
-        }
-        return false;
-    }
-
     public double getSpeed() {
         return this.speed;
     }
@@ -39,7 +34,7 @@ public class StrafeRightForDistanceOperation extends DriveTrainOperation{
     }
 
     @Override
-    public void startOperation() {
-        driveTrain.handleOperation(this);
+    public List<MotionPrimitive> getPrimitives() {
+        return Collections.singletonList(MotionPrimitive.strafe(-distance / Field.MM_PER_INCH, speed));
     }
 }
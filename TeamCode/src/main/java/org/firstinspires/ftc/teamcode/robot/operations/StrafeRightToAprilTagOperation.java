@@ -2,10 +2,12 @@ package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.teamcode.game.Match;
 import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.vision.SilverTitansVisionPortal;
 import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 public class StrafeRightToAprilTagOperation extends DriveTrainOperation{
     int desiredAprilTag;
@@ -30,11 +32,25 @@ public class StrafeRightToAprilTagOperation extends DriveTrainOperation{
                 return true;
             }
         }
+        //keep commanding our speed, so the drive train can ramp up to it
+        startOperation();
         return false;
     }
 
     @Override
     public void startOperation() {
-        this.driveTrain.drive(Math.atan2(RobotConfig.APRIL_TAG_SPEED, 0), Math.hypot(RobotConfig.APRIL_TAG_SPEED, 0), 0);
+        this.driveTrain.driveAtFractions(0, getLeftSpeed(), 0);
+    }
+
+    /**
+     * Returns the fraction of our top speed to strafe left at, negative to strafe right
+     */
+    protected double getLeftSpeed() {
+        return -RobotConfig.APRIL_TAG_SPEED;
+    }
+
+    @Override
+    public Set<SilverTitansVisionPortal.Processor> getVisionProcessors() {
+        return SilverTitansVisionPortal.APRIL_TAGS;
     }
 }
@@ -0,0 +1,49 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import org.firstinspires.ftc.teamcode.game.Match;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+
+import java.util.Locale;
+
+/**
+ * Runs an operation for at most a set time, aborting it if it isn't complete by then and carrying
+ * on as if it was.
+ */
+public class TimeoutOperation extends CompositeOperation {
+    private final long timeout;
+
+    /**
+     * Create an operation that gives another a set time to complete
+     * @param title - title of the operation
+     * @param timeout - milli-seconds to give the operation
+     * @param operation - the operation
+     */
+    public TimeoutOperation(String title, long timeout, Operation operation) {
+        super(title, operation);
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.getDefault(), "Timeout: %d msecs for %s --%s",
+                this.timeout, children.get(0), this.title);
+    }
+
+    @Override
+    public void startOperation() {
+        start(0);
+    }
+
+    @Override
+    public boolean isComplete() {
+        if (isDone(0)) {
+            return true;
+        }
+        if (MatchClock.currentTimeMillis() - getStartTime().getTime() > timeout) {
+            Match.log(this.title + ": timed out after " + timeout + " msecs");
+            abortOperation();
+            return true;
+        }
+        return false;
+    }
+}
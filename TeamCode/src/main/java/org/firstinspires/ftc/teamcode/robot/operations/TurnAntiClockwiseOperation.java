@@ -1,7 +1,11 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -21,13 +25,9 @@ public class TurnAntiClockwiseOperation extends TurnClockwiseOperation {
     }
 
     @Override
-    public void startOperation() {
-        driveTrain.handleOperation(this);
-    }
-
-    @Override
-    public void abortOperation() {
-        driveTrain.stop();
+    public List<MotionPrimitive> getPrimitives() {
+        return Collections.singletonList(MotionPrimitive.turn(
+                DriveTrain.wheelTravelToRadians(distance / Field.MM_PER_INCH), speed));
     }
 }
 
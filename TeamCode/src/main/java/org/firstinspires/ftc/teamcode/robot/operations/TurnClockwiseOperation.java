@@ -1,7 +1,11 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
 import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.MotionPrimitive;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -20,14 +24,13 @@ public class TurnClockwiseOperation extends DriveForDistanceOperation {
                 this.title);
     }
 
+    /**
+     * The distance is how far each wheel travels, which turns us by that over its distance from our center
+     */
     @Override
-    public void startOperation() {
-        driveTrain.handleOperation(this);
-    }
-
-    @Override
-    public void abortOperation() {
-        driveTrain.stop();
+    public List<MotionPrimitive> getPrimitives() {
+        return Collections.singletonList(MotionPrimitive.turn(
+                -DriveTrain.wheelTravelToRadians(distance / Field.MM_PER_INCH), speed));
     }
 }
 
@@ -1,7 +1,9 @@
 package org.firstinspires.ftc.teamcode.robot.operations;
 
-import java.util.Date;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * Created by Silver Titans on 10/12/17.
@@ -28,7 +30,17 @@ public class WaitOperation extends Operation {
     }
 
     public boolean isComplete() {
-        return new Date().getTime() - getStartTime().getTime() > time;
+        return MatchClock.currentTimeMillis() - getStartTime().getTime() > time;
+    }
+
+    /**
+     * A wait holds up the whole robot, so that nothing of the next state starts early while
+     * a delay is being observed
+     * @return all resources
+     */
+    @Override
+    public Set<Resource> getResources() {
+        return Resource.ALL;
     }
 
     @Override
@@ -0,0 +1,33 @@
+package org.firstinspires.ftc.teamcode.robot.operations;
+
+import java.util.Locale;
+
+/**
+ * Waits until a condition is true, like the distance sensor seeing a rung. Wrap it in a
+ * TimeoutOperation or race it against other operations so it can't wait forever.
+ */
+public class WaitUntilOperation extends Operation {
+    private final Condition condition;
+
+    public WaitUntilOperation(String title, Condition condition) {
+        this.title = title;
+        this.condition = condition;
+    }
+
+    public String toString() {
+        return String.format(Locale.getDefault(), "WaitUntil: --%s", this.title);
+    }
+
+    @Override
+    public boolean isComplete() {
+        return condition.isTrue();
+    }
+
+    @Override
+    public void startOperation() {
+    }
+
+    @Override
+    public void abortOperation() {
+    }
+}
@@ -0,0 +1,141 @@
+package org.firstinspires.ftc.teamcode.benchmark;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansMecanumDrive;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.DriveTrain;
+import org.firstinspires.ftc.teamcode.robot.components.drivetrain.PIDController;
+import org.firstinspires.ftc.teamcode.robot.operations.DriveToAprilTag;
+import org.firstinspires.ftc.teamcode.robot.operations.FollowTrajectory;
+import org.firstinspires.ftc.teamcode.sim.SimHardwareMap;
+import org.firstinspires.ftc.teamcode.sim.SimWorld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the math we do every control loop cycle, and of building trajectories.
+ *
+ * The drive train runs against simulated motors with the match clock stopped, so setting a power
+ * costs about what a cached write costs and the simulator itself does no work.
+ *
+ * Run with
+ *
+ *   gradlew :TeamCode:jmh
+ *
+ * which reports ns/op and, from JMH's gc profiler, B/op as gc.alloc.rate.norm, and saves the
+ * results as JSON in TeamCode/build/reports/jmh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmarks {
+    //a match clock that stands still, so the simulated motors never step their physics
+    private static final MatchClock.Source STOPPED_CLOCK = new MatchClock.Source() {
+        private final long epoch = System.currentTimeMillis();
+
+        @Override
+        public long nanoTime() {
+            return 0;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return epoch;
+        }
+
+        @Override
+        public double getRate() {
+            return 1;
+        }
+    };
+
+    private MatchClock.Source previousClock;
+    private DriveTrain driveTrain;
+    private PIDController pidController;
+    private Trajectory trajectory;
+    private double direction, input;
+
+    @Setup
+    public void setup() {
+        previousClock = MatchClock.getSource();
+        MatchClock.setSource(STOPPED_CLOCK);
+        driveTrain = new DriveTrain(new SimHardwareMap(new SimWorld()));
+
+        pidController = new PIDController(0.02, 0, 0.001);
+        pidController.setInputRange(-180, 180);
+        pidController.setOutputRange(-1, 1);
+        pidController.setContinuous(true);
+        pidController.setSetpoint(90);
+        pidController.enable();
+
+        trajectory = SilverTitansMecanumDrive.accurateTrajectoryBuilder(new Pose2d())
+                .splineToLinearHeading(new Pose2d(36, 24, Math.toRadians(90)), 0)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        MatchClock.setSource(previousClock);
+    }
+
+    @Benchmark
+    public double driveTrainDrive() {
+        direction += 0.001;
+        driveTrain.drive(direction, 0.8, 0.1);
+        return direction;
+    }
+
+    @Benchmark
+    public double driveToAprilTagMoveRobot() {
+        direction += 0.001;
+        DriveToAprilTag.moveRobot(0.5, direction % 1, 0.2, driveTrain);
+        return direction;
+    }
+
+    @Benchmark
+    public double pidControllerPerformPID() {
+        input = (input + 0.37) % 360;
+        return pidController.performPID(input - 180);
+    }
+
+    @Benchmark
+    public double followTrajectoryGetError() {
+        direction += 0.001;
+        return FollowTrajectory.getError(new Pose2d(direction, 1, 0), trajectory).length();
+    }
+
+    @Benchmark
+    public double accurateTrajectoryBuilder() {
+        return SilverTitansMecanumDrive.accurateTrajectoryBuilder(new Pose2d())
+                .splineToLinearHeading(new Pose2d(36, 24, Math.toRadians(90)), 0)
+                .build()
+                .duration();
+    }
+
+    @Benchmark
+    public double trajectorySequenceBuilderBuild() {
+        return SilverTitansMecanumDrive.trajectorySequenceBuilder(new Pose2d())
+                .forward(24)
+                .turn(Math.toRadians(90))
+                .splineTo(new Vector2d(48, 24), 0)
+                .build()
+                .duration();
+    }
+}
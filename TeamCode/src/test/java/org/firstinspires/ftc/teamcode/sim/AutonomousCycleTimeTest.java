@@ -0,0 +1,38 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.opmodes.autonomous.BlueLeft;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs our autonomous in the simulator and fails if it no longer reaches all of its states within
+ * its cycle time budget, so that a change that slows it down is caught before it gets to the field.
+ *
+ * The budget leaves room in the 30 second autonomous period for the robot being slower than the
+ * simulator. Bring it down as autonomous gets faster, so the next slow down shows up.
+ */
+public class AutonomousCycleTimeTest {
+    //match seconds autonomous has to finish in
+    private static final double CYCLE_TIME_BUDGET = 25;
+
+    @After
+    public void restoreClock() {
+        MatchClock.setSource(MatchClock.SYSTEM);
+    }
+
+    @Test
+    public void blueLeftFinishesWithinBudget() throws InterruptedException {
+        SimulationRunner runner = new SimulationRunner(SimulationRunner.DEFAULT_RATE);
+        boolean finished = runner.run(new BlueLeft(), SimulationRunner.DEFAULT_TIMEOUT);
+
+        assertTrue("BlueLeft did not reach all of its states", finished);
+        assertTrue(String.format(Locale.getDefault(), "BlueLeft took %.2f match seconds, over its budget of %.0f",
+                        runner.getMatchSeconds(), CYCLE_TIME_BUDGET),
+                runner.getMatchSeconds() <= CYCLE_TIME_BUDGET);
+    }
+}
@@ -0,0 +1,409 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import nu.pattern.OpenCV;
+
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.DetectableObject;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.DetectionSnapshot;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.HsvBoundSet;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.ObjectDetector;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Searches for the HSV bounds, blur and minimum area with which the ObjectDetector best finds an
+ * object in frames recorded under some lighting, and saves them as the bound set of the lighting.
+ *
+ *   gradlew :TeamCode:hsvOptimizer --args="[dataset] [object type] [condition] [output folder] [budget mSecs]"
+ *
+ * The dataset is a labelled folder of images or video, see ReplayDataset. The search starts from
+ * the bounds in the condition's set if the output folder has one, or from the detector's own. Each
+ * round it tries moving every limit up and down by a step and keeps the candidate with the best
+ * F1 score. On a tie it only moves to a candidate that is faster by more than SPEED_MARGIN, as
+ * times are measured with all the cores busy and vary from round to round, and otherwise to one
+ * with narrower bounds, so ties are settled the same way every time and the search settles down.
+ * When no candidate does better the steps are halved, and the search ends when they can't be.
+ * Candidates taking longer per frame than the budget, 20 mSecs by default, are only chosen over
+ * ones that take longer still.
+ *
+ * The candidates of a round are scored together on a fork-join pool, each one's frames split
+ * between tasks. Frames are shrunk, blurred and converted to HSV once for each blur size tried and
+ * kept, so candidates only pay for thresholding and finding contours. The time to prepare a frame
+ * is measured when it is prepared and added to the frame's time when checking the budget. The rest
+ * is measured with all the cores busy, so it runs a little high.
+ *
+ * The set is saved as [condition].hsv in the output folder, with the other objects' bounds kept.
+ * Copy it to the vision folder under the FIRST folder on the robot and load it with
+ * ObjectDetectionVisionProcessor.loadBoundSet. The blur is shared by all of the objects, so the
+ * first object optimized for a condition picks it and later ones keep it.
+ */
+public class HsvOptimizer {
+    public static final double DEFAULT_BUDGET_MILLIS = 20;
+    //blur sizes the search can pick from, 0 for none
+    public static final int[] BLUR_SIZES = {0, 3, 5, 7, 9};
+    //frames a fork-join task scores before it stops splitting them
+    private static final int FRAMES_PER_TASK = 8;
+    private static final int MAX_ROUNDS = 100;
+    //fraction of its time a candidate has to save to be counted as faster
+    private static final double SPEED_MARGIN = 0.1;
+
+    //the values searched, in the order they are kept in a candidate
+    private static final int HUE_LOW = 0, HUE_HIGH = 1, SATURATION_LOW = 2, SATURATION_HIGH = 3,
+            VALUE_LOW = 4, VALUE_HIGH = 5, BLUR = 6, MINIMUM_AREA = 7;
+    private static final int[] MINIMUMS = {0, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] MAXIMUMS = {180, 180, 255, 255, 255, 255, BLUR_SIZES.length - 1, 5000};
+    private static final int[] FIRST_STEPS = {8, 8, 32, 32, 32, 32, 1, 64};
+    private static final int[] LAST_STEPS = {1, 1, 1, 1, 1, 1, 1, 4};
+
+    private final ReplayDataset dataset;
+    private final ObjectDetector.ObjectType type;
+    private final double budgetMillis;
+    private final ForkJoinPool pool;
+
+    //frames prepared for each blur size, and how long preparing each took
+    private final Map<Integer, Mat[]> hsvFrames = new ConcurrentHashMap<>();
+    private final Map<Integer, long[]> prepareNanos = new ConcurrentHashMap<>();
+    //a detector for each thread of the pool, as detectors keep working state
+    private final List<ObjectDetector> detectors = new ArrayList<>();
+    private final ThreadLocal<ObjectDetector> threadDetector = new ThreadLocal<ObjectDetector>() {
+        @Override
+        protected ObjectDetector initialValue() {
+            //the same area of interest our vision processor uses
+            ObjectDetector detector = new ObjectDetector(0, RobotConfig.X_PIXEL_COUNT, 200, RobotConfig.Y_PIXEL_COUNT);
+            detector.enableObject(type);
+            synchronized (detectors) {
+                detectors.add(detector);
+            }
+            return detector;
+        }
+    };
+
+    /**
+     * A set of values to try, and how well they did
+     */
+    private static class Candidate {
+        final int[] values;
+        VisionReplay.Report report;
+
+        Candidate(int[] values) {
+            this.values = values;
+        }
+
+        int getBlurSize() {
+            return BLUR_SIZES[values[BLUR]];
+        }
+
+        /**
+         * Returns the bounds, split in two where the hue range wraps around from 180 to 0
+         */
+        ObjectDetector.HsvBounds[] getBounds() {
+            if (values[HUE_LOW] <= values[HUE_HIGH]) {
+                return new ObjectDetector.HsvBounds[] {bounds(values[HUE_LOW], values[HUE_HIGH])};
+            }
+            return new ObjectDetector.HsvBounds[] {bounds(values[HUE_LOW], 180), bounds(0, values[HUE_HIGH])};
+        }
+
+        private ObjectDetector.HsvBounds bounds(int hueLow, int hueHigh) {
+            return new ObjectDetector.HsvBounds(
+                    new Scalar(hueLow, values[SATURATION_LOW], values[VALUE_LOW]),
+                    new Scalar(hueHigh, values[SATURATION_HIGH], values[VALUE_HIGH]));
+        }
+
+        boolean fits(double budgetMillis) {
+            return report.getAverageMillis() <= budgetMillis;
+        }
+
+        /**
+         * Returns the sum of the widths of the hue, saturation and value ranges
+         */
+        int getWidth() {
+            int hueWidth = values[HUE_LOW] <= values[HUE_HIGH] ? values[HUE_HIGH] - values[HUE_LOW]
+                    : 180 - values[HUE_LOW] + values[HUE_HIGH];
+            return hueWidth + values[SATURATION_HIGH] - values[SATURATION_LOW] + values[VALUE_HIGH] - values[VALUE_LOW];
+        }
+
+        boolean isFasterThan(Candidate other) {
+            return report.getAverageMillis() < other.report.getAverageMillis() * (1 - SPEED_MARGIN);
+        }
+
+        boolean isBetterThan(Candidate other, double budgetMillis) {
+            if (fits(budgetMillis) != other.fits(budgetMillis)) {
+                return fits(budgetMillis);
+            }
+            if (!fits(budgetMillis) && (isFasterThan(other) || other.isFasterThan(this))) {
+                return isFasterThan(other);
+            }
+            double f1 = report.getF1(), otherF1 = other.report.getF1();
+            if (Math.abs(f1 - otherF1) > 1e-9) {
+                return f1 > otherF1;
+            }
+            if (isFasterThan(other) || other.isFasterThan(this)) {
+                return isFasterThan(other);
+            }
+            return getWidth() < other.getWidth();
+        }
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (ObjectDetector.HsvBounds bounds : getBounds()) {
+                builder.append(bounds).append(' ');
+            }
+            return builder.append(String.format(Locale.getDefault(),
+                    "blur %d, area %d: F1 %.3f (precision %.3f, recall %.3f), %.2f mSecs",
+                    getBlurSize(), values[MINIMUM_AREA], report.getF1(), report.getPrecision(),
+                    report.getRecall(), report.getAverageMillis())).toString();
+        }
+    }
+
+    /**
+     * Scores a candidate on a range of frames, splitting the range between tasks
+     */
+    private class Evaluation extends RecursiveTask<VisionReplay.Report> {
+        private final Candidate candidate;
+        private final int from, to;
+
+        Evaluation(Candidate candidate, int from, int to) {
+            this.candidate = candidate;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected VisionReplay.Report compute() {
+            if (to - from <= FRAMES_PER_TASK) {
+                return evaluate(candidate, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Evaluation firstHalf = new Evaluation(candidate, from, middle);
+            firstHalf.fork();
+            VisionReplay.Report report = new Evaluation(candidate, middle, to).compute();
+            report.merge(firstHalf.join());
+            return report;
+        }
+    }
+
+    public HsvOptimizer(ReplayDataset dataset, ObjectDetector.ObjectType type, double budgetMillis, int threads) {
+        this.dataset = dataset;
+        this.type = type;
+        this.budgetMillis = budgetMillis;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("HsvOptimizer [dataset folder or video] [object type] [condition] [output folder] [budget mSecs]");
+            return;
+        }
+        OpenCV.loadLocally();
+        ReplayDataset dataset = ReplayDataset.load(new File(args[0]));
+        ObjectDetector.ObjectType type = ObjectDetector.ObjectType.valueOf(args[1]);
+        String condition = args[2];
+        File file = HsvBoundSet.getFile(new File(args[3]), condition);
+        double budgetMillis = args.length > 4 ? Double.parseDouble(args[4]) : DEFAULT_BUDGET_MILLIS;
+        if (dataset.getLabelCount() == 0) {
+            System.out.println("No labelled frames to optimize against");
+            dataset.release();
+            return;
+        }
+
+        boolean keepBlur = file.exists();
+        HsvBoundSet boundSet = keepBlur ? HsvBoundSet.load(file)
+                : HsvBoundSet.of(condition, new ObjectDetector(0, RobotConfig.X_PIXEL_COUNT, 200, RobotConfig.Y_PIXEL_COUNT));
+        HsvOptimizer optimizer = new HsvOptimizer(dataset, type, budgetMillis, Runtime.getRuntime().availableProcessors());
+        try {
+            HsvBoundSet.Entry entry = boundSet.get(type);
+            if (entry == null) {
+                entry = HsvBoundSet.of(condition, new ObjectDetector(0, RobotConfig.X_PIXEL_COUNT, 200, RobotConfig.Y_PIXEL_COUNT)).get(type);
+            }
+            Candidate best = optimizer.optimize(entry, boundSet.getBlurSize(), keepBlur);
+            boundSet.put(type, new HsvBoundSet.Entry(best.getBounds(), best.values[MINIMUM_AREA]));
+            boundSet.setBlurSize(best.getBlurSize());
+            boundSet.save(file);
+            System.out.println("Best: " + best);
+            if (!best.fits(budgetMillis)) {
+                System.out.println("Nothing found fits in the budget of " + budgetMillis + " mSecs");
+            }
+            System.out.println("Saved to " + file.getAbsolutePath());
+        } finally {
+            optimizer.release();
+            dataset.release();
+        }
+    }
+
+    /**
+     * Search for the best values, starting from the specified ones
+     * @param start - the bounds and minimum area to start from
+     * @param blurSize - the blur to start from
+     * @param keepBlur - true to search with the blur fixed
+     * @return the best candidate found
+     */
+    private Candidate optimize(HsvBoundSet.Entry start, int blurSize, boolean keepBlur) {
+        int[] steps = FIRST_STEPS.clone();
+        if (keepBlur) {
+            steps[BLUR] = 0;
+        }
+        Candidate best = new Candidate(getValues(start, blurSize));
+        score(Arrays.asList(best));
+        System.out.println("Start: " + best);
+        for (int round = 1; round <= MAX_ROUNDS; round++) {
+            List<Candidate> candidates = new ArrayList<>();
+            for (int i = 0; i < steps.length; i++) {
+                addNeighbor(candidates, best, i, steps[i]);
+                addNeighbor(candidates, best, i, -steps[i]);
+            }
+            score(candidates);
+            Candidate bestOfRound = best;
+            for (Candidate candidate : candidates) {
+                if (candidate.isBetterThan(bestOfRound, budgetMillis)) {
+                    bestOfRound = candidate;
+                }
+            }
+            if (bestOfRound != best) {
+                best = bestOfRound;
+                System.out.println(String.format(Locale.getDefault(), "Round %d: %s", round, best));
+            }
+            else if (!halve(steps)) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    private static void addNeighbor(List<Candidate> candidates, Candidate candidate, int index, int step) {
+        if (step == 0) {
+            return;
+        }
+        int value = Math.max(MINIMUMS[index], Math.min(MAXIMUMS[index], candidate.values[index] + step));
+        if (value != candidate.values[index]) {
+            int[] values = candidate.values.clone();
+            values[index] = value;
+            candidates.add(new Candidate(values));
+        }
+    }
+
+    /**
+     * Halve the steps, not going below the last ones
+     * @return false if all the steps were already as small as they go
+     */
+    private static boolean halve(int[] steps) {
+        boolean halved = false;
+        for (int i = 0; i < steps.length; i++) {
+            if (steps[i] > LAST_STEPS[i]) {
+                steps[i] = Math.max(LAST_STEPS[i], steps[i] / 2);
+                halved = true;
+            }
+        }
+        return halved;
+    }
+
+    /**
+     * Returns the values of a candidate with the specified bounds, joining bounds that wrap around
+     * from 180 to 0 into one hue range
+     */
+    private static int[] getValues(HsvBoundSet.Entry entry, int blurSize) {
+        ObjectDetector.HsvBounds[] bounds = entry.getBounds();
+        Scalar lower = bounds[0].getLowerBound(), upper = bounds[0].getUpperBound();
+        int hueLow = (int) lower.val[0], hueHigh = (int) upper.val[0];
+        if (bounds.length == 2 && upper.val[0] >= 180 && bounds[1].getLowerBound().val[0] <= 0) {
+            hueHigh = (int) bounds[1].getUpperBound().val[0];
+        }
+        int blur = 0;
+        for (int i = 0; i < BLUR_SIZES.length; i++) {
+            if (Math.abs(BLUR_SIZES[i] - blurSize) < Math.abs(BLUR_SIZES[blur] - blurSize)) {
+                blur = i;
+            }
+        }
+        return new int[] {hueLow, hueHigh, (int) lower.val[1], (int) upper.val[1],
+                (int) lower.val[2], (int) upper.val[2], blur, (int) entry.getMinimumArea()};
+    }
+
+    /**
+     * Score candidates on all the frames, all at once on the pool
+     */
+    private void score(List<Candidate> candidates) {
+        //prepare the frames here, so the tasks only ever read them
+        for (Candidate candidate : candidates) {
+            prepareFrames(candidate.getBlurSize());
+        }
+        List<Evaluation> evaluations = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            Evaluation evaluation = new Evaluation(candidate, 0, dataset.size());
+            pool.execute(evaluation);
+            evaluations.add(evaluation);
+        }
+        for (Evaluation evaluation : evaluations) {
+            evaluation.candidate.report = evaluation.join();
+        }
+    }
+
+    private void prepareFrames(int blurSize) {
+        if (hsvFrames.containsKey(blurSize)) {
+            return;
+        }
+        Mat[] frames = new Mat[dataset.size()];
+        long[] nanos = new long[dataset.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Mat();
+            long start = System.nanoTime();
+            ObjectDetector.prepare(dataset.getFrame(i), frames[i], blurSize);
+            nanos[i] = System.nanoTime() - start;
+        }
+        prepareNanos.put(blurSize, nanos);
+        hsvFrames.put(blurSize, frames);
+    }
+
+    /**
+     * Score a candidate on a range of frames with the detector of the calling thread
+     */
+    private VisionReplay.Report evaluate(Candidate candidate, int from, int to) {
+        ObjectDetector detector = threadDetector.get();
+        DetectableObject detectableObject = detector.getDetectableObjects().get(type);
+        detectableObject.setHsvBounds(candidate.getBounds());
+        detectableObject.setMinimumArea(candidate.values[MINIMUM_AREA]);
+        Mat[] frames = hsvFrames.get(candidate.getBlurSize());
+        long[] nanos = prepareNanos.get(candidate.getBlurSize());
+
+        VisionReplay.Report report = new VisionReplay.Report();
+        double[] position = new double[2];
+        for (int i = from; i < to; i++) {
+            long start = System.nanoTime();
+            DetectionSnapshot.Sighting sighting = detector.detect(frames[i], start).get(type);
+            report.addFrame(System.nanoTime() - start + nanos[i]);
+            if (sighting != null) {
+                position[0] = sighting.getXPosition();
+                position[1] = sighting.getYPosition();
+            }
+            report.addResult(dataset.getLabel(i), sighting != null, position);
+        }
+        return report;
+    }
+
+    /**
+     * Stop the pool and release the prepared frames and the detectors
+     */
+    public void release() {
+        pool.shutdown();
+        for (Mat[] frames : hsvFrames.values()) {
+            for (Mat frame : frames) {
+                frame.release();
+            }
+        }
+        hsvFrames.clear();
+        synchronized (detectors) {
+            for (ObjectDetector detector : detectors) {
+                detector.release();
+            }
+            detectors.clear();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Camera frames we have recorded, with where the object we were after really was in them.
+ *
+ * A dataset is either a folder of png and jpg images, read in name order, or a video file. Frames
+ * are converted to rgb, the way the vision portal hands them to processors.
+ *
+ * The ground truth is a csv file: labels.csv in the folder of images, or the video's name with
+ * .labels.csv added for a video. Each line has the name of the image, or the number of the frame
+ * of the video counting from 0, and the x and y of the center of the object in pixels. An x and y
+ * of -1 means nothing should be found in the frame. Frames without a line are not counted when
+ * working out how accurate a processor is. Lines starting with # are comments.
+ *
+ *   frame_0001.png,812,455
+ *   frame_0002.png,-1,-1
+ *
+ * All the frames are kept in memory, so keep datasets to a few hundred frames.
+ */
+public class ReplayDataset {
+    public static final String LABEL_FILE = "labels.csv";
+    public static final String VIDEO_LABEL_SUFFIX = ".labels.csv";
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Mat> frames = new ArrayList<>();
+    private final Map<String, double[]> labels = new HashMap<>();
+
+    /**
+     * Read the frames and labels of a dataset
+     * @param source - a folder of images or a video file
+     * @return the dataset
+     * @throws IOException if the labels can't be read or no frames are found
+     */
+    public static ReplayDataset load(File source) throws IOException {
+        ReplayDataset dataset = new ReplayDataset();
+        if (source.isDirectory()) {
+            dataset.readImages(source);
+            dataset.readLabels(new File(source, LABEL_FILE));
+        }
+        else {
+            dataset.readVideo(source);
+            dataset.readLabels(new File(source.getPath() + VIDEO_LABEL_SUFFIX));
+        }
+        if (dataset.size() == 0) {
+            throw new IOException("No frames found in " + source.getAbsolutePath());
+        }
+        return dataset;
+    }
+
+    private void readImages(File folder) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName().toLowerCase();
+            if (name.endsWith(".png") || name.endsWith(".jpg")) {
+                Mat frame = Imgcodecs.imread(file.getAbsolutePath());
+                if (frame.empty()) {
+                    frame.release();
+                }
+                else {
+                    add(file.getName(), frame);
+                }
+            }
+        }
+    }
+
+    private void readVideo(File video) {
+        VideoCapture capture = new VideoCapture(video.getAbsolutePath());
+        try {
+            Mat frame = new Mat();
+            while (capture.read(frame)) {
+                add(String.valueOf(frames.size()), frame);
+                frame = new Mat();
+            }
+            frame.release();
+        } finally {
+            capture.release();
+        }
+    }
+
+    private void add(String name, Mat bgrFrame) {
+        Imgproc.cvtColor(bgrFrame, bgrFrame, Imgproc.COLOR_BGR2RGB);
+        names.add(name);
+        frames.add(bgrFrame);
+    }
+
+    private void readLabels(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    throw new IOException("Expected name,x,y in " + file.getName() + ": " + line);
+                }
+                labels.put(fields[0].trim(), new double[] {
+                        Double.parseDouble(fields[1].trim()), Double.parseDouble(fields[2].trim())});
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * Returns a frame, which processors must not change as other threads may be reading it
+     * @param index - which frame
+     * @return the rgb frame
+     */
+    public Mat getFrame(int index) {
+        return frames.get(index);
+    }
+
+    /**
+     * Returns where the object is in a frame
+     * @param index - which frame
+     * @return the x and y of its center, -1s if nothing should be seen, null if the frame isn't labelled
+     */
+    public double[] getLabel(int index) {
+        return labels.get(names.get(index));
+    }
+
+    public int getLabelCount() {
+        int count = 0;
+        for (String name : names) {
+            if (labels.containsKey(name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Release the native memory of the frames
+     */
+    public void release() {
+        for (Mat frame : frames) {
+            frame.release();
+        }
+        frames.clear();
+        names.clear();
+    }
+}
@@ -0,0 +1,35 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+
+/**
+ * A match clock that runs a fixed multiple faster than real time
+ */
+public class SimClock implements MatchClock.Source {
+    private final double rate;
+    private final long realOrigin = System.nanoTime();
+    private final long epochOrigin = System.currentTimeMillis();
+
+    /**
+     * Create the clock
+     * @param rate - how many seconds of match time pass in a second of real time
+     */
+    public SimClock(double rate) {
+        this.rate = rate;
+    }
+
+    @Override
+    public long nanoTime() {
+        return (long) ((System.nanoTime() - realOrigin) * rate);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return epochOrigin + nanoTime() / 1000000L;
+    }
+
+    @Override
+    public double getRate() {
+        return rate;
+    }
+}
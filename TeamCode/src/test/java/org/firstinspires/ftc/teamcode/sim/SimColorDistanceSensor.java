@@ -0,0 +1,94 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.DistanceSensor;
+import com.qualcomm.robotcore.hardware.NormalizedColorSensor;
+import com.qualcomm.robotcore.hardware.NormalizedRGBA;
+
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+
+/**
+ * A simulated color and distance sensor, like the REV color sensor V3. Reports whatever it was
+ * last told it is seeing.
+ */
+public class SimColorDistanceSensor implements NormalizedColorSensor, DistanceSensor {
+    //what the sensor reads when there is nothing in front of it
+    public static final double NOTHING_IN_RANGE = 250;
+
+    private float red, green, blue, alpha;
+    private double distance = NOTHING_IN_RANGE;
+    private float gain = 1;
+
+    /**
+     * Specify the color seen
+     * @param red - between 0 and 1
+     * @param green - between 0 and 1
+     * @param blue - between 0 and 1
+     */
+    synchronized public void setColor(float red, float green, float blue) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.alpha = Math.max(red, Math.max(green, blue));
+    }
+
+    /**
+     * Specify how far the nearest object is
+     * @param distance - milli-meters
+     */
+    synchronized public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    @Override
+    synchronized public NormalizedRGBA getNormalizedColors() {
+        NormalizedRGBA colors = new NormalizedRGBA();
+        colors.red = Math.min(1, red * gain);
+        colors.green = Math.min(1, green * gain);
+        colors.blue = Math.min(1, blue * gain);
+        colors.alpha = Math.min(1, alpha * gain);
+        return colors;
+    }
+
+    @Override
+    public float getGain() {
+        return gain;
+    }
+
+    @Override
+    public void setGain(float newGain) {
+        this.gain = newGain;
+    }
+
+    @Override
+    synchronized public double getDistance(DistanceUnit unit) {
+        return unit.fromMm(distance);
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated color sensor";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,415 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.PIDCoefficients;
+import com.qualcomm.robotcore.hardware.PIDFCoefficients;
+import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.CurrentUnit;
+
+/**
+ * A simulated motor with an encoder.
+ *
+ * The shaft speed follows what it is asked to do as a first order lag, so it takes a few time
+ * constants to get up to speed and to stop. What it is asked to do depends on the run mode, like
+ * it does on a hub:
+ *   RUN_WITHOUT_ENCODER - power is a fraction of battery voltage, so speed drops as the battery sags
+ *   RUN_USING_ENCODER - power, or setVelocity(), is a speed the motor holds regardless of voltage
+ *   RUN_TO_POSITION - speed proportional to the distance from the target, limited by power, and
+ *      busy until within the target position tolerance
+ *   STOP_AND_RESET_ENCODER - the motor stops and the encoder reads zero from here on
+ *
+ * Direction is applied to both power and encoder, so a reversed motor counts up when driven
+ * forward, just like the real thing.
+ */
+public class SimDcMotorEx implements DcMotorEx {
+    //seconds for the motor to get to 63% of a change in speed
+    public static final double TIME_CONSTANT = 0.05;
+    //how much longer a floating motor takes to coast down than a braking one takes to stop
+    public static final double FLOAT_FACTOR = 10;
+    public static final double STALL_CURRENT = 9.2;
+    public static final double FREE_CURRENT = 0.25;
+    public static final double VOLTAGE_REFERENCE = 12;
+
+    private final SimWorld world;
+    private final String name;
+    private final int port;
+    private final double ticksPerRev;
+    //ticks per second at full power and reference voltage
+    private final double maxVelocity;
+
+    private MotorConfigurationType motorType = MotorConfigurationType.getUnspecifiedMotorType();
+    private Direction direction = Direction.FORWARD;
+    private RunMode mode = RunMode.RUN_WITHOUT_ENCODER;
+    private ZeroPowerBehavior zeroPowerBehavior = ZeroPowerBehavior.FLOAT;
+    private boolean enabled = true;
+    private double power;
+    //ticks per second asked for by setVelocity(), NaN if power should be used instead
+    private double commandedVelocity = Double.NaN;
+    private int targetPosition;
+    private int targetPositionTolerance = 5;
+    private double positionP = 10;
+    private PIDFCoefficients velocityCoefficients = new PIDFCoefficients(10, 3, 0, 0);
+    private double currentAlert = 5;
+
+    //state, in the motor's own direction
+    private double position, velocity, encoderOffset, current;
+
+    /**
+     * Create a motor
+     * @param world - the world the motor lives in
+     * @param name - name of the motor in the hardware map
+     * @param port - port the motor is plugged into
+     * @param ticksPerRev - encoder ticks per revolution of the output shaft
+     * @param maxRpm - free speed of the output shaft at reference voltage
+     */
+    public SimDcMotorEx(SimWorld world, String name, int port, double ticksPerRev, double maxRpm) {
+        this.world = world;
+        this.name = name;
+        this.port = port;
+        this.ticksPerRev = ticksPerRev;
+        this.maxVelocity = ticksPerRev * maxRpm / 60;
+        world.addMotor(this);
+    }
+
+    /**
+     * Advance the motor. Called by the world, which holds its lock.
+     * @param dt - seconds
+     * @param voltage - battery voltage
+     */
+    void step(double dt, double voltage) {
+        double available = maxVelocity * Math.max(voltage, 0) / VOLTAGE_REFERENCE;
+        double target;
+        double timeConstant = TIME_CONSTANT;
+        boolean driven = enabled && mode != RunMode.STOP_AND_RESET_ENCODER
+                && (power != 0 || (mode == RunMode.RUN_USING_ENCODER && !Double.isNaN(commandedVelocity)));
+        if (!driven) {
+            target = 0;
+            if (zeroPowerBehavior == ZeroPowerBehavior.FLOAT) {
+                timeConstant *= FLOAT_FACTOR;
+            }
+        } else if (mode == RunMode.RUN_WITHOUT_ENCODER) {
+            target = power * available;
+        } else if (mode == RunMode.RUN_USING_ENCODER) {
+            target = Double.isNaN(commandedVelocity) ? power * maxVelocity : commandedVelocity;
+        } else {
+            double limit = Math.abs(power) * maxVelocity;
+            target = Math.max(-limit, Math.min(limit, positionP * (targetPosition - getPositionInternal())));
+        }
+        target = Math.max(-available, Math.min(available, target));
+        velocity += (target - velocity) * Math.min(1, dt / timeConstant);
+        position += velocity * dt;
+
+        if (driven && available > 0) {
+            //current follows the difference between what the motor is driven at and its back EMF
+            current = STALL_CURRENT * Math.min(1, Math.abs(target - velocity) / available)
+                    + FREE_CURRENT * Math.abs(velocity) / maxVelocity;
+        } else {
+            current = 0;
+        }
+    }
+
+    /**
+     * @return ticks per second the shaft turns, positive being the motor's forward direction
+     */
+    double getShaftVelocity() {
+        return direction == Direction.FORWARD ? velocity : -velocity;
+    }
+
+    double getCurrentAmps() {
+        return current;
+    }
+
+    private double getPositionInternal() {
+        return position - encoderOffset;
+    }
+
+    @Override
+    public void setMotorEnable() {
+        synchronized (world) {
+            world.update();
+            enabled = true;
+        }
+    }
+
+    @Override
+    public void setMotorDisable() {
+        synchronized (world) {
+            world.update();
+            enabled = false;
+        }
+    }
+
+    @Override
+    public boolean isMotorEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setVelocity(double angularRate) {
+        synchronized (world) {
+            world.update();
+            commandedVelocity = angularRate;
+        }
+    }
+
+    @Override
+    public void setVelocity(double angularRate, AngleUnit unit) {
+        double revolutions = unit == AngleUnit.DEGREES ? angularRate / 360 : angularRate / (2 * Math.PI);
+        setVelocity(revolutions * ticksPerRev);
+    }
+
+    @Override
+    public double getVelocity() {
+        synchronized (world) {
+            world.update();
+            return velocity;
+        }
+    }
+
+    @Override
+    public double getVelocity(AngleUnit unit) {
+        double revolutions = getVelocity() / ticksPerRev;
+        return unit == AngleUnit.DEGREES ? revolutions * 360 : revolutions * 2 * Math.PI;
+    }
+
+    @Override
+    @Deprecated
+    public void setPIDCoefficients(RunMode mode, PIDCoefficients pidCoefficients) {
+        setPIDFCoefficients(mode, new PIDFCoefficients(pidCoefficients.p, pidCoefficients.i, pidCoefficients.d, 0));
+    }
+
+    @Override
+    public void setPIDFCoefficients(RunMode mode, PIDFCoefficients pidfCoefficients) {
+        if (mode == RunMode.RUN_TO_POSITION) {
+            positionP = pidfCoefficients.p;
+        } else {
+            velocityCoefficients = pidfCoefficients;
+        }
+    }
+
+    @Override
+    public void setVelocityPIDFCoefficients(double p, double i, double d, double f) {
+        setPIDFCoefficients(RunMode.RUN_USING_ENCODER, new PIDFCoefficients(p, i, d, f));
+    }
+
+    @Override
+    public void setPositionPIDFCoefficients(double p) {
+        positionP = p;
+    }
+
+    @Override
+    @Deprecated
+    public PIDCoefficients getPIDCoefficients(RunMode mode) {
+        PIDFCoefficients coefficients = getPIDFCoefficients(mode);
+        return new PIDCoefficients(coefficients.p, coefficients.i, coefficients.d);
+    }
+
+    @Override
+    public PIDFCoefficients getPIDFCoefficients(RunMode mode) {
+        if (mode == RunMode.RUN_TO_POSITION) {
+            return new PIDFCoefficients(positionP, 0, 0, 0);
+        }
+        return velocityCoefficients;
+    }
+
+    @Override
+    public void setTargetPositionTolerance(int tolerance) {
+        this.targetPositionTolerance = tolerance;
+    }
+
+    @Override
+    public int getTargetPositionTolerance() {
+        return targetPositionTolerance;
+    }
+
+    @Override
+    public double getCurrent(CurrentUnit unit) {
+        synchronized (world) {
+            world.update();
+            return unit == CurrentUnit.MILLIAMPS ? current * 1000 : current;
+        }
+    }
+
+    @Override
+    public double getCurrentAlert(CurrentUnit unit) {
+        return unit == CurrentUnit.MILLIAMPS ? currentAlert * 1000 : currentAlert;
+    }
+
+    @Override
+    public void setCurrentAlert(double current, CurrentUnit unit) {
+        this.currentAlert = unit == CurrentUnit.MILLIAMPS ? current / 1000 : current;
+    }
+
+    @Override
+    public boolean isOverCurrent() {
+        return getCurrent(CurrentUnit.AMPS) > currentAlert;
+    }
+
+    @Override
+    public MotorConfigurationType getMotorType() {
+        return motorType;
+    }
+
+    @Override
+    public void setMotorType(MotorConfigurationType motorType) {
+        this.motorType = motorType;
+    }
+
+    @Override
+    public DcMotorController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return port;
+    }
+
+    @Override
+    public void setZeroPowerBehavior(ZeroPowerBehavior zeroPowerBehavior) {
+        synchronized (world) {
+            world.update();
+            this.zeroPowerBehavior = zeroPowerBehavior;
+        }
+    }
+
+    @Override
+    public ZeroPowerBehavior getZeroPowerBehavior() {
+        return zeroPowerBehavior;
+    }
+
+    @Override
+    @Deprecated
+    public void setPowerFloat() {
+        synchronized (world) {
+            world.update();
+            zeroPowerBehavior = ZeroPowerBehavior.FLOAT;
+            power = 0;
+        }
+    }
+
+    @Override
+    public boolean getPowerFloat() {
+        return zeroPowerBehavior == ZeroPowerBehavior.FLOAT && power == 0;
+    }
+
+    @Override
+    public void setTargetPosition(int position) {
+        synchronized (world) {
+            world.update();
+            this.targetPosition = position;
+        }
+    }
+
+    @Override
+    public int getTargetPosition() {
+        return targetPosition;
+    }
+
+    @Override
+    public boolean isBusy() {
+        synchronized (world) {
+            world.update();
+            return mode == RunMode.RUN_TO_POSITION && power != 0
+                    && Math.abs(targetPosition - getPositionInternal()) > targetPositionTolerance;
+        }
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        synchronized (world) {
+            world.update();
+            return (int) Math.round(getPositionInternal());
+        }
+    }
+
+    @Override
+    public void setMode(RunMode mode) {
+        synchronized (world) {
+            world.update();
+            if (mode == RunMode.STOP_AND_RESET_ENCODER) {
+                encoderOffset = position;
+            }
+            if (mode != RunMode.RUN_USING_ENCODER) {
+                commandedVelocity = Double.NaN;
+            }
+            this.mode = mode;
+        }
+    }
+
+    @Override
+    public RunMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        synchronized (world) {
+            world.update();
+            if (direction != this.direction) {
+                //keep the shaft where it is, seen from the other side
+                position = -position;
+                velocity = -velocity;
+                encoderOffset = -encoderOffset;
+                this.direction = direction;
+            }
+        }
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public void setPower(double power) {
+        synchronized (world) {
+            world.update();
+            this.power = Math.max(-1, Math.min(1, power));
+            commandedVelocity = Double.NaN;
+        }
+    }
+
+    @Override
+    public double getPower() {
+        return power;
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated motor";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated port " + port;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+        setPower(0);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
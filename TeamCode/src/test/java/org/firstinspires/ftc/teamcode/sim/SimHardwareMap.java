@@ -0,0 +1,82 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansDriveConstants;
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+
+/**
+ * A hardware map filled with simulated devices under the names our robot looks for.
+ *
+ * There are no hubs, so the control loop has nothing to bulk read and reads the motors directly,
+ * and no webcam, so the robot runs without vision.
+ */
+public class SimHardwareMap extends HardwareMap {
+    //the arm and intake motors, like the drive motors, are 19.2:1 goBILDA yellow jackets
+    public static final double ARM_TICKS_PER_REV = 537.7;
+    public static final double ARM_MAX_RPM = 312;
+
+    private final SimWorld world;
+    private final SimDcMotorEx leftFront, leftRear, rightRear, rightFront;
+    private final SimDcMotorEx slide, shoulder, intake;
+    private final SimServo claw;
+    private final SimColorDistanceSensor colorSensor;
+
+    public SimHardwareMap(SimWorld world) {
+        super(null, null);
+        this.world = world;
+
+        leftFront = addDriveMotor(RobotConfig.LEFT_FRONT_DRIVE, 0);
+        leftRear = addDriveMotor(RobotConfig.LEFT_REAR_DRIVE, 1);
+        rightRear = addDriveMotor(RobotConfig.RIGHT_REAR_DRIVE, 2);
+        rightFront = addDriveMotor(RobotConfig.RIGHT_FRONT_DRIVE, 3);
+        world.setDriveMotors(leftFront, leftRear, rightRear, rightFront);
+
+        slide = new SimDcMotorEx(world, RobotConfig.SLIDE, 0, ARM_TICKS_PER_REV, ARM_MAX_RPM);
+        put(RobotConfig.SLIDE, slide);
+        shoulder = new SimDcMotorEx(world, RobotConfig.SHOULDER, 1, ARM_TICKS_PER_REV, ARM_MAX_RPM);
+        put(RobotConfig.SHOULDER, shoulder);
+        intake = new SimDcMotorEx(world, RobotConfig.INTAKE_MOTOR, 2, ARM_TICKS_PER_REV, ARM_MAX_RPM);
+        put(RobotConfig.INTAKE_MOTOR, intake);
+
+        claw = new SimServo(0);
+        put(RobotConfig.CLAW, claw);
+        colorSensor = new SimColorDistanceSensor();
+        put(RobotConfig.COLOR_SENSOR, colorSensor);
+
+        put("imu", new SimIMU(world));
+        put("otos", new SimSparkFunOTOS(world));
+        voltageSensor.put("Control Hub", new SimVoltageSensor(world));
+    }
+
+    private SimDcMotorEx addDriveMotor(String name, int port) {
+        SimDcMotorEx motor = new SimDcMotorEx(world, name, port,
+                SilverTitansDriveConstants.TICKS_PER_REV, SilverTitansDriveConstants.MAX_RPM);
+        put(name, motor);
+        return motor;
+    }
+
+    public SimWorld getWorld() {
+        return world;
+    }
+
+    public SimDcMotorEx getSlide() {
+        return slide;
+    }
+
+    public SimDcMotorEx getShoulder() {
+        return shoulder;
+    }
+
+    public SimDcMotorEx getIntake() {
+        return intake;
+    }
+
+    public SimServo getClaw() {
+        return claw;
+    }
+
+    public SimColorDistanceSensor getColorSensor() {
+        return colorSensor;
+    }
+}
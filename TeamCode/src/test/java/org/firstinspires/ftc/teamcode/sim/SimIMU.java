@@ -0,0 +1,96 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+
+/**
+ * A simulated IMU that reports the heading of the simulated robot. The field is flat, so pitch and
+ * roll are always zero, and the hub orientation given to initialize() does not matter.
+ */
+public class SimIMU implements IMU {
+    private final SimWorld world;
+    private double yawOffset;
+
+    public SimIMU(SimWorld world) {
+        this.world = world;
+    }
+
+    @Override
+    public boolean initialize(Parameters parameters) {
+        return true;
+    }
+
+    @Override
+    synchronized public void resetYaw() {
+        yawOffset = world.getHeading();
+    }
+
+    synchronized private double getYaw() {
+        return AngleUnit.normalizeRadians(world.getHeading() - yawOffset);
+    }
+
+    @Override
+    public YawPitchRollAngles getRobotYawPitchRollAngles() {
+        return new YawPitchRollAngles(AngleUnit.RADIANS, getYaw(), 0, 0, MatchClock.nanoTime());
+    }
+
+    @Override
+    public Orientation getRobotOrientation(AxesReference reference, AxesOrder order, AngleUnit angleUnit) {
+        return new Orientation(AxesReference.EXTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS,
+                (float) getYaw(), 0, 0, MatchClock.nanoTime())
+                .toAxesReference(reference)
+                .toAxesOrder(order)
+                .toAngleUnit(angleUnit);
+    }
+
+    @Override
+    public Quaternion getRobotOrientationAsQuaternion() {
+        double halfYaw = getYaw() / 2;
+        return new Quaternion((float) Math.cos(halfYaw), 0, 0, (float) Math.sin(halfYaw), MatchClock.nanoTime());
+    }
+
+    @Override
+    public AngularVelocity getRobotAngularVelocity(AngleUnit angleUnit) {
+        double rate = world.getHeadingVelocity();
+        if (angleUnit == AngleUnit.DEGREES) {
+            rate = Math.toDegrees(rate);
+        }
+        return new AngularVelocity(angleUnit, 0, 0, (float) rate, MatchClock.nanoTime());
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated IMU";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,90 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.Servo;
+import com.qualcomm.robotcore.hardware.ServoController;
+
+/**
+ * A simulated servo. Like the real thing, it reports the position it was last asked to go to.
+ */
+public class SimServo implements Servo {
+    private final int port;
+    private Direction direction = Direction.FORWARD;
+    private double position;
+    private double min = MIN_POSITION, max = MAX_POSITION;
+
+    public SimServo(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public ServoController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return port;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    synchronized public void setPosition(double position) {
+        this.position = Math.max(MIN_POSITION, Math.min(MAX_POSITION, position));
+    }
+
+    @Override
+    synchronized public double getPosition() {
+        return position;
+    }
+
+    @Override
+    public void scaleRange(double min, double max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @return where the servo horn actually is, between 0 and 1, after scaling and direction
+     */
+    synchronized public double getOutput() {
+        double scaled = min + position * (max - min);
+        return direction == Direction.FORWARD ? scaled : 1 - scaled;
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated servo";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated port " + port;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,114 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.hardware.sparkfun.SparkFunOTOS;
+import com.qualcomm.robotcore.hardware.I2cDeviceSynch;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+
+/**
+ * A simulated optical odometry sensor that tracks the simulated robot perfectly.
+ *
+ * Everything that would talk to the sensor over I2C is overridden, the I2C client underneath is a
+ * stub. Units set on the sensor are honored, the offset and scalars are accepted but ignored.
+ */
+public class SimSparkFunOTOS extends SparkFunOTOS {
+    private final SimWorld world;
+    //world pose, in inches and radians, when the position was last set
+    private double worldX, worldY, worldHeading;
+    //the position we were told the robot was at then, in inches and radians
+    private double originX, originY, originHeading;
+
+    public SimSparkFunOTOS(SimWorld world) {
+        super(Stubs.of(I2cDeviceSynch.class), true);
+        this.world = world;
+    }
+
+    @Override
+    public Pose2D getPosition() {
+        double x, y, heading;
+        synchronized (this) {
+            double dx = world.getX() - worldX;
+            double dy = world.getY() - worldY;
+            double rotation = originHeading - worldHeading;
+            double cos = Math.cos(rotation), sin = Math.sin(rotation);
+            x = originX + dx * cos - dy * sin;
+            y = originY + dx * sin + dy * cos;
+            heading = AngleUnit.normalizeRadians(originHeading + world.getHeading() - worldHeading);
+        }
+        return new Pose2D(getLinearUnit().fromInches(x), getLinearUnit().fromInches(y),
+                getAngularUnit().fromRadians(heading));
+    }
+
+    @Override
+    public Pose2D getVelocity() {
+        double x, y, heading;
+        synchronized (this) {
+            double rotation = originHeading - worldHeading;
+            double cos = Math.cos(rotation), sin = Math.sin(rotation);
+            double dx = world.getXVelocity(), dy = world.getYVelocity();
+            x = dx * cos - dy * sin;
+            y = dx * sin + dy * cos;
+            heading = world.getHeadingVelocity();
+        }
+        return new Pose2D(getLinearUnit().fromInches(x), getLinearUnit().fromInches(y),
+                getAngularUnit().fromRadians(heading));
+    }
+
+    @Override
+    public void getPosVelAcc(Pose2D pos, Pose2D vel, Pose2D acc) {
+        Pose2D position = getPosition();
+        Pose2D velocity = getVelocity();
+        pos.x = position.x;
+        pos.y = position.y;
+        pos.h = position.h;
+        vel.x = velocity.x;
+        vel.y = velocity.y;
+        vel.h = velocity.h;
+        acc.x = 0;
+        acc.y = 0;
+        acc.h = 0;
+    }
+
+    @Override
+    synchronized public void setPosition(Pose2D pose) {
+        worldX = world.getX();
+        worldY = world.getY();
+        worldHeading = world.getHeading();
+        originX = getLinearUnit().toInches(pose.x);
+        originY = getLinearUnit().toInches(pose.y);
+        originHeading = getAngularUnit().toRadians(pose.h);
+    }
+
+    @Override
+    public void resetTracking() {
+        setPosition(new Pose2D(0, 0, 0));
+    }
+
+    @Override
+    public void setOffset(Pose2D pose) {
+    }
+
+    @Override
+    public boolean setLinearScalar(double scalar) {
+        return true;
+    }
+
+    @Override
+    public boolean setAngularScalar(double scalar) {
+        return true;
+    }
+
+    @Override
+    public boolean calibrateImu() {
+        return true;
+    }
+
+    @Override
+    public void getVersionInfo(Version hwVersion, Version fwVersion) {
+        hwVersion.major = 1;
+        hwVersion.minor = 0;
+        fwVersion.major = 1;
+        fwVersion.minor = 0;
+    }
+}
@@ -0,0 +1,47 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.VoltageSensor;
+
+/**
+ * Reports the battery voltage of the simulated world, which sags as the motors draw current
+ */
+public class SimVoltageSensor implements VoltageSensor {
+    private final SimWorld world;
+
+    public SimVoltageSensor(SimWorld world) {
+        this.world = world;
+    }
+
+    @Override
+    public double getVoltage() {
+        return world.getVoltage();
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated battery";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulated";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,170 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.roadrunner.drive.SilverTitansDriveConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The physics behind our simulated hardware.
+ *
+ * Nothing runs in the background. Whenever a simulated device is used it asks the world to catch
+ * up to the match clock, which steps every motor and then the chassis forward in small fixed steps.
+ * Devices synchronize on the world, so everything they see is consistent no matter which thread
+ * they are used from.
+ *
+ * The chassis is moved using mecanum forward kinematics from the speeds of the four drive wheels.
+ * Pose is kept in inches and radians, x forward and y to the left of where the robot started, with
+ * heading counter-clockwise.
+ */
+public class SimWorld {
+    //nano-seconds in each physics step
+    public static final long STEP = 1000000L;
+    //the most match time we will simulate in one catch-up, so a stalled thread doesn't take forever
+    public static final long MAX_CATCH_UP = 1000000000L;
+
+    public static final double NOMINAL_VOLTAGE = 12.8;
+    //ohms of battery, wiring and hub between the battery and the motors
+    public static final double INTERNAL_RESISTANCE = 0.04;
+
+    private final List<SimDcMotorEx> motors = new ArrayList<>();
+    private SimDcMotorEx leftFront, leftRear, rightRear, rightFront;
+
+    private long lastUpdate = MatchClock.nanoTime();
+    private double x, y, heading;
+    private double xVelocity, yVelocity, headingVelocity;
+    private double voltage = NOMINAL_VOLTAGE;
+
+    /**
+     * Add a motor whose dynamics we should step
+     * @param motor - the motor
+     */
+    synchronized public void addMotor(SimDcMotorEx motor) {
+        motors.add(motor);
+    }
+
+    /**
+     * Specify which motors drive the chassis
+     */
+    synchronized public void setDriveMotors(SimDcMotorEx leftFront, SimDcMotorEx leftRear,
+                                            SimDcMotorEx rightRear, SimDcMotorEx rightFront) {
+        this.leftFront = leftFront;
+        this.leftRear = leftRear;
+        this.rightRear = rightRear;
+        this.rightFront = rightFront;
+    }
+
+    /**
+     * Bring the world up to the current match time
+     */
+    synchronized public void update() {
+        long now = MatchClock.nanoTime();
+        long elapsed = now - lastUpdate;
+        if (elapsed <= 0) {
+            return;
+        }
+        if (elapsed > MAX_CATCH_UP) {
+            lastUpdate = now - MAX_CATCH_UP;
+        }
+        while (now - lastUpdate > 0) {
+            long step = Math.min(STEP, now - lastUpdate);
+            step(step / 1e9);
+            lastUpdate += step;
+        }
+    }
+
+    private void step(double dt) {
+        double current = 0;
+        for (SimDcMotorEx motor : motors) {
+            motor.step(dt, voltage);
+            current += motor.getCurrentAmps();
+        }
+        voltage = NOMINAL_VOLTAGE - INTERNAL_RESISTANCE * current;
+
+        if (leftFront == null) {
+            return;
+        }
+        //left motors are mounted mirrored, so the wheel turns forward when the shaft turns backward
+        double lf = -wheelSpeed(leftFront);
+        double lr = -wheelSpeed(leftRear);
+        double rr = wheelSpeed(rightRear);
+        double rf = wheelSpeed(rightFront);
+
+        double k = (SilverTitansDriveConstants.TRACK_WIDTH + SilverTitansDriveConstants.TRACK_LENGTH) / 2;
+        double forward = (lf + lr + rr + rf) / 4;
+        double left = (lr + rf - lf - rr) / 4;
+        headingVelocity = (rr + rf - lf - lr) / (4 * k);
+
+        double cos = Math.cos(heading), sin = Math.sin(heading);
+        xVelocity = forward * cos - left * sin;
+        yVelocity = forward * sin + left * cos;
+        x += xVelocity * dt;
+        y += yVelocity * dt;
+        heading += headingVelocity * dt;
+    }
+
+    /**
+     * Returns the surface speed of the wheel on a drive motor
+     * @param motor - the drive motor
+     * @return inches per second
+     */
+    private static double wheelSpeed(SimDcMotorEx motor) {
+        return motor.getShaftVelocity() / SilverTitansDriveConstants.TICKS_PER_REV
+                * 2 * Math.PI * SilverTitansDriveConstants.GEAR_RATIO * SilverTitansDriveConstants.WHEEL_RADIUS;
+    }
+
+    synchronized public double getX() {
+        update();
+        return x;
+    }
+
+    synchronized public double getY() {
+        update();
+        return y;
+    }
+
+    /**
+     * @return radians, counter-clockwise from where the robot started
+     */
+    synchronized public double getHeading() {
+        update();
+        return heading;
+    }
+
+    /**
+     * @return radians per second
+     */
+    synchronized public double getHeadingVelocity() {
+        update();
+        return headingVelocity;
+    }
+
+    synchronized public double getXVelocity() {
+        update();
+        return xVelocity;
+    }
+
+    synchronized public double getYVelocity() {
+        update();
+        return yVelocity;
+    }
+
+    synchronized public double getVoltage() {
+        update();
+        return voltage;
+    }
+
+    /**
+     * Put the robot somewhere
+     * @param x - inches
+     * @param y - inches
+     * @param heading - radians
+     */
+    synchronized public void setPose(double x, double y, double heading) {
+        update();
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+}
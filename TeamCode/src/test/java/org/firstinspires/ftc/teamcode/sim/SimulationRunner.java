@@ -0,0 +1,130 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.firstinspires.ftc.teamcode.game.Field;
+import org.firstinspires.ftc.teamcode.game.MatchClock;
+import org.firstinspires.ftc.teamcode.opmodes.autonomous.AutonomousHelper;
+
+import java.util.Locale;
+
+/**
+ * Runs one of our autonomous op modes against simulated hardware, faster than real time, and
+ * reports how long it took in match time.
+ *
+ *   SimulationRunner [op mode class] [rate] [timeout seconds]
+ *
+ * The op mode defaults to BlueLeft and can be the simple name of a class in the autonomous
+ * package. Rate is how many seconds of match time to run per second of real time.
+ *
+ * The simulator is part of TeamCode's tests, so it runs on this computer's JVM and never goes into
+ * the robot controller app. Run it with
+ *
+ *   gradlew :TeamCode:simulate --args="BlueLeft 10 30"
+ *
+ * which puts our code, the SDK and the Android stub jar on the class path, with the stubs returning
+ * default values the way they do for unit tests. AutonomousCycleTimeTest runs it as part of the
+ * unit tests to catch autonomous getting slower. The simulator has no camera, so operations that
+ * need April tags will not complete.
+ */
+public class SimulationRunner {
+    public static final double DEFAULT_RATE = 10;
+    public static final long DEFAULT_TIMEOUT = 30;
+    //match milli-seconds between calls to the op mode's loop, about what the SDK manages
+    public static final long LOOP_PERIOD = 10;
+    //match seconds to wait for trajectories to be built before starting anyway
+    public static final long INIT_TIMEOUT = 30;
+
+    private final double rate;
+    private final SimHardwareMap hardwareMap;
+    //match nano-seconds from start to finish of the last run
+    private long matchNanos;
+
+    public SimulationRunner(double rate) {
+        this.rate = rate;
+        MatchClock.setSource(new SimClock(rate));
+        this.hardwareMap = new SimHardwareMap(new SimWorld());
+    }
+
+    public SimHardwareMap getHardwareMap() {
+        return hardwareMap;
+    }
+
+    /**
+     * Returns how long the last run took from start until it finished or timed out
+     * @return match seconds
+     */
+    public double getMatchSeconds() {
+        return matchNanos / 1e9;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String opModeName = args.length > 0 ? args[0] : "BlueLeft";
+        double rate = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_RATE;
+        long timeout = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_TIMEOUT;
+        if (!opModeName.contains(".")) {
+            opModeName = AutonomousHelper.class.getPackage().getName() + "." + opModeName;
+        }
+        AutonomousHelper autonomous = (AutonomousHelper) Class.forName(opModeName).newInstance();
+
+        boolean finished = new SimulationRunner(rate).run(autonomous, timeout);
+        System.exit(finished ? 0 : 1);
+    }
+
+    /**
+     * Run an autonomous op mode from init to stop
+     * @param autonomous - the op mode
+     * @param timeout - match seconds after start to give up
+     * @return true if the op mode reached all of its states
+     * @throws InterruptedException if interrupted while waiting between loops
+     */
+    public boolean run(AutonomousHelper autonomous, long timeout) throws InterruptedException {
+        autonomous.hardwareMap = hardwareMap;
+        autonomous.telemetry = Stubs.of(Telemetry.class);
+        autonomous.gamepad1 = new Gamepad();
+        autonomous.gamepad2 = new Gamepad();
+
+        long realStart = System.nanoTime();
+        autonomous.init();
+        long initStart = MatchClock.nanoTime();
+        do {
+            autonomous.init_loop();
+            waitForNextLoop();
+        } while (Field.isNotInitialized() && MatchClock.nanoTime() - initStart < INIT_TIMEOUT * 1000000000L);
+
+        autonomous.start();
+        long start = MatchClock.nanoTime();
+        long realRunStart = System.nanoTime();
+        long loops = 0;
+        boolean finished = false;
+        while (MatchClock.nanoTime() - start < timeout * 1000000000L) {
+            autonomous.loop();
+            loops++;
+            if (autonomous.isFinished()) {
+                finished = true;
+                break;
+            }
+            waitForNextLoop();
+        }
+        matchNanos = MatchClock.nanoTime() - start;
+        long realNanos = System.nanoTime() - realRunStart;
+        autonomous.stop();
+
+        SimWorld world = hardwareMap.getWorld();
+        System.out.println(String.format(Locale.getDefault(),
+                "%s %s in %.3f match seconds, %.3f real seconds at %.1fx, %d loops, %.3f seconds including init",
+                autonomous.getClass().getSimpleName(), finished ? "finished" : "timed out",
+                matchNanos / 1e9, realNanos / 1e9, rate, loops, (System.nanoTime() - realStart) / 1e9));
+        System.out.println("States: " + autonomous.getStateEngine().appendStatus(new StringBuilder()));
+        System.out.println(String.format(Locale.getDefault(),
+                "Final pose %.2f,%.2f@%.2f, battery %.2f volts",
+                world.getX(), world.getY(), Math.toDegrees(world.getHeading()), world.getVoltage()));
+        return finished;
+    }
+
+    private void waitForNextLoop() throws InterruptedException {
+        long wait = MatchClock.toRealNanos(LOOP_PERIOD * 1000000L);
+        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+    }
+}
@@ -0,0 +1,68 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates do-nothing implementations of interfaces for the parts of the SDK the simulator does
+ * not model, like driver station telemetry or the I2C client under the OTOS.
+ *
+ * Methods return false, zero or null. Methods that return an interface return a stub of that
+ * interface so that calls can be chained.
+ */
+public class Stubs {
+    /**
+     * Create a stub
+     * @param type - the interface to implement
+     * @return an instance that does nothing
+     */
+    public static <T> T of(final Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        Class<?> returnType = method.getReturnType();
+                        if (method.getDeclaringClass() == Object.class) {
+                            switch (method.getName()) {
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                default:
+                                    return "Stub " + type.getSimpleName();
+                            }
+                        }
+                        if (returnType.isInstance(proxy)) {
+                            return proxy;
+                        }
+                        return defaultValue(returnType);
+                    }
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == String.class) {
+            return "";
+        } else if (type.isInterface()) {
+            return of(type);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,551 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.util.SortOrder;
+
+import nu.pattern.OpenCV;
+
+import org.firstinspires.ftc.teamcode.robot.RobotConfig;
+import org.firstinspires.ftc.teamcode.robot.components.vision.MultiColorBlobProcessor;
+import org.firstinspires.ftc.teamcode.robot.components.vision.StageTimer;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.DetectionSnapshot;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.HsvBoundSet;
+import org.firstinspires.ftc.teamcode.robot.components.vision.detector.ObjectDetector;
+import org.firstinspires.ftc.teamcode.robot.components.vision.example.ExampleDetectorPipeline;
+import org.firstinspires.ftc.vision.opencv.ColorBlobLocatorProcessor;
+import org.firstinspires.ftc.vision.opencv.ColorRange;
+import org.firstinspires.ftc.vision.opencv.ImageRegion;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs our vision processors over recorded frames on a laptop, timing them and checking what they
+ * find against where the object really was.
+ *
+ *   VisionReplay [dataset] [subject] [threads]
+ *
+ * The dataset is a folder of images or a video, see ReplayDataset. The subject is one of:
+ *   detector:[ObjectType]  - ObjectDetector looking for the type, like detector:YellowSample, add
+ *                            :[bound set file] to use bounds found by the HsvOptimizer
+ *   blobs:[Red|Blue|Yellow|All] - MultiColorBlobProcessor's largest blob of the color, or of
+ *                            any color with All, looking only for the colors asked for
+ *   locator:[Red|Blue|Yellow|All] - the SDK's ColorBlobLocatorProcessor set up as we used to, All
+ *                            running one per color on every frame like our vision portal did
+ *   example - ExampleDetectorPipeline
+ * Threads defaults to the number of cores. Each thread has its own processor and takes every
+ * so many frames, so a dataset goes through about that many times faster. Use one thread when the
+ * frame times matter, as threads share the cores' caches and memory bandwidth.
+ *
+ * Processors whose stages are timed report the time spent blurring, thresholding, finding
+ * contours and filtering them.
+ *
+ * To see how much quicker finding the blobs of all three colors in one pass is than the locators
+ * we replaced, replay the same dataset with locator:All and with blobs:All on one thread, and
+ * compare their average frame times.
+ *
+ * Like the simulator, this is part of TeamCode's tests and runs on this computer's JVM:
+ *
+ *   gradlew :TeamCode:visionReplay --args="[dataset] [subject] [threads]"
+ *
+ * OpenCV comes from the openpnp desktop build, whose jar carries the native library for Linux,
+ * Windows and macOS and loads it from there.
+ */
+public class VisionReplay {
+    //pixels from where the object really is that a detection can be and still count as finding it
+    public static final double POSITION_TOLERANCE = 40;
+
+    /**
+     * A processor being replayed, and how to tell where it found the object
+     */
+    public interface Subject {
+        /**
+         * Process a frame
+         * @param frame - the rgb frame, a copy the processor may change
+         * @param captureTimeNanos - when the frame was taken
+         */
+        void process(Mat frame, long captureTimeNanos);
+
+        /**
+         * Returns where the object was found in the last frame processed
+         * @param position - where to put the x and y of its center
+         * @return false if nothing was found
+         */
+        boolean locate(double[] position);
+
+        /**
+         * Returns the processor's stage timer
+         * @return the timer, null if its stages aren't timed
+         */
+        StageTimer getStageTimer();
+    }
+
+    /**
+     * Makes a subject for each thread, as processors can't be shared between threads
+     */
+    public interface SubjectFactory {
+        Subject create();
+    }
+
+    /**
+     * How fast and how accurately a subject went through a dataset
+     */
+    public static class Report {
+        private int frames, threads;
+        private long totalNanos, maxNanos, elapsedNanos;
+        private final long[] stageNanos = new long[StageTimer.Stage.values().length];
+        private boolean stagesTimed;
+        private int truePositives, falsePositives, falseNegatives, trueNegatives, misplaced;
+        private double errorSum;
+
+        void addFrame(long nanos) {
+            frames++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        void addResult(double[] label, boolean found, double[] position) {
+            if (label == null) {
+                return;
+            }
+            boolean present = label[0] >= 0;
+            if (!present) {
+                if (found) {
+                    falsePositives++;
+                }
+                else {
+                    trueNegatives++;
+                }
+            }
+            else if (!found) {
+                falseNegatives++;
+            }
+            else {
+                double error = Math.hypot(position[0] - label[0], position[1] - label[1]);
+                if (error <= POSITION_TOLERANCE) {
+                    truePositives++;
+                    errorSum += error;
+                }
+                else {
+                    //found something, but not where the object is
+                    misplaced++;
+                    falsePositives++;
+                    falseNegatives++;
+                }
+            }
+        }
+
+        void addStages(StageTimer timer) {
+            if (timer != null) {
+                stagesTimed = true;
+                for (StageTimer.Stage stage : StageTimer.Stage.values()) {
+                    stageNanos[stage.ordinal()] += timer.getTotalNanos(stage);
+                }
+            }
+        }
+
+        void merge(Report other) {
+            frames += other.frames;
+            totalNanos += other.totalNanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+            for (int i = 0; i < stageNanos.length; i++) {
+                stageNanos[i] += other.stageNanos[i];
+            }
+            stagesTimed |= other.stagesTimed;
+            truePositives += other.truePositives;
+            falsePositives += other.falsePositives;
+            falseNegatives += other.falseNegatives;
+            trueNegatives += other.trueNegatives;
+            misplaced += other.misplaced;
+            errorSum += other.errorSum;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public double getAverageMillis() {
+            return frames == 0 ? 0 : totalNanos / 1e6 / frames;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        public double getStageMillis(StageTimer.Stage stage) {
+            return frames == 0 ? 0 : stageNanos[stage.ordinal()] / 1e6 / frames;
+        }
+
+        public int getLabelled() {
+            return truePositives + falseNegatives + trueNegatives + falsePositives - misplaced;
+        }
+
+        /**
+         * Returns the share of the detections made that were right
+         */
+        public double getPrecision() {
+            int detections = truePositives + falsePositives;
+            return detections == 0 ? 0 : (double) truePositives / detections;
+        }
+
+        /**
+         * Returns the share of the objects there to be found that were found where they were
+         */
+        public double getRecall() {
+            int present = truePositives + falseNegatives;
+            return present == 0 ? 0 : (double) truePositives / present;
+        }
+
+        /**
+         * Returns the harmonic mean of precision and recall, one number to rank subjects by
+         */
+        public double getF1() {
+            double precision = getPrecision(), recall = getRecall();
+            return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+        }
+
+        /**
+         * Returns how far from the object's center the correct detections were on average
+         */
+        public double getMeanErrorPixels() {
+            return truePositives == 0 ? 0 : errorSum / truePositives;
+        }
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.getDefault(),
+                    "%d frames on %d threads in %.0f mSecs, %.1f frames per second%n",
+                    frames, threads, elapsedNanos / 1e6, frames / (elapsedNanos / 1e9)));
+            builder.append(String.format(Locale.getDefault(),
+                    "Frame time: avg %.2f, max %.2f mSecs%n", getAverageMillis(), getMaxMillis()));
+            if (stagesTimed) {
+                builder.append("Stages:");
+                for (StageTimer.Stage stage : StageTimer.Stage.values()) {
+                    builder.append(String.format(Locale.getDefault(), " %s %.2f", stage, getStageMillis(stage)));
+                }
+                builder.append(String.format(Locale.getDefault(), " mSecs%n"));
+            }
+            if (getLabelled() > 0) {
+                builder.append(String.format(Locale.getDefault(),
+                        "Accuracy over %d labelled frames: precision %.3f, recall %.3f, F1 %.3f, mean error %.1f pixels%n",
+                        getLabelled(), getPrecision(), getRecall(), getF1(), getMeanErrorPixels()));
+                builder.append(String.format(Locale.getDefault(),
+                        "  found %d, wrong place %d, missed %d, false alarms %d, correctly empty %d",
+                        truePositives, misplaced, falseNegatives - misplaced, falsePositives - misplaced, trueNegatives));
+            }
+            else {
+                builder.append("No labelled frames");
+            }
+            return builder.toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("VisionReplay [dataset folder or video] [subject] [threads]");
+            return;
+        }
+        OpenCV.loadLocally();
+        ReplayDataset dataset = ReplayDataset.load(new File(args[0]));
+        SubjectFactory factory = getFactory(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        try {
+            System.out.println(args[1] + " on " + args[0]);
+            System.out.println(run(dataset, factory, threads));
+        } finally {
+            dataset.release();
+        }
+    }
+
+    /**
+     * Run a subject over all the frames of a dataset
+     * @param dataset - the frames
+     * @param factory - makes the subject for each thread
+     * @param threads - how many threads to process frames on
+     * @return the combined report of the threads
+     * @throws Exception if processing a frame failed
+     */
+    public static Report run(final ReplayDataset dataset, final SubjectFactory factory, final int threads) throws Exception {
+        long start = System.nanoTime();
+        Report report;
+        if (threads <= 1) {
+            report = replay(dataset, factory.create(), 0, 1);
+        }
+        else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Report>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    final int first = i;
+                    futures.add(executor.submit(new Callable<Report>() {
+                        @Override
+                        public Report call() {
+                            return replay(dataset, factory.create(), first, threads);
+                        }
+                    }));
+                }
+                report = new Report();
+                for (Future<Report> future : futures) {
+                    report.merge(future.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        report.threads = Math.max(1, threads);
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Run a subject over every so many frames of a dataset, on the calling thread
+     */
+    private static Report replay(ReplayDataset dataset, Subject subject, int first, int step) {
+        Report report = new Report();
+        Mat frame = new Mat();
+        double[] position = new double[2];
+        try {
+            for (int i = first; i < dataset.size(); i += step) {
+                dataset.getFrame(i).copyTo(frame);
+                long start = System.nanoTime();
+                subject.process(frame, start);
+                report.addFrame(System.nanoTime() - start);
+                report.addResult(dataset.getLabel(i), subject.locate(position), position);
+            }
+            report.addStages(subject.getStageTimer());
+        } finally {
+            frame.release();
+        }
+        return report;
+    }
+
+    /**
+     * Returns the factory for the subject named as on the command line
+     * @param spec - the subject, like detector:YellowSample
+     * @return the factory
+     */
+    public static SubjectFactory getFactory(String spec) throws IOException {
+        String[] parts = spec.split(":");
+        String kind = parts[0];
+        final String target = parts.length > 1 ? parts[1] : "";
+        if (kind.equals("detector")) {
+            final ObjectDetector.ObjectType type = ObjectDetector.ObjectType.valueOf(target);
+            final HsvBoundSet boundSet = parts.length > 2 ? HsvBoundSet.load(new File(parts[2])) : null;
+            return new SubjectFactory() {
+                @Override
+                public Subject create() {
+                    return objectDetector(type, boundSet);
+                }
+            };
+        }
+        else if (kind.equals("blobs")) {
+            final MultiColorBlobProcessor.BlobColor color = target.equals("All") ? null
+                    : MultiColorBlobProcessor.BlobColor.valueOf(target);
+            return new SubjectFactory() {
+                @Override
+                public Subject create() {
+                    return blobProcessor(color);
+                }
+            };
+        }
+        else if (kind.equals("locator")) {
+            final ColorRange[] ranges = target.equals("All") ? new ColorRange[] {ColorRange.RED, ColorRange.BLUE, ColorRange.YELLOW}
+                    : new ColorRange[] {target.equals("Red") ? ColorRange.RED
+                            : target.equals("Blue") ? ColorRange.BLUE : ColorRange.YELLOW};
+            return new SubjectFactory() {
+                @Override
+                public Subject create() {
+                    return colorLocator(ranges);
+                }
+            };
+        }
+        else if (kind.equals("example")) {
+            return new SubjectFactory() {
+                @Override
+                public Subject create() {
+                    return examplePipeline();
+                }
+            };
+        }
+        throw new IllegalArgumentException("Unknown subject " + spec);
+    }
+
+    /**
+     * Returns a subject that runs an ObjectDetector, as our vision processor sets it up, finding
+     * the largest object of the specified type
+     * @param type - the type of object
+     * @param boundSet - bounds to use instead of the detector's own, null for none
+     */
+    public static Subject objectDetector(final ObjectDetector.ObjectType type, HsvBoundSet boundSet) {
+        final ObjectDetector detector = new ObjectDetector(0, RobotConfig.X_PIXEL_COUNT, 200, RobotConfig.Y_PIXEL_COUNT);
+        if (boundSet != null) {
+            detector.apply(boundSet);
+        }
+        detector.enableObject(type);
+        return new Subject() {
+            @Override
+            public void process(Mat frame, long captureTimeNanos) {
+                detector.process(frame, captureTimeNanos);
+            }
+
+            @Override
+            public boolean locate(double[] position) {
+                DetectionSnapshot.Sighting sighting = detector.getSnapshot().get(type);
+                if (sighting == null) {
+                    return false;
+                }
+                position[0] = sighting.getXPosition();
+                position[1] = sighting.getYPosition();
+                return true;
+            }
+
+            @Override
+            public StageTimer getStageTimer() {
+                return detector.getStageTimer();
+            }
+        };
+    }
+
+    /**
+     * Returns a subject that finds the largest blob of a color with our MultiColorBlobProcessor
+     * @param color - the color, null to look for all of them and find the largest of any color
+     */
+    public static Subject blobProcessor(final MultiColorBlobProcessor.BlobColor color) {
+        final MultiColorBlobProcessor processor = new MultiColorBlobProcessor();
+        for (MultiColorBlobProcessor.BlobColor other : MultiColorBlobProcessor.BlobColor.values()) {
+            processor.setEnabled(other, color == null || other == color);
+        }
+        return new Subject() {
+            private boolean initialized;
+
+            @Override
+            public void process(Mat frame, long captureTimeNanos) {
+                if (!initialized) {
+                    processor.init(frame.cols(), frame.rows(), null);
+                    initialized = true;
+                }
+                processor.processFrame(frame, captureTimeNanos);
+            }
+
+            @Override
+            public boolean locate(double[] position) {
+                if (color != null) {
+                    return locateBlob(processor.getLargestBlob(color), position);
+                }
+                ColorBlobLocatorProcessor.Blob largest = null;
+                for (MultiColorBlobProcessor.BlobColor each : MultiColorBlobProcessor.BlobColor.values()) {
+                    largest = getLarger(largest, processor.getLargestBlob(each));
+                }
+                return locateBlob(largest, position);
+            }
+
+            @Override
+            public StageTimer getStageTimer() {
+                return processor.getStageTimer();
+            }
+        };
+    }
+
+    /**
+     * Returns a subject that finds the largest blob of some colors with a SDK color locator per
+     * color, set up the way our vision portal used to, each going through every frame
+     * @param ranges - the colors
+     */
+    public static Subject colorLocator(ColorRange... ranges) {
+        final ColorBlobLocatorProcessor[] locators = new ColorBlobLocatorProcessor[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            locators[i] = new ColorBlobLocatorProcessor.Builder()
+                    .setTargetColorRange(ranges[i])
+                    .setContourMode(ColorBlobLocatorProcessor.ContourMode.EXTERNAL_ONLY)
+                    .setRoi(ImageRegion.asUnityCenterCoordinates(-0.5, 0.5, 0.5, -0.5))
+                    .setBlurSize(RobotConfig.BLOB_BLUR_SIZE)
+                    .build();
+        }
+        return new Subject() {
+            private boolean initialized;
+
+            @Override
+            public void process(Mat frame, long captureTimeNanos) {
+                for (ColorBlobLocatorProcessor locator : locators) {
+                    if (!initialized) {
+                        locator.init(frame.cols(), frame.rows(), null);
+                    }
+                    locator.processFrame(frame, captureTimeNanos);
+                }
+                initialized = true;
+            }
+
+            @Override
+            public boolean locate(double[] position) {
+                ColorBlobLocatorProcessor.Blob largest = null;
+                for (ColorBlobLocatorProcessor locator : locators) {
+                    List<ColorBlobLocatorProcessor.Blob> blobs = locator.getBlobs();
+                    ColorBlobLocatorProcessor.Util.filterByArea(RobotConfig.BLOB_MIN_AREA, RobotConfig.BLOB_MAX_AREA, blobs);
+                    ColorBlobLocatorProcessor.Util.sortByArea(SortOrder.DESCENDING, blobs);
+                    largest = getLarger(largest, blobs.isEmpty() ? null : blobs.get(0));
+                }
+                return locateBlob(largest, position);
+            }
+
+            @Override
+            public StageTimer getStageTimer() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Returns a subject that runs the ExampleDetectorPipeline on frames converted to rgba, as
+     * EasyOpenCV hands them out. The conversion is counted in the frame time.
+     */
+    public static Subject examplePipeline() {
+        final ExampleDetectorPipeline pipeline = new ExampleDetectorPipeline(false);
+        final Mat rgba = new Mat();
+        return new Subject() {
+            @Override
+            public void process(Mat frame, long captureTimeNanos) {
+                Imgproc.cvtColor(frame, rgba, Imgproc.COLOR_RGB2RGBA);
+                pipeline.processFrame(rgba);
+            }
+
+            @Override
+            public boolean locate(double[] position) {
+                int[] found = pipeline.getPosition();
+                position[0] = found[0];
+                position[1] = found[1];
+                return found[0] >= 0;
+            }
+
+            @Override
+            public StageTimer getStageTimer() {
+                return pipeline.getStageTimer();
+            }
+        };
+    }
+
+    private static ColorBlobLocatorProcessor.Blob getLarger(ColorBlobLocatorProcessor.Blob blob1, ColorBlobLocatorProcessor.Blob blob2) {
+        if (blob1 == null) {
+            return blob2;
+        }
+        return blob2 != null && blob2.getContourArea() > blob1.getContourArea() ? blob2 : blob1;
+    }
+
+    private static boolean locateBlob(ColorBlobLocatorProcessor.Blob blob, double[] position) {
+        if (blob == null) {
+            return false;
+        }
+        RotatedRect box = blob.getBoxFit();
+        position[0] = box.center.x;
+        position[1] = box.center.y;
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import nu.pattern.OpenCV;
+
+import org.firstinspires.ftc.teamcode.robot.components.vision.StageTimer;
+import org.junit.Test;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how VisionReplay scores what a subject finds against the labels of a dataset.
+ *
+ * The fixture under replay in the test resources has six 64x48 frames, each either black or with a
+ * white square where something was found, and labels for five of them: one found where it is, one
+ * correctly empty, one false alarm, one missed and one found too far from where it is.
+ */
+public class VisionReplayTest {
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void reportCountsPrecisionAndRecall() {
+        VisionReplay.Report report = new VisionReplay.Report();
+        double[] position = new double[2];
+        //found where it is
+        position[0] = 105;
+        position[1] = 100;
+        report.addResult(new double[] {100, 100}, true, position);
+        report.addResult(new double[] {200, 200}, true, new double[] {200, 200});
+        //nothing there and nothing found
+        report.addResult(new double[] {-1, -1}, false, position);
+        //found where nothing is
+        report.addResult(new double[] {-1, -1}, true, position);
+        //there but not found
+        report.addResult(new double[] {50, 50}, false, position);
+        //found, but too far from where it is
+        report.addResult(new double[] {0, 0}, true, new double[] {VisionReplay.POSITION_TOLERANCE + 1, 0});
+        //not labelled, so not counted
+        report.addResult(null, true, position);
+
+        assertEquals(6, report.getLabelled());
+        assertEquals(2.0 / 4, report.getPrecision(), DELTA);
+        assertEquals(2.0 / 4, report.getRecall(), DELTA);
+        assertEquals(0.5, report.getF1(), DELTA);
+        assertEquals(2.5, report.getMeanErrorPixels(), DELTA);
+    }
+
+    @Test
+    public void reportsMergeAcrossThreads() {
+        VisionReplay.Report first = new VisionReplay.Report();
+        first.addFrame(2000000);
+        first.addResult(new double[] {10, 10}, true, new double[] {10, 10});
+        VisionReplay.Report second = new VisionReplay.Report();
+        second.addFrame(4000000);
+        second.addResult(new double[] {10, 10}, false, new double[2]);
+
+        first.merge(second);
+        assertEquals(2, first.getFrames());
+        assertEquals(3, first.getAverageMillis(), DELTA);
+        assertEquals(4, first.getMaxMillis(), DELTA);
+        assertEquals(1, first.getPrecision(), DELTA);
+        assertEquals(0.5, first.getRecall(), DELTA);
+    }
+
+    @Test
+    public void replaysLabelledFixture() throws Exception {
+        OpenCV.loadLocally();
+        File folder = new File(getClass().getResource("/replay/" + ReplayDataset.LABEL_FILE).toURI()).getParentFile();
+        ReplayDataset dataset = ReplayDataset.load(folder);
+        try {
+            assertEquals(6, dataset.size());
+            assertEquals(5, dataset.getLabelCount());
+
+            VisionReplay.Report report = VisionReplay.run(dataset, new VisionReplay.SubjectFactory() {
+                @Override
+                public VisionReplay.Subject create() {
+                    return new WhiteSquareSubject();
+                }
+            }, 2);
+            assertEquals(6, report.getFrames());
+            assertEquals(5, report.getLabelled());
+            assertEquals(1.0 / 3, report.getPrecision(), DELTA);
+            assertEquals(1.0 / 3, report.getRecall(), DELTA);
+            assertEquals(1.0 / 3, report.getF1(), DELTA);
+        } finally {
+            dataset.release();
+        }
+    }
+
+    /**
+     * Finds the center of the white pixels of a frame
+     */
+    private static class WhiteSquareSubject implements VisionReplay.Subject {
+        private final Mat gray = new Mat();
+        private Moments moments;
+
+        @Override
+        public void process(Mat frame, long captureTimeNanos) {
+            Imgproc.cvtColor(frame, gray, Imgproc.COLOR_RGB2GRAY);
+            Imgproc.threshold(gray, gray, 127, 255, Imgproc.THRESH_BINARY);
+            moments = Imgproc.moments(gray, true);
+        }
+
+        @Override
+        public boolean locate(double[] position) {
+            if (moments.m00 == 0) {
+                return false;
+            }
+            position[0] = moments.m10 / moments.m00;
+            position[1] = moments.m01 / moments.m00;
+            return true;
+        }
+
+        @Override
+        public StageTimer getStageTimer() {
+            return null;
+        }
+    }
+}